@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.benchmarks;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.SimpleGrammarBuilder;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * The grammars and inputs of the benchmarks.  The grammars are built directly, as the annotation processor would
+ * build them from a grammar class, so that the tables can be generated without a compiler.
+ */
+public final class BenchmarkGrammars {
+
+    private BenchmarkGrammars() {
+    }
+
+    /**
+     * Create the expression language of {@code ExampleGrammar}, without its comments.
+     *
+     * @return the grammar
+     */
+    public static Grammar createExampleGrammar() {
+        return new SimpleGrammarBuilder("Program")
+            .addPattern(null, "[ \t\r\f]", false)
+            .addLiteral(null, "*", false)
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "\n", true)
+            .addPattern("Literal", "[01]", false)
+            .addRule("Expr", "Literal")
+            .addRule("Expr", "Expr * Literal")
+            .addRule("Expr", "Expr + Literal")
+            .addRule("Line", "\n")
+            .addRule("Line", "Expr \n")
+            .addRule("Program", "Program Line")
+            .addRule("Program", "")
+            .create();
+    }
+
+    /**
+     * Create an input for the expression language.
+     *
+     * @param lines the number of lines
+     * @param seed the random seed
+     * @return the input text
+     */
+    public static String createExampleInput(int lines, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i ++) {
+            final int terms = random.nextInt(12);
+            for (int j = 0; j < terms; j ++) {
+                if (j > 0) {
+                    b.append(random.nextBoolean() ? " * " : " + ");
+                }
+                b.append(random.nextBoolean() ? '1' : '0');
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Create a synthetic grammar of assignment statements to expressions with the given number of binary operator
+     * precedence levels.  Each level adds a nonterminal, a terminal and two rules, and a chain of one unit reduction
+     * for every operand.
+     *
+     * @param levels the number of precedence levels
+     * @return the grammar
+     */
+    public static Grammar createSyntheticGrammar(int levels) {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("Program");
+        builder.addPattern(null, "[ \t\r\n]+", false);
+        builder.addLiteral(null, ";", true);
+        builder.addLiteral(null, "=", false);
+        builder.addLiteral(null, "(", false);
+        builder.addLiteral(null, ")", false);
+        for (int i = 0; i < levels; i ++) {
+            builder.addLiteral(null, "$" + i, false);
+        }
+        builder.addPattern("id", "[a-z][a-z0-9]*", false);
+        builder.addPattern("num", "[0-9]+", false);
+        builder.addRule("Program", "Program Stmt");
+        builder.addRule("Program", "");
+        builder.addRule("Stmt", "id = E0 ;");
+        for (int i = 0; i < levels; i ++) {
+            builder.addRule("E" + i, "E" + i + " $" + i + " E" + (i + 1));
+            builder.addRule("E" + i, "E" + (i + 1));
+        }
+        builder.addRule("E" + levels, "( E0 )");
+        builder.addRule("E" + levels, "id");
+        builder.addRule("E" + levels, "num");
+        return builder.create();
+    }
+
+    /**
+     * Create an input for a synthetic grammar.
+     *
+     * @param levels the number of precedence levels of the grammar
+     * @param statements the number of statements
+     * @param seed the random seed
+     * @return the input text
+     */
+    public static String createSyntheticInput(int levels, int statements, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < statements; i ++) {
+            b.append('v').append(random.nextInt(100)).append(" = ");
+            appendExpression(b, random, levels, 4);
+            b.append(";\n");
+        }
+        return b.toString();
+    }
+
+    private static void appendExpression(StringBuilder b, Random random, int levels, int depth) {
+        if (depth == 0 || random.nextInt(5) < 2) {
+            if (random.nextBoolean()) {
+                b.append('x').append(random.nextInt(1000));
+            } else {
+                b.append(random.nextInt(100000));
+            }
+            return;
+        }
+        // parenthesized, so that any operator may be used at any depth
+        b.append("( ");
+        appendExpression(b, random, levels, depth - 1);
+        b.append(" $").append(random.nextInt(levels)).append(' ');
+        appendExpression(b, random, levels, depth - 1);
+        b.append(" )");
+    }
+
+    /**
+     * Generate the scanner tables of a grammar.
+     *
+     * @param grammar the grammar
+     * @return the scanner tables
+     */
+    public static ScannerTables generateScanner(Grammar grammar) {
+        return new ScannerGenerator().generate(grammar, Environment.INSTANCE);
+    }
+
+    /**
+     * Generate the LALR(1) parse tables of a grammar.
+     *
+     * @param grammar the grammar
+     * @return the parse tables
+     */
+    public static ParseTables generateParser(Grammar grammar) {
+        return new LalrGenerator().generate(grammar, Environment.INSTANCE);
+    }
+
+    /**
+     * A processing environment which discards notes and warnings, and fails on errors.
+     */
+    static final class Environment implements ProcessingEnvironment, Messager {
+        static final Environment INSTANCE = new Environment();
+
+        public Map<String, String> getOptions() {
+            return Collections.emptyMap();
+        }
+
+        public Messager getMessager() {
+            return this;
+        }
+
+        public Filer getFiler() {
+            return null;
+        }
+
+        public Elements getElementUtils() {
+            return null;
+        }
+
+        public Types getTypeUtils() {
+            return null;
+        }
+
+        public SourceVersion getSourceVersion() {
+            return SourceVersion.latest();
+        }
+
+        public Locale getLocale() {
+            return Locale.getDefault();
+        }
+
+        public void printMessage(final Diagnostic.Kind kind, final CharSequence msg) {
+            if (kind == Diagnostic.Kind.ERROR) {
+                throw new IllegalStateException(msg.toString());
+            }
+        }
+
+        public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e) {
+            printMessage(kind, msg);
+        }
+
+        public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a) {
+            printMessage(kind, msg);
+        }
+
+        public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a, final AnnotationValue v) {
+            printMessage(kind, msg);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.LrParser;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.TokenArray;
+import org.jboss.flicc.processor.Grammar;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the LR driver, in reductions per second (the {@code reductions} counter).  The input is scanned to
+ * terminals ahead of time and the semantic actions do nothing, so only the driver and its table look-ups are measured.
+ * The parser is reset for each pass over the input and its stacks are kept, so after warm-up a pass should allocate
+ * nothing; run with {@code -prof gc} to check the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({ Workloads.EXAMPLE, Workloads.SYNTHETIC })
+    public String workload;
+
+    private int[] terminals;
+    private CountingParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        final Grammar grammar = Workloads.createGrammar(workload);
+        final ScannerTables scannerTables = BenchmarkGrammars.generateScanner(grammar);
+        final TokenArray tokens = TokenArray.scan(scannerTables, Workloads.createSource(workload, Workloads.createInput(workload)));
+        final int tokenCount = tokens.getTokenCount();
+        int count = 0;
+        terminals = new int[tokenCount];
+        for (int i = 0; i < tokenCount; i ++) {
+            final int terminal = scannerTables.getRuleTerminal(tokens.getRule(i));
+            if (terminal != ScannerTables.NONE) {
+                terminals[count++] = terminal;
+            }
+        }
+        terminals = Arrays.copyOf(terminals, count);
+        parser = new CountingParser(BenchmarkGrammars.generateParser(grammar));
+    }
+
+    @Benchmark
+    public long parse(final Counters counters) throws IOException {
+        final CountingParser parser = this.parser;
+        parser.run(terminals);
+        final long reductions = parser.reductions;
+        parser.reductions = 0;
+        counters.reductions += reductions;
+        return reductions;
+    }
+
+    /**
+     * The number of reductions made, which JMH reports as a rate.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long reductions;
+    }
+
+    static final class CountingParser extends LrParser {
+        private int[] terminals;
+        private int index;
+        long reductions;
+
+        CountingParser(final LrAutomaton automaton) {
+            super(automaton);
+        }
+
+        void run(int[] terminals) throws IOException {
+            this.terminals = terminals;
+            index = 0;
+            reset();
+            parse();
+        }
+
+        protected int nextToken() {
+            final int[] terminals = this.terminals;
+            // terminal 0 is the end of input
+            return index < terminals.length ? terminals[index++] : 0;
+        }
+
+        protected void reduce(final int production, final int base) {
+            reductions ++;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.benchmarks;
+
+import java.io.Reader;
+import java.io.StringReader;
+import org.jboss.flicc.Source;
+import org.jboss.flicc.processor.Grammar;
+
+/**
+ * The grammars and inputs which the benchmarks are run over, selected by name: {@code example} for the expression
+ * language of the example grammar, and {@code synthetic} for a larger grammar with sixteen operator precedence levels.
+ */
+final class Workloads {
+
+    static final String EXAMPLE = "example";
+    static final String SYNTHETIC = "synthetic";
+
+    private static final int SYNTHETIC_LEVELS = 16;
+    private static final long SEED = 0x5eedL;
+
+    private Workloads() {
+    }
+
+    static Grammar createGrammar(String name) {
+        if (EXAMPLE.equals(name)) {
+            return BenchmarkGrammars.createExampleGrammar();
+        } else if (SYNTHETIC.equals(name)) {
+            return BenchmarkGrammars.createSyntheticGrammar(SYNTHETIC_LEVELS);
+        }
+        throw new IllegalArgumentException("Unknown workload " + name);
+    }
+
+    static String createInput(String name) {
+        if (EXAMPLE.equals(name)) {
+            return BenchmarkGrammars.createExampleInput(50000, SEED);
+        } else if (SYNTHETIC.equals(name)) {
+            return BenchmarkGrammars.createSyntheticInput(SYNTHETIC_LEVELS, 5000, SEED);
+        }
+        throw new IllegalArgumentException("Unknown workload " + name);
+    }
+
+    static Source createSource(final String name, final String text) {
+        return new Source() {
+            public String getName() {
+                return name;
+            }
+
+            public Reader open() {
+                return new StringReader(text);
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.jfr;
+
+import org.jboss.flicc.ErrorHandler;
+import org.jboss.flicc.Location;
+
+/**
+ * An error handler which records each error as an {@code org.jboss.flicc.ParseError} Flight Recorder event before
+ * passing it on to another handler.  Unlike {@link JfrParseMetrics}, this does not need metrics to be enabled.
+ */
+public final class JfrErrorHandler implements ErrorHandler {
+    private final ErrorHandler delegate;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param delegate the handler to pass errors on to
+     */
+    public JfrErrorHandler(final ErrorHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    public void handleError(final Location location, final String message) {
+        final ParseErrorEvent event = new ParseErrorEvent();
+        if (event.shouldCommit()) {
+            event.message = message;
+            if (location != null) {
+                event.fileName = location.getFileName();
+                event.line = location.getLineNumber();
+                event.column = location.getColumnNumber();
+                int includeDepth = 0;
+                for (Location parent = location.getParent(); parent != null; parent = parent.getParent()) {
+                    includeDepth ++;
+                }
+                event.includeDepth = includeDepth;
+            }
+            event.commit();
+        }
+        delegate.handleError(location, message);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.jfr;
+
+import org.jboss.flicc.ParseCounters;
+import org.jboss.flicc.ParseMetrics;
+
+/**
+ * A parse metrics listener which records each parse, the sources it opens and its scanner buffer refills as Flight
+ * Recorder events, so that expensive inputs and grammars can be found in a recording alongside GC and CPU activity.
+ * The events are named {@code org.jboss.flicc.Parse}, {@code org.jboss.flicc.SourceOpened} and
+ * {@code org.jboss.flicc.BufferRefill}; an event which is disabled in the recording costs a single check.
+ * <p>
+ * An instance keeps the event of the parse in progress, so each parser needs its own.  Metrics must be enabled (see
+ * {@link ParseMetrics#ENABLED}) for a listener to be installed.
+ */
+public final class JfrParseMetrics implements ParseMetrics {
+    private ParseEvent event;
+
+    /**
+     * Construct a new instance.
+     */
+    public JfrParseMetrics() {
+    }
+
+    public void parseStarted() {
+        final ParseEvent event = new ParseEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            this.event = event;
+        }
+    }
+
+    public void sourceOpened(final String name, final int depth) {
+        final SourceOpenedEvent event = new SourceOpenedEvent();
+        if (event.shouldCommit()) {
+            event.sourceName = name;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    public void bufferRefilled(final int length) {
+        final BufferRefillEvent event = new BufferRefillEvent();
+        if (event.shouldCommit()) {
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    public void parseEnded(final ParseCounters counters) {
+        final ParseEvent event = this.event;
+        if (event == null) {
+            return;
+        }
+        this.event = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceName = counters.getSourceName();
+            event.chars = counters.getChars();
+            event.bytes = counters.getBytes();
+            event.tokens = counters.getTokens();
+            event.reductions = counters.getReductions();
+            event.maxDepth = counters.getMaxDepth();
+            event.refills = counters.getRefills();
+            event.errors = counters.getErrors();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A parse, from its start until it is accepted or fails.
+ */
+@Name("org.jboss.flicc.Parse")
+@Label("Parse")
+@Description("A parse, from its start until it is accepted or fails")
+@Category("Flicc")
+@StackTrace(false)
+final class ParseEvent extends Event {
+    @Label("Source")
+    @Description("The name of the first source of the parse")
+    String sourceName;
+
+    @Label("Characters")
+    @Description("The number of characters read by character scanners")
+    long chars;
+
+    @Label("Bytes")
+    @Description("The number of bytes read by byte scanners")
+    @DataAmount
+    long bytes;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Reductions")
+    long reductions;
+
+    @Label("Maximum Stack Depth")
+    int maxDepth;
+
+    @Label("Buffer Refills")
+    long refills;
+
+    @Label("Errors")
+    long errors;
+}
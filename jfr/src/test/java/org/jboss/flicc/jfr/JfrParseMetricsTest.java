@@ -0,0 +1,191 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.jboss.flicc.AbstractParser;
+import org.jboss.flicc.ErrorHandler;
+import org.jboss.flicc.Location;
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.Source;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the events recorded by {@link JfrParseMetrics} and {@link JfrErrorHandler}.
+ */
+public final class JfrParseMetricsTest {
+
+    private static final String[] EVENTS = { "org.jboss.flicc.Parse", "org.jboss.flicc.SourceOpened",
+        "org.jboss.flicc.BufferRefill", "org.jboss.flicc.ParseError" };
+
+    private final List<String> errors = new ArrayList<String>();
+
+    private static Source createSource(final String name, final String text) {
+        return new Source() {
+            public String getName() {
+                return name;
+            }
+
+            public Reader open() {
+                return new StringReader(text);
+            }
+        };
+    }
+
+    private long parse(String name, String text) throws IOException {
+        final SumParser parser = new SumParser(new JfrErrorHandler(new ErrorHandler() {
+            public void handleError(final Location location, final String message) {
+                errors.add(message);
+            }
+        }));
+        parser.setParseMetrics(new JfrParseMetrics());
+        parser.reset(createSource(name, text));
+        return parser.sum();
+    }
+
+    private static List<RecordedEvent> record(Recording recording, List<String> names) throws IOException {
+        final File file = File.createTempFile("flicc", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (names.contains(event.getEventType().getName())) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static RecordedEvent getEvent(List<RecordedEvent> events, String name) {
+        RecordedEvent found = null;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                assertEquals("Only one " + name + " event", null, found);
+                found = event;
+            }
+        }
+        assertEquals("One " + name + " event", true, found != null);
+        return found;
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        final Recording recording = new Recording();
+        try {
+            for (String name : EVENTS) {
+                recording.enable(name);
+            }
+            recording.start();
+            assertEquals(6, parse("sums", "1 + 2\n+ 3 x"));
+            recording.stop();
+            final List<RecordedEvent> events = record(recording, Arrays.asList(EVENTS));
+            assertEquals(4, events.size());
+            final RecordedEvent parse = getEvent(events, "org.jboss.flicc.Parse");
+            assertEquals("sums", parse.getString("sourceName"));
+            assertEquals(11, parse.getLong("chars"));
+            assertEquals(0, parse.getLong("bytes"));
+            // 1, space, +, space, 2, new line, +, space, 3, space, x
+            assertEquals(11, parse.getLong("tokens"));
+            assertEquals(3, parse.getLong("reductions"));
+            assertEquals(3, parse.getInt("maxDepth"));
+            assertEquals(1, parse.getLong("refills"));
+            assertEquals(1, parse.getLong("errors"));
+            final RecordedEvent opened = getEvent(events, "org.jboss.flicc.SourceOpened");
+            assertEquals("sums", opened.getString("sourceName"));
+            assertEquals(1, opened.getInt("depth"));
+            assertEquals(11, getEvent(events, "org.jboss.flicc.BufferRefill").getInt("length"));
+            final RecordedEvent error = getEvent(events, "org.jboss.flicc.ParseError");
+            assertEquals("Unexpected input 'x'", error.getString("message"));
+            assertEquals("sums", error.getString("fileName"));
+            assertEquals(2, error.getInt("line"));
+            assertEquals(5, error.getInt("column"));
+            assertEquals(0, error.getInt("includeDepth"));
+            // the error is passed on
+            assertEquals(Arrays.asList("Unexpected input 'x'"), errors);
+        } finally {
+            recording.close();
+        }
+    }
+
+    @Test
+    public void testDisabledEvents() throws IOException {
+        final Recording recording = new Recording();
+        try {
+            for (String name : EVENTS) {
+                recording.disable(name);
+            }
+            recording.enable("org.jboss.flicc.SourceOpened");
+            recording.start();
+            assertEquals(3, parse("sums", "1 + 2 x"));
+            recording.stop();
+            final List<RecordedEvent> events = record(recording, Arrays.asList(EVENTS));
+            // only the enabled event is recorded, but the error is still passed on
+            assertEquals(1, events.size());
+            assertEquals("org.jboss.flicc.SourceOpened", events.get(0).getEventType().getName());
+            assertEquals(1, errors.size());
+        } finally {
+            recording.close();
+        }
+    }
+
+    static final class SumParser extends AbstractParser {
+
+        SumParser(final ErrorHandler errorHandler) {
+            super(ParseTables.loadAutomaton(SumGrammar.class), ScannerTables.load(SumGrammar.class), errorHandler);
+        }
+
+        long sum() throws IOException {
+            return getLong(parse());
+        }
+
+        protected void tokenScanned(final int rule) {
+            final String text = getTokenText();
+            if (Character.isDigit(text.charAt(0))) {
+                setTokenLong(Long.parseLong(text));
+            }
+        }
+
+        protected void reduce(final int production, final int base) {
+            switch (production) {
+                case 1: setResultLong(getLong(base) + getLong(base + 2)); break; // Sum -> Sum + num
+                default: setResultLong(getLong(base)); // Sum -> num
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import com.sun.codemodel.CodeWriter;
+import com.sun.codemodel.JPackage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+
+/**
+ * A code writer which writes generated source files through the annotation processing {@link Filer}, so that they are
+ * compiled along with the grammar.
+ */
+final class FilerCodeWriter extends CodeWriter {
+    private static final String SUFFIX = ".java";
+
+    private final Filer filer;
+    private final Element originatingElement;
+
+    FilerCodeWriter(final Filer filer, final Element originatingElement) {
+        this.filer = filer;
+        this.originatingElement = originatingElement;
+    }
+
+    public OutputStream openBinary(final JPackage pkg, final String fileName) throws IOException {
+        if (! fileName.endsWith(SUFFIX)) {
+            throw new IOException("Unexpected generated file " + fileName);
+        }
+        final String simpleName = fileName.substring(0, fileName.length() - SUFFIX.length());
+        final String name = pkg.isUnnamed() ? simpleName : pkg.name() + "." + simpleName;
+        return filer.createSourceFile(name, originatingElement).openOutputStream();
+    }
+
+    public void close() {
+    }
+}
@@ -22,6 +22,8 @@
 
 package org.jboss.flicc.processor;
 
+import org.jboss.flicc.ParseTables;
+
 import javax.annotation.processing.ProcessingEnvironment;
 
 /**
@@ -29,5 +31,12 @@ import javax.annotation.processing.ProcessingEnvironment;
  */
 public interface Generator {
 
-    void generate(Grammar grammar, ProcessingEnvironment env);
+    /**
+     * Generate the parse tables for a grammar, reporting any problems to the processing environment.
+     *
+     * @param grammar the grammar
+     * @param env the processing environment
+     * @return the packed parse tables
+     */
+    ParseTables generate(Grammar grammar, ProcessingEnvironment env);
 }
@@ -25,17 +25,35 @@ package org.jboss.flicc.processor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.lang.model.element.TypeElement;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class Grammar {
+    private final TypeElement element;
     private final int lookahead;
     private final String goal;
+    private final boolean byteInput;
     private final Map<SymbolSeq, RuleSet> rulesBySymbols = new HashMap<SymbolSeq, RuleSet>();
     private final Map<String, Symbol> symbolsByName = new HashMap<String, Symbol>();
+    private final List<Symbol> inputs = new ArrayList<Symbol>();
+    private final Map<Nonterminal, List<Rule>> producedBy = new LinkedHashMap<Nonterminal, List<Rule>>();
+    private final List<TokenRule> tokenRules = new ArrayList<TokenRule>();
+    private final SortedMap<Integer, String> scannerStates = new TreeMap<Integer, String>();
+
+    public Grammar(final TypeElement element, final int lookahead, final String goal, final boolean byteInput) {
+        this.element = element;
+        this.lookahead = lookahead;
+        this.goal = goal;
+        this.byteInput = byteInput;
+    }
 
     private static <K, V> List<V> getMapList(Map<K, List<V>> map, K key) {
         List<V> list = map.get(key);
@@ -51,5 +69,120 @@ public final class Grammar {
         return list;
     }
 
-    
+    /**
+     * Get the grammar class element.
+     *
+     * @return the grammar class element
+     */
+    public TypeElement getElement() {
+        return element;
+    }
+
+    /**
+     * Get the number of tokens of look-ahead requested for this grammar.
+     *
+     * @return the look-ahead length
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Get the name of the goal symbol.
+     *
+     * @return the goal symbol name
+     */
+    public String getGoal() {
+        return goal;
+    }
+
+    /**
+     * Determine whether the scanner of this grammar runs over UTF-8 bytes rather than characters.
+     *
+     * @return {@code true} for byte input
+     */
+    public boolean isByteInput() {
+        return byteInput;
+    }
+
+    /**
+     * Get a symbol by name.
+     *
+     * @param name the symbol name
+     * @return the symbol, or {@code null} if there is no such symbol
+     */
+    public Symbol getSymbol(String name) {
+        return symbolsByName.get(name);
+    }
+
+    /**
+     * Get the terminal symbols of this grammar, in declaration order.
+     *
+     * @return the terminal symbols
+     */
+    public List<Symbol> getInputs() {
+        return Collections.unmodifiableList(inputs);
+    }
+
+    /**
+     * Get the rules of this grammar, grouped by the nonterminal they produce.  Nonterminals are ordered by first
+     * declaration, and rules in declaration order.
+     *
+     * @return the rule map
+     */
+    public Map<Nonterminal, List<Rule>> getProducedBy() {
+        return Collections.unmodifiableMap(producedBy);
+    }
+
+    /**
+     * Get the rules which produce the given nonterminal.
+     *
+     * @param nonterminal the nonterminal
+     * @return the rules
+     */
+    public List<Rule> getRules(Nonterminal nonterminal) {
+        return getMapList(producedBy, nonterminal);
+    }
+
+    /**
+     * Get the token rules of this grammar, in declaration order, which is also their order of precedence.
+     *
+     * @return the token rules
+     */
+    public List<TokenRule> getTokenRules() {
+        return Collections.unmodifiableList(tokenRules);
+    }
+
+    /**
+     * Get the scanner states of this grammar, mapping each state value to the name of its constant.
+     *
+     * @return the scanner states, ordered by value
+     */
+    public SortedMap<Integer, String> getScannerStates() {
+        return Collections.unmodifiableSortedMap(scannerStates);
+    }
+
+    void addTokenRule(TokenRule rule) {
+        tokenRules.add(rule);
+    }
+
+    void addScannerState(String name, int value) {
+        scannerStates.put(Integer.valueOf(value), name);
+    }
+
+    void addInput(Symbol terminal) {
+        symbolsByName.put(terminal.getName(), terminal);
+        inputs.add(terminal);
+    }
+
+    void addNonterminal(Nonterminal nonterminal) {
+        symbolsByName.put(nonterminal.getName(), nonterminal);
+        if (! producedBy.containsKey(nonterminal)) {
+            producedBy.put(nonterminal, new ArrayList<Rule>());
+        }
+    }
+
+    void addRule(Nonterminal nonterminal, Rule rule) {
+        addToMapList(producedBy, nonterminal, rule);
+    }
 }
@@ -32,4 +32,8 @@ public final class Literal extends Symbol {
         super(name);
         this.literal = literal;
     }
+
+    public String getLiteral() {
+        return literal;
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import static javax.tools.Diagnostic.Kind.WARNING;
+
+/**
+ * Processor options which the generators read for themselves.  This class must not refer to the code model, so that
+ * a generator can be run without the code model on the class path, as the benchmarks do.
+ */
+public final class Options {
+
+    private Options() {
+    }
+
+    /**
+     * Get the number of threads on which to build the states of an automaton, as set by
+     * {@link Processor#THREADS_OPTION}.
+     *
+     * @param env the processing environment
+     * @return the number of threads
+     */
+    public static int getThreads(final ProcessingEnvironment env) {
+        final String value = env.getOptions().get(Processor.THREADS_OPTION);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        int threads;
+        try {
+            threads = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads < 1) {
+            env.getMessager().printMessage(WARNING, "Invalid value '" + value + "' for option " + Processor.THREADS_OPTION + "; using a single thread");
+            return 1;
+        }
+        return threads;
+    }
+}
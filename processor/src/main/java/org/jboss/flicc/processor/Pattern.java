@@ -32,4 +32,8 @@ public final class Pattern extends Symbol {
         super(name);
         this.pattern = pattern;
     }
+
+    public String getPattern() {
+        return pattern;
+    }
 }
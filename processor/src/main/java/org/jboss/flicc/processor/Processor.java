@@ -22,14 +22,23 @@
 
 package org.jboss.flicc.processor;
 
+import com.sun.codemodel.JCodeModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import org.jboss.flicc.Flicc;
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.jboss.flicc.processor.lr0.Lr0Generator;
+import org.jboss.flicc.processor.lr1.Lr1Generator;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
 
 import javax.annotation.processing.Completion;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -39,7 +48,14 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
 
 import static javax.tools.Diagnostic.Kind.*;
 
@@ -48,10 +64,35 @@ import static javax.tools.Diagnostic.Kind.*;
  */
 public final class Processor implements javax.annotation.processing.Processor {
 
+    private static final List<Class<? extends Annotation>> POSITIONAL_ANNOTATIONS = Arrays.<Class<? extends Annotation>>asList(
+        Flicc.$0.class, Flicc.$1.class, Flicc.$2.class, Flicc.$3.class, Flicc.$4.class,
+        Flicc.$5.class, Flicc.$6.class, Flicc.$7.class, Flicc.$8.class, Flicc.$9.class
+    );
+
     private volatile ProcessingEnvironment processingEnv;
 
+    /**
+     * The processor option which selects the LR(1) construction: {@code minimal} (the default) for LR(1) with states
+     * split from LALR(1) only where needed, or {@code lalr} for plain LALR(1).
+     */
+    public static final String LR1_OPTION = "flicc.lr1";
+
+    /**
+     * The processor option which selects the form of the generated automaton: {@code tables} (the default) for packed
+     * tables in a class path resource, or {@code code} for a generated class in which every decision is compiled into
+     * {@code switch} statements.  An automaton which is too large for code falls back to tables.
+     */
+    public static final String AUTOMATON_OPTION = "flicc.automaton";
+
+    /**
+     * The processor option which sets the number of threads on which the states of a large LR automaton are built.
+     * The default is the number of available processors; {@code 1} builds them on the processing thread.  The
+     * generated tables are the same in every case.
+     */
+    public static final String THREADS_OPTION = "flicc.threads";
+
     public Set<String> getSupportedOptions() {
-        return Collections.emptySet();
+        return new HashSet<String>(Arrays.asList(LR1_OPTION, AUTOMATON_OPTION, THREADS_OPTION));
     }
 
     public SourceVersion getSupportedSourceVersion() {
@@ -88,20 +129,32 @@ public final class Processor implements javax.annotation.processing.Processor {
             return;
         }
         final int lr = lrAnnotation.value();
-        final Flicc.__ goalAnnotation = element.getAnnotation(Flicc.__.class);
-        if (goalAnnotation == null) {
-            processingEnv.getMessager().printMessage(ERROR, "Missing @_() (goal) annotation", element);
-            return;
-        }
-        final String goal = goalAnnotation.value();
-        processingEnv.getMessager().printMessage(NOTE, "Processing grammar for class '" + element.getSimpleName() + "' as LR(" + lr + ") goal '" + goal + "'", element);
         if (! (element instanceof TypeElement)) {
             processingEnv.getMessager().printMessage(ERROR, "Element is not a type", element);
             return;
         }
         TypeElement typeElement = (TypeElement) element;
         List<? extends Element> members = processingEnv.getElementUtils().getAllMembers(typeElement);
-        Map<String, Symbol> symbolMap = new HashMap<String, Symbol>();
+        final String goal = getGoal(typeElement, members);
+        if (goal == null) {
+            return;
+        }
+        processingEnv.getMessager().printMessage(NOTE, "Processing grammar for class '" + element.getSimpleName() + "' as LR(" + lr + ") goal '" + goal + "'", element);
+        final Grammar grammar = new Grammar(typeElement, lr, goal, typeElement.getAnnotation(Flicc.Utf8.class) != null);
+        for (VariableElement field : ElementFilter.fieldsIn(members)) {
+            if (field.getAnnotation(Flicc.State.class) != null) {
+                final Object value = field.getConstantValue();
+                if (! (value instanceof Integer)) {
+                    processingEnv.getMessager().printMessage(ERROR, "Scanner state ($S) field must be a constant of type int", field);
+                    continue;
+                }
+                grammar.addScannerState(field.getSimpleName().toString(), ((Integer) value).intValue());
+            }
+        }
+        if (! grammar.getScannerStates().containsKey(Integer.valueOf(0))) {
+            // the scanner always starts in state 0
+            grammar.addScannerState("INITIAL", 0);
+        }
         for (Element member : ElementFilter.methodsIn(members)) {
             if (member instanceof ExecutableElement) {
                 final ExecutableElement executableElement = (ExecutableElement) member;
@@ -112,6 +165,10 @@ public final class Processor implements javax.annotation.processing.Processor {
                         continue;
                     }
                 }
+                if (isParserMethod(executableElement)) {
+                    // implemented by the parser, not part of the grammar
+                    continue;
+                }
                 final Flicc.__ resultAnnotation = executableElement.getAnnotation(Flicc.__.class);
                 String result = resultAnnotation == null ? null : resultAnnotation.value();
                 final Flicc.Pattern patternAnnotation = executableElement.getAnnotation(Flicc.Pattern.class);
@@ -120,6 +177,7 @@ public final class Processor implements javax.annotation.processing.Processor {
                 final Flicc.Rule ruleAnnotation = executableElement.getAnnotation(Flicc.Rule.class);
                 final Flicc.ExcludeState antiStateAnnotation = executableElement.getAnnotation(Flicc.ExcludeState.class);
                 final Flicc.Assoc associativityAnnotation = executableElement.getAnnotation(Flicc.Assoc.class);
+                final Flicc.Sync syncAnnotation = executableElement.getAnnotation(Flicc.Sync.class);
                 if (ruleAnnotation != null) {
                     // Definitely a rule
                     if (patternAnnotation != null) {
@@ -138,24 +196,33 @@ public final class Processor implements javax.annotation.processing.Processor {
                         processingEnv.getMessager().printMessage(ERROR, "Method cannot have a rule ($R) and an anti-state ($X) at the same time", executableElement);
                         // but keep going, treating it as a rule
                     }
+                    if (syncAnnotation != null) {
+                        processingEnv.getMessager().printMessage(ERROR, "Method cannot have a rule ($R) and be a synchronizing token at the same time", executableElement);
+                        // but keep going, treating it as a rule
+                    }
                     if (resultAnnotation == null) {
                         processingEnv.getMessager().printMessage(ERROR, "Rule ($R) method must have a result ($$)", executableElement);
                         continue;
                     }
                     final Flicc.AssocType assocType = associativityAnnotation == null ? Flicc.AssocType.NONE : associativityAnnotation.value();
                     // it's a rule
-                    Symbol symbol = symbolMap.get(result);
+                    Symbol symbol = grammar.getSymbol(result);
                     Nonterminal nonterminal;
                     if (symbol != null) {
-                        if (symbol instanceof Symbol) {
+                        if (! (symbol instanceof Nonterminal)) {
                             processingEnv.getMessager().printMessage(ERROR, "Symbol '" + result + "' declared as terminal ($P/$L) and nonterminal ($R) at the same time", executableElement);
                             continue;
                         } else {
                             nonterminal = (Nonterminal) symbol;
                         }
                     } else {
-                        symbolMap.put(result, nonterminal = new Nonterminal(result));
+                        grammar.addNonterminal(nonterminal = new Nonterminal(result));
+                    }
+                    final Rule.ActualParameter[] actualParameters = getActualParameters(executableElement);
+                    if (actualParameters == null) {
+                        continue;
                     }
+                    grammar.addRule(nonterminal, new Rule(executableElement.getSimpleName().toString(), executableElement, result, Rule.parseRuleSpec(ruleAnnotation.value()), actualParameters));
                 } else if (patternAnnotation != null || literalAnnotation != null) {
                     if (patternAnnotation != null && literalAnnotation != null) {
                         processingEnv.getMessager().printMessage(ERROR, "Method cannot have $P and $L at the same time", executableElement);
@@ -171,28 +238,32 @@ public final class Processor implements javax.annotation.processing.Processor {
                             continue;
                         }
                     }
+                    final TokenRule.TextType[] parameterTypes = getTextParameterTypes(executableElement);
+                    if (parameterTypes == null) {
+                        continue;
+                    }
                     String[] values = isPattern ? new String[] { patternAnnotation.value() } : literalAnnotation.value();
                     for (String value : values) {
-                        if (literalAnnotation != null && result == null) {
-                            result = value;
-                        }
+                        // a literal with no result produces itself
+                        final String name = result == null && literalAnnotation != null ? value : result;
                         // it's a pattern or literal
                         Symbol terminal;
-                        if (result != null) {
-                            Symbol existing = symbolMap.get(result);
+                        if (name != null) {
+                            Symbol existing = grammar.getSymbol(name);
                             if (existing != null) {
                                 if (existing instanceof Nonterminal) {
-                                    processingEnv.getMessager().printMessage(ERROR, "Symbol '" + result + "' declared as terminal ($P/$L) and nonterminal ($R) at the same time", executableElement);
+                                    processingEnv.getMessager().printMessage(ERROR, "Symbol '" + name + "' declared as terminal ($P/$L) and nonterminal ($R) at the same time", executableElement);
                                     continue;
                                 } else {
-                                    terminal = (Symbol) existing;
+                                    terminal = existing;
                                 }
                             } else {
-                                symbolMap.put(result, terminal = new Symbol(result));
+                                grammar.addInput(terminal = isPattern ? new Pattern(name, value) : new Literal(name, value));
                             }
                         } else {
                             terminal = null;
                         }
+                        grammar.addTokenRule(new TokenRule(executableElement, isPattern, value, terminal, stateAnnotation == null ? null : stateAnnotation.value(), antiStateAnnotation == null ? null : antiStateAnnotation.value(), parameterTypes, syncAnnotation != null));
                     }
                 } else {
                     if (resultAnnotation == null) {
@@ -202,5 +273,202 @@ public final class Processor implements javax.annotation.processing.Processor {
                 }
             }
         }
+        if (! validate(grammar)) {
+            return;
+        }
+        final String automatonForm = getOption(AUTOMATON_OPTION, element, "tables", "code");
+        if (automatonForm == null) {
+            return;
+        }
+        final Generator generator;
+        switch (lr) {
+            case 0: generator = new Lr0Generator(); break;
+            case 1: {
+                final String construction = getOption(LR1_OPTION, element, "minimal", "lalr");
+                if (construction == null) {
+                    return;
+                }
+                generator = construction.equals("lalr") ? new LalrGenerator() : new Lr1Generator();
+                break;
+            }
+            default: {
+                processingEnv.getMessager().printMessage(ERROR, "Only LR(0) and LR(1) grammars are supported", element);
+                return;
+            }
+        }
+        final ParseTables tables = generator.generate(grammar, processingEnv);
+        final int dense = tables.getStateCount() * (grammar.getInputs().size() + 1 + grammar.getProducedBy().size() + 1);
+        processingEnv.getMessager().printMessage(NOTE, "Parse tables packed to " + tables.getSize() + " entries (" + dense + " unpacked)", element);
+        final ScannerTables scannerTables = new ScannerGenerator().generate(grammar, processingEnv);
+        if (scannerTables == null) {
+            return;
+        }
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+        JCodeModel automaton = null;
+        if (automatonForm.equals("code")) {
+            automaton = new SwitchEmitter(tables, grammar.getInputs().size() + 1, grammar.getProducedBy().size() + 1).emit(ParseTables.getAutomatonClassName(binaryName));
+            if (automaton == null) {
+                processingEnv.getMessager().printMessage(WARNING, "Automaton is too large to generate as code, so parse tables are used instead", element);
+            }
+        }
+        try {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            if (automaton != null) {
+                automaton.build(new FilerCodeWriter(processingEnv.getFiler(), typeElement));
+            } else {
+                tables.writeTo(os);
+                writeResource(typeElement, ParseTables.getResourceName(binaryName), os.toByteArray());
+                os.reset();
+            }
+            scannerTables.writeTo(os);
+            writeResource(typeElement, ScannerTables.getResourceName(binaryName), os.toByteArray());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(ERROR, "Failed to write generated files: " + e, element);
+        }
+    }
+
+    // the first value is the default
+    private String getOption(final String name, final Element element, final String... values) {
+        final String value = processingEnv.getOptions().get(name);
+        if (value == null) {
+            return values[0];
+        }
+        for (String allowed : values) {
+            if (allowed.equals(value.trim())) {
+                return allowed;
+            }
+        }
+        processingEnv.getMessager().printMessage(ERROR, "Invalid value '" + value + "' for option " + name + "; expected one of " + Arrays.asList(values), element);
+        return null;
+    }
+
+    private String getGoal(final TypeElement element, final List<? extends Element> members) {
+        final Flicc.__ goalAnnotation = element.getAnnotation(Flicc.__.class);
+        String goal = goalAnnotation == null ? null : goalAnnotation.value();
+        for (ExecutableElement method : ElementFilter.methodsIn(members)) {
+            final Flicc.Parse parseAnnotation = method.getAnnotation(Flicc.Parse.class);
+            if (parseAnnotation != null) {
+                if (goal == null) {
+                    goal = parseAnnotation.value();
+                } else if (! goal.equals(parseAnnotation.value())) {
+                    processingEnv.getMessager().printMessage(ERROR, "Parse method (@Parse) accepts '" + parseAnnotation.value() + "' but the goal of the grammar is '" + goal + "'", method);
+                    return null;
+                }
+            }
+        }
+        if (goal == null) {
+            processingEnv.getMessager().printMessage(ERROR, "Missing @__() (goal) annotation on the class or a @Parse() method", element);
+        }
+        return goal;
+    }
+
+    private static boolean isParserMethod(final ExecutableElement method) {
+        return method.getAnnotation(Flicc.Parse.class) != null || method.getAnnotation(Flicc.Start.class) != null
+            || method.getAnnotation(Flicc.Push.class) != null || method.getAnnotation(Flicc.Pop.class) != null;
+    }
+
+    private void writeResource(final TypeElement element, final String name, final byte[] bytes) throws IOException {
+        final FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", name, element);
+        final OutputStream os = resource.openOutputStream();
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    private boolean validate(final Grammar grammar) {
+        boolean ok = true;
+        if (! (grammar.getSymbol(grammar.getGoal()) instanceof Nonterminal)) {
+            processingEnv.getMessager().printMessage(ERROR, "Goal '" + grammar.getGoal() + "' is not produced by any rule ($R)", grammar.getElement());
+            ok = false;
+        }
+        for (TokenRule rule : grammar.getTokenRules()) {
+            for (int[] states : new int[][] { rule.getIncludeStates(), rule.getExcludeStates() }) {
+                if (states != null) for (int state : states) {
+                    if (! grammar.getScannerStates().containsKey(Integer.valueOf(state))) {
+                        processingEnv.getMessager().printMessage(ERROR, "Token rule refers to undeclared scanner state " + state, rule.getElement());
+                        ok = false;
+                    }
+                }
+            }
+            if (rule.isSync() && ! rule.appliesIn(0)) {
+                processingEnv.getMessager().printMessage(ERROR, "Synchronizing token rule must apply in scanner state 0", rule.getElement());
+                ok = false;
+            }
+        }
+        for (List<Rule> rules : grammar.getProducedBy().values()) {
+            for (Rule rule : rules) {
+                for (String name : rule.getRuleSpec()) {
+                    if (grammar.getSymbol(name) == null) {
+                        processingEnv.getMessager().printMessage(ERROR, "Rule refers to undefined symbol '" + name + "'", rule.getElement());
+                        ok = false;
+                    }
+                }
+            }
+        }
+        return ok;
+    }
+
+    private Rule.ActualParameter[] getActualParameters(final ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final Rule.ActualParameter[] actualParameters = new Rule.ActualParameter[parameters.size()];
+        for (int i = 0; i < actualParameters.length; i ++) {
+            final VariableElement parameter = parameters.get(i);
+            final int index = getParameterIndex(parameter);
+            if (index == -1) {
+                processingEnv.getMessager().printMessage(ERROR, "Parameter must have a positional ($n) annotation", parameter);
+                return null;
+            }
+            actualParameters[i] = new Rule.ActualParameter(parameter, index);
+        }
+        return actualParameters;
+    }
+
+    private TokenRule.TextType[] getTextParameterTypes(final ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final TokenRule.TextType[] types = new TokenRule.TextType[parameters.size()];
+        final Types typeUtils = processingEnv.getTypeUtils();
+        final Elements elementUtils = processingEnv.getElementUtils();
+        final TypeMirror stringType = elementUtils.getTypeElement(String.class.getName()).asType();
+        final TypeMirror charSequenceType = elementUtils.getTypeElement(CharSequence.class.getName()).asType();
+        for (int i = 0; i < types.length; i ++) {
+            final VariableElement parameter = parameters.get(i);
+            final int index = getParameterIndex(parameter);
+            if (index == -1) {
+                processingEnv.getMessager().printMessage(ERROR, "Parameter must have a positional ($n) annotation", parameter);
+                return null;
+            }
+            if (index != 0) {
+                processingEnv.getMessager().printMessage(ERROR, "Capture groups are not yet supported; only the whole matched text ($0) may be passed to a token method", parameter);
+                return null;
+            }
+            final TypeMirror type = parameter.asType();
+            if (typeUtils.isSameType(type, stringType)) {
+                types[i] = TokenRule.TextType.STRING;
+            } else if (typeUtils.isSameType(type, charSequenceType)) {
+                // passed as a view of the scanner buffer, so no copy is made
+                types[i] = TokenRule.TextType.CHAR_SEQUENCE;
+            } else if (type.getKind() == TypeKind.CHAR) {
+                types[i] = TokenRule.TextType.CHAR;
+            } else {
+                processingEnv.getMessager().printMessage(ERROR, "Matched text ($0) parameter must be of type String, CharSequence or char", parameter);
+                return null;
+            }
+        }
+        return types;
+    }
+
+    private static int getParameterIndex(final VariableElement parameter) {
+        final Flicc.$ annotation = parameter.getAnnotation(Flicc.$.class);
+        if (annotation != null) {
+            return annotation.value();
+        }
+        for (int i = 0; i < POSITIONAL_ANNOTATIONS.size(); i ++) {
+            if (parameter.getAnnotation(POSITIONAL_ANNOTATIONS.get(i)) != null) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
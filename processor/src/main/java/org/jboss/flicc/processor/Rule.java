@@ -22,6 +22,9 @@
 
 package org.jboss.flicc.processor;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.lang.model.element.Element;
 import javax.lang.model.element.VariableElement;
 
@@ -43,6 +46,46 @@ public final class Rule {
         this.actualParameters = actualParameters;
     }
 
+    static String[] parseRuleSpec(final String spec) {
+        // only split on spaces; other whitespace characters are valid (literal) symbol names
+        final List<String> symbols = new ArrayList<String>();
+        for (String symbol : spec.split(" ")) {
+            if (symbol.length() > 0) {
+                symbols.add(symbol);
+            }
+        }
+        return symbols.toArray(new String[symbols.size()]);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Element getElement() {
+        return element;
+    }
+
+    public String getResultName() {
+        return resultName;
+    }
+
+    public String[] getRuleSpec() {
+        return ruleSpec;
+    }
+
+    public ActualParameter[] getActualParameters() {
+        return actualParameters;
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append(resultName).append(" ->");
+        for (String symbol : ruleSpec) {
+            b.append(' ').append(symbol);
+        }
+        return b.toString();
+    }
+
     public static final class ActualParameter {
         private final VariableElement parameterElement;
         private final int index;
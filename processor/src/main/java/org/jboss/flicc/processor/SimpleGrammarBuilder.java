@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+/**
+ * Builds a {@link Grammar} directly, without a grammar class, as the annotation processor would build it from one.
+ * Each method corresponds to an annotation: {@link #addState(String, int)} to {@code @State},
+ * {@link #addLiteral(String, String, boolean)} to {@code @Literal}, {@link #addPattern(String, String, boolean)} to
+ * {@code @Pattern} and {@link #addRule(String, String)} to {@code @Rule}.  Token and rule actions are not supported,
+ * so a grammar built this way is only good for generating tables.
+ */
+public final class SimpleGrammarBuilder {
+
+    private static final TokenRule.TextType[] NO_TEXT = new TokenRule.TextType[0];
+    private static final Rule.ActualParameter[] NO_PARAMETERS = new Rule.ActualParameter[0];
+
+    private final Grammar grammar;
+
+    /**
+     * Construct a new instance for a character input grammar with one symbol of look-ahead.
+     *
+     * @param goal the name of the goal symbol
+     */
+    public SimpleGrammarBuilder(final String goal) {
+        this(goal, 1, false);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param goal the name of the goal symbol
+     * @param lookahead the number of symbols of look-ahead, 0 or 1
+     * @param byteInput {@code true} if the scanner runs over UTF-8 bytes, as for {@code @Utf8}
+     */
+    public SimpleGrammarBuilder(final String goal, final int lookahead, final boolean byteInput) {
+        grammar = new Grammar(null, lookahead, goal, byteInput);
+    }
+
+    /**
+     * Declare a scanner state.  State 0 is declared as {@code INITIAL} if it is not declared.
+     *
+     * @param name the state name
+     * @param value the state value
+     * @return this builder
+     */
+    public SimpleGrammarBuilder addState(String name, int value) {
+        grammar.addScannerState(name, value);
+        return this;
+    }
+
+    /**
+     * Add a literal token, which applies in every scanner state.
+     *
+     * @param result the terminal which the literal produces, or {@code null} for a terminal named by the literal
+     * @param text the literal text
+     * @param sync {@code true} if the parse can start afresh after the token
+     * @return this builder
+     * @throws IllegalArgumentException if the result is a nonterminal
+     */
+    public SimpleGrammarBuilder addLiteral(String result, String text, boolean sync) {
+        final String name = result == null ? text : result;
+        grammar.addTokenRule(new TokenRule(null, false, text, getTerminal(name, new Literal(name, text)), null, null, NO_TEXT, sync));
+        return this;
+    }
+
+    /**
+     * Add a pattern token, which applies in every scanner state.
+     *
+     * @param result the terminal which the pattern produces, or {@code null} if matching text is ignored
+     * @param pattern the pattern
+     * @param sync {@code true} if the parse can start afresh after the token
+     * @return this builder
+     * @throws IllegalArgumentException if the result is a nonterminal
+     */
+    public SimpleGrammarBuilder addPattern(String result, String pattern, boolean sync) {
+        final Symbol terminal = result == null ? null : getTerminal(result, new Pattern(result, pattern));
+        grammar.addTokenRule(new TokenRule(null, true, pattern, terminal, null, null, NO_TEXT, sync));
+        return this;
+    }
+
+    /**
+     * Add a rule.
+     *
+     * @param result the nonterminal which the rule produces
+     * @param spec the symbols of the right-hand side, separated by spaces, or an empty string for an empty rule
+     * @return this builder
+     * @throws IllegalArgumentException if the result is a terminal
+     */
+    public SimpleGrammarBuilder addRule(String result, String spec) {
+        final Symbol symbol = grammar.getSymbol(result);
+        final Nonterminal nonterminal;
+        if (symbol == null) {
+            grammar.addNonterminal(nonterminal = new Nonterminal(result));
+        } else if (symbol instanceof Nonterminal) {
+            nonterminal = (Nonterminal) symbol;
+        } else {
+            throw new IllegalArgumentException("Symbol '" + result + "' is declared as a terminal");
+        }
+        grammar.addRule(nonterminal, new Rule(result, null, result, Rule.parseRuleSpec(spec), NO_PARAMETERS));
+        return this;
+    }
+
+    /**
+     * Get the grammar.  The builder must not be used afterwards.
+     *
+     * @return the grammar
+     */
+    public Grammar create() {
+        if (! grammar.getScannerStates().containsKey(Integer.valueOf(0))) {
+            // the scanner always starts in state 0
+            grammar.addScannerState("INITIAL", 0);
+        }
+        return grammar;
+    }
+
+    private Symbol getTerminal(String name, Symbol terminal) {
+        final Symbol existing = grammar.getSymbol(name);
+        if (existing == null) {
+            grammar.addInput(terminal);
+            return terminal;
+        }
+        if (existing instanceof Nonterminal) {
+            throw new IllegalArgumentException("Symbol '" + name + "' is declared as a nonterminal");
+        }
+        return existing;
+    }
+}
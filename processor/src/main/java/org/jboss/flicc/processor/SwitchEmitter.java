@@ -0,0 +1,316 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import com.sun.codemodel.JBlock;
+import com.sun.codemodel.JClassAlreadyExistsException;
+import com.sun.codemodel.JCodeModel;
+import com.sun.codemodel.JConditional;
+import com.sun.codemodel.JDefinedClass;
+import com.sun.codemodel.JExpr;
+import com.sun.codemodel.JExpression;
+import com.sun.codemodel.JInvocation;
+import com.sun.codemodel.JMethod;
+import com.sun.codemodel.JMod;
+import com.sun.codemodel.JPrimitiveType;
+import com.sun.codemodel.JSwitch;
+import com.sun.codemodel.JVar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.ParseTables;
+
+/**
+ * Generates an {@link LrAutomaton} class in which every decision of an LR automaton is compiled into {@code switch}
+ * statements, rather than looked up in packed tables.  Each state's action row becomes a {@code case} of a switch on
+ * the state, holding a switch on the look-ahead terminal whose cases are the entries which differ from the state's
+ * default action, and likewise for the goto rows of the nonterminals.  The JIT compiles dense switches into jump
+ * tables and can inline the small methods, so no table is consulted while parsing.
+ * <p>
+ * HotSpot does not compile methods of more than 8000 bytes of bytecode at all, so each decision is split over as many
+ * methods as needed to keep every method below that size, each covering a range of consecutive states (or
+ * nonterminals, or productions), and selected by a tree of range comparisons.  The size of a switch is estimated in
+ * the same way javac chooses between a {@code tableswitch} and a {@code lookupswitch}.  If even a single row does not
+ * fit in one method, no class is generated, and the tables must be used instead.
+ */
+public final class SwitchEmitter {
+
+    /**
+     * The largest method, in bytes of bytecode, which is generated.
+     */
+    static final int METHOD_LIMIT = 8000;
+
+    // the size of a method's code other than its switches: loading the arguments, and a return
+    private static final int METHOD_OVERHEAD = 16;
+
+    private final ParseTables tables;
+    private final int terminalCount;
+    private final int nonterminalCount;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param tables the parse tables to compile
+     * @param terminalCount the number of terminals, including the end of input
+     * @param nonterminalCount the number of nonterminals, including the augmented start symbol
+     */
+    public SwitchEmitter(final ParseTables tables, final int terminalCount, final int nonterminalCount) {
+        this.tables = tables;
+        this.terminalCount = terminalCount;
+        this.nonterminalCount = nonterminalCount;
+    }
+
+    /**
+     * Generate the automaton class.
+     *
+     * @param className the binary name of the class to generate
+     * @return the code model holding the class, or {@code null} if a decision cannot be split into small enough
+     *      methods
+     */
+    public JCodeModel emit(String className) {
+        final int stateCount = tables.getStateCount();
+        final int productionCount = tables.getProductionCount();
+        final Row[] actions = new Row[stateCount];
+        final Row[] defaultActions = new Row[stateCount];
+        final Row[] consistent = new Row[stateCount];
+        final int[] row = new int[Math.max(terminalCount, stateCount)];
+        for (int s = 0; s < stateCount; s ++) {
+            final int defaultAction = tables.getDefaultAction(s);
+            if (tables.isConsistent(s)) {
+                actions[s] = new Row(defaultAction);
+            } else {
+                for (int t = 0; t < terminalCount; t ++) {
+                    row[t] = tables.getAction(s, t);
+                }
+                actions[s] = new Row(row, terminalCount, defaultAction);
+            }
+            defaultActions[s] = new Row(defaultAction);
+            consistent[s] = new Row(tables.isConsistent(s) ? 1 : 0);
+        }
+        final Row[] gotos = new Row[nonterminalCount];
+        for (int n = 0; n < nonterminalCount; n ++) {
+            for (int s = 0; s < stateCount; s ++) {
+                row[s] = tables.getGoto(s, n);
+            }
+            gotos[n] = new Row(row, stateCount, mostCommon(row, stateCount));
+        }
+        final Row[] lhs = new Row[productionCount];
+        final Row[] lengths = new Row[productionCount];
+        for (int p = 0; p < productionCount; p ++) {
+            lhs[p] = new Row(tables.getProductionLhs(p));
+            lengths[p] = new Row(tables.getProductionLength(p));
+        }
+
+        final JCodeModel model = new JCodeModel();
+        final int dot = className.lastIndexOf('.');
+        final JDefinedClass cls;
+        try {
+            cls = model._package(dot == -1 ? "" : className.substring(0, dot))._class(JMod.PUBLIC | JMod.FINAL, className.substring(dot + 1));
+        } catch (JClassAlreadyExistsException e) {
+            throw new IllegalStateException(e);
+        }
+        cls._implements(LrAutomaton.class);
+        cls.javadoc().add("The LR automaton of a grammar, compiled into code.  Generated by flicc; do not edit.");
+        final boolean ok = emitFunction(cls, model.INT, "getAction", "state", "terminal", false, actions)
+            && emitFunction(cls, model.INT, "getDefaultAction", "state", null, false, defaultActions)
+            && emitFunction(cls, model.BOOLEAN, "isConsistent", "state", null, false, consistent)
+            && emitFunction(cls, model.INT, "getGoto", "nonterminal", "state", true, gotos)
+            && emitFunction(cls, model.INT, "getProductionLhs", "production", null, false, lhs)
+            && emitFunction(cls, model.INT, "getProductionLength", "production", null, false, lengths);
+        return ok ? model : null;
+    }
+
+    private static int mostCommon(int[] values, int length) {
+        final int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int best = sorted.length == 0 ? 0 : sorted[0];
+        int bestCount = 0;
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j ++;
+            }
+            if (j - i > bestCount) {
+                best = sorted[i];
+                bestCount = j - i;
+            }
+            i = j;
+        }
+        return best;
+    }
+
+    /**
+     * Emit a public method which looks up a value in rows by a key, and optionally by a second key within the row.
+     * The parameter order is fixed by {@link LrAutomaton}, so for {@code getGoto} the second key comes first.
+     */
+    private static boolean emitFunction(JDefinedClass cls, JPrimitiveType type, String name, String keyName, String subName, boolean subFirst, Row[] rows) {
+        // split the rows into methods
+        final List<int[]> ranges = new ArrayList<int[]>();
+        int start = 0;
+        while (start < rows.length) {
+            int end = start;
+            int size = METHOD_OVERHEAD;
+            while (end < rows.length) {
+                final int rowSize = rows[end].getSize();
+                final int added = size + rowSize + switchSize(start, end + 1, end - start + 1) - switchSize(start, end, end - start);
+                if (added > METHOD_LIMIT && end > start) {
+                    break;
+                }
+                size = added;
+                end ++;
+            }
+            if (size > METHOD_LIMIT) {
+                return false;
+            }
+            ranges.add(new int[] { start, end });
+            start = end;
+        }
+        final boolean split = ranges.size() > 1;
+        final JPrimitiveType intType = type.owner().INT;
+        final JMethod method = cls.method(JMod.PUBLIC, type, name);
+        final JVar key;
+        final JVar sub;
+        if (subFirst) {
+            sub = method.param(intType, subName);
+            key = method.param(intType, keyName);
+        } else {
+            key = method.param(intType, keyName);
+            sub = subName == null ? null : method.param(intType, subName);
+        }
+        if (! split) {
+            emitSwitch(method.body(), type, key, sub, rows, 0, rows.length);
+            return true;
+        }
+        for (int i = 0; i < ranges.size(); i ++) {
+            final JMethod part = cls.method(JMod.PRIVATE | JMod.STATIC, type, name + i);
+            final JVar partKey = part.param(intType, keyName);
+            final JVar partSub = subName == null ? null : part.param(intType, subName);
+            emitSwitch(part.body(), type, partKey, partSub, rows, ranges.get(i)[0], ranges.get(i)[1]);
+        }
+        emitDispatch(method.body(), name, key, sub, ranges, 0, ranges.size());
+        return true;
+    }
+
+    private static void emitDispatch(JBlock block, String name, JVar key, JVar sub, List<int[]> ranges, int lo, int hi) {
+        if (hi - lo == 1) {
+            final JInvocation invocation = JExpr.invoke(name + lo).arg(key);
+            block._return(sub == null ? invocation : invocation.arg(sub));
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final JConditional conditional = block._if(key.lt(JExpr.lit(ranges.get(mid)[0])));
+        emitDispatch(conditional._then(), name, key, sub, ranges, lo, mid);
+        emitDispatch(conditional._else(), name, key, sub, ranges, mid, hi);
+    }
+
+    private static void emitSwitch(JBlock block, JPrimitiveType type, JVar key, JVar sub, Row[] rows, int start, int end) {
+        final JSwitch keySwitch = block._switch(key);
+        for (int k = start; k < end; k ++) {
+            final Row row = rows[k];
+            final JBlock body = keySwitch._case(JExpr.lit(k)).body();
+            if (row.keys.length == 0) {
+                body._return(value(type, row.defaultValue));
+                continue;
+            }
+            final JSwitch subSwitch = body._switch(sub);
+            for (int i = 0; i < row.keys.length; i ++) {
+                subSwitch._case(JExpr.lit(row.keys[i])).body()._return(value(type, row.values[i]));
+            }
+            subSwitch._default().body()._return(value(type, row.defaultValue));
+        }
+        block._return(value(type, 0));
+    }
+
+    private static JExpression value(JPrimitiveType type, int value) {
+        return type == type.owner().BOOLEAN ? JExpr.lit(value != 0) : JExpr.lit(value);
+    }
+
+    /**
+     * Estimate the size of a {@code switch} over the given range of keys, with the given number of cases.
+     */
+    static int switchSize(int lo, int hi, int labels) {
+        if (labels == 0) {
+            return 0;
+        }
+        // javac's choice; hi is exclusive here
+        final long tableSpace = 4 + (long) hi - lo;
+        final long lookupSpace = 3 + 2L * labels;
+        final boolean table = tableSpace + 3 * 3 <= lookupSpace + 3L * labels;
+        // opcode, up to three bytes of padding, then the operands
+        return (int) (table ? 1 + 3 + 12 + 4 * ((long) hi - lo) : 1 + 3 + 8 + 8L * labels);
+    }
+
+    /**
+     * Estimate the size of loading a constant and returning it.
+     */
+    static int returnSize(int value) {
+        final int load = value >= -1 && value <= 5 ? 1 : value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ? 2 : 3;
+        return load + 1;
+    }
+
+    static final class Row {
+        private final int defaultValue;
+        private final int[] keys;
+        private final int[] values;
+
+        Row(final int value) {
+            defaultValue = value;
+            keys = values = new int[0];
+        }
+
+        Row(final int[] row, final int length, final int defaultValue) {
+            this.defaultValue = defaultValue;
+            int cnt = 0;
+            for (int i = 0; i < length; i ++) {
+                if (row[i] != defaultValue) {
+                    cnt ++;
+                }
+            }
+            keys = new int[cnt];
+            values = new int[cnt];
+            cnt = 0;
+            for (int i = 0; i < length; i ++) {
+                if (row[i] != defaultValue) {
+                    keys[cnt] = i;
+                    values[cnt++] = row[i];
+                }
+            }
+        }
+
+        /**
+         * Estimate the size of the code of this row's case.
+         */
+        int getSize() {
+            int size = returnSize(defaultValue);
+            if (keys.length > 0) {
+                // load the second key
+                size += 1 + switchSize(keys[0], keys[keys.length - 1] + 1, keys.length);
+                for (int value : values) {
+                    size += returnSize(value);
+                }
+            }
+            return size;
+        }
+    }
+}
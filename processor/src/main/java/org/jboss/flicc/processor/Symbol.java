@@ -31,4 +31,12 @@ public abstract class Symbol {
     protected Symbol(final String name) {
         this.name = name;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public String toString() {
+        return name;
+    }
 }
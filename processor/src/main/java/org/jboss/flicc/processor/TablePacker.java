@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.jboss.flicc.ParseTables.NO_ENTRIES;
+
+/**
+ * Packs a sparse two-dimensional table into comb vectors by row displacement.  Each row is reduced to the cells
+ * which differ from its default value, and rows are placed into a shared {@code next} array, widest first, at the
+ * lowest base at which none of their cells collide with those of a previously placed row.  The {@code check} array
+ * records the column of each cell, so bases must be distinct; rows with identical cells share one base.
+ */
+public final class TablePacker {
+    private final int[] base;
+    private int[] next;
+    private int[] check;
+    private int length;
+
+    /**
+     * Pack a table.
+     *
+     * @param rows the dense table rows, which need not all have the same length
+     * @param defaults the default value of each row; cells equal to the default are omitted
+     */
+    public TablePacker(final int[][] rows, final int[] defaults) {
+        final int rowCount = rows.length;
+        base = new int[rowCount];
+        next = new int[64];
+        check = new int[64];
+        Arrays.fill(check, -1);
+        final int[][] columns = new int[rowCount][];
+        final Integer[] order = new Integer[rowCount];
+        for (int r = 0; r < rowCount; r ++) {
+            order[r] = Integer.valueOf(r);
+            final int[] row = rows[r];
+            int cnt = 0;
+            for (int c = 0; c < row.length; c ++) {
+                if (row[c] != defaults[r]) {
+                    cnt ++;
+                }
+            }
+            final int[] cols = columns[r] = new int[cnt];
+            cnt = 0;
+            for (int c = 0; c < row.length; c ++) {
+                if (row[c] != defaults[r]) {
+                    cols[cnt++] = c;
+                }
+            }
+        }
+        // widest rows first, since they are the hardest to fit
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer o1, final Integer o2) {
+                final int w1 = width(columns[o1.intValue()]);
+                final int w2 = width(columns[o2.intValue()]);
+                return w1 != w2 ? w2 - w1 : columns[o2.intValue()].length - columns[o1.intValue()].length;
+            }
+        });
+        // a base may be as low as minus the widest row length, so offset them to index the bit set
+        int offset = 0;
+        for (int[] row : rows) {
+            offset = Math.max(offset, row.length);
+        }
+        final BitSet usedBases = new BitSet();
+        final Map<RowKey, Integer> placed = new HashMap<RowKey, Integer>();
+        // the lowest position which might still be free
+        int lowest = 0;
+        for (Integer boxed : order) {
+            final int r = boxed.intValue();
+            final int[] cols = columns[r];
+            if (cols.length == 0) {
+                base[r] = NO_ENTRIES;
+                continue;
+            }
+            final int[] row = rows[r];
+            final RowKey key = new RowKey(cols, row);
+            final Integer existing = placed.get(key);
+            if (existing != null) {
+                base[r] = existing.intValue();
+                continue;
+            }
+            int b = lowest - cols[0];
+            search: for (;; b ++) {
+                if (usedBases.get(b + offset)) {
+                    continue;
+                }
+                for (int c : cols) {
+                    final int idx = b + c;
+                    if (idx < length && check[idx] != -1) {
+                        continue search;
+                    }
+                }
+                break;
+            }
+            usedBases.set(b + offset);
+            base[r] = b;
+            placed.put(key, Integer.valueOf(b));
+            for (int c : cols) {
+                final int idx = b + c;
+                ensureLength(idx + 1);
+                next[idx] = row[c];
+                check[idx] = c;
+            }
+            while (lowest < length && check[lowest] != -1) {
+                lowest ++;
+            }
+        }
+        next = Arrays.copyOf(next, length);
+        check = Arrays.copyOf(check, length);
+    }
+
+    private static int width(int[] cols) {
+        return cols.length == 0 ? 0 : cols[cols.length - 1] - cols[0] + 1;
+    }
+
+    private void ensureLength(int newLength) {
+        if (newLength > next.length) {
+            final int oldLength = next.length;
+            final int capacity = Math.max(oldLength << 1, newLength);
+            next = Arrays.copyOf(next, capacity);
+            check = Arrays.copyOf(check, capacity);
+            Arrays.fill(check, oldLength, capacity, -1);
+        }
+        if (newLength > length) {
+            length = newLength;
+        }
+    }
+
+    /**
+     * Get the base of each row.  Rows with no cells have a base of {@link org.jboss.flicc.ParseTables#NO_ENTRIES}.
+     *
+     * @return the row bases
+     */
+    public int[] getBase() {
+        return base;
+    }
+
+    /**
+     * Get the packed cell values.
+     *
+     * @return the packed values
+     */
+    public int[] getNext() {
+        return next;
+    }
+
+    /**
+     * Get the column of each packed cell, or -1 for unused positions.
+     *
+     * @return the packed columns
+     */
+    public int[] getCheck() {
+        return check;
+    }
+
+    static final class RowKey {
+        private final int[] cols;
+        private final int[] values;
+        private final int hashCode;
+
+        RowKey(final int[] cols, final int[] row) {
+            this.cols = cols;
+            values = new int[cols.length];
+            for (int i = 0; i < cols.length; i ++) {
+                values[i] = row[cols[i]];
+            }
+            hashCode = Arrays.hashCode(cols) * 31 + Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof RowKey && equals((RowKey) obj);
+        }
+
+        public boolean equals(final RowKey other) {
+            return this == other || other != null && hashCode == other.hashCode && Arrays.equals(cols, other.cols) && Arrays.equals(values, other.values);
+        }
+    }
+}
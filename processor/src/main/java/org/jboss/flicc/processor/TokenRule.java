@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import javax.lang.model.element.ExecutableElement;
+
+/**
+ * A single pattern or literal string recognized by the scanner, along with the method which declares it.  A method
+ * with several literal strings declares one token rule for each.
+ */
+public final class TokenRule {
+    private final ExecutableElement element;
+    private final boolean pattern;
+    private final String value;
+    private final Symbol terminal;
+    private final int[] includeStates;
+    private final int[] excludeStates;
+    private final TextType[] parameterTypes;
+    private final boolean sync;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param element the declaring method
+     * @param pattern {@code true} if the value is a regular expression, {@code false} if it is a literal string
+     * @param value the regular expression or literal string
+     * @param terminal the terminal produced, or {@code null} if the matched text is discarded
+     * @param includeStates the scanner states in which the rule applies, or {@code null} for all states
+     * @param excludeStates the scanner states in which the rule does not apply, or {@code null} for none
+     * @param parameterTypes the way the matched text is passed to each parameter of the declaring method
+     * @param sync {@code true} if the input may be split after a token matched by this rule
+     */
+    public TokenRule(final ExecutableElement element, final boolean pattern, final String value, final Symbol terminal, final int[] includeStates, final int[] excludeStates, final TextType[] parameterTypes, final boolean sync) {
+        this.element = element;
+        this.pattern = pattern;
+        this.value = value;
+        this.terminal = terminal;
+        this.includeStates = includeStates;
+        this.excludeStates = excludeStates;
+        this.parameterTypes = parameterTypes;
+        this.sync = sync;
+    }
+
+    public ExecutableElement getElement() {
+        return element;
+    }
+
+    public boolean isPattern() {
+        return pattern;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Symbol getTerminal() {
+        return terminal;
+    }
+
+    public int[] getIncludeStates() {
+        return includeStates;
+    }
+
+    public int[] getExcludeStates() {
+        return excludeStates;
+    }
+
+    public TextType[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * Determine whether the action of this rule needs a copy of the matched text, rather than a view of the scanner
+     * buffer.
+     *
+     * @return {@code true} if some parameter of the declaring method is a {@code String}
+     */
+    public boolean isTextCopied() {
+        for (TextType type : parameterTypes) {
+            if (type == TextType.STRING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether this rule applies in a scanner state.
+     *
+     * @param state the scanner state value
+     * @return {@code true} if the rule applies
+     */
+    public boolean appliesIn(int state) {
+        return (includeStates == null || contains(includeStates, state)) && (excludeStates == null || ! contains(excludeStates, state));
+    }
+
+    private static boolean contains(int[] states, int state) {
+        for (int s : states) {
+            if (s == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString() {
+        return (pattern ? "pattern " : "literal ") + value;
+    }
+
+    /**
+     * The ways in which the matched text may be passed to a parameter of a token action.
+     */
+    public enum TextType {
+        /**
+         * A {@code String}, which is the only type for which the text is copied out of the scanner buffer.
+         */
+        STRING,
+        /**
+         * A {@code CharSequence} view of the scanner buffer, which is only valid until the action returns.
+         */
+        CHAR_SEQUENCE,
+        /**
+         * The first {@code char} of the text.
+         */
+        CHAR,
+    }
+}
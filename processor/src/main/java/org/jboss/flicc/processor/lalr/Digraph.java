@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lalr;
+
+import java.util.BitSet;
+
+/**
+ * The digraph algorithm of DeRemer and Pennello.  Given a relation {@code R} and an initial set {@code F'(x)} for each
+ * node, computes {@code F(x)}, the union of {@code F'(x)} and every {@code F(y)} where {@code x R y}, in time linear
+ * in the size of the relation.  Nodes in the same strongly connected component receive the same set.
+ */
+final class Digraph {
+
+    private Digraph() {
+    }
+
+    /**
+     * Compute the closure of the given sets over the given relation, in place.
+     *
+     * @param relation the relation, indexed by node; a {@code null} entry means no edges
+     * @param sets the initial sets, which are replaced by the result sets
+     */
+    static void traverse(int[][] relation, BitSet[] sets) {
+        final int n = relation.length;
+        // depth of each node on the stack, 0 for not yet visited, MAX_VALUE for finished
+        final int[] depth = new int[n];
+        final int[] stack = new int[n];
+        // the traversal is iterative, to keep deep relations off of the call stack
+        final int[] frameNode = new int[n];
+        final int[] frameEdge = new int[n];
+        for (int start = 0; start < n; start ++) {
+            if (depth[start] != 0) {
+                continue;
+            }
+            int sp = 0;
+            int fp = 0;
+            stack[sp++] = start;
+            depth[start] = sp;
+            frameNode[fp] = start;
+            frameEdge[fp++] = 0;
+            while (fp > 0) {
+                final int x = frameNode[fp - 1];
+                final int[] edges = relation[x];
+                final int e = frameEdge[fp - 1];
+                if (edges != null && e < edges.length) {
+                    frameEdge[fp - 1] = e + 1;
+                    final int y = edges[e];
+                    if (depth[y] == 0) {
+                        stack[sp++] = y;
+                        depth[y] = sp;
+                        frameNode[fp] = y;
+                        frameEdge[fp++] = 0;
+                    } else {
+                        depth[x] = Math.min(depth[x], depth[y]);
+                        sets[x].or(sets[y]);
+                    }
+                    continue;
+                }
+                // all edges of x are done
+                fp--;
+                if (stack[depth[x] - 1] == x) {
+                    // x is the root of a strongly connected component; pop it
+                    int top;
+                    do {
+                        top = stack[--sp];
+                        depth[top] = Integer.MAX_VALUE;
+                        if (top != x) {
+                            sets[top].clear();
+                            sets[top].or(sets[x]);
+                        }
+                    } while (top != x);
+                }
+                if (fp > 0) {
+                    final int parent = frameNode[fp - 1];
+                    depth[parent] = Math.min(depth[parent], depth[x]);
+                    sets[parent].or(sets[x]);
+                }
+            }
+        }
+    }
+}
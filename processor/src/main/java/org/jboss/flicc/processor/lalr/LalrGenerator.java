@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lalr;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Generator;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.Options;
+import org.jboss.flicc.processor.lr0.Automaton;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import static javax.tools.Diagnostic.Kind.NOTE;
+
+/**
+ * A generator for LALR(1) parsers.  The LR(0) automaton is built once, and look-ahead sets are computed for it by
+ * propagation rather than by building and merging canonical LR(1) states, so the cost is roughly linear in the
+ * size of the grammar.
+ */
+public final class LalrGenerator implements Generator {
+
+    public ParseTables generate(final Grammar grammar, final ProcessingEnvironment env) {
+        final Automaton automaton = new Automaton(grammar, Options.getThreads(env));
+        final LalrLookaheads lookaheads = new LalrLookaheads(automaton);
+        final int conflicts = automaton.buildActions(lookaheads, env.getMessager());
+        env.getMessager().printMessage(NOTE, "LALR(1) automaton has " + automaton.getStateCount() + " states, " + lookaheads.getTransitionCount() + " nonterminal transitions and " + conflicts + " conflicts", grammar.getElement());
+        return automaton.createTables();
+    }
+}
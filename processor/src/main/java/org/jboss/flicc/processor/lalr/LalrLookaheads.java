@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lalr;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.jboss.flicc.processor.lr0.Automaton;
+import org.jboss.flicc.processor.lr0.Lookaheads;
+
+/**
+ * LALR(1) look-ahead sets computed from an LR(0) automaton by DeRemer and Pennello's relations method.
+ * <p>
+ * Every nonterminal transition {@code (p, A)} gets a follow set, computed by two passes of {@link Digraph}: first
+ * over the <em>reads</em> relation starting from the directly-read terminals, then over the <em>includes</em>
+ * relation.  The look-ahead set of a reduction is the union of the follow sets of the transitions it
+ * <em>looks back</em> to.
+ */
+public final class LalrLookaheads implements Lookaheads {
+    private static final BitSet EMPTY = new BitSet();
+
+    private final Automaton automaton;
+    // nonterminal -> index of its first transition; transitions are grouped by nonterminal, ordered by source state
+    private final int[] gotoMap;
+    private final int[] fromState;
+    private final int[] toState;
+    // state -> index of its first reduction
+    private final int[] reductionBase;
+    // reduction -> look-ahead set
+    private final BitSet[] lookaheads;
+
+    /**
+     * Compute the look-ahead sets for an LR(0) automaton.
+     *
+     * @param automaton the automaton
+     */
+    public LalrLookaheads(final Automaton automaton) {
+        this.automaton = automaton;
+        final int stateCount = automaton.getStateCount();
+        final int terminalCount = automaton.getTerminalCount();
+        final int nonterminalCount = automaton.getNonterminalCount();
+
+        // number the nonterminal transitions
+        gotoMap = new int[nonterminalCount + 1];
+        for (int s = 0; s < stateCount; s ++) {
+            for (int n = 0; n < nonterminalCount; n ++) {
+                if (automaton.getGoto(s, n) != -1) {
+                    gotoMap[n + 1] ++;
+                }
+            }
+        }
+        for (int n = 0; n < nonterminalCount; n ++) {
+            gotoMap[n + 1] += gotoMap[n];
+        }
+        final int transitionCount = gotoMap[nonterminalCount];
+        fromState = new int[transitionCount];
+        toState = new int[transitionCount];
+        final int[] next = Arrays.copyOf(gotoMap, nonterminalCount);
+        for (int s = 0; s < stateCount; s ++) {
+            for (int n = 0; n < nonterminalCount; n ++) {
+                final int target = automaton.getGoto(s, n);
+                if (target != -1) {
+                    final int x = next[n]++;
+                    fromState[x] = s;
+                    toState[x] = target;
+                }
+            }
+        }
+
+        // number the reductions
+        reductionBase = new int[stateCount + 1];
+        for (int s = 0; s < stateCount; s ++) {
+            reductionBase[s + 1] = reductionBase[s] + automaton.getReductions(s).length;
+        }
+
+        // the directly-read terminals, and the reads relation
+        final BitSet[] follow = new BitSet[transitionCount];
+        final int[][] reads = new int[transitionCount][];
+        for (int x = 0; x < transitionCount; x ++) {
+            final int r = toState[x];
+            final BitSet set = follow[x] = new BitSet(terminalCount);
+            for (int t = 0; t < terminalCount; t ++) {
+                if (automaton.getShift(r, t) != -1) {
+                    set.set(t);
+                }
+            }
+            for (int n = 0; n < nonterminalCount; n ++) {
+                if (automaton.isNullable(n) && automaton.getGoto(r, n) != -1) {
+                    reads[x] = append(reads[x], getTransition(r, n));
+                }
+            }
+        }
+        Digraph.traverse(reads, follow);
+
+        // the includes and lookback relations
+        final int[][] includes = new int[transitionCount][];
+        final int[][] lookback = new int[reductionBase[stateCount]][];
+        final int productionCount = automaton.getProductionCount();
+        final int[][] productionsOf = new int[nonterminalCount][];
+        for (int p = 0; p < productionCount; p ++) {
+            final int lhs = automaton.getLhs(p);
+            productionsOf[lhs] = append(productionsOf[lhs], p);
+        }
+        for (int n = 0; n < nonterminalCount; n ++) {
+            if (productionsOf[n] == null) {
+                continue;
+            }
+            for (int x = gotoMap[n]; x < gotoMap[n + 1]; x ++) {
+                for (int p : productionsOf[n]) {
+                    final int[] rhs = automaton.getRhs(p);
+                    final int[] path = new int[rhs.length + 1];
+                    int q = path[0] = fromState[x];
+                    for (int i = 0; i < rhs.length; i ++) {
+                        final int symbol = rhs[i];
+                        q = path[i + 1] = symbol < terminalCount ? automaton.getShift(q, symbol) : automaton.getGoto(q, symbol - terminalCount);
+                    }
+                    final int r = getReduction(q, p);
+                    if (r != -1) {
+                        lookback[r] = append(lookback[r], x);
+                    }
+                    for (int i = rhs.length - 1; i >= 0; i --) {
+                        final int symbol = rhs[i];
+                        if (symbol < terminalCount) {
+                            break;
+                        }
+                        final int y = getTransition(path[i], symbol - terminalCount);
+                        includes[y] = append(includes[y], x);
+                        if (! automaton.isNullable(symbol - terminalCount)) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        Digraph.traverse(includes, follow);
+
+        // and finally the look-ahead sets
+        lookaheads = new BitSet[lookback.length];
+        for (int r = 0; r < lookback.length; r ++) {
+            final BitSet set = lookaheads[r] = new BitSet(terminalCount);
+            if (lookback[r] != null) for (int x : lookback[r]) {
+                set.or(follow[x]);
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) {
+            return new int[] { value };
+        }
+        final int[] newArray = Arrays.copyOf(array, array.length + 1);
+        newArray[array.length] = value;
+        return newArray;
+    }
+
+    private int getTransition(int state, int nonterminal) {
+        final int idx = Arrays.binarySearch(fromState, gotoMap[nonterminal], gotoMap[nonterminal + 1], state);
+        if (idx < 0) {
+            throw new IllegalStateException("No transition from state " + state + " on " + automaton.getNonterminalName(nonterminal));
+        }
+        return idx;
+    }
+
+    private int getReduction(int state, int production) {
+        final int[] reductions = automaton.getReductions(state);
+        for (int i = 0; i < reductions.length; i ++) {
+            if (reductions[i] == production) {
+                return reductionBase[state] + i;
+            }
+        }
+        return -1;
+    }
+
+    public BitSet getLookaheads(final int state, final int production) {
+        final int r = getReduction(state, production);
+        return r == -1 ? EMPTY : lookaheads[r];
+    }
+
+    /**
+     * Get the number of nonterminal transitions in the automaton.
+     *
+     * @return the number of nonterminal transitions
+     */
+    public int getTransitionCount() {
+        return fromState.length;
+    }
+}
@@ -0,0 +1,823 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lr0;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.IntMap;
+import org.jboss.flicc.processor.Nonterminal;
+import org.jboss.flicc.processor.Rule;
+import org.jboss.flicc.processor.Symbol;
+import org.jboss.flicc.processor.TablePacker;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+
+import static javax.tools.Diagnostic.Kind.WARNING;
+
+/**
+ * The collection of item sets for a grammar.  This is normally the canonical collection of LR(0) item sets; an
+ * automaton created by {@link #createMinimalLr1(Grammar)} instead carries LR(1) look-ahead sets on its items, with
+ * LR(0) states split only where merging them would introduce conflicts.
+ * <p>
+ * Terminals and nonterminals are numbered separately.  Terminal 0 is always the end of input, and nonterminal 0 is
+ * always the augmented start symbol, which is produced only by production 0 ({@code $accept -> goal $end}).  Within
+ * the encoded right-hand side of a production, terminals are represented by their own number and nonterminals by
+ * their number plus the terminal count.
+ * <p>
+ * An item is encoded as a {@code long} which holds its production number in the high word and the position of its
+ * dot in the low word, so that items sort by production and then by position.
+ */
+public final class Automaton {
+
+    /**
+     * The name of the end-of-input terminal.
+     */
+    public static final String END = "$end";
+
+    /**
+     * The name of the augmented start symbol.
+     */
+    public static final String ACCEPT = "$accept";
+
+    private static final BitSet EMPTY = new BitSet();
+
+    // the smallest number of states found at one distance from the start state which are expanded in parallel
+    private static final int PARALLEL_THRESHOLD = 64;
+    // the number of states which a single task expands
+    private static final int TASK_SIZE = 16;
+
+    private final Grammar grammar;
+    private final IntMap<String> terminals = new IntMap<String>();
+    private final IntMap<String> nonterminals = new IntMap<String>();
+    private final List<String> terminalNames = new ArrayList<String>();
+    private final List<String> nonterminalNames = new ArrayList<String>();
+    private final List<Rule> rules = new ArrayList<Rule>();
+    private final List<State> states = new ArrayList<State>();
+    private final int[] lhs;
+    private final int[][] rhs;
+    // nonterminal -> the productions which produce it
+    private int[][] productionsOf;
+    // the productions which are never reduced, because the same production is repeated after them
+    private final BitSet repeated = new BitSet();
+    private boolean[] nullable;
+
+    /**
+     * Construct the automaton for a grammar.
+     *
+     * @param grammar the grammar
+     * @throws IllegalArgumentException if a rule refers to an undefined symbol
+     */
+    public Automaton(final Grammar grammar) {
+        this(grammar, false, 1);
+    }
+
+    /**
+     * Construct the automaton for a grammar, expanding its states on up to the given number of threads.  The states
+     * are numbered as they would be with a single thread, so the result does not depend on the number of threads.
+     *
+     * @param grammar the grammar
+     * @param threads the number of threads to use
+     * @throws IllegalArgumentException if a rule refers to an undefined symbol
+     */
+    public Automaton(final Grammar grammar, final int threads) {
+        this(grammar, false, threads);
+    }
+
+    private Automaton(final Grammar grammar, final boolean lr1, final int threads) {
+        this.grammar = grammar;
+        addTerminal(END);
+        for (Symbol terminal : grammar.getInputs()) {
+            addTerminal(terminal.getName());
+        }
+        addNonterminal(ACCEPT);
+        for (Nonterminal nonterminal : grammar.getProducedBy().keySet()) {
+            addNonterminal(nonterminal.getName());
+        }
+        int productionCount = 1;
+        for (List<Rule> list : grammar.getProducedBy().values()) {
+            productionCount += list.size();
+        }
+        lhs = new int[productionCount];
+        rhs = new int[productionCount][];
+        addProduction(ACCEPT, new String[] { grammar.getGoal(), END }, null);
+        for (Map.Entry<Nonterminal, List<Rule>> entry : grammar.getProducedBy().entrySet()) {
+            final String name = entry.getKey().getName();
+            for (Rule rule : entry.getValue()) {
+                addProduction(name, rule.getRuleSpec(), rule);
+            }
+        }
+        computeProductionsOf();
+        computeNullable();
+        if (lr1) {
+            new PagerBuilder(this).build();
+        } else {
+            buildStates(threads);
+        }
+    }
+
+    /**
+     * Construct an LR(1) automaton for a grammar using Pager's weak compatibility test, which merges states with
+     * identical cores unless doing so might introduce a reduce/reduce conflict which canonical LR(1) would not have.
+     * The result has the power of canonical LR(1) with a state count close to that of LALR(1).  The look-ahead sets
+     * of its reductions are available from {@link #getItemLookaheads()}.
+     *
+     * @param grammar the grammar
+     * @return the automaton
+     * @throws IllegalArgumentException if a rule refers to an undefined symbol
+     */
+    public static Automaton createMinimalLr1(final Grammar grammar) {
+        return new Automaton(grammar, true, 1);
+    }
+
+    private void addTerminal(String name) {
+        terminals.put(name, terminalNames.size());
+        terminalNames.add(name);
+    }
+
+    private void addNonterminal(String name) {
+        nonterminals.put(name, nonterminalNames.size());
+        nonterminalNames.add(name);
+    }
+
+    private void addProduction(String name, String[] spec, Rule rule) {
+        final int production = rules.size();
+        final int terminalCount = terminalNames.size();
+        rules.add(rule);
+        lhs[production] = nonterminals.get(name, -1);
+        final int[] encoded = rhs[production] = new int[spec.length];
+        for (int i = 0; i < spec.length; i ++) {
+            final int t = terminals.get(spec[i], -1);
+            if (t != -1) {
+                encoded[i] = t;
+            } else {
+                final int n = nonterminals.get(spec[i], -1);
+                if (n == -1) {
+                    throw new IllegalArgumentException("Undefined symbol '" + spec[i] + "' in rule " + rule);
+                }
+                encoded[i] = terminalCount + n;
+            }
+        }
+    }
+
+    private void computeProductionsOf() {
+        final int nonterminalCount = nonterminalNames.size();
+        final int productionCount = lhs.length;
+        final int[] counts = new int[nonterminalCount];
+        for (int n : lhs) {
+            counts[n] ++;
+        }
+        final int[][] all = new int[nonterminalCount][];
+        for (int n = 0; n < nonterminalCount; n ++) {
+            all[n] = new int[counts[n]];
+            counts[n] = 0;
+        }
+        for (int p = 0; p < productionCount; p ++) {
+            final int n = lhs[p];
+            all[n][counts[n]++] = p;
+        }
+        // a production which is repeated is only ever reduced as its last copy, in the place of its first; the other
+        // copies are reported by buildActions
+        productionsOf = new int[nonterminalCount][];
+        final int[] hashes = new int[productionCount];
+        for (int p = 0; p < productionCount; p ++) {
+            hashes[p] = Arrays.hashCode(rhs[p]);
+        }
+        final BitSet repeated = this.repeated;
+        final BitSet copies = new BitSet(productionCount);
+        for (int n = 0; n < nonterminalCount; n ++) {
+            final int[] list = all[n];
+            int cnt = 0;
+            for (int i = 0; i < list.length; i ++) {
+                final int p = list[i];
+                if (copies.get(p)) {
+                    continue;
+                }
+                int last = p;
+                for (int j = i + 1; j < list.length; j ++) {
+                    final int q = list[j];
+                    if (hashes[q] == hashes[p] && Arrays.equals(rhs[q], rhs[p])) {
+                        copies.set(q);
+                        repeated.set(last);
+                        last = q;
+                    }
+                }
+                list[cnt++] = last;
+            }
+            productionsOf[n] = cnt == list.length ? list : Arrays.copyOf(list, cnt);
+        }
+    }
+
+    private void computeNullable() {
+        final int terminalCount = terminalNames.size();
+        nullable = new boolean[nonterminalNames.size()];
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = 0; i < lhs.length; i ++) {
+                if (nullable[lhs[i]]) {
+                    continue;
+                }
+                boolean all = true;
+                for (int symbol : rhs[i]) {
+                    if (symbol < terminalCount || ! nullable[symbol - terminalCount]) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) {
+                    nullable[lhs[i]] = changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    /**
+     * Build the canonical collection breadth-first, one distance from the start state at a time.  The states at each
+     * distance are expanded independently, in parallel if there are enough of them, and their successor kernels are
+     * shared through a concurrent map.  The new states are then numbered in the order in which a sequential search
+     * would have found them.
+     */
+    private void buildStates(final int threads) {
+        final ConcurrentMap<Kernel, Target> targets = new ConcurrentHashMap<Kernel, Target>();
+        final long[] startKernel = new long[] { item(0, 0) };
+        final Target start = new Target();
+        start.state = addState(startKernel);
+        targets.put(new Kernel(startKernel), start);
+        final int terminalCount = terminalNames.size();
+        ForkJoinPool pool = null;
+        try {
+            int levelStart = 0;
+            while (levelStart < states.size()) {
+                final int levelEnd = states.size();
+                final Expansion[] expansions = new Expansion[levelEnd - levelStart];
+                if (threads > 1 && expansions.length >= PARALLEL_THRESHOLD) {
+                    if (pool == null) {
+                        pool = new ForkJoinPool(threads);
+                    }
+                    pool.invoke(new ExpandTask(this, targets, expansions, levelStart, 0, expansions.length));
+                } else {
+                    expand(targets, expansions, levelStart, 0, expansions.length);
+                }
+                for (int i = 0; i < expansions.length; i ++) {
+                    final State state = states.get(levelStart + i);
+                    final Expansion expansion = expansions[i];
+                    state.setReductions(expansion.reductions);
+                    final int[] symbols = expansion.symbols;
+                    for (int j = 0; j < symbols.length; j ++) {
+                        final Target target = expansion.targets[j];
+                        if (target.state == null) {
+                            // the first state to reach a kernel gives its items their order
+                            target.state = addState(expansion.kernels[j]);
+                        }
+                        final int symbol = symbols[j];
+                        if (symbol < terminalCount) {
+                            state.setShift(symbol, target.state.getId());
+                        } else {
+                            state.setGoto(symbol - terminalCount, target.state.getId());
+                        }
+                    }
+                }
+                levelStart = levelEnd;
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    void expand(ConcurrentMap<Kernel, Target> targets, Expansion[] expansions, int offset, int from, int to) {
+        final int symbolCount = terminalNames.size() + nonterminalNames.size();
+        // symbol -> the kernel of its successor, in the order the symbols are first seen
+        final long[][] successors = new long[symbolCount][];
+        final int[] successorSizes = new int[symbolCount];
+        final int[] symbols = new int[symbolCount];
+        for (int i = from; i < to; i ++) {
+            int symbolsSeen = 0;
+            int[] reductions = new int[0];
+            for (long item : closure(states.get(offset + i).getKernel())) {
+                final int production = getItemProduction(item);
+                final int dot = getItemDot(item);
+                final int[] rhs = this.rhs[production];
+                if (dot == rhs.length) {
+                    if (production != 0) {
+                        reductions = Arrays.copyOf(reductions, reductions.length + 1);
+                        reductions[reductions.length - 1] = production;
+                    }
+                } else {
+                    final int symbol = rhs[dot];
+                    final int size = successorSizes[symbol];
+                    if (size == 0) {
+                        symbols[symbolsSeen++] = symbol;
+                        if (successors[symbol] == null) {
+                            successors[symbol] = new long[4];
+                        }
+                    } else if (size == successors[symbol].length) {
+                        successors[symbol] = Arrays.copyOf(successors[symbol], size << 1);
+                    }
+                    successors[symbol][size] = item(production, dot + 1);
+                    successorSizes[symbol] = size + 1;
+                }
+            }
+            final Expansion expansion = expansions[i] = new Expansion(reductions, Arrays.copyOf(symbols, symbolsSeen));
+            for (int j = 0; j < symbolsSeen; j ++) {
+                final int symbol = symbols[j];
+                final long[] kernel = expansion.kernels[j] = Arrays.copyOf(successors[symbol], successorSizes[symbol]);
+                successorSizes[symbol] = 0;
+                final Kernel key = new Kernel(kernel);
+                Target target = targets.get(key);
+                if (target == null) {
+                    final Target existing = targets.putIfAbsent(key, target = new Target());
+                    if (existing != null) {
+                        target = existing;
+                    }
+                }
+                expansion.targets[j] = target;
+            }
+        }
+    }
+
+    /**
+     * Encode an item.
+     *
+     * @param production the production number
+     * @param dot the position of the dot in its right-hand side
+     * @return the encoded item
+     */
+    static long item(int production, int dot) {
+        return (long) production << 32 | dot;
+    }
+
+    static int getItemProduction(long item) {
+        return (int) (item >>> 32);
+    }
+
+    static int getItemDot(long item) {
+        return (int) item;
+    }
+
+    int[] getProductions(int nonterminal) {
+        return productionsOf[nonterminal];
+    }
+
+    State getState(int state) {
+        return states.get(state);
+    }
+
+    State addState(long[] kernel) {
+        final State state = new State(states.size(), kernel, terminalNames.size(), nonterminalNames.size());
+        states.add(state);
+        return state;
+    }
+
+    private long[] closure(long[] kernel) {
+        final int terminalCount = terminalNames.size();
+        final BitSet expanded = new BitSet(nonterminalNames.size());
+        long[] closure = Arrays.copyOf(kernel, kernel.length << 1);
+        int size = kernel.length;
+        // only the start state has an item with its dot at the start in its kernel, and its nonterminal is never
+        // expanded, so each added item is new
+        for (int i = 0; i < size; i ++) {
+            final long item = closure[i];
+            final int[] rhs = this.rhs[getItemProduction(item)];
+            final int dot = getItemDot(item);
+            if (dot < rhs.length && rhs[dot] >= terminalCount) {
+                final int nonterminal = rhs[dot] - terminalCount;
+                if (! expanded.get(nonterminal)) {
+                    expanded.set(nonterminal);
+                    final int[] productions = productionsOf[nonterminal];
+                    if (size + productions.length > closure.length) {
+                        closure = Arrays.copyOf(closure, Math.max(closure.length << 1, size + productions.length));
+                    }
+                    for (int production : productions) {
+                        closure[size++] = item(production, 0);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(closure, size);
+    }
+
+    /**
+     * Fill in the action table of every state, reporting any conflicts.  Shift/reduce conflicts are resolved in
+     * favor of the shift, and reduce/reduce conflicts in favor of the earlier production.  A production which is
+     * repeated is reported, and counted as a conflict, for each copy but the last, which is the only one reduced.
+     *
+     * @param lookaheads the look-ahead sets to use for each reduction
+     * @param messager the messager to which conflicts should be reported
+     * @return the number of conflicts found
+     */
+    public int buildActions(Lookaheads lookaheads, Messager messager) {
+        final int terminalCount = terminalNames.size();
+        final ReduceAction[] reduceActions = new ReduceAction[rules.size()];
+        int conflicts = 0;
+        for (int p = repeated.nextSetBit(0); p != -1; p = repeated.nextSetBit(p + 1)) {
+            messager.printMessage(WARNING, "Rule " + rules.get(p) + " is repeated, so this copy of it is never reduced", getElement(p));
+            conflicts ++;
+        }
+        for (State state : states) {
+            for (int t = 0; t < terminalCount; t ++) {
+                final int target = state.getShift(t);
+                if (target != -1) {
+                    state.setAction(t, t == 0 ? AcceptAction.INSTANCE : new ShiftAction(target));
+                }
+            }
+            for (int production : state.getReductions()) {
+                final BitSet set = lookaheads.getLookaheads(state.getId(), production);
+                for (int t = set.nextSetBit(0); t != -1; t = set.nextSetBit(t + 1)) {
+                    final Action existing = state.getAction(t);
+                    if (existing == null) {
+                        ReduceAction action = reduceActions[production];
+                        if (action == null) {
+                            action = reduceActions[production] = new ReduceAction(production);
+                        }
+                        state.setAction(t, action);
+                    } else if (existing instanceof ReduceAction) {
+                        final int other = ((ReduceAction) existing).getProduction();
+                        messager.printMessage(WARNING, "Reduce/reduce conflict in state " + state.getId() + " on '" + terminalNames.get(t) + "': reducing " + rules.get(other) + " instead of " + rules.get(production), getElement(production));
+                        conflicts ++;
+                    } else {
+                        messager.printMessage(WARNING, "Shift/reduce conflict in state " + state.getId() + " on '" + terminalNames.get(t) + "': shifting instead of reducing " + rules.get(production), getElement(production));
+                        conflicts ++;
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Create the packed parse tables from the actions built by {@link #buildActions(Lookaheads, Messager)}.  Each
+     * state's most common reduction becomes its default action, replacing its error entries; each nonterminal's
+     * most common target state becomes its default goto.
+     *
+     * @return the parse tables
+     */
+    public ParseTables createTables() {
+        final int stateCount = states.size();
+        final int terminalCount = terminalNames.size();
+        final int nonterminalCount = nonterminalNames.size();
+        final int productionCount = rules.size();
+        final int[][] actions = new int[stateCount][terminalCount];
+        final int[] actionDefaults = new int[stateCount];
+        final int[] counts = new int[productionCount];
+        for (State state : states) {
+            final int[] row = actions[state.getId()];
+            Arrays.fill(counts, 0);
+            int best = -1;
+            for (int t = 0; t < terminalCount; t ++) {
+                final Action action = state.getAction(t);
+                if (action instanceof ShiftAction) {
+                    row[t] = ParseTables.shift(((ShiftAction) action).getState());
+                } else if (action instanceof ReduceAction) {
+                    final int production = ((ReduceAction) action).getProduction();
+                    row[t] = ParseTables.reduce(production);
+                    counts[production] ++;
+                    if (best == -1 || counts[production] > counts[best]) {
+                        best = production;
+                    }
+                } else if (action instanceof AcceptAction) {
+                    row[t] = ParseTables.reduce(0);
+                }
+            }
+            if (best != -1) {
+                final int defaultAction = actionDefaults[state.getId()] = ParseTables.reduce(best);
+                for (int t = 0; t < terminalCount; t ++) {
+                    if (row[t] == ParseTables.ERROR) {
+                        row[t] = defaultAction;
+                    }
+                }
+            }
+        }
+        final int[][] gotos = new int[nonterminalCount][stateCount];
+        final int[] gotoDefaults = new int[nonterminalCount];
+        final int[] targetCounts = new int[stateCount];
+        for (int n = 0; n < nonterminalCount; n ++) {
+            final int[] row = gotos[n];
+            Arrays.fill(targetCounts, 0);
+            int best = 0;
+            for (State state : states) {
+                final int target = row[state.getId()] = state.getGoto(n);
+                if (target != -1 && ++targetCounts[target] > targetCounts[best]) {
+                    best = target;
+                }
+            }
+            gotoDefaults[n] = best;
+            for (int s = 0; s < stateCount; s ++) {
+                if (row[s] == -1) {
+                    row[s] = best;
+                }
+            }
+        }
+        final int[] productionLength = new int[productionCount];
+        for (int p = 0; p < productionCount; p ++) {
+            productionLength[p] = rhs[p].length;
+        }
+        final TablePacker actionTable = new TablePacker(actions, actionDefaults);
+        final TablePacker gotoTable = new TablePacker(gotos, gotoDefaults);
+        return new ParseTables(lhs.clone(), productionLength, actionTable.getBase(), actionDefaults, actionTable.getNext(), actionTable.getCheck(), gotoTable.getBase(), gotoDefaults, gotoTable.getNext(), gotoTable.getCheck());
+    }
+
+    /**
+     * Count the conflicts which building the action table with the given look-ahead sets would produce, without
+     * reporting them.
+     *
+     * @param lookaheads the look-ahead sets to use for each reduction
+     * @return the number of conflicts
+     */
+    public int countConflicts(Lookaheads lookaheads) {
+        final int terminalCount = terminalNames.size();
+        int conflicts = 0;
+        final BitSet seen = new BitSet(terminalCount);
+        final BitSet overlap = new BitSet(terminalCount);
+        for (State state : states) {
+            seen.clear();
+            for (int t = 0; t < terminalCount; t ++) {
+                if (state.getShift(t) != -1) {
+                    seen.set(t);
+                }
+            }
+            for (int production : state.getReductions()) {
+                final BitSet set = lookaheads.getLookaheads(state.getId(), production);
+                overlap.clear();
+                overlap.or(seen);
+                overlap.and(set);
+                conflicts += overlap.cardinality();
+                seen.or(set);
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Get the look-ahead sets carried by the items of an LR(1) automaton.
+     *
+     * @return the look-ahead sets, or {@code null} if this is an LR(0) automaton
+     */
+    public Lookaheads getItemLookaheads() {
+        return states.get(0).getReductionLookaheads() == null ? null : new Lookaheads() {
+            public BitSet getLookaheads(final int state, final int production) {
+                final State s = states.get(state);
+                final int[] reductions = s.getReductions();
+                for (int i = 0; i < reductions.length; i ++) {
+                    if (reductions[i] == production) {
+                        return s.getReductionLookaheads()[i];
+                    }
+                }
+                return EMPTY;
+            }
+        };
+    }
+
+    private Element getElement(int production) {
+        final Rule rule = rules.get(production);
+        return rule == null ? grammar.getElement() : rule.getElement();
+    }
+
+    /**
+     * Get the grammar this automaton was built for.
+     *
+     * @return the grammar
+     */
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * Get the number of states.  State 0 is the initial state.
+     *
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return states.size();
+    }
+
+    /**
+     * Get the number of terminals, including the end-of-input terminal.
+     *
+     * @return the number of terminals
+     */
+    public int getTerminalCount() {
+        return terminalNames.size();
+    }
+
+    /**
+     * Get the number of nonterminals, including the augmented start symbol.
+     *
+     * @return the number of nonterminals
+     */
+    public int getNonterminalCount() {
+        return nonterminalNames.size();
+    }
+
+    /**
+     * Get the number of productions, including the augmented start production.
+     *
+     * @return the number of productions
+     */
+    public int getProductionCount() {
+        return rules.size();
+    }
+
+    /**
+     * Get the name of a terminal.
+     *
+     * @param terminal the terminal number
+     * @return the terminal name
+     */
+    public String getTerminalName(int terminal) {
+        return terminalNames.get(terminal);
+    }
+
+    /**
+     * Get the name of a nonterminal.
+     *
+     * @param nonterminal the nonterminal number
+     * @return the nonterminal name
+     */
+    public String getNonterminalName(int nonterminal) {
+        return nonterminalNames.get(nonterminal);
+    }
+
+    /**
+     * Get the nonterminal produced by a production.
+     *
+     * @param production the production number
+     * @return the nonterminal number
+     */
+    public int getLhs(int production) {
+        return lhs[production];
+    }
+
+    /**
+     * Get the encoded right-hand side of a production.
+     *
+     * @param production the production number
+     * @return the encoded symbols (must not be modified)
+     */
+    public int[] getRhs(int production) {
+        return rhs[production];
+    }
+
+    /**
+     * Get the rule for a production.
+     *
+     * @param production the production number
+     * @return the rule, or {@code null} for the augmented start production
+     */
+    public Rule getRule(int production) {
+        return rules.get(production);
+    }
+
+    /**
+     * Determine whether a nonterminal can derive the empty string.
+     *
+     * @param nonterminal the nonterminal number
+     * @return {@code true} if the nonterminal is nullable
+     */
+    public boolean isNullable(int nonterminal) {
+        return nullable[nonterminal];
+    }
+
+    /**
+     * Get the state reached by shifting a terminal.
+     *
+     * @param state the state number
+     * @param terminal the terminal number
+     * @return the target state number, or -1 if the terminal cannot be shifted
+     */
+    public int getShift(int state, int terminal) {
+        return states.get(state).getShift(terminal);
+    }
+
+    /**
+     * Get the state reached after reducing to a nonterminal.
+     *
+     * @param state the state number
+     * @param nonterminal the nonterminal number
+     * @return the target state number, or -1 if there is no transition
+     */
+    public int getGoto(int state, int nonterminal) {
+        return states.get(state).getGoto(nonterminal);
+    }
+
+    /**
+     * Get the productions which may be reduced in a state, not including the augmented start production.
+     *
+     * @param state the state number
+     * @return the production numbers (must not be modified)
+     */
+    public int[] getReductions(int state) {
+        return states.get(state).getReductions();
+    }
+
+    /**
+     * A set of items, as a hash key.
+     */
+    static final class Kernel {
+        private final long[] items;
+        private final int hashCode;
+
+        Kernel(final long[] items) {
+            final long[] sorted = items.clone();
+            Arrays.sort(sorted);
+            this.items = sorted;
+            hashCode = Arrays.hashCode(sorted);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Kernel && equals((Kernel) obj);
+        }
+
+        public boolean equals(final Kernel other) {
+            return this == other || other != null && hashCode == other.hashCode && Arrays.equals(items, other.items);
+        }
+    }
+
+    /**
+     * The state which a kernel belongs to, once it is numbered.
+     */
+    static final class Target {
+        State state;
+    }
+
+    /**
+     * The reductions and successors of a state.
+     */
+    static final class Expansion {
+        private final int[] reductions;
+        private final int[] symbols;
+        private final long[][] kernels;
+        private final Target[] targets;
+
+        Expansion(final int[] reductions, final int[] symbols) {
+            this.reductions = reductions;
+            this.symbols = symbols;
+            kernels = new long[symbols.length][];
+            targets = new Target[symbols.length];
+        }
+    }
+
+    static final class ExpandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Automaton automaton;
+        private final ConcurrentMap<Kernel, Target> targets;
+        private final Expansion[] expansions;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        ExpandTask(final Automaton automaton, final ConcurrentMap<Kernel, Target> targets, final Expansion[] expansions, final int offset, final int from, final int to) {
+            this.automaton = automaton;
+            this.targets = targets;
+            this.expansions = expansions;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                automaton.expand(targets, expansions, offset, from, to);
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ExpandTask(automaton, targets, expansions, offset, from, mid), new ExpandTask(automaton, targets, expansions, offset, mid, to));
+            }
+        }
+    }
+}
@@ -22,32 +22,32 @@
 
 package org.jboss.flicc.processor.lr0;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
+import org.jboss.flicc.ParseTables;
 import org.jboss.flicc.processor.Generator;
 import org.jboss.flicc.processor.Grammar;
-import org.jboss.flicc.processor.IntMap;
-import org.jboss.flicc.processor.Symbol;
+import org.jboss.flicc.processor.Options;
 
 import javax.annotation.processing.ProcessingEnvironment;
 
+import static javax.tools.Diagnostic.Kind.NOTE;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class Lr0Generator implements Generator {
 
-    public void generate(final Grammar grammar, final ProcessingEnvironment env) {
-        List<State> states = new ArrayList<>();
-        
-
-        int tid = 0, nid = 0;
-        final IntMap<Symbol> terminals = new IntMap<Symbol>();
-        final IntMap<Nonterminal> nonterminals = new IntMap<Nonterminal>();
-        for (Symbol terminal : grammar.getInputs()) {
-            terminals.put(terminal, tid++);
-        }
-        for (Nonterminal nonterminal : grammar.getProducedBy().keySet()) {
-            nonterminals.put(nonterminal, nid++);
-        }
+    public ParseTables generate(final Grammar grammar, final ProcessingEnvironment env) {
+        final Automaton automaton = new Automaton(grammar, Options.getThreads(env));
+        // with no look-ahead, every reduction applies on every terminal
+        final BitSet all = new BitSet();
+        all.set(0, automaton.getTerminalCount());
+        final int conflicts = automaton.buildActions(new Lookaheads() {
+            public BitSet getLookaheads(final int state, final int production) {
+                return all;
+            }
+        }, env.getMessager());
+        env.getMessager().printMessage(NOTE, "LR(0) automaton has " + automaton.getStateCount() + " states and " + conflicts + " conflicts", grammar.getElement());
+        return automaton.createTables();
     }
 }
@@ -0,0 +1,388 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lr0;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.jboss.flicc.processor.lr0.Automaton.getItemDot;
+import static org.jboss.flicc.processor.lr0.Automaton.getItemProduction;
+import static org.jboss.flicc.processor.lr0.Automaton.item;
+
+/**
+ * Builds the states of an {@link Automaton} by Pager's practical general method.  LR(1) item sets are generated as
+ * for canonical LR(1), but a new state is merged into an existing state with the same core whenever the two are
+ * <em>weakly compatible</em>: that is, whenever for every pair of kernel items the merge cannot create a look-ahead
+ * overlap which did not already exist in one of the two states.  When a merge adds look-aheads to a state that was
+ * already expanded, the state is expanded again to propagate them.
+ */
+final class PagerBuilder {
+    private static final BitSet[] NO_LOOKAHEADS = new BitSet[0];
+
+    private final Automaton automaton;
+    private final int terminalCount;
+    private final BitSet[] first;
+    // production -> position -> FIRST of the rest of its right-hand side from that position
+    private final BitSet[][] suffixFirst;
+    // production -> position -> whether the rest of its right-hand side from that position can derive the empty string
+    private final boolean[][] suffixNullable;
+    private final Map<Automaton.Kernel, List<Node>> nodesByCore = new HashMap<Automaton.Kernel, List<Node>>();
+    private final ArrayDeque<Node> queue = new ArrayDeque<Node>();
+
+    // the closure of the node being expanded, in the order its items were added
+    private long[] closureItems = new long[16];
+    private BitSet[] closureLookaheads = new BitSet[16];
+    private int closureSize;
+    // production -> index of its item with the dot at the start in the closure, or -1
+    private final int[] closureIndex;
+    private int[] work = new int[16];
+
+    // symbol -> the kernel of its successor, in the order the symbols are first seen
+    private final long[][] successorItems;
+    private final BitSet[][] successorLookaheads;
+    private final int[] successorSizes;
+    private final int[] successorSymbols;
+
+    PagerBuilder(final Automaton automaton) {
+        this.automaton = automaton;
+        terminalCount = automaton.getTerminalCount();
+        first = new BitSet[automaton.getNonterminalCount()];
+        for (int i = 0; i < first.length; i ++) {
+            first[i] = new BitSet(terminalCount);
+        }
+        final int productionCount = automaton.getProductionCount();
+        suffixFirst = new BitSet[productionCount][];
+        suffixNullable = new boolean[productionCount][];
+        closureIndex = new int[productionCount];
+        Arrays.fill(closureIndex, -1);
+        final int symbolCount = terminalCount + automaton.getNonterminalCount();
+        successorItems = new long[symbolCount][];
+        successorLookaheads = new BitSet[symbolCount][];
+        successorSizes = new int[symbolCount];
+        successorSymbols = new int[symbolCount];
+    }
+
+    static final class Node {
+        private final long[] kernel;
+        private final BitSet[] lookaheads;
+        private int[] transitionSymbols;
+        private Node[] transitionTargets;
+        private int[] reductions;
+        private BitSet[] reductionLookaheads;
+        private boolean queued;
+        private int id = -1;
+
+        Node(final long[] kernel, final BitSet[] lookaheads) {
+            this.kernel = kernel;
+            this.lookaheads = lookaheads;
+        }
+    }
+
+    void build() {
+        computeFirst();
+        computeSuffixFirst();
+        final Node start = addNode(new long[] { item(0, 0) }, new BitSet[] { new BitSet() });
+        Node node;
+        while ((node = queue.poll()) != null) {
+            node.queued = false;
+            expand(node);
+        }
+        // states may have become unreachable when a re-expanded state moved its transitions elsewhere, so number
+        // the reachable states breadth-first from the start state
+        final List<Node> reachable = new ArrayList<Node>();
+        start.id = 0;
+        reachable.add(start);
+        for (int i = 0; i < reachable.size(); i ++) {
+            for (Node target : reachable.get(i).transitionTargets) {
+                if (target.id == -1) {
+                    target.id = reachable.size();
+                    reachable.add(target);
+                }
+            }
+        }
+        for (Node reached : reachable) {
+            automaton.addState(reached.kernel);
+        }
+        for (Node reached : reachable) {
+            final State state = automaton.getState(reached.id);
+            final int[] symbols = reached.transitionSymbols;
+            for (int i = 0; i < symbols.length; i ++) {
+                final int symbol = symbols[i];
+                if (symbol < terminalCount) {
+                    state.setShift(symbol, reached.transitionTargets[i].id);
+                } else {
+                    state.setGoto(symbol - terminalCount, reached.transitionTargets[i].id);
+                }
+            }
+            state.setReductions(reached.reductions);
+            state.setReductionLookaheads(reached.reductionLookaheads);
+        }
+    }
+
+    private void computeFirst() {
+        final int productionCount = automaton.getProductionCount();
+        boolean changed;
+        do {
+            changed = false;
+            for (int p = 0; p < productionCount; p ++) {
+                final BitSet set = first[automaton.getLhs(p)];
+                final int before = set.cardinality();
+                for (int symbol : automaton.getRhs(p)) {
+                    if (symbol < terminalCount) {
+                        set.set(symbol);
+                        break;
+                    }
+                    set.or(first[symbol - terminalCount]);
+                    if (! automaton.isNullable(symbol - terminalCount)) {
+                        break;
+                    }
+                }
+                changed |= set.cardinality() != before;
+            }
+        } while (changed);
+    }
+
+    private void computeSuffixFirst() {
+        final int productionCount = automaton.getProductionCount();
+        for (int p = 0; p < productionCount; p ++) {
+            final int[] rhs = automaton.getRhs(p);
+            final BitSet[] sets = suffixFirst[p] = new BitSet[rhs.length + 1];
+            final boolean[] nullable = suffixNullable[p] = new boolean[rhs.length + 1];
+            sets[rhs.length] = new BitSet(terminalCount);
+            nullable[rhs.length] = true;
+            for (int i = rhs.length - 1; i >= 0; i --) {
+                final int symbol = rhs[i];
+                final BitSet set = sets[i] = new BitSet(terminalCount);
+                if (symbol < terminalCount) {
+                    set.set(symbol);
+                } else {
+                    set.or(first[symbol - terminalCount]);
+                    if (automaton.isNullable(symbol - terminalCount)) {
+                        set.or(sets[i + 1]);
+                        nullable[i] = nullable[i + 1];
+                    }
+                }
+            }
+        }
+    }
+
+    private Node addNode(long[] kernel, BitSet[] lookaheads) {
+        final Node node = new Node(kernel, lookaheads);
+        final Automaton.Kernel core = new Automaton.Kernel(kernel);
+        List<Node> list = nodesByCore.get(core);
+        if (list == null) {
+            nodesByCore.put(core, list = new ArrayList<Node>(1));
+        }
+        list.add(node);
+        node.queued = true;
+        queue.add(node);
+        return node;
+    }
+
+    private void expand(Node node) {
+        closure(node);
+        final long[] closureItems = this.closureItems;
+        final BitSet[] closureLookaheads = this.closureLookaheads;
+        int symbolsSeen = 0;
+        int[] reductions = new int[0];
+        BitSet[] reductionLookaheads = NO_LOOKAHEADS;
+        for (int i = 0; i < closureSize; i ++) {
+            final long item = closureItems[i];
+            final int production = getItemProduction(item);
+            final int dot = getItemDot(item);
+            final int[] rhs = automaton.getRhs(production);
+            if (dot == rhs.length) {
+                if (production != 0) {
+                    final int len = reductions.length;
+                    reductions = Arrays.copyOf(reductions, len + 1);
+                    reductions[len] = production;
+                    reductionLookaheads = Arrays.copyOf(reductionLookaheads, len + 1);
+                    reductionLookaheads[len] = closureLookaheads[i];
+                }
+            } else {
+                final int symbol = rhs[dot];
+                final int size = successorSizes[symbol];
+                if (size == 0) {
+                    successorSymbols[symbolsSeen++] = symbol;
+                    if (successorItems[symbol] == null) {
+                        successorItems[symbol] = new long[4];
+                        successorLookaheads[symbol] = new BitSet[4];
+                    }
+                } else if (size == successorItems[symbol].length) {
+                    successorItems[symbol] = Arrays.copyOf(successorItems[symbol], size << 1);
+                    successorLookaheads[symbol] = Arrays.copyOf(successorLookaheads[symbol], size << 1);
+                }
+                successorItems[symbol][size] = item(production, dot + 1);
+                successorLookaheads[symbol][size] = closureLookaheads[i];
+                successorSizes[symbol] = size + 1;
+            }
+        }
+        node.reductions = reductions;
+        node.reductionLookaheads = reductionLookaheads;
+        final int[] transitionSymbols = node.transitionSymbols = Arrays.copyOf(successorSymbols, symbolsSeen);
+        final Node[] transitionTargets = node.transitionTargets = new Node[symbolsSeen];
+        for (int i = 0; i < symbolsSeen; i ++) {
+            final int symbol = transitionSymbols[i];
+            final int size = successorSizes[symbol];
+            successorSizes[symbol] = 0;
+            final long[] items = successorItems[symbol];
+            final long[] kernel = Arrays.copyOf(items, size);
+            Arrays.sort(kernel);
+            final BitSet[] lookaheads = new BitSet[size];
+            for (int j = 0; j < size; j ++) {
+                lookaheads[Arrays.binarySearch(kernel, items[j])] = (BitSet) successorLookaheads[symbol][j].clone();
+            }
+            transitionTargets[i] = findNode(kernel, lookaheads);
+        }
+    }
+
+    private Node findNode(long[] kernel, BitSet[] lookaheads) {
+        final List<Node> candidates = nodesByCore.get(new Automaton.Kernel(kernel));
+        if (candidates != null) {
+            // prefer a state which already has all of the look-aheads, since nothing needs to be propagated
+            for (Node candidate : candidates) {
+                if (contains(candidate.lookaheads, lookaheads)) {
+                    return candidate;
+                }
+            }
+            for (Node candidate : candidates) {
+                if (isWeaklyCompatible(candidate.lookaheads, lookaheads)) {
+                    for (int i = 0; i < lookaheads.length; i ++) {
+                        candidate.lookaheads[i].or(lookaheads[i]);
+                    }
+                    if (! candidate.queued) {
+                        candidate.queued = true;
+                        queue.add(candidate);
+                    }
+                    return candidate;
+                }
+            }
+        }
+        return addNode(kernel, lookaheads);
+    }
+
+    private static boolean contains(BitSet[] existing, BitSet[] lookaheads) {
+        for (int i = 0; i < existing.length; i ++) {
+            final BitSet missing = (BitSet) lookaheads[i].clone();
+            missing.andNot(existing[i]);
+            if (! missing.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWeaklyCompatible(BitSet[] a, BitSet[] b) {
+        final int length = a.length;
+        for (int i = 0; i < length; i ++) {
+            for (int j = i + 1; j < length; j ++) {
+                if (a[i].intersects(a[j]) || b[i].intersects(b[j])) {
+                    // the overlap exists in one of the originals already
+                    continue;
+                }
+                if (a[i].intersects(b[j]) || a[j].intersects(b[i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void closure(Node node) {
+        // forget the previous closure
+        for (int i = 0; i < closureSize; i ++) {
+            final long item = closureItems[i];
+            if (getItemDot(item) == 0) {
+                closureIndex[getItemProduction(item)] = -1;
+            }
+            closureLookaheads[i] = null;
+        }
+        closureSize = 0;
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < node.kernel.length; i ++) {
+            addToClosure(node.kernel[i], (BitSet) node.lookaheads[i].clone());
+            work = ensureCapacity(work, tail + 1);
+            work[tail++] = i;
+        }
+        final BitSet lookahead = new BitSet(terminalCount);
+        final BitSet missing = new BitSet(terminalCount);
+        while (head < tail) {
+            final int index = work[head++];
+            final long item = closureItems[index];
+            final int production = getItemProduction(item);
+            final int[] rhs = automaton.getRhs(production);
+            final int dot = getItemDot(item);
+            if (dot == rhs.length || rhs[dot] < terminalCount) {
+                continue;
+            }
+            // the look-ahead of the added items is FIRST of the remainder of this item, followed by its look-ahead
+            lookahead.clear();
+            lookahead.or(suffixFirst[production][dot + 1]);
+            if (suffixNullable[production][dot + 1]) {
+                lookahead.or(closureLookaheads[index]);
+            }
+            for (int added : automaton.getProductions(rhs[dot] - terminalCount)) {
+                final int existingIndex = closureIndex[added];
+                if (existingIndex == -1) {
+                    work = ensureCapacity(work, tail + 1);
+                    work[tail++] = closureSize;
+                    addToClosure(item(added, 0), (BitSet) lookahead.clone());
+                } else {
+                    final BitSet existing = closureLookaheads[existingIndex];
+                    missing.clear();
+                    missing.or(lookahead);
+                    missing.andNot(existing);
+                    if (! missing.isEmpty()) {
+                        existing.or(missing);
+                        work = ensureCapacity(work, tail + 1);
+                        work[tail++] = existingIndex;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addToClosure(long item, BitSet lookahead) {
+        final int size = closureSize;
+        if (size == closureItems.length) {
+            closureItems = Arrays.copyOf(closureItems, size << 1);
+            closureLookaheads = Arrays.copyOf(closureLookaheads, size << 1);
+        }
+        if (getItemDot(item) == 0) {
+            closureIndex[getItemProduction(item)] = size;
+        }
+        closureItems[size] = item;
+        closureLookaheads[size] = lookahead;
+        closureSize = size + 1;
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(array.length << 1, capacity));
+    }
+}
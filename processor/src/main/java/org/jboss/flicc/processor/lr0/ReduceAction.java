@@ -25,5 +25,14 @@ package org.jboss.flicc.processor.lr0;
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
-final class ReduceAction {
+final class ReduceAction extends Action {
+    private final int production;
+
+    ReduceAction(final int production) {
+        this.production = production;
+    }
+
+    int getProduction() {
+        return production;
+    }
 }
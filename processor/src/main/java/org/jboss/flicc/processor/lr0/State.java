@@ -22,13 +22,83 @@
 
 package org.jboss.flicc.processor.lr0;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 final class State {
+    private static final int[] NO_REDUCTIONS = new int[0];
+
     private final int id;
+    private final long[] kernel;
+    // terminal->state
+    private final int[] shifts;
     // nonterminal->state
     private final int[] reduceGotos;
     // terminal->action
     private final Action[] actions;
+    // productions which are complete in this state
+    private int[] reductions = NO_REDUCTIONS;
+    // the look-ahead set of each reduction, for LR(1) states only
+    private BitSet[] reductionLookaheads;
+
+    State(final int id, final long[] kernel, final int terminalCount, final int nonterminalCount) {
+        this.id = id;
+        this.kernel = kernel;
+        shifts = new int[terminalCount];
+        Arrays.fill(shifts, -1);
+        reduceGotos = new int[nonterminalCount];
+        Arrays.fill(reduceGotos, -1);
+        actions = new Action[terminalCount];
+    }
+
+    int getId() {
+        return id;
+    }
+
+    long[] getKernel() {
+        return kernel;
+    }
+
+    int getShift(int terminal) {
+        return shifts[terminal];
+    }
+
+    void setShift(int terminal, int state) {
+        shifts[terminal] = state;
+    }
+
+    int getGoto(int nonterminal) {
+        return reduceGotos[nonterminal];
+    }
+
+    void setGoto(int nonterminal, int state) {
+        reduceGotos[nonterminal] = state;
+    }
+
+    int[] getReductions() {
+        return reductions;
+    }
+
+    void setReductions(final int[] reductions) {
+        this.reductions = reductions;
+    }
+
+    BitSet[] getReductionLookaheads() {
+        return reductionLookaheads;
+    }
+
+    void setReductionLookaheads(final BitSet[] reductionLookaheads) {
+        this.reductionLookaheads = reductionLookaheads;
+    }
+
+    Action getAction(int terminal) {
+        return actions[terminal];
+    }
+
+    void setAction(int terminal, Action action) {
+        actions[terminal] = action;
+    }
 }
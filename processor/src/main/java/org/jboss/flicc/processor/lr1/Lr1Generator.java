@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lr1;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Generator;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.Options;
+import org.jboss.flicc.processor.lalr.LalrLookaheads;
+import org.jboss.flicc.processor.lr0.Automaton;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import static javax.tools.Diagnostic.Kind.NOTE;
+
+/**
+ * A generator for LR(1) parsers with a near-LALR(1) state count.  If the LALR(1) automaton has no conflicts, it is
+ * used as-is, since splitting states could not resolve anything.  Otherwise the automaton is rebuilt with Pager's
+ * weak compatibility merging, which splits only those LALR(1) states whose merging would introduce reduce/reduce
+ * conflicts that canonical LR(1) does not have.
+ */
+public final class Lr1Generator implements Generator {
+
+    public ParseTables generate(final Grammar grammar, final ProcessingEnvironment env) {
+        final Automaton lalr = new Automaton(grammar, Options.getThreads(env));
+        final LalrLookaheads lalrLookaheads = new LalrLookaheads(lalr);
+        if (lalr.countConflicts(lalrLookaheads) == 0) {
+            lalr.buildActions(lalrLookaheads, env.getMessager());
+            env.getMessager().printMessage(NOTE, "LR(1) automaton has " + lalr.getStateCount() + " states (grammar is LALR(1))", grammar.getElement());
+            return lalr.createTables();
+        }
+        final Automaton automaton = Automaton.createMinimalLr1(grammar);
+        final int conflicts = automaton.buildActions(automaton.getItemLookaheads(), env.getMessager());
+        env.getMessager().printMessage(NOTE, "LR(1) automaton has " + automaton.getStateCount() + " states (" + (automaton.getStateCount() - lalr.getStateCount()) + " split from LALR(1)) and " + conflicts + " conflicts", grammar.getElement());
+        return automaton.createTables();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The mapping from code points to character classes used by a generated scanner.  Code points in the BMP are mapped
+ * through a two-level table: the high byte selects a block of 256 entries, and the low byte an entry within it.
+ * Identical blocks are stored once, so the many blocks in which every character has the same class share one copy.
+ * Supplementary code points, which are rare in input, are mapped by binary search over ranges.
+ */
+final class CharClassMap {
+    private static final int BMP_LIMIT = 0x10000;
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final int[] bmpIndex = new int[BMP_LIMIT >> BLOCK_SHIFT];
+    private final char[] bmpClasses;
+    private final int[] supplementaryStarts;
+    private final int[] supplementaryClasses;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param intervals the first code point of each interval, in ascending order, starting with 0
+     * @param intervalClasses the class of each interval, each of which must fit in a {@code char}
+     */
+    CharClassMap(final int[] intervals, final int[] intervalClasses) {
+        final char[] classes = new char[BMP_LIMIT];
+        int i;
+        for (i = 0; i < intervals.length && intervals[i] < BMP_LIMIT; i ++) {
+            final int end = i + 1 < intervals.length ? Math.min(intervals[i + 1], BMP_LIMIT) : BMP_LIMIT;
+            Arrays.fill(classes, intervals[i], end, (char) intervalClasses[i]);
+        }
+        final Map<String, Integer> blocks = new HashMap<String, Integer>();
+        char[] bmpClasses = new char[BLOCK_SIZE * 4];
+        int length = 0;
+        for (int b = 0; b < bmpIndex.length; b ++) {
+            final String key = new String(classes, b << BLOCK_SHIFT, BLOCK_SIZE);
+            final Integer existing = blocks.get(key);
+            if (existing != null) {
+                bmpIndex[b] = existing.intValue();
+                continue;
+            }
+            if (length == bmpClasses.length) {
+                bmpClasses = Arrays.copyOf(bmpClasses, length << 1);
+            }
+            System.arraycopy(classes, b << BLOCK_SHIFT, bmpClasses, length, BLOCK_SIZE);
+            blocks.put(key, Integer.valueOf(length));
+            bmpIndex[b] = length;
+            length += BLOCK_SIZE;
+        }
+        this.bmpClasses = Arrays.copyOf(bmpClasses, length);
+        // the supplementary ranges start with the interval which contains the first supplementary code point
+        final int[] starts = new int[intervals.length - i + 1];
+        final int[] startClasses = new int[starts.length];
+        int cnt = 0;
+        for (i = i - 1; i < intervals.length; i ++) {
+            final int c = intervalClasses[i];
+            if (cnt == 0 || startClasses[cnt - 1] != c) {
+                starts[cnt] = Math.max(intervals[i], BMP_LIMIT);
+                startClasses[cnt++] = c;
+            }
+        }
+        supplementaryStarts = Arrays.copyOf(starts, cnt);
+        supplementaryClasses = Arrays.copyOf(startClasses, cnt);
+    }
+
+    int[] getBmpIndex() {
+        return bmpIndex;
+    }
+
+    char[] getBmpClasses() {
+        return bmpClasses;
+    }
+
+    int getBlockCount() {
+        return bmpClasses.length >> BLOCK_SHIFT;
+    }
+
+    int[] getSupplementaryStarts() {
+        return supplementaryStarts;
+    }
+
+    int[] getSupplementaryClasses() {
+        return supplementaryClasses;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of Unicode code points, stored as a sorted array of disjoint half-open ranges.
+ */
+final class CharSet {
+
+    /**
+     * One more than the largest code point.
+     */
+    static final int LIMIT = Character.MAX_CODE_POINT + 1;
+
+    static final CharSet EMPTY = new CharSet(new int[0]);
+    static final CharSet ALL = new CharSet(new int[] { 0, LIMIT });
+
+    // pairs of (first, last + 1)
+    private final int[] ranges;
+
+    private CharSet(final int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    static CharSet of(int codePoint) {
+        return new CharSet(new int[] { codePoint, codePoint + 1 });
+    }
+
+    static CharSet range(int first, int last) {
+        return first > last ? EMPTY : new CharSet(new int[] { first, last + 1 });
+    }
+
+    int[] getRanges() {
+        return ranges;
+    }
+
+    boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    boolean contains(int codePoint) {
+        final int idx = Arrays.binarySearch(ranges, codePoint);
+        // an exact hit on a range start, or a position inside a range
+        return idx >= 0 ? (idx & 1) == 0 : (-idx - 1 & 1) == 1;
+    }
+
+    CharSet union(CharSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        final Builder builder = new Builder();
+        builder.add(this);
+        builder.add(other);
+        return builder.build();
+    }
+
+    CharSet complement() {
+        final int[] ranges = this.ranges;
+        final int[] result = new int[ranges.length + 2];
+        int cnt = 0;
+        int prev = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > prev) {
+                result[cnt++] = prev;
+                result[cnt++] = ranges[i];
+            }
+            prev = ranges[i + 1];
+        }
+        if (prev < LIMIT) {
+            result[cnt++] = prev;
+            result[cnt++] = LIMIT;
+        }
+        return new CharSet(Arrays.copyOf(result, cnt));
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    public boolean equals(final Object obj) {
+        return obj instanceof CharSet && Arrays.equals(ranges, ((CharSet) obj).ranges);
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('[');
+        for (int i = 0; i < ranges.length; i += 2) {
+            b.append(Integer.toHexString(ranges[i]));
+            if (ranges[i + 1] - 1 > ranges[i]) {
+                b.append('-').append(Integer.toHexString(ranges[i + 1] - 1));
+            }
+            if (i + 2 < ranges.length) {
+                b.append(',');
+            }
+        }
+        return b.append(']').toString();
+    }
+
+    /**
+     * Accumulates code points and ranges in any order.
+     */
+    static final class Builder {
+        private int[] ranges = new int[16];
+        private int cnt;
+
+        void add(int first, int last) {
+            if (cnt == ranges.length) {
+                ranges = Arrays.copyOf(ranges, cnt << 1);
+            }
+            ranges[cnt++] = first;
+            ranges[cnt++] = last + 1;
+        }
+
+        void add(CharSet set) {
+            final int[] other = set.ranges;
+            for (int i = 0; i < other.length; i += 2) {
+                add(other[i], other[i + 1] - 1);
+            }
+        }
+
+        CharSet build() {
+            final int pairs = cnt >> 1;
+            final long[] sorted = new long[pairs];
+            for (int i = 0; i < pairs; i ++) {
+                sorted[i] = (long) ranges[i << 1] << 32 | ranges[(i << 1) + 1];
+            }
+            Arrays.sort(sorted);
+            final int[] result = new int[cnt];
+            int len = 0;
+            for (long pair : sorted) {
+                final int first = (int) (pair >>> 32);
+                final int end = (int) pair;
+                if (len > 0 && first <= result[len - 1]) {
+                    result[len - 1] = Math.max(result[len - 1], end);
+                } else {
+                    result[len++] = first;
+                    result[len++] = end;
+                }
+            }
+            return new CharSet(Arrays.copyOf(result, len));
+        }
+    }
+}
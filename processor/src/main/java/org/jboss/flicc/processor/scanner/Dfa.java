@@ -0,0 +1,469 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic finite automaton over character classes.  The code point space is divided into intervals, and each
+ * interval belongs to a class; all code points in a class behave identically in every state.  A DFA has one start
+ * state for each scanner state, and each accepting state accepts the earliest-declared token rule among those whose
+ * NFA states it contains.
+ */
+final class Dfa {
+    private final int[] intervals;
+    private final int[] intervalClasses;
+    private final int[][] transitions;
+    private final int[] accept;
+    private final int[] starts;
+
+    private Dfa(final int[] intervals, final int[] intervalClasses, final int[][] transitions, final int[] accept, final int[] starts) {
+        this.intervals = intervals;
+        this.intervalClasses = intervalClasses;
+        this.transitions = transitions;
+        this.accept = accept;
+        this.starts = starts;
+    }
+
+    /**
+     * Build a DFA from an NFA by subset construction.  Initially every interval is a class of its own.
+     *
+     * @param nfa the NFA
+     * @param startSets the NFA start states of each scanner state
+     * @return the DFA
+     */
+    static Dfa build(Nfa nfa, int[][] startSets) {
+        final int nfaCount = nfa.getStateCount();
+        // split the code point space at every boundary of every transition
+        int[] bounds = new int[16];
+        int cnt = 0;
+        bounds[cnt++] = 0;
+        for (int s = 0; s < nfaCount; s ++) {
+            final CharSet set = nfa.getEdgeSet(s);
+            if (set != null) {
+                final int[] ranges = set.getRanges();
+                if (cnt + ranges.length > bounds.length) {
+                    bounds = Arrays.copyOf(bounds, Math.max(bounds.length << 1, cnt + ranges.length));
+                }
+                System.arraycopy(ranges, 0, bounds, cnt, ranges.length);
+                cnt += ranges.length;
+            }
+        }
+        Arrays.sort(bounds, 0, cnt);
+        int k = 0;
+        for (int i = 0; i < cnt; i ++) {
+            if (bounds[i] < CharSet.LIMIT && (k == 0 || bounds[i] != bounds[k - 1])) {
+                bounds[k++] = bounds[i];
+            }
+        }
+        final int[] intervals = Arrays.copyOf(bounds, k);
+        // the intervals covered by each NFA transition
+        final int[][] edgeIntervals = new int[nfaCount][];
+        for (int s = 0; s < nfaCount; s ++) {
+            final CharSet set = nfa.getEdgeSet(s);
+            if (set != null) {
+                final int[] ranges = set.getRanges();
+                final int[] covered = new int[k];
+                int n = 0;
+                for (int i = 0; i < ranges.length; i += 2) {
+                    final int end = ranges[i + 1] == CharSet.LIMIT ? k : Arrays.binarySearch(intervals, ranges[i + 1]);
+                    for (int j = Arrays.binarySearch(intervals, ranges[i]); j < end; j ++) {
+                        covered[n++] = j;
+                    }
+                }
+                edgeIntervals[s] = Arrays.copyOf(covered, n);
+            }
+        }
+
+        final Map<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+        final List<BitSet> sets = new ArrayList<BitSet>();
+        final int[] starts = new int[startSets.length];
+        for (int i = 0; i < startSets.length; i ++) {
+            if (startSets[i].length == 0) {
+                starts[i] = -1;
+                continue;
+            }
+            final BitSet set = new BitSet(nfaCount);
+            for (int s : startSets[i]) {
+                set.set(s);
+            }
+            nfa.closure(set);
+            starts[i] = getId(ids, sets, set);
+        }
+        final List<int[]> transitions = new ArrayList<int[]>();
+        final BitSet touched = new BitSet(k);
+        for (int d = 0; d < sets.size(); d ++) {
+            final BitSet set = sets.get(d);
+            final BitSet[] targets = new BitSet[k];
+            touched.clear();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                final int[] covered = edgeIntervals[s];
+                if (covered != null) {
+                    final int target = nfa.getEdgeTarget(s);
+                    for (int i : covered) {
+                        if (targets[i] == null) {
+                            targets[i] = new BitSet(nfaCount);
+                            touched.set(i);
+                        }
+                        targets[i].set(target);
+                    }
+                }
+            }
+            final int[] row = new int[k];
+            Arrays.fill(row, -1);
+            // neighbouring intervals usually lead to the same set, so only compute each closure once
+            final Map<BitSet, Integer> closed = new HashMap<BitSet, Integer>();
+            for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+                Integer id = closed.get(targets[i]);
+                if (id == null) {
+                    final BitSet closure = (BitSet) targets[i].clone();
+                    nfa.closure(closure);
+                    id = Integer.valueOf(getId(ids, sets, closure));
+                    closed.put(targets[i], id);
+                }
+                row[i] = id.intValue();
+            }
+            transitions.add(row);
+        }
+        final int[] accept = new int[sets.size()];
+        for (int d = 0; d < accept.length; d ++) {
+            final BitSet set = sets.get(d);
+            int rule = -1;
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                final int a = nfa.getAccept(s);
+                if (a != -1 && (rule == -1 || a < rule)) {
+                    rule = a;
+                }
+            }
+            accept[d] = rule;
+        }
+        final int[] intervalClasses = new int[k];
+        for (int i = 0; i < k; i ++) {
+            intervalClasses[i] = i;
+        }
+        return new Dfa(intervals, intervalClasses, transitions.toArray(new int[transitions.size()][]), accept, starts);
+    }
+
+    /**
+     * Merge the classes which have identical transitions in every state.  Classes are renumbered in order of their
+     * first interval, so the class of code point 0 is always class 0.
+     *
+     * @return the DFA with merged classes
+     */
+    Dfa mergeClasses() {
+        final int n = accept.length;
+        final int k = getClassCount();
+        final Map<Column, Integer> columns = new HashMap<Column, Integer>();
+        final int[] newClass = new int[k];
+        Arrays.fill(newClass, -1);
+        final int[] representatives = new int[k];
+        int cnt = 0;
+        for (int i = 0; i < intervalClasses.length; i ++) {
+            final int c = intervalClasses[i];
+            if (newClass[c] != -1) {
+                continue;
+            }
+            final int[] column = new int[n];
+            for (int s = 0; s < n; s ++) {
+                column[s] = transitions[s][c];
+            }
+            final Column key = new Column(column);
+            final Integer existing = columns.get(key);
+            if (existing == null) {
+                columns.put(key, Integer.valueOf(cnt));
+                representatives[cnt] = c;
+                newClass[c] = cnt++;
+            } else {
+                newClass[c] = existing.intValue();
+            }
+        }
+        final int[] newIntervalClasses = new int[intervalClasses.length];
+        for (int i = 0; i < intervalClasses.length; i ++) {
+            newIntervalClasses[i] = newClass[intervalClasses[i]];
+        }
+        final int[][] newTransitions = new int[n][];
+        for (int s = 0; s < n; s ++) {
+            final int[] row = newTransitions[s] = new int[cnt];
+            for (int c = 0; c < cnt; c ++) {
+                row[c] = transitions[s][representatives[c]];
+            }
+        }
+        return new Dfa(intervals, newIntervalClasses, newTransitions, accept, starts);
+    }
+
+    static final class Column {
+        private final int[] states;
+        private final int hashCode;
+
+        Column(final int[] states) {
+            this.states = states;
+            hashCode = Arrays.hashCode(states);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            return obj instanceof Column && equals((Column) obj);
+        }
+
+        public boolean equals(final Column other) {
+            return this == other || other != null && hashCode == other.hashCode && Arrays.equals(states, other.states);
+        }
+    }
+
+    private static int getId(Map<BitSet, Integer> ids, List<BitSet> sets, BitSet set) {
+        final Integer id = ids.get(set);
+        if (id != null) {
+            return id.intValue();
+        }
+        final int newId = sets.size();
+        ids.put(set, Integer.valueOf(newId));
+        sets.add(set);
+        return newId;
+    }
+
+    /**
+     * Minimize this DFA by Hopcroft's partition refinement.  States which accept different rules are never merged,
+     * and states from which no rule can be accepted are removed.  The resulting states are numbered breadth-first
+     * from the start states.
+     *
+     * @return the minimal DFA
+     */
+    Dfa minimize() {
+        final int n = accept.length;
+        final int k = getClassCount();
+        // an explicit dead state stands in for missing transitions
+        final int total = n + 1;
+        final int dead = n;
+
+        // the inverse transitions, grouped by class and target state
+        final int[] invStart = new int[k * total + 1];
+        for (int s = 0; s < total; s ++) {
+            for (int c = 0; c < k; c ++) {
+                invStart[c * total + target(s, c) + 1] ++;
+            }
+        }
+        for (int i = 0; i < k * total; i ++) {
+            invStart[i + 1] += invStart[i];
+        }
+        final int[] inv = new int[k * total];
+        final int[] next = Arrays.copyOf(invStart, k * total);
+        for (int s = 0; s < total; s ++) {
+            for (int c = 0; c < k; c ++) {
+                inv[next[c * total + target(s, c)]++] = s;
+            }
+        }
+
+        // the partition: each block is a range of elems, with its marked members at the front
+        final int[] elems = new int[total];
+        final int[] loc = new int[total];
+        final int[] blockOf = new int[total];
+        final int[] first = new int[total];
+        final int[] end = new int[total];
+        final int[] marked = new int[total];
+        // initially, one block for each accepted rule, plus one for the non-accepting states
+        final long[] keys = new long[total];
+        for (int s = 0; s < total; s ++) {
+            keys[s] = (long) (s == dead ? 0 : accept[s] + 1) << 32 | s;
+        }
+        Arrays.sort(keys);
+        int blocks = 0;
+        for (int i = 0; i < total; i ++) {
+            final int s = (int) keys[i];
+            if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32) {
+                if (blocks > 0) {
+                    end[blocks - 1] = i;
+                }
+                first[blocks++] = i;
+            }
+            elems[i] = s;
+            loc[s] = i;
+            blockOf[s] = blocks - 1;
+        }
+        end[blocks - 1] = total;
+
+        final int[] work = new int[total];
+        final boolean[] inWork = new boolean[total];
+        int workCnt = 0;
+        for (int b = 0; b < blocks; b ++) {
+            work[workCnt++] = b;
+            inWork[b] = true;
+        }
+        final int[] splitter = new int[total];
+        final int[] touched = new int[total];
+        while (workCnt > 0) {
+            final int b = work[--workCnt];
+            inWork[b] = false;
+            final int size = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, size);
+            for (int c = 0; c < k; c ++) {
+                int touchedCnt = 0;
+                // mark every state with a transition into the splitter on this class
+                for (int j = 0; j < size; j ++) {
+                    final int idx = c * total + splitter[j];
+                    for (int x = invStart[idx]; x < invStart[idx + 1]; x ++) {
+                        final int s = inv[x];
+                        final int y = blockOf[s];
+                        final int m = first[y] + marked[y];
+                        final int p = loc[s];
+                        if (p >= m) {
+                            final int other = elems[m];
+                            elems[m] = s;
+                            loc[s] = m;
+                            elems[p] = other;
+                            loc[other] = p;
+                            if (marked[y]++ == 0) {
+                                touched[touchedCnt++] = y;
+                            }
+                        }
+                    }
+                }
+                // split every block which is only partly marked
+                for (int t = 0; t < touchedCnt; t ++) {
+                    final int y = touched[t];
+                    final int m = marked[y];
+                    marked[y] = 0;
+                    if (m == end[y] - first[y]) {
+                        continue;
+                    }
+                    final int z = blocks++;
+                    first[z] = first[y];
+                    end[z] = first[y] + m;
+                    first[y] = end[z];
+                    for (int i = first[z]; i < end[z]; i ++) {
+                        blockOf[elems[i]] = z;
+                    }
+                    final int add = inWork[y] || m < end[y] - first[y] ? z : y;
+                    work[workCnt++] = add;
+                    inWork[add] = true;
+                }
+            }
+        }
+
+        // number the live blocks breadth-first from the start states
+        final int deadBlock = blockOf[dead];
+        final int[] newId = new int[blocks];
+        Arrays.fill(newId, -1);
+        final int[] order = new int[blocks];
+        int cnt = 0;
+        final int[] newStarts = new int[starts.length];
+        for (int i = 0; i < starts.length; i ++) {
+            final int b = starts[i] == -1 ? deadBlock : blockOf[starts[i]];
+            if (b == deadBlock) {
+                newStarts[i] = -1;
+                continue;
+            }
+            if (newId[b] == -1) {
+                newId[b] = cnt;
+                order[cnt++] = b;
+            }
+            newStarts[i] = newId[b];
+        }
+        for (int i = 0; i < cnt; i ++) {
+            final int rep = elems[first[order[i]]];
+            for (int c = 0; c < k; c ++) {
+                final int b = blockOf[target(rep, c)];
+                if (b != deadBlock && newId[b] == -1) {
+                    newId[b] = cnt;
+                    order[cnt++] = b;
+                }
+            }
+        }
+        final int[][] newTransitions = new int[cnt][];
+        final int[] newAccept = new int[cnt];
+        for (int i = 0; i < cnt; i ++) {
+            final int rep = elems[first[order[i]]];
+            final int[] row = newTransitions[i] = new int[k];
+            for (int c = 0; c < k; c ++) {
+                final int b = blockOf[target(rep, c)];
+                row[c] = b == deadBlock ? -1 : newId[b];
+            }
+            newAccept[i] = accept[rep];
+        }
+        return new Dfa(intervals, intervalClasses, newTransitions, newAccept, newStarts);
+    }
+
+    private int target(int state, int charClass) {
+        if (state == accept.length) {
+            return state;
+        }
+        final int target = transitions[state][charClass];
+        return target == -1 ? accept.length : target;
+    }
+
+    /**
+     * Run this DFA over a string.
+     *
+     * @param state the state to start in
+     * @param text the string
+     * @return the state reached at the end of the string, or -1 if the DFA has no transition for some character
+     */
+    int run(int state, String text) {
+        for (int i = 0; i < text.length() && state != -1; ) {
+            final int codePoint = text.codePointAt(i);
+            final int idx = Arrays.binarySearch(intervals, codePoint);
+            state = transitions[state][intervalClasses[idx >= 0 ? idx : -idx - 2]];
+            i += Character.charCount(codePoint);
+        }
+        return state;
+    }
+
+    int getStateCount() {
+        return accept.length;
+    }
+
+    int[] getIntervals() {
+        return intervals;
+    }
+
+    int[] getIntervalClasses() {
+        return intervalClasses;
+    }
+
+    int getClassCount() {
+        int max = -1;
+        for (int c : intervalClasses) {
+            max = Math.max(max, c);
+        }
+        return max + 1;
+    }
+
+    int[] getTransitions(int state) {
+        return transitions[state];
+    }
+
+    int getAccept(int state) {
+        return accept[state];
+    }
+
+    int[] getStarts() {
+        return starts;
+    }
+}
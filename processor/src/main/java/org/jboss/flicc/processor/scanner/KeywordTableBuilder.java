@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import org.jboss.flicc.KeywordTable;
+import org.jboss.flicc.ScannerTables;
+
+/**
+ * Builds a {@link KeywordTable} by the CHD method.  Keywords are hashed into buckets of about four, and the buckets are
+ * placed largest first, each with the smallest displacement which moves all of its keywords into free slots.  If some
+ * bucket cannot be placed, the whole table is rebuilt with another hash seed.
+ */
+final class KeywordTableBuilder {
+    private static final int MAX_SEEDS = 1000;
+
+    private KeywordTableBuilder() {
+    }
+
+    /**
+     * Build a keyword table.
+     *
+     * @param identifierRule the token rule which matches every keyword
+     * @param texts the keyword texts, which must be distinct
+     * @param rules the token rule of each keyword
+     * @return the table
+     */
+    static KeywordTable build(int identifierRule, String[] texts, int[] rules) {
+        final int n = texts.length;
+        final int slotCount = n + (n >> 2) + 1;
+        final int bucketCount = (n + 3) >> 2;
+        final char[][] keys = new char[n][];
+        for (int i = 0; i < n; i ++) {
+            keys[i] = texts[i].toCharArray();
+        }
+        final int[] slotOf = new int[n];
+        for (int seed = 0; seed < MAX_SEEDS; seed ++) {
+            final int[] displacements = place(keys, seed, slotCount, bucketCount, slotOf);
+            if (displacements == null) {
+                continue;
+            }
+            final int[] slotRules = new int[slotCount];
+            final String[] slotTexts = new String[slotCount];
+            Arrays.fill(slotRules, ScannerTables.NONE);
+            for (int i = 0; i < n; i ++) {
+                slotRules[slotOf[i]] = rules[i];
+                slotTexts[slotOf[i]] = texts[i];
+            }
+            final int[] offsets = new int[slotCount + 1];
+            final StringBuilder chars = new StringBuilder();
+            for (int s = 0; s < slotCount; s ++) {
+                if (slotTexts[s] != null) {
+                    chars.append(slotTexts[s]);
+                }
+                offsets[s + 1] = chars.length();
+            }
+            return new KeywordTable(identifierRule, seed, displacements, slotRules, offsets, chars.toString().toCharArray());
+        }
+        throw new IllegalStateException("No perfect hash found for " + n + " keywords");
+    }
+
+    private static int[] place(char[][] keys, int seed, int slotCount, int bucketCount, int[] slotOf) {
+        final int n = keys.length;
+        final long[] hashes = new long[n];
+        final int[] bucketSizes = new int[bucketCount];
+        final int[] bucketOf = new int[n];
+        for (int i = 0; i < n; i ++) {
+            hashes[i] = KeywordTable.hash(keys[i], 0, keys[i].length, seed);
+            bucketSizes[bucketOf[i] = KeywordTable.getBucket(hashes[i], bucketCount)] ++;
+        }
+        final int[][] buckets = new int[bucketCount][];
+        for (int b = 0; b < bucketCount; b ++) {
+            buckets[b] = new int[bucketSizes[b]];
+            bucketSizes[b] = 0;
+        }
+        for (int i = 0; i < n; i ++) {
+            final int b = bucketOf[i];
+            buckets[b][bucketSizes[b]++] = i;
+        }
+        final Integer[] order = new Integer[bucketCount];
+        for (int b = 0; b < bucketCount; b ++) {
+            order[b] = Integer.valueOf(b);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer o1, final Integer o2) {
+                return buckets[o2.intValue()].length - buckets[o1.intValue()].length;
+            }
+        });
+        final int maxDisplacement = (int) Math.min((long) slotCount * slotCount, Integer.MAX_VALUE);
+        final boolean[] used = new boolean[slotCount];
+        final int[] displacements = new int[bucketCount];
+        for (Integer boxed : order) {
+            final int[] bucket = buckets[boxed.intValue()];
+            if (bucket.length == 0) {
+                break;
+            }
+            final int[] slots = new int[bucket.length];
+            int d;
+            search: for (d = 0; d < maxDisplacement; d ++) {
+                for (int j = 0; j < bucket.length; j ++) {
+                    final int slot = KeywordTable.getSlot(hashes[bucket[j]], d, slotCount);
+                    if (used[slot]) {
+                        continue search;
+                    }
+                    for (int i = 0; i < j; i ++) {
+                        if (slots[i] == slot) {
+                            continue search;
+                        }
+                    }
+                    slots[j] = slot;
+                }
+                break;
+            }
+            if (d == maxDisplacement) {
+                return null;
+            }
+            displacements[boxed.intValue()] = d;
+            for (int j = 0; j < bucket.length; j ++) {
+                used[slots[j]] = true;
+                slotOf[bucket[j]] = slots[j];
+            }
+        }
+        return displacements;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A nondeterministic finite automaton built by Thompson's construction.  Every state has at most one transition on
+ * a set of characters, any number of epsilon transitions, and may accept a token rule.
+ */
+final class Nfa {
+    private static final int[] NO_EPSILONS = new int[0];
+    // the largest code point of each encoded length but the last
+    private static final int[] UTF8_LIMITS = { 0x7f, 0x7ff, 0xffff };
+
+    private int stateCount;
+    private CharSet[] edgeSets = new CharSet[64];
+    private int[] edgeTargets = new int[64];
+    private int[][] epsilons = new int[64][];
+    private int[] accept = new int[64];
+
+    int newState() {
+        final int state = stateCount++;
+        if (state == accept.length) {
+            final int capacity = state << 1;
+            edgeSets = Arrays.copyOf(edgeSets, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+            epsilons = Arrays.copyOf(epsilons, capacity);
+            accept = Arrays.copyOf(accept, capacity);
+        }
+        epsilons[state] = NO_EPSILONS;
+        accept[state] = -1;
+        return state;
+    }
+
+    void setEdge(int from, CharSet set, int to) {
+        if (edgeSets[from] != null) {
+            throw new IllegalStateException("State " + from + " already has a transition");
+        }
+        edgeSets[from] = set;
+        edgeTargets[from] = to;
+    }
+
+    void addEpsilon(int from, int to) {
+        final int[] old = epsilons[from];
+        final int[] updated = Arrays.copyOf(old, old.length + 1);
+        updated[old.length] = to;
+        epsilons[from] = updated;
+    }
+
+    void setAccept(int state, int rule) {
+        accept[state] = rule;
+    }
+
+    int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Get the character set of a state's transition.
+     *
+     * @param state the state
+     * @return the character set, or {@code null} if the state has no transition
+     */
+    CharSet getEdgeSet(int state) {
+        return edgeSets[state];
+    }
+
+    int getEdgeTarget(int state) {
+        return edgeTargets[state];
+    }
+
+    int getAccept(int state) {
+        return accept[state];
+    }
+
+    /**
+     * Add every state reachable by epsilon transitions to a set of states.
+     *
+     * @param states the set of states, which is updated in place
+     */
+    void closure(BitSet states) {
+        int[] stack = new int[16];
+        int sp = 0;
+        for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+            if (sp == stack.length) {
+                stack = Arrays.copyOf(stack, sp << 1);
+            }
+            stack[sp++] = s;
+        }
+        while (sp > 0) {
+            for (int target : epsilons[stack[--sp]]) {
+                if (! states.get(target)) {
+                    states.set(target);
+                    if (sp == stack.length) {
+                        stack = Arrays.copyOf(stack, sp << 1);
+                    }
+                    stack[sp++] = target;
+                }
+            }
+        }
+    }
+
+    /**
+     * Translate this automaton into one over the bytes of the UTF-8 encoding of its input.  Every state keeps its
+     * number, and each transition is replaced by epsilon transitions to chains of byte range transitions.  Each chain
+     * covers a range of code points whose encodings have the same length and differ only in the bytes which the
+     * chain's ranges span.  Surrogate code points, which have no valid encoding, are dropped.
+     *
+     * @return the byte automaton
+     */
+    Nfa toUtf8() {
+        final Nfa bytes = new Nfa();
+        for (int s = 0; s < stateCount; s ++) {
+            bytes.newState();
+        }
+        for (int s = 0; s < stateCount; s ++) {
+            for (int target : epsilons[s]) {
+                bytes.addEpsilon(s, target);
+            }
+            bytes.setAccept(s, accept[s]);
+            final CharSet set = edgeSets[s];
+            if (set != null) {
+                final int[] ranges = set.getRanges();
+                for (int i = 0; i < ranges.length; i += 2) {
+                    addUtf8(bytes, s, ranges[i], ranges[i + 1] - 1, edgeTargets[s]);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static void addUtf8(Nfa bytes, int from, int first, int last, int to) {
+        if (first > last) {
+            return;
+        }
+        if (first <= Character.MAX_SURROGATE && last >= Character.MIN_SURROGATE) {
+            addUtf8(bytes, from, first, Character.MIN_SURROGATE - 1, to);
+            addUtf8(bytes, from, Character.MAX_SURROGATE + 1, last, to);
+            return;
+        }
+        for (int limit : UTF8_LIMITS) {
+            if (first <= limit && last > limit) {
+                addUtf8(bytes, from, first, limit, to);
+                addUtf8(bytes, from, limit + 1, last, to);
+                return;
+            }
+        }
+        // split until each continuation byte spans either a single value or its whole range
+        for (int i = 1; i < 4 && last > 0x7f; i ++) {
+            final int mask = (1 << 6 * i) - 1;
+            if ((first & ~mask) != (last & ~mask)) {
+                if ((first & mask) != 0) {
+                    addUtf8(bytes, from, first, first | mask, to);
+                    addUtf8(bytes, from, (first | mask) + 1, last, to);
+                    return;
+                }
+                if ((last & mask) != mask) {
+                    addUtf8(bytes, from, first, (last & ~mask) - 1, to);
+                    addUtf8(bytes, from, last & ~mask, last, to);
+                    return;
+                }
+            }
+        }
+        final int[] firstBytes = encode(first);
+        final int[] lastBytes = encode(last);
+        int state = bytes.newState();
+        bytes.addEpsilon(from, state);
+        for (int i = 0; i < firstBytes.length; i ++) {
+            final int next = i == firstBytes.length - 1 ? to : bytes.newState();
+            bytes.setEdge(state, CharSet.range(firstBytes[i], lastBytes[i]), next);
+            state = next;
+        }
+    }
+
+    private static int[] encode(int codePoint) {
+        if (codePoint < 0x80) {
+            return new int[] { codePoint };
+        } else if (codePoint < 0x800) {
+            return new int[] { 0xc0 | codePoint >> 6, 0x80 | codePoint & 0x3f };
+        } else if (codePoint < 0x10000) {
+            return new int[] { 0xe0 | codePoint >> 12, 0x80 | codePoint >> 6 & 0x3f, 0x80 | codePoint & 0x3f };
+        } else {
+            return new int[] { 0xf0 | codePoint >> 18, 0x80 | codePoint >> 12 & 0x3f, 0x80 | codePoint >> 6 & 0x3f, 0x80 | codePoint & 0x3f };
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+/**
+ * A parsed regular expression.  Every node can add itself to an {@link Nfa} by Thompson's construction.
+ */
+abstract class Regex {
+
+    /**
+     * Add the states of this expression to an NFA.
+     *
+     * @param nfa the NFA
+     * @param start the state to start from, which must not have a labelled transition yet
+     * @return the state in which this expression ends, which has no labelled transition
+     */
+    abstract int addTo(Nfa nfa, int start);
+
+    /**
+     * Get an expression which matches a literal string.
+     *
+     * @param text the literal string
+     * @return the expression
+     */
+    static Regex literal(String text) {
+        final Regex[] items = new Regex[text.codePointCount(0, text.length())];
+        int idx = 0;
+        for (int i = 0; i < items.length; i ++) {
+            final int codePoint = text.codePointAt(idx);
+            items[i] = new Chars(CharSet.of(codePoint));
+            idx += Character.charCount(codePoint);
+        }
+        return items.length == 1 ? items[0] : new Concat(items);
+    }
+
+    static final class Chars extends Regex {
+        private final CharSet set;
+
+        Chars(final CharSet set) {
+            this.set = set;
+        }
+
+        int addTo(final Nfa nfa, final int start) {
+            final int end = nfa.newState();
+            nfa.setEdge(start, set, end);
+            return end;
+        }
+    }
+
+    static final class Concat extends Regex {
+        private final Regex[] items;
+
+        Concat(final Regex[] items) {
+            this.items = items;
+        }
+
+        int addTo(final Nfa nfa, final int start) {
+            int state = start;
+            for (Regex item : items) {
+                state = item.addTo(nfa, state);
+            }
+            return state;
+        }
+    }
+
+    static final class Alternation extends Regex {
+        private final Regex[] alternatives;
+
+        Alternation(final Regex[] alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        int addTo(final Nfa nfa, final int start) {
+            final int end = nfa.newState();
+            for (Regex alternative : alternatives) {
+                final int state = nfa.newState();
+                nfa.addEpsilon(start, state);
+                nfa.addEpsilon(alternative.addTo(nfa, state), end);
+            }
+            return end;
+        }
+    }
+
+    static final class Repeat extends Regex {
+        private final Regex body;
+        private final int min;
+        private final int max;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param body the repeated expression
+         * @param min the minimum number of repetitions
+         * @param max the maximum number of repetitions, or -1 for no limit
+         */
+        Repeat(final Regex body, final int min, final int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+
+        int addTo(final Nfa nfa, final int start) {
+            int state = start;
+            for (int i = 0; i < min; i ++) {
+                state = body.addTo(nfa, state);
+            }
+            final int end = nfa.newState();
+            if (max == -1) {
+                final int loop = nfa.newState();
+                nfa.addEpsilon(state, loop);
+                nfa.addEpsilon(body.addTo(nfa, loop), loop);
+                nfa.addEpsilon(loop, end);
+            } else {
+                for (int i = min; i < max; i ++) {
+                    nfa.addEpsilon(state, end);
+                    state = body.addTo(nfa, state);
+                }
+                nfa.addEpsilon(state, end);
+            }
+            return end;
+        }
+    }
+}
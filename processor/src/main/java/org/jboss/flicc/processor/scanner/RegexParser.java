@@ -0,0 +1,423 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A parser for the regular expressions of token patterns.  The syntax is the subset of {@link java.util.regex.Pattern}
+ * which a DFA can recognize: alternation, grouping, the greedy quantifiers (including bounded repetition), {@code .},
+ * character classes with ranges, negation and nesting, the predefined classes ({@code \d}, {@code \s}, {@code \w} and
+ * their negations), Unicode property classes ({@code \p{...}} and {@code \P{...}}), quoting with {@code \Q...\E} and
+ * the usual character escapes.  Anchors, back references, look-around, lazy or possessive quantifiers, flags and
+ * class intersection are rejected.
+ */
+final class RegexParser {
+    private static final int MAX_REPEAT = 1000;
+    private static final CharSet DOT;
+    private static final CharSet DIGIT = CharSet.range('0', '9');
+    private static final CharSet SPACE;
+    private static final CharSet WORD;
+    private static final Map<String, CharSet> PROPERTIES = new HashMap<String, CharSet>();
+
+    static {
+        CharSet.Builder builder = new CharSet.Builder();
+        builder.add('\n', '\n');
+        builder.add('\r', '\r');
+        builder.add(0x85, 0x85);
+        builder.add(0x2028, 0x2029);
+        DOT = builder.build().complement();
+        builder = new CharSet.Builder();
+        builder.add(' ', ' ');
+        builder.add('\t', '\r');
+        SPACE = builder.build();
+        builder = new CharSet.Builder();
+        builder.add('a', 'z');
+        builder.add('A', 'Z');
+        builder.add('0', '9');
+        builder.add('_', '_');
+        WORD = builder.build();
+    }
+
+    private final String pattern;
+    private int pos;
+
+    private RegexParser(final String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parse a pattern.
+     *
+     * @param pattern the pattern
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the pattern is invalid or uses an unsupported construct
+     */
+    static Regex parse(String pattern) throws IllegalArgumentException {
+        final RegexParser parser = new RegexParser(pattern);
+        final Regex regex = parser.alternation();
+        if (parser.pos < pattern.length()) {
+            throw parser.error("Unmatched ')'");
+        }
+        return regex;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at index " + pos + " of pattern \"" + pattern + "\"");
+    }
+
+    private boolean atEnd() {
+        return pos == pattern.length();
+    }
+
+    private int peek() {
+        return pattern.codePointAt(pos);
+    }
+
+    private int read() {
+        if (atEnd()) {
+            throw error("Unexpected end of pattern");
+        }
+        final int codePoint = pattern.codePointAt(pos);
+        pos += Character.charCount(codePoint);
+        return codePoint;
+    }
+
+    private boolean accept(int codePoint) {
+        if (! atEnd() && peek() == codePoint) {
+            pos += Character.charCount(codePoint);
+            return true;
+        }
+        return false;
+    }
+
+    private Regex alternation() {
+        final List<Regex> alternatives = new ArrayList<Regex>();
+        do {
+            alternatives.add(concat());
+        } while (accept('|'));
+        return alternatives.size() == 1 ? alternatives.get(0) : new Regex.Alternation(alternatives.toArray(new Regex[alternatives.size()]));
+    }
+
+    private Regex concat() {
+        final List<Regex> items = new ArrayList<Regex>();
+        while (! atEnd() && peek() != '|' && peek() != ')') {
+            if (pattern.startsWith("\\Q", pos)) {
+                pos += 2;
+                int end = pattern.indexOf("\\E", pos);
+                if (end == -1) {
+                    end = pattern.length();
+                }
+                final String quoted = pattern.substring(pos, end);
+                pos = Math.min(end + 2, pattern.length());
+                if (quoted.length() > 0) {
+                    items.add(Regex.literal(quoted));
+                }
+                continue;
+            }
+            items.add(repeat(atom()));
+        }
+        return items.size() == 1 ? items.get(0) : new Regex.Concat(items.toArray(new Regex[items.size()]));
+    }
+
+    private Regex repeat(Regex atom) {
+        for (;;) {
+            final int min, max;
+            if (accept('*')) {
+                min = 0;
+                max = -1;
+            } else if (accept('+')) {
+                min = 1;
+                max = -1;
+            } else if (accept('?')) {
+                min = 0;
+                max = 1;
+            } else if (accept('{')) {
+                min = number();
+                if (accept(',')) {
+                    max = atEnd() || peek() == '}' ? -1 : number();
+                } else {
+                    max = min;
+                }
+                if (! accept('}')) {
+                    throw error("Unclosed repetition");
+                }
+                if (max != -1 && max < min) {
+                    throw error("Illegal repetition range");
+                }
+            } else {
+                return atom;
+            }
+            if (! atEnd() && (peek() == '?' || peek() == '+')) {
+                throw error("Lazy and possessive quantifiers are not supported");
+            }
+            atom = new Regex.Repeat(atom, min, max);
+        }
+    }
+
+    private int number() {
+        final int start = pos;
+        while (! atEnd() && peek() >= '0' && peek() <= '9') {
+            pos ++;
+        }
+        if (start == pos) {
+            throw error("Expected a number");
+        }
+        if (pos - start > 4 || Integer.parseInt(pattern.substring(start, pos)) > MAX_REPEAT) {
+            throw error("Repetition count exceeds " + MAX_REPEAT);
+        }
+        return Integer.parseInt(pattern.substring(start, pos));
+    }
+
+    private Regex atom() {
+        final int c = read();
+        switch (c) {
+            case '(': {
+                if (accept('?')) {
+                    if (! accept(':')) {
+                        throw error("Only non-capturing groups are supported");
+                    }
+                }
+                final Regex regex = alternation();
+                if (! accept(')')) {
+                    throw error("Unclosed group");
+                }
+                return regex;
+            }
+            case '[': {
+                return new Regex.Chars(charClass());
+            }
+            case '.': {
+                return new Regex.Chars(DOT);
+            }
+            case '^':
+            case '$': {
+                throw error("Anchors are not supported");
+            }
+            case '*':
+            case '+':
+            case '?':
+            case '{': {
+                throw error("Dangling meta character '" + (char) c + "'");
+            }
+            case '\\': {
+                final CharSet set = classEscape();
+                return new Regex.Chars(set != null ? set : CharSet.of(charEscape()));
+            }
+            default: {
+                return new Regex.Chars(CharSet.of(c));
+            }
+        }
+    }
+
+    private CharSet charClass() {
+        final boolean negated = accept('^');
+        final CharSet.Builder builder = new CharSet.Builder();
+        boolean first = true;
+        while (first || ! accept(']')) {
+            first = false;
+            if (atEnd()) {
+                throw error("Unclosed character class");
+            }
+            if (accept('[')) {
+                builder.add(charClass());
+                continue;
+            }
+            if (pattern.startsWith("&&", pos)) {
+                throw error("Character class intersection is not supported");
+            }
+            final int low;
+            if (accept('\\')) {
+                final CharSet set = classEscape();
+                if (set != null) {
+                    builder.add(set);
+                    continue;
+                }
+                low = charEscape();
+            } else {
+                low = read();
+            }
+            if (pattern.startsWith("-", pos) && ! pattern.startsWith("-]", pos)) {
+                pos ++;
+                final int high = accept('\\') ? charEscape() : read();
+                if (high < low) {
+                    throw error("Illegal character range");
+                }
+                builder.add(low, high);
+            } else {
+                builder.add(low, low);
+            }
+        }
+        final CharSet set = builder.build();
+        return negated ? set.complement() : set;
+    }
+
+    /**
+     * Parse an escape which denotes a character class, just after the backslash.
+     *
+     * @return the class, or {@code null} if the escape denotes a single character
+     */
+    private CharSet classEscape() {
+        if (atEnd()) {
+            throw error("Unexpected end of pattern");
+        }
+        final int c = peek();
+        final CharSet set;
+        switch (c) {
+            case 'd': set = DIGIT; break;
+            case 'D': set = DIGIT.complement(); break;
+            case 's': set = SPACE; break;
+            case 'S': set = SPACE.complement(); break;
+            case 'w': set = WORD; break;
+            case 'W': set = WORD.complement(); break;
+            case 'p':
+            case 'P': {
+                pos ++;
+                final String name;
+                if (accept('{')) {
+                    final int end = pattern.indexOf('}', pos);
+                    if (end == -1) {
+                        throw error("Unclosed character property");
+                    }
+                    name = pattern.substring(pos, end);
+                    pos = end + 1;
+                } else {
+                    name = new String(Character.toChars(read()));
+                }
+                final CharSet property = property(name);
+                return c == 'p' ? property : property.complement();
+            }
+            default: return null;
+        }
+        pos ++;
+        return set;
+    }
+
+    /**
+     * Parse an escape which denotes a single character, just after the backslash.
+     *
+     * @return the code point
+     */
+    private int charEscape() {
+        final int c = read();
+        switch (c) {
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case 'a': return '\u0007';
+            case 'e': return '\u001b';
+            case '0': {
+                int value = 0;
+                for (int i = 0; i < 3 && ! atEnd() && peek() >= '0' && peek() <= '7' && value * 8 + peek() - '0' <= 0377; i ++) {
+                    value = value * 8 + read() - '0';
+                }
+                return value;
+            }
+            case 'x': {
+                if (accept('{')) {
+                    final int end = pattern.indexOf('}', pos);
+                    if (end == -1) {
+                        throw error("Unclosed hexadecimal escape");
+                    }
+                    final int value = hex(pattern.substring(pos, end));
+                    pos = end + 1;
+                    if (value > Character.MAX_CODE_POINT) {
+                        throw error("Hexadecimal code point out of range");
+                    }
+                    return value;
+                }
+                return hex(2);
+            }
+            case 'u': {
+                return hex(4);
+            }
+            case 'c': {
+                return read() ^ 64;
+            }
+            default: {
+                if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9') {
+                    throw error("Unsupported escape sequence '\\" + (char) c + "'");
+                }
+                return c;
+            }
+        }
+    }
+
+    private int hex(int digits) {
+        if (pattern.length() - pos < digits) {
+            throw error("Illegal hexadecimal escape");
+        }
+        final int value = hex(pattern.substring(pos, pos + digits));
+        pos += digits;
+        return value;
+    }
+
+    private int hex(String digits) {
+        try {
+            if (digits.length() == 0 || digits.length() > 8) {
+                throw new NumberFormatException();
+            }
+            return Integer.parseInt(digits, 16);
+        } catch (NumberFormatException e) {
+            throw error("Illegal hexadecimal escape");
+        }
+    }
+
+    private CharSet property(String name) {
+        synchronized (PROPERTIES) {
+            CharSet set = PROPERTIES.get(name);
+            if (set == null) {
+                // let java.util.regex define the property, by testing every code point against it
+                final Matcher matcher;
+                try {
+                    matcher = java.util.regex.Pattern.compile("\\p{" + name + "}").matcher("");
+                } catch (PatternSyntaxException e) {
+                    throw error("Unknown character property '" + name + "'");
+                }
+                final CharSet.Builder builder = new CharSet.Builder();
+                int first = -1;
+                for (int codePoint = 0; codePoint < CharSet.LIMIT; codePoint ++) {
+                    if (matcher.reset(new String(Character.toChars(codePoint))).matches()) {
+                        if (first == -1) {
+                            first = codePoint;
+                        }
+                    } else if (first != -1) {
+                        builder.add(first, codePoint - 1);
+                        first = -1;
+                    }
+                }
+                if (first != -1) {
+                    builder.add(first, CharSet.LIMIT - 1);
+                }
+                PROPERTIES.put(name, set = builder.build());
+            }
+            return set;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+import org.jboss.flicc.KeywordTable;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.TokenRule;
+
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+
+import static javax.tools.Diagnostic.Kind.*;
+
+/**
+ * Generates the scanner of a grammar.  Every token rule is compiled into a Thompson NFA fragment, and the fragments
+ * of the rules which apply in each scanner state are combined by subset construction into a single DFA with one start
+ * state per scanner state.  The DFA is then minimized by Hopcroft's algorithm.  The scanner takes the longest match,
+ * and among rules matching the same text, the one declared first.
+ * <p>
+ * Code points which are treated identically by every DFA state form a character class, and the transition table has
+ * one column per class.  The classes are merged both before minimization, which keeps it fast, and after it, since
+ * merging states can make more columns identical.
+ * <p>
+ * When enough literal rules are keywords which a single identifier pattern also matches, they are left out of the DFA
+ * and recognized instead by looking up the text matched by the identifier rule in a perfect hash table.  A DFA
+ * simulation checks that this never changes which rule matches.
+ * <p>
+ * For a grammar with byte input, the NFA is translated to run over UTF-8 bytes before the subset construction, so the
+ * DFA, its classes and the keyword texts are all in terms of bytes.
+ */
+public final class ScannerGenerator {
+
+    /**
+     * The smallest number of keywords worth recognizing by perfect hash rather than in the DFA.
+     */
+    private static final int MIN_KEYWORDS = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * Generate the scanner tables for a grammar, reporting any problems to the processing environment.
+     *
+     * @param grammar the grammar
+     * @param env the processing environment
+     * @return the scanner tables, or {@code null} if a token rule is invalid
+     */
+    public ScannerTables generate(final Grammar grammar, final ProcessingEnvironment env) {
+        final Messager messager = env.getMessager();
+        final List<TokenRule> rules = grammar.getTokenRules();
+        final int ruleCount = rules.size();
+        final Nfa nfa = new Nfa();
+        final int[] ruleStarts = new int[ruleCount];
+        final int[] ruleTerminals = new int[ruleCount];
+        int syncCount = 0;
+        boolean ok = true;
+        for (int i = 0; i < ruleCount; i ++) {
+            final TokenRule rule = rules.get(i);
+            final Regex regex;
+            try {
+                regex = rule.isPattern() ? RegexParser.parse(rule.getValue()) : Regex.literal(rule.getValue());
+            } catch (IllegalArgumentException e) {
+                messager.printMessage(ERROR, "Invalid pattern ($P): " + e.getMessage(), rule.getElement());
+                ok = false;
+                continue;
+            }
+            final int start = ruleStarts[i] = nfa.newState();
+            final int end = regex.addTo(nfa, start);
+            nfa.setAccept(end, i);
+            final BitSet closure = new BitSet();
+            closure.set(start);
+            nfa.closure(closure);
+            if (closure.get(end)) {
+                messager.printMessage(ERROR, "Token rule " + rule + " matches the empty string", rule.getElement());
+                ok = false;
+            }
+            // terminal 0 is the end of input
+            ruleTerminals[i] = rule.getTerminal() == null ? ScannerTables.NONE : grammar.getInputs().indexOf(rule.getTerminal()) + 1;
+            if (rule.isSync()) {
+                syncCount ++;
+            }
+        }
+        if (! ok) {
+            return null;
+        }
+        final boolean byteInput = grammar.isByteInput();
+        final Nfa input = byteInput ? nfa.toUtf8() : nfa;
+        final int[] stateValues = new int[grammar.getScannerStates().size()];
+        int idx = 0;
+        for (Integer value : grammar.getScannerStates().keySet()) {
+            stateValues[idx++] = value.intValue();
+        }
+        Dfa subsets = build(input, rules, ruleStarts, stateValues, new BitSet());
+        final Dfa full = subsets.mergeClasses().minimize().mergeClasses();
+        final BitSet accepted = new BitSet(ruleCount);
+        for (int s = 0; s < full.getStateCount(); s ++) {
+            if (full.getAccept(s) != -1) {
+                accepted.set(full.getAccept(s));
+            }
+        }
+        for (int i = 0; i < ruleCount; i ++) {
+            if (! accepted.get(i)) {
+                messager.printMessage(WARNING, "Token rule " + rules.get(i) + " can never match, because earlier rules match the same text or it applies in no scanner state", rules.get(i).getElement());
+            }
+        }
+
+        Dfa dfa = full;
+        KeywordTable keywordTable = null;
+        final BitSet keywords = new BitSet(ruleCount);
+        final int identifierRule = findKeywords(rules, stateValues, full, keywords, byteInput);
+        if (identifierRule != -1) {
+            // leave the keywords out, and make sure that the identifier rule now matches each of them instead
+            Dfa reducedSubsets = build(input, rules, ruleStarts, stateValues, keywords);
+            Dfa reduced = reducedSubsets.mergeClasses().minimize().mergeClasses();
+            final BitSet failed = new BitSet(ruleCount);
+            for (int k = keywords.nextSetBit(0); k >= 0; k = keywords.nextSetBit(k + 1)) {
+                if (! accepts(reduced, stateValues, rules.get(k), identifierRule, byteInput)) {
+                    failed.set(k);
+                }
+            }
+            if (! failed.isEmpty()) {
+                // putting a keyword back only affects the acceptance of its own text
+                keywords.andNot(failed);
+                reducedSubsets = build(input, rules, ruleStarts, stateValues, keywords);
+                reduced = reducedSubsets.mergeClasses().minimize().mergeClasses();
+            }
+            if (keywords.cardinality() >= MIN_KEYWORDS) {
+                final String[] texts = new String[keywords.cardinality()];
+                final int[] keywordRules = new int[texts.length];
+                int cnt = 0;
+                for (int k = keywords.nextSetBit(0); k >= 0; k = keywords.nextSetBit(k + 1)) {
+                    texts[cnt] = getInputText(rules.get(k), byteInput);
+                    keywordRules[cnt++] = k;
+                }
+                keywordTable = KeywordTableBuilder.build(identifierRule, texts, keywordRules);
+                messager.printMessage(NOTE, "Scanner recognizes " + texts.length + " keywords by perfect hash over the text of " + rules.get(identifierRule) + ", reducing the DFA from " + full.getStateCount() + " to " + reduced.getStateCount() + " states", grammar.getElement());
+                subsets = reducedSubsets;
+                dfa = reduced;
+            }
+        }
+
+        final int[] syncRules = new int[syncCount];
+        syncCount = 0;
+        for (int i = 0; i < ruleCount; i ++) {
+            if (rules.get(i).isSync()) {
+                syncRules[syncCount++] = i;
+            }
+        }
+
+        final int stateCount = dfa.getStateCount();
+        final int classCount = dfa.getClassCount();
+        if (classCount > Character.MAX_VALUE) {
+            messager.printMessage(ERROR, "Scanner has too many character classes (" + classCount + ")", grammar.getElement());
+            return null;
+        }
+        final CharClassMap map = new CharClassMap(dfa.getIntervals(), dfa.getIntervalClasses());
+        final int[] accept = new int[stateCount];
+        final int[] transitions = new int[stateCount * classCount];
+        for (int s = 0; s < stateCount; s ++) {
+            accept[s] = dfa.getAccept(s);
+            System.arraycopy(dfa.getTransitions(s), 0, transitions, s * classCount, classCount);
+        }
+        messager.printMessage(NOTE, "Scanner DFA has " + stateCount + " states (" + subsets.getStateCount() + " before minimization) over " + classCount + " character classes (" + dfa.getIntervals().length + " intervals)", grammar.getElement());
+        final ScannerTables tables = new ScannerTables(stateValues, dfa.getStarts(), map.getBmpIndex(), map.getBmpClasses(), map.getSupplementaryStarts(), map.getSupplementaryClasses(), classCount, transitions, accept, ruleTerminals, syncRules, keywordTable, byteInput);
+        messager.printMessage(NOTE, "Scanner tables use " + tables.getSize() + " entries: " + transitions.length + " transitions (" + stateCount * (byteInput ? 256L : 0x110000L) + " without character classes), " + map.getBlockCount() + " distinct BMP blocks of 256 classes and " + map.getSupplementaryStarts().length + " supplementary ranges", grammar.getElement());
+        return tables;
+    }
+
+    private static Dfa build(Nfa nfa, List<TokenRule> rules, int[] ruleStarts, int[] stateValues, BitSet excluded) {
+        final int[][] startSets = new int[stateValues.length][];
+        for (int idx = 0; idx < stateValues.length; idx ++) {
+            final List<Integer> starts = new ArrayList<Integer>();
+            for (int i = 0; i < ruleStarts.length; i ++) {
+                if (! excluded.get(i) && rules.get(i).appliesIn(stateValues[idx])) {
+                    starts.add(Integer.valueOf(ruleStarts[i]));
+                }
+            }
+            final int[] set = startSets[idx] = new int[starts.size()];
+            for (int i = 0; i < set.length; i ++) {
+                set[i] = starts.get(i).intValue();
+            }
+        }
+        return Dfa.build(nfa, startSets);
+    }
+
+    /**
+     * Find the identifier rule which matches the most keywords.  A keyword is a literal which is declared before the
+     * identifier rule, applies in the same scanner states, is matched by the identifier rule and is not shadowed by
+     * any other rule.
+     *
+     * @return the identifier rule, or -1 if no rule matches enough keywords
+     */
+    private static int findKeywords(List<TokenRule> rules, int[] stateValues, Dfa full, BitSet keywords, boolean byteInput) {
+        int identifierRule = -1;
+        for (int p = 0; p < rules.size(); p ++) {
+            final TokenRule identifier = rules.get(p);
+            if (! identifier.isPattern()) {
+                continue;
+            }
+            // token patterns are a subset of java.util.regex syntax with the same meaning
+            final java.util.regex.Pattern pattern;
+            try {
+                pattern = java.util.regex.Pattern.compile(identifier.getValue());
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+            final BitSet candidates = new BitSet();
+            for (int k = 0; k < p; k ++) {
+                final TokenRule keyword = rules.get(k);
+                if (! keyword.isPattern() && appliesInSameStates(keyword, identifier, stateValues) && pattern.matcher(keyword.getValue()).matches() && accepts(full, stateValues, keyword, k, byteInput)) {
+                    candidates.set(k);
+                }
+            }
+            if (candidates.cardinality() > keywords.cardinality()) {
+                keywords.clear();
+                keywords.or(candidates);
+                identifierRule = p;
+            }
+        }
+        if (keywords.cardinality() < MIN_KEYWORDS) {
+            keywords.clear();
+            return -1;
+        }
+        return identifierRule;
+    }
+
+    /**
+     * Get the text of a literal rule as the DFA sees it: for byte input, as one {@code char} for each byte of its UTF-8
+     * encoding.
+     */
+    private static String getInputText(TokenRule literal, boolean byteInput) {
+        return byteInput ? new String(literal.getValue().getBytes(UTF_8), ISO_8859_1) : literal.getValue();
+    }
+
+    private static boolean appliesInSameStates(TokenRule rule, TokenRule other, int[] stateValues) {
+        for (int state : stateValues) {
+            if (rule.appliesIn(state) != other.appliesIn(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine whether a DFA accepts the given rule for the text of a literal rule, in every scanner state in which
+     * the literal rule applies.
+     */
+    private static boolean accepts(Dfa dfa, int[] stateValues, TokenRule literal, int expected, boolean byteInput) {
+        final String text = getInputText(literal, byteInput);
+        for (int i = 0; i < stateValues.length; i ++) {
+            if (literal.appliesIn(stateValues[i])) {
+                final int start = dfa.getStarts()[i];
+                final int state = start == -1 ? -1 : dfa.run(start, text);
+                if (state == -1 || dfa.getAccept(state) != expected) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -73,17 +73,12 @@ public abstract class ExampleGrammar {
         popState();
     }
 
-    @Flicc.Literal("*") @Assoc(LEFT) @IncludeState(INITIAL)
+    @Flicc.Literal("*") @Assoc(AssocType.LEFT) @IncludeState(INITIAL)
     protected abstract void and();
 
-    @Flicc.Literal("+") @Assoc(LEFT) @IncludeState(INITIAL)
+    @Flicc.Literal("+") @Assoc(AssocType.LEFT) @IncludeState(INITIAL)
     protected abstract void or();
 
-    @Pattern(".") @IncludeState(INITIAL)
-    protected void invalidChar() {
-        // report error
-    }
-
     @Flicc.Literal("\n") @IncludeState(INITIAL)
     protected abstract void eol();
 
@@ -92,6 +87,11 @@ public abstract class ExampleGrammar {
         return Literal.valueOf(text == '1');
     }
 
+    @Pattern(".") @IncludeState(INITIAL)
+    protected void invalidChar() {
+        // report error
+    }
+
     @__("Expr") @Rule("Literal")
     protected abstract Literal literalExpr(@$1 Literal literal);
 
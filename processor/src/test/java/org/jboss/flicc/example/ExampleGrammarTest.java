@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.example;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.Scanner;
+import org.jboss.flicc.ScannerTables;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the tables which the processor generates for the example grammar when the tests are compiled.
+ */
+public final class ExampleGrammarTest {
+
+    @Test
+    public void testTablesAreGenerated() throws IOException {
+        final ParseTables tables = ParseTables.load(ExampleGrammar.class);
+        // the accept production and the seven rules
+        assertEquals(8, tables.getProductionCount());
+        assertTrue(tables.getStateCount() > 0);
+        final ScannerTables scannerTables = ScannerTables.load(ExampleGrammar.class);
+        final Scanner scanner = new Scanner(scannerTables, new StringReader("1+0 \n#"));
+        final List<Integer> rules = new ArrayList<Integer>();
+        int rule;
+        while ((rule = scanner.next()) != Scanner.EOF) {
+            rules.add(Integer.valueOf(rule));
+        }
+        // literal, "+", literal, white space, "\n" and then an invalid character
+        assertEquals(Arrays.asList(7, 5, 7, 0, 6, 8), rules);
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.flicc.AbstractParser;
+import org.jboss.flicc.AbstractParserFactory;
+import org.jboss.flicc.ErrorHandler;
+import org.jboss.flicc.Location;
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.ParseCounters;
+import org.jboss.flicc.ParseException;
+import org.jboss.flicc.ParseMetrics;
+import org.jboss.flicc.Parser;
+import org.jboss.flicc.ParserFactory;
+import org.jboss.flicc.PooledParserFactory;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.Source;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link AbstractParser} and {@link PooledParserFactory}, with a parser of statements which are sums and
+ * products of numbers.
+ */
+public final class AbstractParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL = 0;
+    private static final int COMMENT = 1;
+
+    // token rules
+    private static final int NUMBER = 5;
+    private static final int COMMENT_START = 7;
+    private static final int COMMENT_END = 8;
+
+    private LrAutomaton automaton;
+    private ScannerTables tables;
+    private final List<String> errors = new ArrayList<String>();
+    private final ErrorHandler errorHandler = new ErrorHandler() {
+        public void handleError(final Location location, final String message) {
+            errors.add(location.getFileName() + ":" + location.getLineNumber() + ":" + location.getColumnNumber() + ": " + message);
+        }
+    };
+
+    @Before
+    public void createTables() {
+        final Grammar grammar = new SimpleGrammarBuilder("L")
+            .addState("INITIAL", INITIAL)
+            .addState("COMMENT", COMMENT)
+            .addRule("L", "L E ;")
+            .addRule("L", "")
+            .addRule("E", "E + T")
+            .addRule("E", "T")
+            .addRule("T", "T * F")
+            .addRule("T", "F")
+            .addRule("F", "( E )")
+            .addRule("F", "num")
+            .create();
+        Tokens.add(grammar, "+", false, "+", INITIAL);
+        Tokens.add(grammar, "*", false, "*", INITIAL);
+        Tokens.add(grammar, "(", false, "(", INITIAL);
+        Tokens.add(grammar, ")", false, ")", INITIAL);
+        Tokens.add(grammar, ";", false, ";", INITIAL);
+        Tokens.add(grammar, "num", true, "[0-9]+", INITIAL);
+        Tokens.add(grammar, null, true, "[ \t\n]+", INITIAL);
+        Tokens.add(grammar, null, false, "/*", INITIAL);
+        Tokens.add(grammar, null, false, "*/", COMMENT);
+        Tokens.add(grammar, null, true, "[^*]+|\\*", COMMENT);
+        final RecordingEnvironment env = new RecordingEnvironment();
+        automaton = new LalrGenerator().generate(grammar, env);
+        tables = new ScannerGenerator().generate(grammar, env);
+    }
+
+    private static Source createSource(final String name, final String text) {
+        return new Source() {
+            public String getName() {
+                return name;
+            }
+
+            public Reader open() {
+                return new StringReader(text);
+            }
+        };
+    }
+
+    @Test
+    public void testParseSource() throws IOException {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(createSource("a", "1 + 2 * 3;\n/* 4; * */ (1 + 2) * 3;"));
+        assertEquals(Arrays.asList(7L, 9L), parser.evaluate());
+        assertEquals(0, errors.size());
+        assertEquals("a", parser.getSourceName());
+        assertEquals(2, parser.getLine());
+    }
+
+    @Test
+    public void testAppendedSource() throws IOException {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(createSource("a", "1;\n"));
+        parser.appendInputSource(createSource("b", "2;\n3 x;\n"));
+        assertEquals(Arrays.asList(1L, 2L, 3L), parser.evaluate());
+        assertEquals(Arrays.asList("b:2:3: Unexpected input 'x'"), errors);
+    }
+
+    @Test
+    public void testSyntaxError() throws IOException {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(createSource("a", "1;\n2 + ;"));
+        try {
+            parser.evaluate();
+            fail("Expected a syntax error");
+        } catch (ParseException e) {
+            assertEquals(2, e.getLocation().getLineNumber());
+            assertEquals(5, e.getLocation().getColumnNumber());
+        }
+        assertEquals(Arrays.asList("a:2:5: Syntax error"), errors);
+        // the parser can be used again after a failed parse
+        parser.reset(createSource("a", "2 * 2;"));
+        assertEquals(Arrays.asList(4L), parser.evaluate());
+    }
+
+    @Test
+    public void testFeedChars() {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(null);
+        parser.setSourceName("pushed");
+        for (String chunk : new String[] { "1", "2 + /", "* ; */ 3", ";\n(4", ")", ";" }) {
+            parser.feed(CharBuffer.wrap(chunk));
+        }
+        parser.endOfInput();
+        assertEquals(Arrays.asList(15L, 4L), parser.getResult());
+        assertEquals("pushed", parser.getSourceName());
+        assertEquals(2, parser.getLine());
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void testFeedCharsAtEverySplit() {
+        final String text = "12 + /* é𝐀 */ 345;\n(6)*7;";
+        for (int i = 0; i <= text.length(); i ++) {
+            final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+            parser.reset(null);
+            parser.feed(CharBuffer.wrap(text, 0, i));
+            parser.feed(CharBuffer.wrap(text, i, text.length()));
+            parser.endOfInput();
+            assertEquals(Arrays.asList(357L, 42L), parser.getResult());
+        }
+        assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void testFeedBytes() {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(null);
+        final byte[] bytes = "/* é€𝐀 */ 6 * 7;".getBytes(UTF_8);
+        // every chunk boundary, including those within a multi-byte sequence
+        for (int i = 0; i < bytes.length; i ++) {
+            parser.feed(ByteBuffer.wrap(bytes, i, 1));
+        }
+        parser.endOfInput();
+        assertEquals(Arrays.asList(42L), parser.getResult());
+        assertEquals(0, errors.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFeedWhileReadingSource() {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.reset(createSource("a", "1;"));
+        parser.feed(CharBuffer.wrap("1;"));
+    }
+
+    @Test
+    public void testScannerStates() {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        parser.pushState(COMMENT);
+        parser.pushState(INITIAL);
+        assertEquals(INITIAL, parser.popState());
+        assertEquals(COMMENT, parser.popState());
+        try {
+            parser.popState();
+            fail("Expected an empty state stack");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            parser.gotoState(2);
+            fail("Expected an unknown state");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private ParserFactory createFactory() {
+        return new AbstractParserFactory() {
+            public Parser createParser(final Source initialSource, final ErrorHandler errorHandler) {
+                final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+                parser.reset(initialSource);
+                return parser;
+            }
+        };
+    }
+
+    @Test
+    public void testPooledParsers() throws IOException {
+        final PooledParserFactory pooled = new PooledParserFactory(createFactory(), 1);
+        final CalculatorParser first = (CalculatorParser) pooled.createParser(createSource("a", "1 + 1;"), errorHandler);
+        assertEquals(Arrays.asList(2L), first.evaluate());
+        pooled.release(first);
+        final CalculatorParser second = (CalculatorParser) pooled.createParser(new StringReader("2 * 3;"), errorHandler);
+        assertSame(first, second);
+        assertEquals(Arrays.asList(6L), second.evaluate());
+        // a parser is only reused with the same error handler
+        final ErrorHandler other = new ErrorHandler() {
+            public void handleError(final Location location, final String message) {
+            }
+        };
+        pooled.release(second);
+        final Parser third = pooled.createParser(createSource("c", "1;"), other);
+        assertNotSame(second, third);
+        // a file is mapped and read by a pooled parser
+        pooled.release(third);
+        final File file = File.createTempFile("calc", ".txt");
+        try {
+            final FileOutputStream os = new FileOutputStream(file);
+            try {
+                os.write("5;".getBytes(UTF_8));
+            } finally {
+                os.close();
+            }
+            final CalculatorParser fromFile = (CalculatorParser) pooled.createParser(file, errorHandler);
+            assertSame(second, fromFile);
+            assertEquals(Arrays.asList(5L), fromFile.evaluate());
+            assertEquals(file.getPath(), fromFile.getSourceName());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testParseFile() throws IOException {
+        final File file = File.createTempFile("calc", ".txt");
+        try {
+            final FileOutputStream os = new FileOutputStream(file);
+            try {
+                os.write("/* é€𝐀 */ 6 * 7;\n1 + 2;".getBytes(UTF_8));
+            } finally {
+                os.close();
+            }
+            // the file is mapped by the factory
+            final CalculatorParser parser = (CalculatorParser) createFactory().createParser(file, errorHandler);
+            assertEquals(Arrays.asList(42L, 3L), parser.evaluate());
+            assertEquals(file.getPath(), parser.getSourceName());
+            assertEquals(2, parser.getLine());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPoolIsShared() throws Exception {
+        final PooledParserFactory pooled = new PooledParserFactory(createFactory(), 2);
+        final Parser[] parsers = new Parser[3];
+        final Thread thread = new Thread() {
+            public void run() {
+                for (int i = 0; i < parsers.length; i ++) {
+                    parsers[i] = pooled.createParser(createSource("a", "1;"), errorHandler);
+                }
+                for (Parser parser : parsers) {
+                    pooled.release(parser);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        // parsers released by another thread are reused, but only as many as the pool holds
+        final Parser first = pooled.createParser(createSource("b", "2;"), errorHandler);
+        final Parser second = pooled.createParser(createSource("c", "3;"), errorHandler);
+        final Parser third = pooled.createParser(createSource("d", "4;"), errorHandler);
+        assertSame(parsers[0], first);
+        assertSame(parsers[1], second);
+        assertNotSame(parsers[2], third);
+        assertEquals(Arrays.asList(2L), ((CalculatorParser) first).evaluate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testByteTables() {
+        final Grammar grammar = new SimpleGrammarBuilder("S", 1, true).addLiteral(null, "x", false).addRule("S", "x").create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        new CalculatorParser(new LalrGenerator().generate(grammar, env), new ScannerGenerator().generate(grammar, env), errorHandler);
+    }
+
+    @Test
+    public void testParseMetrics() throws IOException {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        final RecordingMetrics metrics = new RecordingMetrics();
+        parser.setParseMetrics(metrics);
+        parser.reset(createSource("a", "1 + 2 * 3;\n/* 4; * */ (1 + 2) * 3;"));
+        parser.appendInputSource(createSource("b", "4 x;"));
+        assertEquals(Arrays.asList(7L, 9L, 4L), parser.evaluate());
+        // appending a source opens the initial one, and only reads which return input count as refills
+        assertEquals(Arrays.asList("opened a 1", "started", "refilled 34", "opened b 1", "refilled 4",
+            "ended a tokens=33 shifts=16 reductions=26 depth=6 refills=2 chars=38 errors=1"), metrics.events);
+        // the counts start again with each parse
+        metrics.events.clear();
+        parser.reset(createSource("c", "5;"));
+        assertEquals(Arrays.asList(5L), parser.evaluate());
+        assertEquals(Arrays.asList("started", "opened c 1", "refilled 2",
+            "ended c tokens=2 shifts=2 reductions=5 depth=3 refills=1 chars=2 errors=0"), metrics.events);
+    }
+
+    @Test
+    public void testParseMetricsOfFailedParse() throws IOException {
+        final CalculatorParser parser = new CalculatorParser(automaton, tables, errorHandler);
+        final RecordingMetrics metrics = new RecordingMetrics();
+        parser.setParseMetrics(metrics);
+        parser.reset(createSource("a", "1 + ;"));
+        try {
+            parser.evaluate();
+            fail("Expected a syntax error");
+        } catch (ParseException expected) {
+        }
+        assertEquals("ended a tokens=5 shifts=2 reductions=4 depth=3 refills=1 chars=5 errors=1", metrics.events.get(metrics.events.size() - 1));
+        // a parse which is abandoned is ended when the parser is reset
+        metrics.events.clear();
+        parser.reset(null);
+        // the trailing space is not a token until more input shows where it ends
+        parser.feed(CharBuffer.wrap("1 + "));
+        assertEquals(Arrays.asList("started"), metrics.events);
+        parser.reset(createSource("b", "1;"));
+        assertEquals(Arrays.asList("started", "ended null tokens=3 shifts=2 reductions=4 depth=3 refills=0 chars=4 errors=0"), metrics.events);
+        // and no counts are reported once the listener is removed
+        parser.setParseMetrics(null);
+        metrics.events.clear();
+        assertEquals(Arrays.asList(1L), parser.evaluate());
+        assertEquals(0, metrics.events.size());
+    }
+
+    static final class RecordingMetrics implements ParseMetrics {
+        final List<String> events = new ArrayList<String>();
+
+        public void parseStarted() {
+            events.add("started");
+        }
+
+        public void sourceOpened(final String name, final int depth) {
+            events.add("opened " + name + " " + depth);
+        }
+
+        public void bufferRefilled(final int length) {
+            events.add("refilled " + length);
+        }
+
+        public void parseEnded(final ParseCounters counters) {
+            events.add("ended " + counters.getSourceName() + " tokens=" + counters.getTokens() + " shifts=" + counters.getShifts()
+                + " reductions=" + counters.getReductions() + " depth=" + counters.getMaxDepth() + " refills=" + counters.getRefills()
+                + " chars=" + counters.getChars() + " errors=" + counters.getErrors());
+        }
+    }
+
+    static final class CalculatorParser extends AbstractParser {
+
+        CalculatorParser(final LrAutomaton automaton, final ScannerTables tables, final ErrorHandler errorHandler) {
+            super(automaton, tables, errorHandler);
+        }
+
+        List<Long> evaluate() throws IOException {
+            return getList(parse());
+        }
+
+        List<Long> getResult() {
+            return getList(getDepth());
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Long> getList(int slot) {
+            return (List<Long>) getObject(slot);
+        }
+
+        protected void tokenScanned(final int rule) {
+            switch (rule) {
+                case NUMBER: setTokenLong(Long.parseLong(getTokenText())); break;
+                case COMMENT_START: pushState(COMMENT); break;
+                case COMMENT_END: popState(); break;
+            }
+        }
+
+        protected void reduce(final int production, final int base) {
+            switch (production) {
+                case 1: { // L -> L E ;
+                    final List<Long> list = getList(base);
+                    list.add(Long.valueOf(getLong(base + 1)));
+                    setResultObject(list);
+                    break;
+                }
+                case 2: setResultObject(new ArrayList<Long>()); break; // L ->
+                case 3: setResultLong(getLong(base) + getLong(base + 2)); break; // E -> E + T
+                case 5: setResultLong(getLong(base) * getLong(base + 2)); break; // T -> T * F
+                case 7: setResultLong(getLong(base + 1)); break; // F -> ( E )
+                default: setResultLong(getLong(base));
+            }
+        }
+    }
+}
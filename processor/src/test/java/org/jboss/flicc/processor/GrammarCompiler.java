@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.jboss.flicc.Flicc;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * A compiler which runs the grammar {@link Processor} over grammar sources, as a build would, into a temporary
+ * directory.
+ */
+public final class GrammarCompiler {
+
+    private final File directory;
+    private final List<String> messages = new ArrayList<String>();
+
+    /**
+     * Construct a new instance with a new, empty output directory.
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    public GrammarCompiler() throws IOException {
+        directory = File.createTempFile("flicc", "");
+        if (! directory.delete() || ! directory.mkdir()) {
+            throw new IOException("Failed to create " + directory);
+        }
+    }
+
+    /**
+     * Compile a class.
+     *
+     * @param className the binary name of the class
+     * @param source the source of the class
+     * @param options the processor options, as {@code name=value}
+     * @return {@code true} if the class compiled without errors
+     */
+    public boolean compile(final String className, final String source, final String... options) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        final List<String> arguments = new ArrayList<String>();
+        arguments.addAll(Arrays.asList("-d", directory.getPath(), "-classpath", getClassPath(Flicc.class).getPath()));
+        for (String option : options) {
+            arguments.add("-A" + option);
+        }
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, arguments, null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new Processor()));
+        final boolean ok = task.call().booleanValue();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            messages.add(diagnostic.getKind() + ": " + diagnostic.getMessage(null));
+        }
+        try {
+            fileManager.close();
+        } catch (IOException ignored) {
+        }
+        return ok;
+    }
+
+    /**
+     * Get the messages of a kind which the compiler and the processor reported, in the order in which they were
+     * reported.
+     *
+     * @param kind the message kind
+     * @return the messages
+     */
+    public List<String> getMessages(Diagnostic.Kind kind) {
+        final List<String> list = new ArrayList<String>();
+        final String prefix = kind + ": ";
+        for (String message : messages) {
+            if (message.startsWith(prefix)) {
+                list.add(message.substring(prefix.length()));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the output directory.
+     *
+     * @return the output directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Load a compiled class, with its generated resources, in a new class loader.
+     *
+     * @param className the binary name of the class
+     * @return the class
+     * @throws ClassNotFoundException if the class was not compiled
+     */
+    public Class<?> loadClass(final String className) throws ClassNotFoundException {
+        final URL url;
+        try {
+            url = directory.toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+        return new URLClassLoader(new URL[] { url }, GrammarCompiler.class.getClassLoader()).loadClass(className);
+    }
+
+    /**
+     * Delete the output directory and everything in it.
+     */
+    public void delete() {
+        delete(directory);
+    }
+
+    private static void delete(final File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static File getClassPath(final Class<?> clazz) {
+        try {
+            return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.jboss.flicc.IncrementalLrParser;
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.ParseException;
+import org.jboss.flicc.ParseNode;
+import org.jboss.flicc.Source;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link IncrementalLrParser}, which compare the tree after each edit with that of a full parse of the
+ * edited text.
+ */
+public final class IncrementalLrParserTest {
+
+    private static final String[] INSERTIONS = { "1", "23", " ", "+4", "*5", "(", ")", ";", "", "", "7;8", "+(1*2)", "\n" };
+
+    private LrAutomaton automaton;
+
+    @Before
+    public void createAutomaton() {
+        // terminals: + (1), * (2), ( (3), ) (4), num (5) and ; (6)
+        final Grammar grammar = new SimpleGrammarBuilder("L")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "*", false)
+            .addLiteral(null, "(", false)
+            .addLiteral(null, ")", false)
+            .addPattern("num", "[0-9]+", false)
+            .addLiteral(null, ";", false)
+            .addRule("L", "L E ;")
+            .addRule("L", "")
+            .addRule("E", "E + T")
+            .addRule("E", "T")
+            .addRule("T", "T * F")
+            .addRule("T", "F")
+            .addRule("F", "( E )")
+            .addRule("F", "num")
+            .create();
+        automaton = new LalrGenerator().generate(grammar, new RecordingEnvironment());
+    }
+
+    private static String createInput(Random random, int statements) {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < statements; i ++) {
+            b.append(random.nextInt(100));
+            for (int j = random.nextInt(4); j > 0; j --) {
+                b.append(random.nextBoolean() ? " + " : "*").append(random.nextInt(10));
+            }
+            if (random.nextInt(4) == 0) {
+                b.append("*(1+").append(random.nextInt(10)).append(')');
+            }
+            b.append(";\n");
+        }
+        return b.toString();
+    }
+
+    private static void dump(ParseNode node, StringBuilder b) {
+        b.append(node.isTerminal() ? 't' : 'n').append(node.getSymbol()).append('/').append(node.getProduction());
+        b.append('@').append(node.getOffset()).append(':').append(node.getLength()).append('=').append(node.getLong());
+        if (node.getChildCount() > 0) {
+            b.append('(');
+            for (int i = 0; i < node.getChildCount(); i ++) {
+                assertTrue(node.getChild(i).getParent() == node);
+                dump(node.getChild(i), b);
+                b.append(' ');
+            }
+            b.append(')');
+        }
+    }
+
+    private static String dump(ParseNode node) {
+        final StringBuilder b = new StringBuilder();
+        dump(node, b);
+        return b.toString();
+    }
+
+    private static ParseNode parseFully(ExpressionParser parser) {
+        try {
+            return parser.getTree();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testInitialParse() throws IOException {
+        final ExpressionParser parser = new ExpressionParser(automaton, "1 + 2 * 3;\n(1 + 2) * 3;\n");
+        final ParseNode tree = parser.getTree();
+        assertEquals(16, tree.getLong());
+        // L -> L E ;
+        assertEquals(3, tree.getChildCount());
+        final ParseNode second = tree.getChild(1);
+        assertEquals(9, second.getLong());
+        // the white space before a token is part of it
+        assertEquals(10, second.getOffset());
+        assertEquals(1, parser.getLocation(second).getLineNumber());
+        assertEquals(2, parser.getLocation(second.getOffset() + 1).getLineNumber());
+    }
+
+    @Test
+    public void testEditsMatchFullParse() throws IOException {
+        final Random random = new Random(11);
+        final String initial = createInput(random, 100);
+        ExpressionParser parser = new ExpressionParser(automaton, initial);
+        parser.getTree();
+        for (int i = 0; i < 1000; i ++) {
+            final CharSequence text = parser.getText();
+            final int offset = random.nextInt(text.length() + 1);
+            final String inserted = INSERTIONS[random.nextInt(INSERTIONS.length)];
+            int removed = random.nextInt(4) == 0 ? Math.min(random.nextInt(4), text.length() - offset) : 0;
+            if (inserted.length() == 0 && removed == 0) {
+                removed = Math.min(1, text.length() - offset);
+            }
+            final String expected = text.subSequence(0, offset) + inserted + text.subSequence(offset + removed, text.length());
+            ParseNode tree;
+            try {
+                tree = parser.applyEdit(offset, removed, inserted);
+            } catch (ParseException e) {
+                tree = null;
+            }
+            assertEquals(expected, parser.getText().toString());
+            final ParseNode full = parseFully(new ExpressionParser(automaton, expected));
+            if (full == null) {
+                assertNull(tree);
+                if (random.nextBoolean()) {
+                    // go back to valid input, so that most edits apply to a tree
+                    parser = new ExpressionParser(automaton, initial);
+                    parser.getTree();
+                }
+            } else {
+                assertEquals(dump(full), dump(tree));
+            }
+        }
+    }
+
+    @Test
+    public void testSubtreesAreReused() throws IOException {
+        final String text = createInput(new Random(3), 300);
+        final ExpressionParser parser = new ExpressionParser(automaton, text);
+        parser.getTree();
+        final int initialReductions = parser.reductions;
+        parser.reductions = 0;
+        final int offset = text.length() / 2;
+        final int digit = text.indexOf(';', offset) - 1;
+        parser.applyEdit(digit, 0, "1");
+        // the statements before the edit, including the empty list which starts them, are reused whole
+        assertTrue(parser.reductions * 10 < initialReductions);
+        assertEquals(dump(parseFully(new ExpressionParser(automaton, parser.getText().toString()))), dump(parser.getTree()));
+    }
+
+    @Test
+    public void testSyntaxError() throws IOException {
+        final ExpressionParser parser = new ExpressionParser(automaton, "1 + 2;\n3 * 4;\n");
+        assertEquals(15, parser.getTree().getLong());
+        try {
+            parser.applyEdit(9, 0, "+");
+            fail("Expected a syntax error");
+        } catch (ParseException e) {
+            assertEquals(2, e.getLocation().getLineNumber());
+        }
+        assertEquals(3 + 24, parser.applyEdit(9, 1, "*2").getLong());
+    }
+
+    static final class ExpressionParser extends IncrementalLrParser {
+        int reductions;
+
+        ExpressionParser(final LrAutomaton automaton, final String text) throws IOException {
+            super(automaton, new Source() {
+                public String getName() {
+                    return "test";
+                }
+
+                public Reader open() {
+                    return new StringReader(text);
+                }
+            });
+        }
+
+        protected int scan(final CharSequence text, final int offset) {
+            int p = offset;
+            while (p < text.length() && Character.isWhitespace(text.charAt(p))) {
+                p ++;
+            }
+            if (p == text.length()) {
+                setTokenLength(p - offset);
+                return 0;
+            }
+            final char c = text.charAt(p);
+            final int idx = "+*();".indexOf(c);
+            if (idx >= 0) {
+                setTokenLength(p + 1 - offset);
+                return idx < 4 ? idx + 1 : 6;
+            }
+            if (c >= '0' && c <= '9') {
+                long value = 0;
+                while (p < text.length() && text.charAt(p) >= '0' && text.charAt(p) <= '9') {
+                    value = value * 10 + text.charAt(p ++) - '0';
+                }
+                setTokenLong(value);
+                setTokenLength(p - offset);
+                return 5;
+            }
+            throw new ParseException("Unexpected character", getLocation(p));
+        }
+
+        protected void reduce(final int production, final int base) {
+            reductions ++;
+            switch (production) {
+                case 1: setResultLong(getLong(base) + getLong(base + 1)); break; // L -> L E ;
+                case 2: setResultLong(0); break; // L ->
+                case 3: setResultLong(getLong(base) + getLong(base + 2)); break; // E -> E + T
+                case 5: setResultLong(getLong(base) * getLong(base + 2)); break; // T -> T * F
+                case 7: setResultLong(getLong(base + 1)); break; // F -> ( E )
+                default: setResultLong(getLong(base));
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.jboss.flicc.InputStack;
+import org.jboss.flicc.Location;
+import org.jboss.flicc.Positions;
+import org.jboss.flicc.Scanner;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.Source;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of reading nested and appended sources through an input stack.
+ */
+public final class InputStackTest {
+
+    private static final int QUOTED = 1;
+
+    // token rules
+    private static final int WORD = 0;
+    private static final int SPACE = 1;
+    private static final int QUOTE = 2;
+    private static final int QUOTED_TEXT = 3;
+
+    // runs every task on the calling thread
+    private static final Executor DIRECT = new Executor() {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private ScannerTables tables;
+    private final List<String> opened = new ArrayList<String>();
+    private final List<String> closed = new ArrayList<String>();
+
+    @Before
+    public void createTables() {
+        final Grammar grammar = new SimpleGrammarBuilder("S").addState("QUOTED", QUOTED).create();
+        Tokens.add(grammar, "word", true, "[a-z]+", 0);
+        Tokens.add(grammar, null, true, "[ \n]+", 0);
+        Tokens.add(grammar, "\"", false, "\"", 0, QUOTED);
+        Tokens.add(grammar, "text", true, "[^\"]+", QUOTED);
+        tables = new ScannerGenerator().generate(grammar, new RecordingEnvironment());
+    }
+
+    private Source createSource(final String name, final String text) {
+        return new Source() {
+            public String getName() {
+                return name;
+            }
+
+            public Reader open() {
+                opened.add(name);
+                return new StringReader(text) {
+                    public void close() {
+                        closed.add(name);
+                        super.close();
+                    }
+                };
+            }
+        };
+    }
+
+    private static String next(InputStack input) throws IOException {
+        int rule;
+        do {
+            rule = input.next();
+        } while (rule == SPACE);
+        if (rule == Scanner.EOF) {
+            return null;
+        }
+        final Location location = input.getLocation(input.getTokenPosition());
+        return location.getFileName() + ":" + location.getLineNumber() + ":" + location.getColumnNumber() + ":" + input.getText();
+    }
+
+    private static List<String> readAll(InputStack input) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        String token;
+        while ((token = next(input)) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testNestedSources() throws IOException {
+        final InputStack input = new InputStack(tables);
+        input.push(createSource("a", "one include\ntwo"));
+        assertEquals("a:1:1:one", next(input));
+        assertEquals("a:1:5:include", next(input));
+        input.push(createSource("b", "three\n include four"));
+        assertEquals(2, input.getDepth());
+        assertEquals("b:1:1:three", next(input));
+        assertEquals("b:2:2:include", next(input));
+        input.push(createSource("c", "five"));
+        assertEquals(3, input.getDepth());
+        assertEquals("c:1:1:five", next(input));
+        // the locations of the includes are the parents
+        final Location location = input.getLocation(input.getTokenPosition());
+        assertEquals("b", location.getParent().getFileName());
+        assertEquals(2, location.getParent().getLineNumber());
+        assertEquals(2, location.getParent().getColumnNumber());
+        assertEquals("a", location.getParent().getParent().getFileName());
+        assertEquals(5, location.getParent().getParent().getColumnNumber());
+        assertNull(location.getParent().getParent().getParent());
+        // each source resumes where its include stopped
+        assertEquals("b:2:10:four", next(input));
+        assertEquals(Arrays.asList("c"), closed);
+        assertEquals(2, input.getDepth());
+        assertEquals("a:2:1:two", next(input));
+        assertNull(next(input));
+        assertEquals(0, input.getDepth());
+        assertEquals(Arrays.asList("c", "b", "a"), closed);
+        // locations of sources which have ended can still be built
+        assertEquals("c", input.getSourceName(2));
+        assertEquals(2, input.getLineIndex(1).getLine(7));
+    }
+
+    @Test
+    public void testAppendedSources() throws IOException {
+        final InputStack input = new InputStack(tables);
+        input.append(createSource("a", "one"));
+        input.append(createSource("b", "two\nthree"));
+        input.push(createSource("c", "four"));
+        input.append(createSource("d", "five"));
+        // an appended source is only opened when it is reached
+        assertEquals(Arrays.asList("a", "c"), opened);
+        assertEquals(Arrays.asList("c:1:1:four", "d:1:1:five", "a:1:1:one", "b:1:1:two", "b:2:1:three"), readAll(input));
+        assertEquals(Arrays.asList("c", "d", "a", "b"), closed);
+        // sources appended at the same level have no parent
+        assertNull(input.getLocation(Positions.pack(3, 0)).getParent());
+    }
+
+    @Test
+    public void testScannerPool() throws IOException {
+        final InputStack input = new InputStack(tables, 1);
+        input.push(createSource("a", "one"));
+        final Scanner first = input.getScanner();
+        assertEquals("a:1:1:one", next(input));
+        input.push(createSource("b", "two"));
+        final Scanner second = input.getScanner();
+        assertEquals("b:1:1:two", next(input));
+        assertNull(next(input));
+        // both scanners were released, but the pool only keeps one
+        input.push(createSource("c", "three"));
+        assertSame(second, input.getScanner());
+        input.push(createSource("d", "four"));
+        final Scanner fourth = input.getScanner();
+        assertNotNull(fourth);
+        if (fourth == first || fourth == second) {
+            fail("Scanner was pooled beyond the pool size");
+        }
+        assertEquals(Arrays.asList("d:1:1:four", "c:1:1:three"), readAll(input));
+    }
+
+    @Test
+    public void testStates() throws IOException {
+        final InputStack input = new InputStack(tables);
+        input.push(createSource("a", "one \"two \" three"));
+        assertEquals("a:1:1:one", next(input));
+        assertEquals("a:1:5:\"", next(input));
+        input.setState(QUOTED);
+        // the state applies to a pushed source too
+        input.push(createSource("b", "four "));
+        assertEquals("b:1:1:four ", next(input));
+        assertEquals("a:1:6:two ", next(input));
+        assertEquals("a:1:10:\"", next(input));
+        input.setState(0);
+        assertEquals("a:1:12:three", next(input));
+        assertNull(next(input));
+    }
+
+    @Test
+    public void testPreScannedSources() throws IOException {
+        final InputStack input = new InputStack(tables, 4, DIRECT);
+        input.append(createSource("a", "one two"));
+        input.append(createSource("b", "three\n\"four\""));
+        input.append(createSource("c", "five"));
+        // appended sources are scanned as soon as they are appended, and closed when they have been scanned
+        assertEquals(Arrays.asList("a", "b", "c"), opened);
+        assertEquals(Arrays.asList("b", "c"), closed);
+        assertEquals("a:1:1:one", next(input));
+        assertEquals("a:1:5:two", next(input));
+        assertEquals("b:1:1:three", next(input));
+        // replayed tokens are not read from a scanner
+        assertNull(input.getScanner());
+        assertEquals("b:2:1:\"", next(input));
+        // and the pre-scanned source was scanned in state 0
+        try {
+            input.setState(QUOTED);
+            fail("Expected the state to be rejected");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals("b:2:2:four", next(input));
+        assertEquals("b:2:6:\"", next(input));
+        assertEquals("c:1:1:five", next(input));
+        assertNull(next(input));
+        // the tokens are the same as those scanned when reached
+        final InputStack scanning = new InputStack(tables);
+        scanning.append(createSource("a", "one two"));
+        scanning.append(createSource("b", "three\n\"four\""));
+        scanning.append(createSource("c", "five"));
+        assertEquals(Arrays.asList("a:1:1:one", "a:1:5:two", "b:1:1:three", "b:2:1:\"", "b:2:2:four", "b:2:6:\"", "c:1:1:five"), readAll(scanning));
+    }
+
+    @Test
+    public void testPreScannedSourceReachedInOtherState() throws IOException {
+        final InputStack input = new InputStack(tables, 4, DIRECT);
+        input.push(createSource("a", "\""));
+        input.append(createSource("b", "one"));
+        assertEquals("a:1:1:\"", next(input));
+        input.setState(QUOTED);
+        try {
+            next(input);
+            fail("Expected the state to be rejected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        final InputStack input = new InputStack(tables);
+        input.push(createSource("a", "one"));
+        input.append(createSource("b", "two"));
+        input.setState(QUOTED);
+        input.reset();
+        assertEquals(Arrays.asList("a"), closed);
+        assertEquals(0, input.getState());
+        input.push(createSource("c", "three"));
+        // source numbers start again
+        assertEquals("c:1:1:three", next(input));
+        assertEquals(0, Positions.getSource(input.getTokenPosition()));
+        assertNull(next(input));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.processor.lr1.Lr1Generator;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.ERROR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of grammars compiled through the annotation processor.
+ */
+public final class ProcessorTest {
+
+    private static final String SUM_RULES =
+        "    @Pattern(\"[0-9]+\") @__(\"num\") protected abstract void num();\n" +
+        "    @Literal(\"+\") protected abstract void plus();\n" +
+        "    @Pattern(\" \") protected abstract void ws();\n" +
+        "    @__(\"Sum\") @Rule(\"Sum + num\") protected abstract void add();\n" +
+        "    @__(\"Sum\") @Rule(\"num\") protected abstract void one();\n";
+
+    private GrammarCompiler compiler;
+
+    @Before
+    public void createCompiler() throws IOException {
+        compiler = new GrammarCompiler();
+    }
+
+    @After
+    public void deleteOutput() {
+        compiler.delete();
+    }
+
+    static String createSource(String className, String annotations, String members) {
+        return "package test;\n" +
+            "import static org.jboss.flicc.Flicc.*;\n" +
+            annotations + "\n" +
+            "public abstract class " + className + " {\n" +
+            members +
+            "}\n";
+    }
+
+    private static byte[] toBytes(ParseTables tables) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        tables.writeTo(os);
+        return os.toByteArray();
+    }
+
+    private static byte[] toBytes(ScannerTables tables) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        tables.writeTo(os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void testClassGoal() throws Exception {
+        assertTrue(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", SUM_RULES)));
+        final Class<?> grammarClass = compiler.loadClass("test.Sum");
+        // the same grammar, built directly
+        final Grammar grammar = new SimpleGrammarBuilder("Sum")
+            .addPattern("num", "[0-9]+", false)
+            .addLiteral(null, "+", false)
+            .addPattern(null, " ", false)
+            .addRule("Sum", "Sum + num")
+            .addRule("Sum", "num")
+            .create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        assertArrayEquals(toBytes(new Lr1Generator().generate(grammar, env)), toBytes(ParseTables.load(grammarClass)));
+        assertArrayEquals(toBytes(new ScannerGenerator().generate(grammar, env)), toBytes(ScannerTables.load(grammarClass)));
+        // the tables are used, since no automaton class was generated
+        assertTrue(ParseTables.loadAutomaton(grammarClass) instanceof ParseTables);
+    }
+
+    @Test
+    public void testParseMethodGoal() throws Exception {
+        final String members = SUM_RULES +
+            "    @Start public abstract void start(java.io.Reader reader);\n" +
+            "    @Push protected abstract void pushState(int state);\n" +
+            "    @Pop protected abstract void popState();\n" +
+            "    @Parse(\"Sum\") public abstract void parse();\n";
+        assertTrue(compiler.compile("test.Sum", createSource("Sum", "@LR(1)", members)));
+        assertEquals(0, compiler.getMessages(ERROR).size());
+        final Class<?> grammarClass = compiler.loadClass("test.Sum");
+        // the accept production and the two rules, and none for the parser methods
+        assertEquals(3, ParseTables.load(grammarClass).getProductionCount());
+    }
+
+    @Test
+    public void testConflictingGoals() {
+        final String members = SUM_RULES + "    @Parse(\"num\") public abstract void parse();\n";
+        assertFalse(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", members)));
+        assertEquals(1, compiler.getMessages(ERROR).size());
+    }
+
+    @Test
+    public void testMissingGoal() {
+        assertFalse(compiler.compile("test.Sum", createSource("Sum", "@LR(1)", SUM_RULES)));
+        assertTrue(compiler.getMessages(ERROR).get(0).startsWith("Missing @__() (goal) annotation"));
+    }
+
+    @Test
+    public void testSyncOutsideInitialState() {
+        final String members = SUM_RULES +
+            "    @State static final int OTHER = 1;\n" +
+            "    @Literal(\";\") @Sync @IncludeState(OTHER) protected abstract void end();\n";
+        assertFalse(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", members)));
+        assertEquals("Synchronizing token rule must apply in scanner state 0", compiler.getMessages(ERROR).get(0));
+    }
+
+    @Test
+    public void testLr1Option() {
+        assertTrue(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", SUM_RULES), Processor.LR1_OPTION + "=lalr"));
+        assertFalse(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", SUM_RULES), Processor.LR1_OPTION + "=pager"));
+        assertEquals("Invalid value 'pager' for option flicc.lr1; expected one of [minimal, lalr]", compiler.getMessages(ERROR).get(0));
+    }
+
+    @Test
+    public void testAutomatonOption() {
+        assertFalse(compiler.compile("test.Sum", createSource("Sum", "@LR(1) @__(\"Sum\")", SUM_RULES), Processor.AUTOMATON_OPTION + "=switch"));
+        assertEquals("Invalid value 'switch' for option flicc.automaton; expected one of [tables, code]", compiler.getMessages(ERROR).get(0));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * A processing environment for running generators outside of the compiler.  It has no options, and it records the
+ * messages printed to it instead of reporting them.
+ */
+public final class RecordingEnvironment implements ProcessingEnvironment, Messager {
+
+    private final List<String> messages = new ArrayList<String>();
+
+    /**
+     * Get the messages of a kind, in the order in which they were printed.
+     *
+     * @param kind the message kind
+     * @return the messages
+     */
+    public List<String> getMessages(Diagnostic.Kind kind) {
+        final List<String> list = new ArrayList<String>();
+        final String prefix = kind + ": ";
+        for (String message : messages) {
+            if (message.startsWith(prefix)) {
+                list.add(message.substring(prefix.length()));
+            }
+        }
+        return list;
+    }
+
+    public Map<String, String> getOptions() {
+        return Collections.emptyMap();
+    }
+
+    public Messager getMessager() {
+        return this;
+    }
+
+    public Filer getFiler() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Elements getElementUtils() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Types getTypeUtils() {
+        throw new UnsupportedOperationException();
+    }
+
+    public SourceVersion getSourceVersion() {
+        return SourceVersion.latest();
+    }
+
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg) {
+        messages.add(kind + ": " + msg);
+    }
+
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e) {
+        printMessage(kind, msg);
+    }
+
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a) {
+        printMessage(kind, msg);
+    }
+
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a, final AnnotationValue v) {
+        printMessage(kind, msg);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.flicc.LineIndex;
+import org.jboss.flicc.Location;
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.LrParser;
+import org.jboss.flicc.ParseException;
+import org.jboss.flicc.Positions;
+import org.jboss.flicc.Scanner;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.SpeculativeParser;
+import org.jboss.flicc.TokenArray;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.jboss.flicc.processor.scanner.ScannerGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link SpeculativeParser}, with a grammar of statements ending in {@code ;}, a synchronizing token which
+ * also appears within strings and within parentheses, where the parse cannot start afresh after it.
+ */
+public final class SpeculativeParserTest {
+
+    private static final String STATEMENTS =
+        "abc;\n" +
+        "\"x ; y ; z\";\n" +
+        "(de; \"f;g\"; (h;);) ;\n" +
+        "\"(;)\"; (k;) ; ij;\n";
+
+    private LrAutomaton automaton;
+    private ScannerTables tables;
+    private ForkJoinPool pool;
+
+    @Before
+    public void createTables() {
+        final Grammar grammar = new SimpleGrammarBuilder("L")
+            .addLiteral(";", ";", true)
+            .addLiteral("(", "(", false)
+            .addLiteral(")", ")", false)
+            .addPattern("word", "[a-z]+", false)
+            .addPattern("string", "\"[^\"]*\"", false)
+            .addPattern(null, "[ \n]+", false)
+            .addRule("L", "L S ;")
+            .addRule("L", "")
+            .addRule("S", "word")
+            .addRule("S", "string")
+            .addRule("S", "( L )")
+            .create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        automaton = new LalrGenerator().generate(grammar, env);
+        tables = new ScannerGenerator().generate(grammar, env);
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    private static String repeat(String text, int count) {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < count; i ++) {
+            b.append(text);
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testChunksMatchSequentialParse() {
+        final String text = repeat(STATEMENTS, 20);
+        final List<String> expected = new StatementParser(automaton, tables, 1 << 20).parse(text);
+        assertEquals(120, expected.size());
+        assertEquals("1:1:abc", expected.get(0));
+        assertEquals("3:1:(3:2:de 3:6:\"f;g\" 3:13:(3:14:h))", expected.get(2));
+        assertEquals("80:15:ij", expected.get(119));
+        // small chunks are split within strings, where the guess is wrong, and within parentheses, where the chunk
+        // fails to parse
+        for (int chunkSize = 1; chunkSize <= 40; chunkSize ++) {
+            assertEquals("chunk size " + chunkSize, expected, new StatementParser(automaton, tables, chunkSize).parse(text, pool));
+        }
+    }
+
+    @Test
+    public void testSyntaxErrorMatchesSequentialParse() {
+        final String text = repeat(STATEMENTS, 10) + "(a; b c;);\n" + repeat(STATEMENTS, 10);
+        final Location expected = getErrorLocation(new StatementParser(automaton, tables, 1 << 20), text, null);
+        assertEquals(41, expected.getLineNumber());
+        assertEquals(7, expected.getColumnNumber());
+        for (int chunkSize = 1; chunkSize <= 40; chunkSize ++) {
+            final Location location = getErrorLocation(new StatementParser(automaton, tables, chunkSize), text, pool);
+            assertEquals("chunk size " + chunkSize, expected.getLineNumber(), location.getLineNumber());
+            assertEquals("chunk size " + chunkSize, expected.getColumnNumber(), location.getColumnNumber());
+        }
+    }
+
+    private static Location getErrorLocation(StatementParser parser, String text, ForkJoinPool pool) {
+        try {
+            if (pool == null) {
+                parser.parse(text);
+            } else {
+                parser.parse(text, pool);
+            }
+            fail("Expected a syntax error");
+            return null;
+        } catch (ParseException e) {
+            assertNotNull(e.getLocation());
+            return e.getLocation();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSyncTokens() {
+        final Grammar grammar = new SimpleGrammarBuilder("S").addLiteral("x", "x", false).addRule("S", "x").create();
+        new StatementParser(automaton, new ScannerGenerator().generate(grammar, new RecordingEnvironment()), 1);
+    }
+
+    /**
+     * Parses a chunk into a list of its statements, each of which is prefixed by its line and column.
+     */
+    static final class StatementParser extends SpeculativeParser<List<String>> {
+
+        private final LrAutomaton automaton;
+        private final ScannerTables tables;
+
+        StatementParser(final LrAutomaton automaton, final ScannerTables tables, final int chunkSize) {
+            super(tables, chunkSize);
+            this.automaton = automaton;
+            this.tables = tables;
+        }
+
+        protected List<String> parseChunk(final TokenArray tokens, final int offset) {
+            try {
+                final ChunkParser parser = new ChunkParser(automaton, tables, tokens, offset);
+                return parser.getList(parser.parseTokens());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        protected List<String> join(final List<String> first, final List<String> second) {
+            final List<String> list = new ArrayList<String>(first);
+            list.addAll(second);
+            return list;
+        }
+    }
+
+    static final class ChunkParser extends LrParser {
+
+        private final ScannerTables tables;
+        private final TokenArray tokens;
+        private final int offset;
+        private int index = -1;
+
+        ChunkParser(final LrAutomaton automaton, final ScannerTables tables, final TokenArray tokens, final int offset) {
+            super(automaton);
+            this.tables = tables;
+            this.tokens = tokens;
+            this.offset = offset;
+        }
+
+        int parseTokens() throws IOException {
+            return parse();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> getList(int slot) {
+            return (List<String>) getObject(slot);
+        }
+
+        protected int nextToken() {
+            for (;;) {
+                if (++ index == tokens.getTokenCount()) {
+                    return 0;
+                }
+                final int rule = tokens.getRule(index);
+                setTokenPosition(Positions.pack(0, offset + tokens.getTokenStart(index)));
+                if (rule == Scanner.NO_MATCH) {
+                    throw new ParseException("Unexpected input", getLocation());
+                }
+                final int terminal = tables.getRuleTerminal(rule);
+                if (terminal != ScannerTables.NONE) {
+                    setTokenObject(tokens.getText(index));
+                    return terminal;
+                }
+            }
+        }
+
+        protected LineIndex getLineIndex(final int source) {
+            return tokens.getLineIndex();
+        }
+
+        private String locate(final int slot) {
+            final Location location = getLocation(slot);
+            return location.getLineNumber() + ":" + location.getColumnNumber() + ":";
+        }
+
+        protected void reduce(final int production, final int base) {
+            switch (production) {
+                case 1: { // L -> L S ;
+                    final List<String> list = getList(base);
+                    list.add(locate(base + 1) + getObject(base + 1));
+                    setResultObject(list);
+                    break;
+                }
+                case 2: setResultObject(new ArrayList<String>()); break; // L ->
+                case 5: { // S -> ( L )
+                    final StringBuilder b = new StringBuilder("(");
+                    for (String statement : getList(base + 1)) {
+                        b.append(b.length() == 1 ? "" : " ").append(statement);
+                    }
+                    setResultObject(b.append(')').toString());
+                    break;
+                }
+                default: setResultObject(getObject(base));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.lr1.Lr1Generator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.ERROR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of automaton classes generated by the {@link SwitchEmitter} and compiled through the processor.
+ */
+public final class SwitchEmitterTest {
+
+    // the number of statement kinds, each with its own expression nonterminals
+    private static final int KINDS = 60;
+
+    private GrammarCompiler compiler;
+
+    @Before
+    public void createCompiler() throws IOException {
+        compiler = new GrammarCompiler();
+    }
+
+    @After
+    public void deleteOutput() {
+        compiler.delete();
+    }
+
+    private static String createGrammarSource() {
+        final StringBuilder b = new StringBuilder();
+        b.append("    @Literal({");
+        for (int i = 0; i < KINDS; i ++) {
+            b.append(i == 0 ? "" : ", ").append("\"k").append(i).append('"');
+        }
+        b.append("}) protected abstract void keyword();\n");
+        b.append("    @Literal({ \"x\", \"+\", \"*\", \"(\", \")\", \";\" }) protected abstract void punctuation();\n");
+        b.append("    @Pattern(\"[ \\n]+\") protected abstract void ws();\n");
+        b.append("    @__(\"Program\") @Rule(\"Program Statement\") protected abstract void program1();\n");
+        b.append("    @__(\"Program\") @Rule(\"Statement\") protected abstract void program2();\n");
+        for (int i = 0; i < KINDS; i ++) {
+            b.append("    @__(\"Statement\") @Rule(\"k").append(i).append(" E").append(i).append(" ;\") protected abstract void statement").append(i).append("();\n");
+            b.append("    @__(\"E").append(i).append("\") @Rule(\"E").append(i).append(" + T").append(i).append("\") protected abstract void add").append(i).append("();\n");
+            b.append("    @__(\"E").append(i).append("\") @Rule(\"T").append(i).append("\") protected abstract void term").append(i).append("();\n");
+            b.append("    @__(\"T").append(i).append("\") @Rule(\"T").append(i).append(" * F").append(i).append("\") protected abstract void multiply").append(i).append("();\n");
+            b.append("    @__(\"T").append(i).append("\") @Rule(\"F").append(i).append("\") protected abstract void factor").append(i).append("();\n");
+            b.append("    @__(\"F").append(i).append("\") @Rule(\"x\") protected abstract void x").append(i).append("();\n");
+            b.append("    @__(\"F").append(i).append("\") @Rule(\"( E").append(i).append(" )\") protected abstract void parens").append(i).append("();\n");
+        }
+        return ProcessorTest.createSource("Big", "@LR(1) @__(\"Program\")", b.toString());
+    }
+
+    private static Grammar createGrammar() {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("Program");
+        for (int i = 0; i < KINDS; i ++) {
+            builder.addLiteral(null, "k" + i, false);
+        }
+        for (String literal : new String[] { "x", "+", "*", "(", ")", ";" }) {
+            builder.addLiteral(null, literal, false);
+        }
+        builder.addPattern(null, "[ \n]+", false);
+        builder.addRule("Program", "Program Statement");
+        builder.addRule("Program", "Statement");
+        for (int i = 0; i < KINDS; i ++) {
+            builder.addRule("Statement", "k" + i + " E" + i + " ;");
+            builder.addRule("E" + i, "E" + i + " + T" + i);
+            builder.addRule("E" + i, "T" + i);
+            builder.addRule("T" + i, "T" + i + " * F" + i);
+            builder.addRule("T" + i, "F" + i);
+            builder.addRule("F" + i, "x");
+            builder.addRule("F" + i, "( E" + i + " )");
+        }
+        return builder.create();
+    }
+
+    /**
+     * Read the bytecode length of every method of a class file.
+     */
+    private static Map<String, Integer> getCodeLengths(File classFile) throws IOException {
+        final DataInputStream is = new DataInputStream(new FileInputStream(classFile));
+        try {
+            is.readInt(); // magic
+            is.readInt(); // version
+            final int constantCount = is.readUnsignedShort();
+            final String[] utf8 = new String[constantCount];
+            for (int i = 1; i < constantCount; i ++) {
+                final int tag = is.readUnsignedByte();
+                switch (tag) {
+                    case 1: utf8[i] = is.readUTF(); break;
+                    case 5: case 6: is.skipBytes(8); i ++; break;
+                    case 7: case 8: case 16: case 19: case 20: is.skipBytes(2); break;
+                    case 15: is.skipBytes(3); break;
+                    default: is.skipBytes(4); break;
+                }
+            }
+            is.skipBytes(6); // access, this and super
+            is.skipBytes(2 * is.readUnsignedShort()); // interfaces
+            final int fieldCount = is.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i ++) {
+                is.skipBytes(6);
+                skipAttributes(is);
+            }
+            final Map<String, Integer> lengths = new LinkedHashMap<String, Integer>();
+            final int methodCount = is.readUnsignedShort();
+            for (int i = 0; i < methodCount; i ++) {
+                is.skipBytes(2);
+                final String name = utf8[is.readUnsignedShort()];
+                is.skipBytes(2);
+                final int attributeCount = is.readUnsignedShort();
+                for (int j = 0; j < attributeCount; j ++) {
+                    final String attributeName = utf8[is.readUnsignedShort()];
+                    final int length = is.readInt();
+                    if (attributeName.equals("Code")) {
+                        is.skipBytes(4); // max stack and locals
+                        final int codeLength = is.readInt();
+                        lengths.put(name, Integer.valueOf(codeLength));
+                        is.skipBytes(length - 8);
+                    } else {
+                        is.skipBytes(length);
+                    }
+                }
+            }
+            return lengths;
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void skipAttributes(DataInputStream is) throws IOException {
+        final int count = is.readUnsignedShort();
+        for (int i = 0; i < count; i ++) {
+            is.skipBytes(2);
+            is.skipBytes(is.readInt());
+        }
+    }
+
+    @Test
+    public void testGeneratedAutomatonMatchesTables() throws Exception {
+        assertTrue(compiler.compile("test.Big", createGrammarSource(), Processor.AUTOMATON_OPTION + "=code"));
+        assertEquals(0, compiler.getMessages(ERROR).size());
+        final Class<?> grammarClass = compiler.loadClass("test.Big");
+        final LrAutomaton automaton = ParseTables.loadAutomaton(grammarClass);
+        assertFalse(automaton instanceof ParseTables);
+        final Grammar grammar = createGrammar();
+        final ParseTables tables = new Lr1Generator().generate(grammar, new RecordingEnvironment());
+        final int terminalCount = grammar.getInputs().size() + 1;
+        final int nonterminalCount = grammar.getProducedBy().size() + 1;
+        for (int s = 0; s < tables.getStateCount(); s ++) {
+            for (int t = 0; t < terminalCount; t ++) {
+                assertEquals(tables.getAction(s, t), automaton.getAction(s, t));
+            }
+            assertEquals(tables.getDefaultAction(s), automaton.getDefaultAction(s));
+            assertEquals(tables.isConsistent(s), automaton.isConsistent(s));
+            for (int n = 0; n < nonterminalCount; n ++) {
+                assertEquals(tables.getGoto(s, n), automaton.getGoto(s, n));
+            }
+        }
+        for (int p = 0; p < tables.getProductionCount(); p ++) {
+            assertEquals(tables.getProductionLhs(p), automaton.getProductionLhs(p));
+            assertEquals(tables.getProductionLength(p), automaton.getProductionLength(p));
+        }
+        final String automatonClassName = ParseTables.getAutomatonClassName("test.Big");
+        final Map<String, Integer> lengths = getCodeLengths(new File(compiler.getDirectory(), automatonClassName.replace('.', '/') + ".class"));
+        // the grammar is large enough that the actions are split over several methods
+        assertTrue(lengths.containsKey("getAction1"));
+        for (Map.Entry<String, Integer> entry : lengths.entrySet()) {
+            assertTrue(entry.getKey() + " has " + entry.getValue() + " bytes of code", entry.getValue().intValue() < SwitchEmitter.METHOD_LIMIT);
+        }
+    }
+}
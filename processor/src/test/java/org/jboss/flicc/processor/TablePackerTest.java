@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.util.Random;
+
+import org.jboss.flicc.ParseTables;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the table packer.
+ */
+public final class TablePackerTest {
+
+    private static int lookup(TablePacker packer, int[] defaults, int row, int column) {
+        final int idx = packer.getBase()[row] + column;
+        final int[] check = packer.getCheck();
+        return idx >= 0 && idx < check.length && check[idx] == column ? packer.getNext()[idx] : defaults[row];
+    }
+
+    private static void assertPacked(int[][] rows, int[] defaults) {
+        final TablePacker packer = new TablePacker(rows, defaults);
+        for (int r = 0; r < rows.length; r ++) {
+            for (int c = 0; c < rows[r].length; c ++) {
+                assertEquals(rows[r][c], lookup(packer, defaults, r, c));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomTables() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i ++) {
+            final int rowCount = 1 + random.nextInt(40);
+            final int[][] rows = new int[rowCount][];
+            final int[] defaults = new int[rowCount];
+            final int density = 1 + random.nextInt(10);
+            for (int r = 0; r < rowCount; r ++) {
+                final int[] row = rows[r] = new int[1 + random.nextInt(30)];
+                defaults[r] = random.nextInt(3);
+                for (int c = 0; c < row.length; c ++) {
+                    row[c] = random.nextInt(density) == 0 ? random.nextInt(5) : defaults[r];
+                }
+            }
+            assertPacked(rows, defaults);
+        }
+    }
+
+    @Test
+    public void testSharedAndEmptyRows() {
+        final int[][] rows = {
+            { 0, 1, 0, 2 },
+            { 0, 0, 0, 0 },
+            { 0, 1, 0, 2 },
+            { 3, 3, 3, 3 },
+        };
+        final int[] defaults = { 0, 0, 0, 3 };
+        final TablePacker packer = new TablePacker(rows, defaults);
+        assertEquals(ParseTables.NO_ENTRIES, packer.getBase()[1]);
+        assertEquals(ParseTables.NO_ENTRIES, packer.getBase()[3]);
+        assertEquals(packer.getBase()[0], packer.getBase()[2]);
+        assertTrue(packer.getNext().length <= 4);
+        assertPacked(rows, defaults);
+    }
+}
@@ -23,42 +23,29 @@
 package org.jboss.flicc.processor;
 
 /**
- * An item key for a position in a sequence.
- *
- * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ * Token rules for grammars built in tests which, unlike those of a {@link SimpleGrammarBuilder}, apply only in some
+ * scanner states.
  */
-public final class Item {
-    private final SymbolSeq sequence;
-    private final int idx;
-    private final int hashCode;
-
-    public Item(final SymbolSeq sequence, final int idx) {
-        this.sequence = sequence;
-        this.idx = idx;
-        hashCode = sequence.hashCode() ^ idx;
-    }
+public final class Tokens {
 
-    /**
-     * Determine whether this object is equal to another.
-     *
-     * @param other the other object
-     * @return {@code true} if they are equal, {@code false} otherwise
-     */
-    public boolean equals(Object other) {
-        return other instanceof Item && equals((Item)other);
+    private Tokens() {
     }
 
     /**
-     * Determine whether this object is equal to another.
+     * Add a token rule which applies in the given scanner states.
      *
-     * @param other the other object
-     * @return {@code true} if they are equal, {@code false} otherwise
+     * @param grammar the grammar
+     * @param terminal the terminal which the token produces, or {@code null} if matching text is ignored
+     * @param pattern {@code true} if the value is a pattern, {@code false} if it is a literal
+     * @param value the pattern or literal
+     * @param states the scanner states in which the token applies
      */
-    public boolean equals(Item other) {
-        return this == other || other != null && idx == other.idx && sequence.equals(other.sequence);
-    }
-
-    public int hashCode() {
-        return hashCode;
+    public static void add(Grammar grammar, String terminal, boolean pattern, String value, int... states) {
+        Symbol symbol = null;
+        if (terminal != null) {
+            symbol = pattern ? new Pattern(terminal, value) : new Literal(terminal, value);
+            grammar.addInput(symbol);
+        }
+        grammar.addTokenRule(new TokenRule(null, pattern, value, symbol, states, null, new TokenRule.TextType[0], false));
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.flicc.LrAutomaton;
+import org.jboss.flicc.LrParser;
+import org.jboss.flicc.ParseException;
+
+/**
+ * A parser of words separated by spaces, each of which is the name of a terminal.  It records the productions which
+ * it reduces, in order.
+ */
+public final class WordParser extends LrParser {
+
+    private final List<String> terminals = new ArrayList<String>();
+    private final List<Integer> reductions = new ArrayList<Integer>();
+    private String[] words;
+    private int next;
+
+    /**
+     * Construct a new instance.  The terminals are numbered as an automaton numbers them: the end of input is 0, and
+     * the inputs of the grammar follow in order.
+     *
+     * @param automaton the automaton
+     * @param grammar the grammar of the automaton
+     */
+    public WordParser(final LrAutomaton automaton, final Grammar grammar) {
+        super(automaton);
+        terminals.add("");
+        for (Symbol input : grammar.getInputs()) {
+            terminals.add(input.getName());
+        }
+    }
+
+    /**
+     * Parse a sentence.
+     *
+     * @param sentence the terminal names, separated by spaces
+     * @return the productions reduced, in order
+     * @throws ParseException if the sentence does not match the grammar
+     */
+    public List<Integer> parse(String sentence) {
+        reset();
+        reductions.clear();
+        words = sentence.length() == 0 ? new String[0] : sentence.split(" ");
+        next = 0;
+        try {
+            parse();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new ArrayList<Integer>(reductions);
+    }
+
+    /**
+     * Determine whether a sentence matches the grammar.
+     *
+     * @param sentence the terminal names, separated by spaces
+     * @return {@code true} if it does
+     */
+    public boolean accepts(String sentence) {
+        try {
+            parse(sentence);
+            return true;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    protected int nextToken() {
+        if (next == words.length) {
+            return 0;
+        }
+        final int terminal = terminals.indexOf(words[next ++]);
+        if (terminal < 1) {
+            throw new IllegalArgumentException("No terminal named " + words[next - 1]);
+        }
+        return terminal;
+    }
+
+    protected void reduce(final int production, final int base) {
+        reductions.add(Integer.valueOf(production));
+    }
+}
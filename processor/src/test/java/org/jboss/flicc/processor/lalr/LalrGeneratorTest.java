@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lalr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.RecordingEnvironment;
+import org.jboss.flicc.processor.SimpleGrammarBuilder;
+import org.jboss.flicc.processor.WordParser;
+import org.jboss.flicc.processor.lr0.Lr0Generator;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.NOTE;
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the LALR(1) generator.
+ */
+public final class LalrGeneratorTest {
+
+    /**
+     * The assignment grammar of the dragon book, which is LALR(1) but not SLR(1): after an {@code L}, an {@code =}
+     * follows {@code R} in the follow set, so SLR would reduce {@code R -> L} where it must shift.
+     */
+    private static Grammar createAssignmentGrammar() {
+        return new SimpleGrammarBuilder("S")
+            .addLiteral(null, "=", false)
+            .addLiteral(null, "*", false)
+            .addLiteral(null, "id", false)
+            .addRule("S", "L = R")
+            .addRule("S", "R")
+            .addRule("L", "* R")
+            .addRule("L", "id")
+            .addRule("R", "L")
+            .create();
+    }
+
+    @Test
+    public void testLalrButNotSlr() {
+        final Grammar grammar = createAssignmentGrammar();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ParseTables tables = new LalrGenerator().generate(grammar, env);
+        assertEquals(0, env.getMessages(WARNING).size());
+        assertTrue(env.getMessages(NOTE).get(0).endsWith(" 0 conflicts"));
+        final WordParser parser = new WordParser(tables, grammar);
+        // S -> L = R (1), S -> R (2), L -> * R (3), L -> id (4), R -> L (5)
+        assertEquals(Arrays.asList(4, 4, 5, 1), parser.parse("id = id"));
+        assertEquals(Arrays.asList(4, 5, 3, 5, 2), parser.parse("* id"));
+        assertEquals(Arrays.asList(4, 5, 3, 4, 5, 3, 5, 1), parser.parse("* id = * id"));
+        assertTrue(parser.accepts("id"));
+        assertFalse(parser.accepts(""));
+        assertFalse(parser.accepts("id ="));
+        assertFalse(parser.accepts("= id"));
+        assertFalse(parser.accepts("id = id = id"));
+        assertFalse(parser.accepts("id id"));
+    }
+
+    @Test
+    public void testLr0Conflicts() {
+        final RecordingEnvironment env = new RecordingEnvironment();
+        new Lr0Generator().generate(createAssignmentGrammar(), env);
+        assertFalse(env.getMessages(WARNING).isEmpty());
+    }
+
+    @Test
+    public void testReduceReduceConflicts() {
+        // LR(1) but not LALR(1): the states after "a e" and "b e" merge, and then both reductions apply on c and d
+        final Grammar grammar = new SimpleGrammarBuilder("S")
+            .addLiteral(null, "a", false)
+            .addLiteral(null, "b", false)
+            .addLiteral(null, "c", false)
+            .addLiteral(null, "d", false)
+            .addLiteral(null, "e", false)
+            .addRule("S", "a E c")
+            .addRule("S", "a F d")
+            .addRule("S", "b F c")
+            .addRule("S", "b E d")
+            .addRule("E", "e")
+            .addRule("F", "e")
+            .create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        new LalrGenerator().generate(grammar, env);
+        assertEquals(2, env.getMessages(WARNING).size());
+    }
+
+    @Test
+    public void testTablesRoundTrip() throws IOException {
+        final Grammar grammar = new SimpleGrammarBuilder("E")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "*", false)
+            .addLiteral(null, "(", false)
+            .addLiteral(null, ")", false)
+            .addLiteral(null, "x", false)
+            .addRule("E", "E + T")
+            .addRule("E", "T")
+            .addRule("T", "T * F")
+            .addRule("T", "F")
+            .addRule("F", "( E )")
+            .addRule("F", "x")
+            .create();
+        final ParseTables tables = new LalrGenerator().generate(grammar, new RecordingEnvironment());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        tables.writeTo(os);
+        final byte[] bytes = os.toByteArray();
+        final ParseTables read = ParseTables.readFrom(new ByteArrayInputStream(bytes));
+        assertEquals(tables.getSize(), read.getSize());
+        assertEquals(tables.getStateCount(), read.getStateCount());
+        assertEquals(tables.getProductionCount(), read.getProductionCount());
+        for (int p = 0; p < tables.getProductionCount(); p ++) {
+            assertEquals(tables.getProductionLhs(p), read.getProductionLhs(p));
+            assertEquals(tables.getProductionLength(p), read.getProductionLength(p));
+        }
+        // 6 terminals including the end of input, and 4 nonterminals including the augmented start symbol
+        for (int s = 0; s < tables.getStateCount(); s ++) {
+            assertEquals(tables.isConsistent(s), read.isConsistent(s));
+            for (int t = 0; t < 6; t ++) {
+                assertEquals(tables.getAction(s, t), read.getAction(s, t));
+            }
+            for (int n = 0; n < 4; n ++) {
+                assertEquals(tables.getGoto(s, n), read.getGoto(s, n));
+            }
+        }
+        final ByteArrayOutputStream again = new ByteArrayOutputStream();
+        read.writeTo(again);
+        assertArrayEquals(bytes, again.toByteArray());
+        assertTrue(new WordParser(read, grammar).accepts("( x + x ) * x"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lr0;
+
+import java.util.List;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.RecordingEnvironment;
+import org.jboss.flicc.processor.SimpleGrammarBuilder;
+import org.jboss.flicc.processor.WordParser;
+import org.jboss.flicc.processor.lalr.LalrLookaheads;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the construction of automata.
+ */
+public final class AutomatonTest {
+
+    private static Grammar createExpressionGrammar() {
+        return new SimpleGrammarBuilder("E")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "*", false)
+            .addLiteral(null, "(", false)
+            .addLiteral(null, ")", false)
+            .addLiteral(null, "x", false)
+            .addRule("E", "E + T")
+            .addRule("E", "T")
+            .addRule("T", "T * F")
+            .addRule("T", "F")
+            .addRule("F", "( E )")
+            .addRule("F", "x")
+            .create();
+    }
+
+    @Test
+    public void testThreadsDoNotChangeStates() {
+        final Grammar grammar = createExpressionGrammar();
+        final Automaton single = new Automaton(grammar, 1);
+        final Automaton parallel = new Automaton(grammar, 4);
+        assertEquals(single.getStateCount(), parallel.getStateCount());
+        for (int s = 0; s < single.getStateCount(); s ++) {
+            for (int t = 0; t < single.getTerminalCount(); t ++) {
+                assertEquals(single.getShift(s, t), parallel.getShift(s, t));
+            }
+            for (int n = 0; n < single.getNonterminalCount(); n ++) {
+                assertEquals(single.getGoto(s, n), parallel.getGoto(s, n));
+            }
+        }
+    }
+
+    @Test
+    public void testNullable() {
+        final Grammar grammar = new SimpleGrammarBuilder("S")
+            .addLiteral(null, "a", false)
+            .addLiteral(null, "b", false)
+            .addLiteral(null, "c", false)
+            .addRule("S", "A B c")
+            .addRule("A", "a")
+            .addRule("A", "")
+            .addRule("B", "b")
+            .addRule("B", "")
+            .addRule("C", "A B")
+            .create();
+        final Automaton automaton = new Automaton(grammar);
+        // nonterminal 0 is the augmented start symbol
+        assertFalse(automaton.isNullable(1));
+        assertTrue(automaton.isNullable(2));
+        assertTrue(automaton.isNullable(3));
+        assertTrue(automaton.isNullable(4));
+        final LalrLookaheads lookaheads = new LalrLookaheads(automaton);
+        assertEquals(0, automaton.buildActions(lookaheads, new RecordingEnvironment()));
+        final WordParser parser = new WordParser(automaton.createTables(), grammar);
+        assertTrue(parser.accepts("c"));
+        assertTrue(parser.accepts("a c"));
+        assertTrue(parser.accepts("b c"));
+        assertTrue(parser.accepts("a b c"));
+        assertFalse(parser.accepts("b a c"));
+    }
+
+    @Test
+    public void testRepeatedProduction() {
+        final Grammar grammar = new SimpleGrammarBuilder("E")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "x", false)
+            .addRule("E", "E + x")
+            .addRule("E", "x")
+            .addRule("E", "E + x")
+            .create();
+        final Automaton automaton = new Automaton(grammar);
+        final RecordingEnvironment env = new RecordingEnvironment();
+        assertEquals(1, automaton.buildActions(new LalrLookaheads(automaton), env));
+        final List<String> warnings = env.getMessages(WARNING);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains("is repeated"));
+        // the last copy of the production is the one which is reduced
+        final ParseTables tables = automaton.createTables();
+        assertEquals(3, new WordParser(tables, grammar).parse("x + x").get(1).intValue());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.lr1;
+
+import java.util.Arrays;
+
+import org.jboss.flicc.ParseTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.RecordingEnvironment;
+import org.jboss.flicc.processor.SimpleGrammarBuilder;
+import org.jboss.flicc.processor.WordParser;
+import org.jboss.flicc.processor.lalr.LalrGenerator;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the minimal LR(1) generator.
+ */
+public final class Lr1GeneratorTest {
+
+    private static SimpleGrammarBuilder createBuilder() {
+        return new SimpleGrammarBuilder("S")
+            .addLiteral(null, "a", false)
+            .addLiteral(null, "b", false)
+            .addLiteral(null, "c", false)
+            .addLiteral(null, "d", false)
+            .addLiteral(null, "e", false)
+            .addLiteral(null, "x", false);
+    }
+
+    @Test
+    public void testSplitsLalrStates() {
+        // LR(1) but not LALR(1): merging the states after "a e" and "b e" makes both reductions apply on c and d
+        final Grammar grammar = createBuilder()
+            .addRule("S", "a E c")
+            .addRule("S", "a F d")
+            .addRule("S", "b F c")
+            .addRule("S", "b E d")
+            .addRule("E", "e")
+            .addRule("F", "e")
+            .create();
+        final RecordingEnvironment lalrEnv = new RecordingEnvironment();
+        final ParseTables lalr = new LalrGenerator().generate(grammar, lalrEnv);
+        assertEquals(2, lalrEnv.getMessages(WARNING).size());
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ParseTables tables = new Lr1Generator().generate(grammar, env);
+        assertEquals(0, env.getMessages(WARNING).size());
+        assertEquals(lalr.getStateCount() + 1, tables.getStateCount());
+        final WordParser parser = new WordParser(tables, grammar);
+        // S -> a E c (1), S -> a F d (2), S -> b F c (3), S -> b E d (4), E -> e (5), F -> e (6)
+        assertEquals(Arrays.asList(5, 1), parser.parse("a e c"));
+        assertEquals(Arrays.asList(6, 2), parser.parse("a e d"));
+        assertEquals(Arrays.asList(6, 3), parser.parse("b e c"));
+        assertEquals(Arrays.asList(5, 4), parser.parse("b e d"));
+        assertFalse(parser.accepts("a e"));
+        assertFalse(parser.accepts("e c"));
+    }
+
+    @Test
+    public void testSplitsThroughNullable() {
+        // the conflicting states are reached through a nullable X, and through T from a third context
+        final Grammar grammar = createBuilder()
+            .addRule("S", "a E c")
+            .addRule("S", "a F d")
+            .addRule("S", "b F c")
+            .addRule("S", "b E d")
+            .addRule("S", "x T")
+            .addRule("E", "e X")
+            .addRule("F", "e X")
+            .addRule("X", "x")
+            .addRule("X", "")
+            .addRule("T", "E c")
+            .addRule("T", "F d")
+            .create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ParseTables tables = new Lr1Generator().generate(grammar, env);
+        assertEquals(0, env.getMessages(WARNING).size());
+        final WordParser parser = new WordParser(tables, grammar);
+        assertTrue(parser.accepts("a e c"));
+        assertTrue(parser.accepts("a e x d"));
+        assertTrue(parser.accepts("b e c"));
+        assertTrue(parser.accepts("b e x d"));
+        assertTrue(parser.accepts("x e c"));
+        assertTrue(parser.accepts("x e x d"));
+        assertFalse(parser.accepts("x e x"));
+    }
+
+    @Test
+    public void testLalrGrammar() {
+        final Grammar grammar = new SimpleGrammarBuilder("E")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "x", false)
+            .addRule("E", "E + T")
+            .addRule("E", "T")
+            .addRule("T", "x")
+            .create();
+        final ParseTables lalr = new LalrGenerator().generate(grammar, new RecordingEnvironment());
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ParseTables tables = new Lr1Generator().generate(grammar, env);
+        assertEquals(0, env.getMessages(WARNING).size());
+        assertEquals(lalr.getStateCount(), tables.getStateCount());
+        assertTrue(new WordParser(tables, grammar).accepts("x + x + x"));
+    }
+
+    @Test
+    public void testAmbiguousGrammar() {
+        final Grammar grammar = new SimpleGrammarBuilder("E")
+            .addLiteral(null, "+", false)
+            .addLiteral(null, "x", false)
+            .addRule("E", "E + E")
+            .addRule("E", "x")
+            .create();
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ParseTables tables = new Lr1Generator().generate(grammar, env);
+        assertEquals(1, env.getMessages(WARNING).size());
+        // the conflict is resolved in favour of the shift
+        assertEquals(Arrays.asList(2, 2, 2, 1, 1), new WordParser(tables, grammar).parse("x + x + x"));
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc.processor.scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.flicc.ByteScanner;
+import org.jboss.flicc.KeywordTable;
+import org.jboss.flicc.Scanner;
+import org.jboss.flicc.ScannerTables;
+import org.jboss.flicc.processor.Grammar;
+import org.jboss.flicc.processor.RecordingEnvironment;
+import org.jboss.flicc.processor.SimpleGrammarBuilder;
+import org.jboss.flicc.processor.Tokens;
+import org.junit.Test;
+
+import static javax.tools.Diagnostic.Kind.ERROR;
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the scanner generator, through the scanners which run its tables.
+ */
+public final class ScannerGeneratorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] KEYWORDS = { "if", "else", "while", "return", "for" };
+
+    private static ScannerTables createKeywordTables(boolean byteInput) {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("S", 1, byteInput);
+        // rules 0 to 4
+        for (String keyword : KEYWORDS) {
+            builder.addLiteral(null, keyword, false);
+        }
+        builder.addPattern("id", "[a-zA-Z_][a-zA-Z0-9_]*", false); // 5
+        builder.addPattern("num", "[0-9]+", false); // 6
+        builder.addLiteral(null, "==", false); // 7
+        builder.addLiteral(null, "=", false); // 8
+        builder.addPattern(null, "[ \t\n]+", false); // 9
+        final RecordingEnvironment env = new RecordingEnvironment();
+        final ScannerTables tables = new ScannerGenerator().generate(builder.create(), env);
+        assertEquals(0, env.getMessages(WARNING).size());
+        return tables;
+    }
+
+    private static List<String> scan(ScannerTables tables, String input) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final Scanner scanner = new Scanner(tables, new StringReader(input));
+        int rule;
+        while ((rule = scanner.next()) != Scanner.EOF) {
+            tokens.add(rule + ":" + scanner.getText());
+        }
+        return tokens;
+    }
+
+    private static List<String> scanBytes(ScannerTables tables, String input) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final ByteScanner scanner = new ByteScanner(tables, new ByteArrayInputStream(input.getBytes(UTF_8)));
+        int rule;
+        while ((rule = scanner.next()) != ByteScanner.EOF) {
+            tokens.add(rule + ":" + scanner.getText());
+        }
+        return tokens;
+    }
+
+    private static List<String> scanChunks(ScannerTables tables, String... chunks) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final Scanner scanner = new Scanner(tables);
+        int rule;
+        for (String chunk : chunks) {
+            scanner.feed(CharBuffer.wrap(chunk));
+            while ((rule = scanner.next()) != Scanner.NEED_INPUT) {
+                tokens.add(rule + ":" + scanner.getText());
+            }
+        }
+        scanner.endOfInput();
+        while ((rule = scanner.next()) != Scanner.EOF) {
+            tokens.add(rule + ":" + scanner.getText());
+        }
+        return tokens;
+    }
+
+    private static List<String> scanByteChunks(ScannerTables tables, byte[]... chunks) throws IOException {
+        final List<String> tokens = new ArrayList<String>();
+        final ByteScanner scanner = new ByteScanner(tables);
+        int rule;
+        for (byte[] chunk : chunks) {
+            scanner.feed(ByteBuffer.wrap(chunk));
+            while ((rule = scanner.next()) != ByteScanner.NEED_INPUT) {
+                tokens.add(rule + ":" + scanner.getText());
+            }
+        }
+        scanner.endOfInput();
+        while ((rule = scanner.next()) != ByteScanner.EOF) {
+            tokens.add(rule + ":" + scanner.getText());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testLongestMatchAndPriority() throws IOException {
+        final ScannerTables tables = createKeywordTables(false);
+        final List<String> expected = Arrays.asList("0:if", "9: ", "5:iff", "9: ", "5:x1", "9: ", "7:==", "9: ", "8:=",
+            "9: ", "7:==", "8:=", "9: ", "6:42", "9:\n", "2:while", "-2:é", "5:_");
+        assertEquals(expected, scan(tables, "if iff x1 == = === 42\nwhileé_"));
+        assertEquals(ScannerTables.NONE, tables.getRuleTerminal(9));
+        // terminal 0 is the end of input, and the terminals follow in the order of their first rule
+        assertEquals(6, tables.getRuleTerminal(5));
+    }
+
+    @Test
+    public void testKeywordTable() throws IOException {
+        final ScannerTables tables = createKeywordTables(false);
+        final KeywordTable keywords = tables.getKeywords();
+        assertNotNull(keywords);
+        assertEquals(KEYWORDS.length, keywords.getKeywordCount());
+        assertEquals(5, keywords.getIdentifierRule());
+        for (int i = 0; i < KEYWORDS.length; i ++) {
+            final char[] chars = ("(" + KEYWORDS[i] + ")").toCharArray();
+            assertEquals(i, keywords.lookup(chars, 1, chars.length - 2));
+            final byte[] bytes = KEYWORDS[i].getBytes(UTF_8);
+            assertEquals(i, keywords.lookup(bytes, 0, bytes.length));
+        }
+        final char[] other = "iff whil returns".toCharArray();
+        // other text is left to the identifier rule
+        assertEquals(5, keywords.lookup(other, 0, 3));
+        assertEquals(5, keywords.lookup(other, 4, 4));
+        assertEquals(5, keywords.lookup(other, 9, 7));
+        assertEquals(Arrays.asList("3:return", "9: ", "5:returns", "9: ", "5:for_x", "9: ", "1:else"), scan(tables, "return returns for_x else"));
+    }
+
+    @Test
+    public void testFewKeywords() throws IOException {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("S");
+        builder.addLiteral(null, "if", false);
+        builder.addPattern("id", "[a-z]+", false);
+        builder.addPattern(null, " ", false);
+        final ScannerTables tables = new ScannerGenerator().generate(builder.create(), new RecordingEnvironment());
+        // too few keywords to be worth a table, so the DFA recognizes them
+        assertNull(tables.getKeywords());
+        assertEquals(Arrays.asList("0:if", "2: ", "1:ifs"), scan(tables, "if ifs"));
+    }
+
+    @Test
+    public void testUnicodeClasses() throws IOException {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("S");
+        builder.addPattern("word", "\\p{L}+", false);
+        builder.addPattern("num", "\\p{Nd}+", false);
+        builder.addPattern(null, "\\s", false);
+        final ScannerTables tables = new ScannerGenerator().generate(builder.create(), new RecordingEnvironment());
+        assertEquals(Arrays.asList("0:héllo", "2: ", "1:123", "2: ", "0:𝐀𝐁", "-2:!"), scan(tables, "héllo 123 𝐀𝐁!"));
+        // characters which no rule tells apart share one class, whatever their plane
+        assertEquals(tables.getCharClass('h'), tables.getCharClass('é'));
+        assertEquals(tables.getCharClass('h'), tables.getCharClass(0x1D400));
+        assertEquals(tables.getCharClass('1'), tables.getCharClass(0x0661));
+        assertEquals(tables.getCharClass('!'), tables.getCharClass('#'));
+        assertFalse(tables.getCharClass('h') == tables.getCharClass('1'));
+        assertTrue(tables.getClassCount() < 8);
+    }
+
+    @Test
+    public void testByteInput() throws IOException {
+        final ScannerTables tables = createKeywordTables(true);
+        final String input = "if iff x1 == = === 42\nwhileé_ return 𝐀";
+        // a character which no rule matches is skipped whole
+        assertEquals(scan(createKeywordTables(false), input), scanBytes(tables, input));
+    }
+
+    @Test
+    public void testPushInput() throws IOException {
+        final ScannerTables tables = createKeywordTables(false);
+        assertEquals(scan(tables, "while x1 == 42"), scanChunks(tables, "whi", "le x", "1 =", "= 4", "2"));
+        assertEquals(scan(tables, "if x"), scanChunks(tables, "", "if", "", " x", ""));
+    }
+
+    @Test
+    public void testPushInputSplits() throws IOException {
+        final ScannerTables tables = createKeywordTables(false);
+        // tokens, unmatched characters and a surrogate pair, split at every point
+        final String input = "iff == 42\n=é 𝐀x";
+        final List<String> expected = scan(tables, input);
+        for (int i = 0; i <= input.length(); i ++) {
+            assertEquals(expected, scanChunks(tables, input.substring(0, i), input.substring(i)));
+        }
+        final String[] chars = new String[input.length()];
+        for (int i = 0; i < chars.length; i ++) {
+            chars[i] = input.substring(i, i + 1);
+        }
+        assertEquals(expected, scanChunks(tables, chars));
+    }
+
+    @Test
+    public void testBytePushInputSplits() throws IOException {
+        final ScannerTables tables = createKeywordTables(true);
+        // UTF-8 sequences which are matched and which are skipped, split at every point
+        final String input = "iff == 42\n=é€ 𝐀x";
+        final List<String> expected = scanBytes(tables, input);
+        final byte[] bytes = input.getBytes(UTF_8);
+        for (int i = 0; i <= bytes.length; i ++) {
+            assertEquals(expected, scanByteChunks(tables, Arrays.copyOfRange(bytes, 0, i), Arrays.copyOfRange(bytes, i, bytes.length)));
+        }
+        final byte[][] singles = new byte[bytes.length][];
+        for (int i = 0; i < bytes.length; i ++) {
+            singles[i] = new byte[] { bytes[i] };
+        }
+        assertEquals(expected, scanByteChunks(tables, singles));
+    }
+
+    private static ScannerTables createStateTables(boolean byteInput) {
+        final Grammar grammar = new SimpleGrammarBuilder("S", 1, byteInput).addState("EMPTY", 1).create();
+        Tokens.add(grammar, "a", false, "a", 0);
+        final ScannerTables tables = new ScannerGenerator().generate(grammar, new RecordingEnvironment());
+        assertEquals(ScannerTables.NONE, tables.getStartState(1));
+        return tables;
+    }
+
+    @Test
+    public void testPushInputInStateWithoutRules() throws IOException {
+        final Scanner scanner = new Scanner(createStateTables(false));
+        scanner.setState(1);
+        // nothing can match, but the input has not ended yet
+        assertEquals(Scanner.NEED_INPUT, scanner.next());
+        scanner.feed(CharBuffer.wrap("a"));
+        assertEquals(Scanner.NO_MATCH, scanner.next());
+        assertEquals(Scanner.NEED_INPUT, scanner.next());
+        scanner.endOfInput();
+        assertEquals(Scanner.EOF, scanner.next());
+        // and a reader is read before its end is reported
+        final Scanner reading = new Scanner(createStateTables(false), new StringReader("a"));
+        reading.setState(1);
+        assertEquals(Scanner.NO_MATCH, reading.next());
+        assertEquals(Scanner.EOF, reading.next());
+    }
+
+    @Test
+    public void testBytePushInputInStateWithoutRules() throws IOException {
+        final ByteScanner scanner = new ByteScanner(createStateTables(true));
+        scanner.setState(1);
+        assertEquals(ByteScanner.NEED_INPUT, scanner.next());
+        scanner.feed(ByteBuffer.wrap("é".getBytes(UTF_8), 0, 1));
+        assertEquals(ByteScanner.NEED_INPUT, scanner.next());
+        scanner.feed(ByteBuffer.wrap("é".getBytes(UTF_8), 1, 1));
+        assertEquals(ByteScanner.NO_MATCH, scanner.next());
+        assertEquals("é", scanner.getText());
+        assertEquals(ByteScanner.NEED_INPUT, scanner.next());
+        scanner.endOfInput();
+        assertEquals(ByteScanner.EOF, scanner.next());
+        final ByteScanner reading = new ByteScanner(createStateTables(true), new ByteArrayInputStream(new byte[] { 'a' }));
+        reading.setState(1);
+        assertEquals(ByteScanner.NO_MATCH, reading.next());
+        assertEquals(ByteScanner.EOF, reading.next());
+    }
+
+    @Test
+    public void testTablesRoundTrip() throws IOException {
+        final ScannerTables tables = createKeywordTables(false);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        tables.writeTo(os);
+        final byte[] bytes = os.toByteArray();
+        final ScannerTables read = ScannerTables.readFrom(new ByteArrayInputStream(bytes));
+        assertEquals(tables.getSize(), read.getSize());
+        assertEquals(tables.getStateCount(), read.getStateCount());
+        assertEquals(tables.getClassCount(), read.getClassCount());
+        assertEquals(tables.getRuleCount(), read.getRuleCount());
+        assertEquals(tables.getKeywords().getSize(), read.getKeywords().getSize());
+        final String input = "if iff x1 == = === 42\nwhileé_ return";
+        assertEquals(scan(tables, input), scan(read, input));
+        final ByteArrayOutputStream again = new ByteArrayOutputStream();
+        read.writeTo(again);
+        assertArrayEquals(bytes, again.toByteArray());
+    }
+
+    @Test
+    public void testEmptyMatch() {
+        final SimpleGrammarBuilder builder = new SimpleGrammarBuilder("S");
+        builder.addPattern("a", "a*", false);
+        final RecordingEnvironment env = new RecordingEnvironment();
+        assertNull(new ScannerGenerator().generate(builder.create(), env));
+        assertEquals(1, env.getMessages(ERROR).size());
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A base implementation of {@link Parser}, which connects an {@link LrParser} to the scanners of a grammar.  Sources
+ * are read through an {@link InputStack}, so that included and appended sources are supported, and input which is
+ * pushed to the parser by {@code feed} is scanned by a {@link Scanner} in push mode; both are kept when the parser is
+ * {@linkplain #reset(Source) reset}, along with their buffers.  The scanner states of {@link #gotoState(int)},
+ * {@link #pushState(int)} and {@link #popState()} apply to whichever scanner reads the next token.
+ * <p>
+ * A subclass supplies the semantic actions by {@link #reduce(int, int)}, and the values of tokens by
+ * {@link #tokenScanned(int)}.  A source is parsed by the inherited {@link #parse()}; pushed input is parsed as it is
+ * fed, and once {@link #endOfInput()} returns, the value of the goal symbol is in the stack slot given by
+ * {@link #getDepth()}.  Input which no token rule matches, and syntax errors, are reported to the error handler; a
+ * syntax error then ends the parse with a {@link ParseException}.
+ * <p>
+ * Only grammars which scan characters are supported, since sources are read as characters.
+ */
+public abstract class AbstractParser extends LrParser implements Parser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ScannerTables tables;
+    private final ErrorHandler errorHandler;
+    private final InputStack input;
+    // the source given to reset, which is opened when the first token is needed
+    private Source pending;
+    private Scanner pushScanner;
+    // true if the current input is pushed rather than read from a source
+    private boolean pushed;
+    private String sourceName = Source.UNKNOWN;
+    private int state;
+    private int[] stateStack = new int[8];
+    private int stateDepth;
+    // UTF-8 input: the decoder, the decoded characters, and the start of a sequence which a chunk ended within
+    private CharsetDecoder decoder;
+    private CharBuffer decoded;
+    private ByteBuffer staged;
+
+    /**
+     * Construct a new instance, with no input.
+     *
+     * @param automaton the automaton of the grammar
+     * @param tables the scanner tables of the grammar
+     * @param errorHandler the error handler
+     * @throws IllegalArgumentException if the scanner tables are for byte input, or the error handler is {@code null}
+     */
+    protected AbstractParser(final LrAutomaton automaton, final ScannerTables tables, final ErrorHandler errorHandler) {
+        super(automaton);
+        if (tables.isByteInput()) {
+            throw new IllegalArgumentException("Scanner tables are for byte input");
+        }
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("errorHandler is null");
+        }
+        this.tables = tables;
+        this.errorHandler = errorHandler;
+        input = new InputStack(tables);
+    }
+
+    public void gotoState(final int state) {
+        tables.getStartState(state);
+        this.state = state;
+        if (pushed) {
+            pushScanner.setState(state);
+        } else {
+            input.setState(state);
+        }
+    }
+
+    public void pushState(final int state) {
+        if (stateDepth == stateStack.length) {
+            stateStack = Arrays.copyOf(stateStack, stateDepth << 1);
+        }
+        stateStack[stateDepth++] = this.state;
+        gotoState(state);
+    }
+
+    /**
+     * Remove the current scanner state, and go back to the state which was current when it was pushed.
+     *
+     * @return the state which was removed
+     * @throws IllegalStateException if no state was pushed
+     */
+    public int popState() {
+        if (stateDepth == 0) {
+            throw new IllegalStateException("No scanner state was pushed");
+        }
+        final int removed = state;
+        gotoState(stateStack[--stateDepth]);
+        return removed;
+    }
+
+    /**
+     * Discard all parser state and start parsing a new source, which is opened when the parse reads its first token.
+     * Failures to close the sources which are discarded are reported to the error handler.
+     *
+     * @param source the new source, or {@code null} if input is to be pushed by {@code feed}
+     */
+    public void reset(final Source source) {
+        reset();
+        try {
+            input.reset();
+        } catch (IOException e) {
+            errorHandler.handleError(null, "Failed to close input: " + e);
+        }
+        pending = source;
+        pushed = false;
+        state = 0;
+        stateDepth = 0;
+        if (decoder != null) {
+            decoder.reset();
+            staged.clear();
+        }
+    }
+
+    public void setParseMetrics(final ParseMetrics metrics) {
+        super.setParseMetrics(metrics);
+        input.setCounters(getParseCounters());
+        if (pushScanner != null) {
+            pushScanner.setCounters(getParseCounters());
+        }
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * {@inheritDoc}  Pushed input is parsed in the same way as a source, except that it cannot include other sources.
+     *
+     * @throws IllegalStateException if the parser is reading a source
+     */
+    public void feed(final CharBuffer chunk) {
+        startPush();
+        pushScanner.feed(chunk);
+        resumePush();
+    }
+
+    /**
+     * {@inheritDoc}  Malformed input is replaced by {@code U+FFFD}.
+     *
+     * @throws IllegalStateException if the parser is reading a source
+     */
+    public void feed(final ByteBuffer chunk) {
+        startPush();
+        if (decoder == null) {
+            decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoded = CharBuffer.allocate(1024);
+            staged = ByteBuffer.allocate(4);
+        }
+        final ByteBuffer staged = this.staged;
+        if (staged.position() > 0) {
+            // complete the sequence which the last chunk ended within, one byte at a time
+            while (chunk.hasRemaining()) {
+                staged.put(chunk.get());
+                staged.flip();
+                decode(staged, false);
+                final boolean complete = ! staged.hasRemaining();
+                staged.compact();
+                if (complete) {
+                    break;
+                }
+            }
+        }
+        decode(chunk, false);
+        // at most the first three bytes of a sequence are left
+        staged.put(chunk);
+        resumePush();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the parser is reading a source
+     */
+    public void endOfInput() {
+        startPush();
+        final CharsetDecoder decoder = this.decoder;
+        if (decoder != null) {
+            staged.flip();
+            decode(staged, true);
+            staged.clear();
+            decoded.clear();
+            decoder.flush(decoded);
+            decoded.flip();
+            pushScanner.feed(decoded);
+            decoder.reset();
+        }
+        pushScanner.endOfInput();
+        resumePush();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ParseException if the source, or the source given to {@link #reset(Source)}, cannot be opened
+     * @throws IllegalStateException if the input is pushed to this parser
+     */
+    public void pushInputSource(final Source source) {
+        try {
+            openSource().push(source);
+        } catch (IOException e) {
+            throw new ParseException("Failed to open " + source.getName(), e, getLocation());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ParseException if the source given to {@link #reset(Source)} cannot be opened, or no source is being
+     * read and the source cannot be opened
+     * @throws IllegalStateException if the input is pushed to this parser
+     */
+    public void appendInputSource(final Source source) {
+        try {
+            openSource().append(source);
+        } catch (IOException e) {
+            throw new ParseException("Failed to open " + source.getName(), e, getLocation());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the line number, or 0 if no token has been read
+     */
+    public int getLine() {
+        final Location location = getLocation();
+        return location == null ? 0 : location.getLineNumber();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the column number, or 0 if no token has been read
+     */
+    public int getColumn() {
+        final Location location = getLocation();
+        return location == null ? 0 : location.getColumnNumber();
+    }
+
+    /**
+     * Not supported, since lines are found from the input rather than counted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public void setLine() {
+        throw new UnsupportedOperationException("Lines are found from the input");
+    }
+
+    /**
+     * Not supported, since columns are found from the input rather than counted.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public void setColumn() {
+        throw new UnsupportedOperationException("Columns are found from the input");
+    }
+
+    /**
+     * Get the name of the source of the last token read.
+     *
+     * @return the source name
+     */
+    public String getSourceName() {
+        final Location location = getLocation();
+        return location == null ? sourceName : location.getFileName();
+    }
+
+    /**
+     * Set the name of input which is pushed to this parser by {@code feed}.  A source which is read is named by
+     * {@link Source#getName()}.
+     *
+     * @param name the source name
+     */
+    public void setSourceName(final String name) {
+        sourceName = name;
+    }
+
+    /**
+     * Get the location of the last token read.
+     *
+     * @return the location, or {@code null} if no token has been read
+     */
+    public Location getLocation() {
+        return super.getLocation();
+    }
+
+    protected Location createLocation(final long position) {
+        if (pushed) {
+            return Positions.toLocation(position, pushScanner.getLineIndex(), sourceName, null);
+        }
+        return input.getLocation(position);
+    }
+
+    protected final int nextToken() throws IOException {
+        for (;;) {
+            final int rule;
+            final long position;
+            if (pushed) {
+                rule = pushScanner.next();
+                if (rule == Scanner.NEED_INPUT) {
+                    return NEED_INPUT;
+                }
+                position = pushScanner.getTokenPosition();
+            } else {
+                final InputStack input = openSource();
+                rule = input.next();
+                position = input.getTokenPosition();
+            }
+            if (rule == Scanner.EOF) {
+                // the position of the end of input is that of the last token
+                return 0;
+            }
+            setTokenPosition(position);
+            if (rule == Scanner.NO_MATCH) {
+                errorHandler.handleError(getLocation(), "Unexpected input '" + getTokenText() + "'");
+                errorReported();
+                continue;
+            }
+            tokenScanned(rule);
+            final int terminal = tables.getRuleTerminal(rule);
+            if (terminal != ScannerTables.NONE) {
+                return terminal;
+            }
+        }
+    }
+
+    /**
+     * Run the action of a token rule, after its token has been scanned.  The text of the token is available from
+     * {@link #getTokenText()}.  For a rule which produces a terminal, the value of the token must be set here, by
+     * {@link #setTokenObject(Object)}, {@link #setTokenLong(long)} or {@link #setTokenDouble(double)}; the scanner
+     * state may be changed for any rule.  The default implementation does nothing.
+     *
+     * @param rule the token rule
+     */
+    protected void tokenScanned(int rule) {
+    }
+
+    /**
+     * Get the text of the last token scanned.
+     *
+     * @return the token text
+     */
+    protected final String getTokenText() {
+        return pushed ? pushScanner.getText() : input.getText();
+    }
+
+    protected void syntaxError(final int state, final int terminal) {
+        errorHandler.handleError(getLocation(), "Syntax error");
+    }
+
+    private InputStack openSource() throws IOException {
+        if (pushed) {
+            throw new IllegalStateException("Pushed input cannot include sources");
+        }
+        final Source source = pending;
+        if (source != null) {
+            pending = null;
+            input.push(source);
+        }
+        return input;
+    }
+
+    private void startPush() {
+        if (pushed) {
+            return;
+        }
+        if (pending != null || input.getDepth() > 0) {
+            throw new IllegalStateException("Parser is reading a source");
+        }
+        Scanner scanner = pushScanner;
+        if (scanner == null) {
+            pushScanner = scanner = new Scanner(tables);
+        } else {
+            scanner.reset(null);
+        }
+        scanner.setCounters(getParseCounters());
+        scanner.setState(state);
+        pushed = true;
+        start();
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        final CharBuffer decoded = this.decoded;
+        for (;;) {
+            decoded.clear();
+            final CoderResult result = decoder.decode(bytes, decoded, endOfInput);
+            decoded.flip();
+            pushScanner.feed(decoded);
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    private void resumePush() {
+        try {
+            resume();
+        } catch (IOException e) {
+            // a scanner in push mode does not read
+            throw new IllegalStateException(e);
+        }
+    }
+}
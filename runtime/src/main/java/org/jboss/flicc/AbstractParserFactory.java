@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A base class for parser factories, which need only create parsers for sources.  A reader is read as a source with
+ * an unknown name, and a file is read through a {@link MappedFileSource} as UTF-8.
+ */
+public abstract class AbstractParserFactory implements ParserFactory {
+
+    /**
+     * Construct a new instance.
+     */
+    protected AbstractParserFactory() {
+    }
+
+    public Parser createParser(final Reader initialSource, final ErrorHandler errorHandler) {
+        return createParser(new ReaderSource(initialSource), errorHandler);
+    }
+
+    public Parser createParser(final File initialSource, final ErrorHandler errorHandler) {
+        return createParser(new MappedFileSource(initialSource), errorHandler);
+    }
+
+    static final class ReaderSource implements Source {
+        private final Reader reader;
+
+        ReaderSource(final Reader reader) {
+            this.reader = reader;
+        }
+
+        public String getName() {
+            return UNKNOWN;
+        }
+
+        public Reader open() throws IOException {
+            return reader;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A scanner which splits UTF-8 encoded input into tokens without decoding it, using the byte DFA of a grammar's
+ * {@link ScannerTables}.  It behaves as a {@link Scanner} over the decoded text would, except that token lengths and
+ * offsets are counted in bytes, and that input which is not valid UTF-8 never matches a token rule.
+ * <p>
+ * Input is read into a single {@code byte} buffer which is refilled in place.  The text of the last token is
+ * available without copying as a range of the buffer ({@link #getBuffer()}, {@link #getTokenOffset()} and
+ * {@link #getTokenLength()}); only {@link #getText()} decodes it.
+ * <p>
+ * As with {@link Scanner}, a scanner constructed without a stream is in push mode, and is given its input by
+ * {@link #feed(ByteBuffer)} and {@link #endOfInput()}.
+ */
+public final class ByteScanner {
+
+    /**
+     * The value returned by {@link #next()} at the end of the input.
+     */
+    public static final int EOF = -1;
+
+    /**
+     * The value returned by {@link #next()} when no token rule matches the input.  A single character, which is a
+     * whole UTF-8 sequence or else a single byte, has been consumed as the token text, so that scanning can continue.
+     */
+    public static final int NO_MATCH = -2;
+
+    /**
+     * The value returned by {@link #next()} in push mode when more input is needed to find the end of the next token.
+     */
+    public static final int NEED_INPUT = -3;
+
+    private static final int NONE = ScannerTables.NONE;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ScannerTables tables;
+    private final KeywordTable keywords;
+    private InputStream stream;
+    private byte[] buf = new byte[8192];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int tokenStart;
+    private int tokenEnd;
+    private int state;
+    private int startState;
+    // the progress of a scan which was suspended for more input
+    private boolean suspended;
+    private int suspendedDfa;
+    private int suspendedLength;
+    private int suspendedRule;
+    private int suspendedMatched;
+    // line starts are recorded lazily, up to buffer index counted, which is at character offset chars
+    private int source;
+    private final LineIndex ownLines = new LineIndex();
+    private LineIndex lines = ownLines;
+    private long chars;
+    private int counted;
+    private ParseCounters counters;
+
+    /**
+     * Construct a new instance, in scanner state 0.
+     *
+     * @param tables the scanner tables, which must be for byte input
+     * @param stream the UTF-8 input to scan
+     * @throws IllegalArgumentException if the tables are for character input
+     */
+    public ByteScanner(final ScannerTables tables, final InputStream stream) {
+        if (! tables.isByteInput()) {
+            throw new IllegalArgumentException("Scanner tables are for character input");
+        }
+        this.tables = tables;
+        this.stream = stream;
+        keywords = tables.getKeywords();
+        startState = tables.getStartState(0);
+    }
+
+    /**
+     * Construct a new instance in push mode, in scanner state 0.
+     *
+     * @param tables the scanner tables, which must be for byte input
+     * @throws IllegalArgumentException if the tables are for character input
+     */
+    public ByteScanner(final ScannerTables tables) {
+        this(tables, null);
+    }
+
+    /**
+     * Start scanning new input, in scanner state 0.  The buffer is kept, so a scanner which is reset for each input
+     * does not allocate once its buffer is as large as the longest token.  The previous input is not closed.
+     *
+     * @param stream the UTF-8 input to scan, or {@code null} for push mode
+     */
+    public void reset(final InputStream stream) {
+        ownLines.clear();
+        reset(stream, ownLines);
+    }
+
+    /**
+     * Start scanning new input, in scanner state 0, and record its lines in the given index rather than in this
+     * scanner's own, so that the index remains valid after this scanner has been reset again.
+     *
+     * @param stream the UTF-8 input to scan, or {@code null} for push mode
+     * @param lines the empty line index of the input
+     */
+    public void reset(final InputStream stream, final LineIndex lines) {
+        this.stream = stream;
+        this.lines = lines;
+        pos = limit = tokenStart = tokenEnd = counted = 0;
+        chars = 0;
+        eof = suspended = false;
+        state = 0;
+        startState = tables.getStartState(0);
+    }
+
+    /**
+     * Get the current scanner state.
+     *
+     * @return the scanner state value
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Change the scanner state.  The new state applies from the next token on.
+     *
+     * @param state the scanner state value
+     * @throws IllegalArgumentException if the grammar does not declare the state
+     */
+    public void setState(int state) {
+        startState = tables.getStartState(state);
+        this.state = state;
+    }
+
+    /**
+     * Add a chunk of UTF-8 input in push mode.  The chunk is consumed completely, and may end within a multi-byte
+     * sequence.  The text of the last token remains available.
+     *
+     * @param chunk the input
+     * @throws IllegalStateException if the scanner is not in push mode, or the end of input was already marked
+     */
+    public void feed(ByteBuffer chunk) {
+        if (stream != null || eof) {
+            throw new IllegalStateException(eof ? "Input has already ended" : "Scanner is not in push mode");
+        }
+        byte[] buf = this.buf;
+        final int cnt = chunk.remaining();
+        if (tokenStart > 0 && limit + cnt > buf.length) {
+            // discard consumed input, but not the text of the last token
+            count(tokenStart);
+            counted -= tokenStart;
+            System.arraycopy(buf, tokenStart, buf, 0, limit - tokenStart);
+            limit -= tokenStart;
+            pos -= tokenStart;
+            tokenEnd -= tokenStart;
+            tokenStart = 0;
+        }
+        if (limit + cnt > buf.length) {
+            this.buf = buf = Arrays.copyOf(buf, Math.max(buf.length << 1, limit + cnt));
+        }
+        chunk.get(buf, limit, cnt);
+        limit += cnt;
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.bytes += cnt;
+        }
+    }
+
+    /**
+     * Mark the end of the input in push mode.
+     *
+     * @throws IllegalStateException if the scanner is not in push mode
+     */
+    public void endOfInput() {
+        if (stream != null) {
+            throw new IllegalStateException("Scanner is not in push mode");
+        }
+        eof = true;
+    }
+
+    /**
+     * Scan the next token.
+     *
+     * @return the matched token rule, {@link #EOF}, {@link #NO_MATCH} or, in push mode, {@link #NEED_INPUT}
+     * @throws IOException if reading the input fails
+     */
+    public int next() throws IOException {
+        final ScannerTables tables = this.tables;
+        int dfa = startState;
+        int len = 0;
+        int rule = NONE;
+        int matched = 0;
+        if (suspended) {
+            suspended = false;
+            dfa = suspendedDfa;
+            len = suspendedLength;
+            rule = suspendedRule;
+            matched = suspendedMatched;
+        }
+        for (;;) {
+            // at the start of a token, wait for input even in a scanner state in which no rule applies, since only the
+            // end of the input may end the input
+            if (! eof && (dfa != NONE || len == 0) && pos + len == limit) {
+                if (stream == null) {
+                    suspended = true;
+                    suspendedDfa = dfa;
+                    suspendedLength = len;
+                    suspendedRule = rule;
+                    suspendedMatched = matched;
+                    return NEED_INPUT;
+                }
+                fill();
+            }
+            if (dfa == NONE || pos + len == limit) {
+                break;
+            }
+            dfa = tables.getTransition(dfa, tables.getCharClass(buf[pos + len] & 0xff));
+            if (dfa != NONE) {
+                len ++;
+                final int accepted = tables.getAccept(dfa);
+                if (accepted != NONE) {
+                    rule = accepted;
+                    matched = len;
+                }
+            }
+        }
+        if (rule != NONE) {
+            if (keywords != null && rule == keywords.getIdentifierRule()) {
+                rule = keywords.lookup(buf, pos, matched);
+            }
+            tokenStart = pos;
+            tokenEnd = pos += matched;
+            if (ParseMetrics.ENABLED && counters != null) {
+                counters.tokens ++;
+            }
+            return rule;
+        }
+        if (pos == limit) {
+            tokenStart = tokenEnd = pos;
+            return EOF;
+        }
+        // consume the whole of an unmatched multi-byte sequence, as a Scanner consumes a whole surrogate pair
+        final int length = getSequenceLength(buf[pos]);
+        int skip = 1;
+        while (skip < length) {
+            if (pos + skip == limit) {
+                if (eof) {
+                    break;
+                }
+                if (stream == null) {
+                    // resume with the DFA already stopped, at this same point
+                    suspended = true;
+                    suspendedDfa = NONE;
+                    suspendedLength = 0;
+                    suspendedRule = NONE;
+                    suspendedMatched = 0;
+                    return NEED_INPUT;
+                }
+                fill();
+                continue;
+            }
+            if ((buf[pos + skip] & 0xc0) != 0x80) {
+                break;
+            }
+            skip ++;
+        }
+        tokenStart = pos;
+        tokenEnd = pos += skip;
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.tokens ++;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Set the source number which is recorded in token positions.
+     *
+     * @param source the source number
+     */
+    public void setSource(int source) {
+        this.source = source;
+    }
+
+    /**
+     * Set the counters which this scanner adds the tokens it scans and the input it reads to.
+     *
+     * @param counters the counters, or {@code null} to count nothing
+     * @see ParseMetrics
+     */
+    public void setCounters(ParseCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Get the position of the start of the last token, as packed by {@link Positions}.  Offsets are counted in
+     * {@code char}s of the decoded input, as they would be by a {@link Scanner}.
+     *
+     * @return the packed position
+     */
+    public long getTokenPosition() {
+        count(tokenStart);
+        long chars = this.chars;
+        // the line index may already have been brought up to the end of the token
+        for (int i = tokenStart; i < counted; i ++) {
+            chars -= width(buf[i]);
+        }
+        return Positions.pack(source, chars);
+    }
+
+    /**
+     * Get the line index of the input, which is complete up to the end of the last token.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        count(pos);
+        return lines;
+    }
+
+    /**
+     * Get the text of the last token.
+     *
+     * @return the token text
+     */
+    public String getText() {
+        return new String(buf, tokenStart, tokenEnd - tokenStart, UTF_8);
+    }
+
+    /**
+     * Get the scanner buffer, which holds the text of the last token from {@link #getTokenOffset()}.  The buffer is
+     * overwritten by the next call to {@link #next()}, and it must not be modified.
+     *
+     * @return the buffer
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Get the offset of the last token in the scanner buffer.
+     *
+     * @return the token offset
+     */
+    public int getTokenOffset() {
+        return tokenStart;
+    }
+
+    /**
+     * Get the length of the last token, in bytes.
+     *
+     * @return the token length
+     */
+    public int getTokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    private void count(int index) {
+        final byte[] buf = this.buf;
+        final LineIndex lines = this.lines;
+        long chars = this.chars;
+        for (int i = counted; i < index; i ++) {
+            final byte b = buf[i];
+            chars += width(b);
+            if (b == '\n') {
+                lines.addLineStart(chars);
+            }
+        }
+        this.chars = chars;
+        counted = Math.max(counted, index);
+    }
+
+    private static int width(byte b) {
+        // the number of chars a byte adds to the decoded input; a four-byte sequence is a surrogate pair
+        return (b & 0xc0) == 0x80 ? 0 : (b & 0xf8) == 0xf0 ? 2 : 1;
+    }
+
+    private static int getSequenceLength(byte b) {
+        return (b & 0xe0) == 0xc0 ? 2 : (b & 0xf0) == 0xe0 ? 3 : (b & 0xf8) == 0xf0 ? 4 : 1;
+    }
+
+    private void fill() throws IOException {
+        byte[] buf = this.buf;
+        if (pos > 0) {
+            // discard consumed input, including the text of the previous token
+            count(pos);
+            counted -= pos;
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            tokenStart = tokenEnd = pos = 0;
+        } else if (limit == buf.length) {
+            this.buf = buf = Arrays.copyOf(buf, buf.length << 1);
+        }
+        final int res = stream.read(buf, limit, buf.length - limit);
+        if (res == -1) {
+            eof = true;
+        } else {
+            limit += res;
+            if (ParseMetrics.ENABLED && counters != null) {
+                counters.bytes += res;
+                counters.refilled(res);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input source which can also be read as raw bytes, for grammars whose scanner runs directly over UTF-8 input
+ * (see {@link ScannerTables#isByteInput()}).
+ */
+public interface ByteSource extends Source {
+
+    /**
+     * Open the input source as a stream of UTF-8 encoded bytes.
+     *
+     * @return the stream
+     * @throws IOException if an error occurs
+     */
+    InputStream openStream() throws IOException;
+}
@@ -290,10 +290,21 @@ public final class Flicc {
     }
 
     /**
-     * The result of this rule or pattern.
+     * Declare a pattern or literal to be a synchronizing token: a token, scanned in scanner state 0, after which the
+     * rest of the input is parsed as if it were a new input.  A large input may be split after such tokens and its
+     * pieces parsed in parallel by a {@link org.jboss.flicc.SpeculativeParser}.  The end of a line in a line-oriented
+     * grammar is a typical synchronizing token.
      */
     @Retention(SOURCE)
     @Target(METHOD)
+    public @interface Sync {}
+
+    /**
+     * The result of this rule or pattern.  On a grammar class, the goal of the grammar, which may otherwise be given
+     * by its {@link Parse} method.
+     */
+    @Retention(SOURCE)
+    @Target({ METHOD, TYPE })
     @Inherited
     public @interface __ {
 
@@ -364,4 +375,12 @@ public final class Flicc {
          */
         int value() default 1;
     }
+
+    /**
+     * Declare that the scanner of a grammar runs directly over the bytes of UTF-8 encoded input, without decoding it to
+     * characters.  The input of such a grammar is read from a {@link org.jboss.flicc.ByteSource}.
+     */
+    @Retention(SOURCE)
+    @Target(TYPE)
+    public @interface Utf8 {}
 }
@@ -0,0 +1,497 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * An LR parser which retains its parse tree and its input, so that the input can be edited and reparsed
+ * incrementally.
+ * <p>
+ * After an edit, the input is parsed again from the start, but the old tree is used as the input in place of the
+ * characters it covers: an old subtree which does not touch the edited text is shifted as a single symbol, and only
+ * the edited region is scanned again.  As in Wagner and Graham's method, a nonterminal subtree can be reused if the
+ * parser is in the same state in which its first symbol was originally shifted, and the terminal which follows it is
+ * the same as before, since then the parser would rebuild exactly the same subtree; otherwise it is broken down into
+ * its children and they are tried in turn.  A token is reused if neither it nor the input which the scanner looked at
+ * past its end was edited.  Reused subtrees keep their semantic values, so the actions of a grammar which is parsed
+ * incrementally must compute a value only from the values of its right-hand side.
+ * <p>
+ * A subclass supplies the tokens by {@link #scan(CharSequence, int)} and the semantic actions by
+ * {@link #reduce(int, int)}, in the same way as for {@link LrParser}.
+ */
+public abstract class IncrementalLrParser {
+
+    private static final int INITIAL_DEPTH = 64;
+    private static final ParseNode[] NO_NODES = new ParseNode[0];
+
+    private final LrAutomaton automaton;
+    private final String sourceName;
+    private final StringBuilder text = new StringBuilder();
+    private final LineIndex lines = new LineIndex();
+    private boolean linesIndexed;
+    private ParseNode tree;
+    private int[] states = new int[INITIAL_DEPTH];
+    private ParseNode[] nodes = new ParseNode[INITIAL_DEPTH];
+    private int sp;
+    private Object tokenObject;
+    private long tokenLong;
+    private int tokenLength;
+    private int tokenLookahead;
+    private Object resultObject;
+    private long resultLong;
+
+    // the input of the current parse: the next position in the new text, and the old nodes which follow it
+    private final ArrayDeque<ParseNode> oldNodes = new ArrayDeque<ParseNode>();
+    private int pos;
+    private int oldPos;
+    private int editOffset;
+    private int editRemoved;
+    private int editInserted;
+    private ParseNode token;
+    private int tokenPos;
+
+    /**
+     * Construct a new instance.  The source is read completely into memory.
+     *
+     * @param automaton the automaton of the grammar
+     * @param source the initial input
+     * @throws IOException if reading the source fails
+     */
+    protected IncrementalLrParser(final LrAutomaton automaton, final Source source) throws IOException {
+        this.automaton = automaton;
+        sourceName = source.getName();
+        final Reader reader = source.open();
+        try {
+            final char[] buf = new char[8192];
+            int res;
+            while ((res = reader.read(buf)) != -1) {
+                text.append(buf, 0, res);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get the current input text.
+     *
+     * @return the text, which must not be modified
+     */
+    public final CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * Get the current parse tree, parsing the input if it has not been parsed.
+     *
+     * @return the root node, whose symbol is the goal symbol of the grammar
+     * @throws ParseException if the input does not match the grammar
+     */
+    public final ParseNode getTree() {
+        if (tree == null) {
+            editOffset = editRemoved = editInserted = 0;
+            tree = parse();
+        }
+        return tree;
+    }
+
+    /**
+     * Replace part of the input and reparse it.  If the input does not match the grammar after the edit, the edit is
+     * kept but the tree is discarded, and the next edit parses the whole input again.
+     *
+     * @param offset the offset of the replaced text
+     * @param removedLength the number of characters replaced
+     * @param insertedText the replacement text
+     * @return the new root node
+     * @throws IndexOutOfBoundsException if the replaced text is not within the input
+     * @throws ParseException if the input does not match the grammar
+     */
+    public final ParseNode applyEdit(int offset, int removedLength, CharSequence insertedText) {
+        if (offset < 0 || removedLength < 0 || offset > text.length() - removedLength) {
+            throw new IndexOutOfBoundsException("Edit of " + removedLength + " characters at " + offset + " is outside of input of length " + text.length());
+        }
+        text.replace(offset, offset + removedLength, insertedText.toString());
+        linesIndexed = false;
+        final ParseNode old = tree;
+        tree = null;
+        if (old != null) {
+            editOffset = offset;
+            editRemoved = removedLength;
+            editInserted = insertedText.length();
+            oldNodes.push(old);
+        }
+        tree = parse();
+        return tree;
+    }
+
+    /**
+     * Get the location of a node in the current input.
+     *
+     * @param node the node
+     * @return the location
+     */
+    public final Location getLocation(ParseNode node) {
+        return getLocation(node.getOffset());
+    }
+
+    /**
+     * Get the location of an offset in the current input.  Lines and columns are numbered from 1.  The line index of
+     * the input is rebuilt on the first call after an edit.
+     *
+     * @param offset the offset
+     * @return the location
+     */
+    public final Location getLocation(int offset) {
+        final LineIndex lines = this.lines;
+        if (! linesIndexed) {
+            lines.clear();
+            lines.addLines(text, 0, text.length(), 0);
+            linesIndexed = true;
+        }
+        return new Location(null, sourceName, lines.getLine(offset), lines.getColumn(offset));
+    }
+
+    private ParseNode parse() {
+        final LrAutomaton automaton = this.automaton;
+        pos = oldPos = 0;
+        token = null;
+        int sp = this.sp = 0;
+        states[0] = 0;
+        try {
+            for (;;) {
+                final ParseNode item = next();
+                final int state = states[sp];
+                if (! item.terminal && item.state == state && canReuse(item)) {
+                    // try this before the action on its first terminal, which may be to reduce an empty production
+                    // that the subtree itself starts with, and which would leave the parser in another state
+                    sp = this.sp = push(sp);
+                    states[sp] = automaton.getGoto(state, item.symbol);
+                    nodes[sp] = item;
+                    continue;
+                }
+                final int terminal = item.firstTerminal;
+                final int action = automaton.getAction(state, terminal);
+                if (ParseTables.isShift(action)) {
+                    if (item.terminal) {
+                        item.state = state;
+                        consume(item);
+                        sp = this.sp = push(sp);
+                        states[sp] = ParseTables.getShiftState(action);
+                        nodes[sp] = item;
+                    } else {
+                        breakDown();
+                    }
+                } else if (ParseTables.isReduce(action)) {
+                    final int production = ParseTables.getReduceProduction(action);
+                    if (production == 0) {
+                        final ParseNode root = nodes[sp];
+                        root.parent = null;
+                        return root;
+                    }
+                    final int base = sp - automaton.getProductionLength(production) + 1;
+                    if (base > sp) {
+                        push(sp);
+                    }
+                    resultObject = null;
+                    resultLong = 0;
+                    reduce(production, base);
+                    final ParseNode[] children = base > sp ? NO_NODES : Arrays.copyOfRange(nodes, base, sp + 1);
+                    final int lhs = automaton.getProductionLhs(production);
+                    final ParseNode node = new ParseNode(lhs, production, children, resultObject, resultLong);
+                    resultObject = null;
+                    node.state = states[base - 1];
+                    node.follow = terminal;
+                    for (int i = base + 1; i <= sp; i ++) {
+                        nodes[i] = null;
+                    }
+                    sp = this.sp = base;
+                    nodes[sp] = node;
+                    states[sp] = automaton.getGoto(states[sp - 1], lhs);
+                } else {
+                    syntaxError(state, terminal, pos);
+                    throw new ParseException("Syntax error", getLocation(pos));
+                }
+            }
+        } finally {
+            Arrays.fill(nodes, 0, Math.min(this.sp + 2, nodes.length), null);
+            oldNodes.clear();
+            token = null;
+        }
+    }
+
+    private int push(int sp) {
+        final int newSp = sp + 1;
+        if (newSp == states.length) {
+            final int capacity = newSp << 1;
+            states = Arrays.copyOf(states, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+        }
+        return newSp;
+    }
+
+    /**
+     * Get the next input item at the current position: an old node which can be reused there, or else a new token.
+     *
+     * @return the item, which for the end of input is a token of terminal 0
+     */
+    private ParseNode next() {
+        if (token != null && tokenPos == pos) {
+            return token;
+        }
+        final int oldEquivalent = toOld(pos);
+        if (oldEquivalent != -1) {
+            final ArrayDeque<ParseNode> oldNodes = this.oldNodes;
+            ParseNode node;
+            while ((node = oldNodes.peek()) != null) {
+                final int oldEnd = oldPos + node.length;
+                if (oldEnd <= oldEquivalent) {
+                    // already covered by new tokens, or empty
+                    oldNodes.pop();
+                    oldPos = oldEnd;
+                } else if (oldPos < oldEquivalent) {
+                    breakDown();
+                } else if (oldPos > oldEquivalent) {
+                    // a new token ends within an old one
+                    break;
+                } else if (isDamaged(node)) {
+                    if (node.terminal) {
+                        break;
+                    }
+                    breakDown();
+                } else {
+                    return node;
+                }
+            }
+        }
+        tokenObject = null;
+        tokenLong = 0;
+        tokenLength = 0;
+        tokenLookahead = 1;
+        final int terminal = scan(text, pos);
+        if (terminal != 0 && tokenLength <= 0) {
+            throw new IllegalStateException("Empty token at " + pos);
+        }
+        token = new ParseNode(terminal, tokenLength, tokenLookahead, tokenObject, tokenLong);
+        tokenObject = null;
+        tokenPos = pos;
+        return token;
+    }
+
+    private void consume(ParseNode item) {
+        pos += item.length;
+        if (item == token) {
+            token = null;
+        } else {
+            oldNodes.pop();
+            oldPos += item.length;
+        }
+    }
+
+    /**
+     * Determine whether an old subtree can be shifted in the current state, which is the state in which it was
+     * originally shifted: that is, whether it is followed by the same terminal as before.
+     */
+    private boolean canReuse(ParseNode item) {
+        consume(item);
+        if (next().firstTerminal == item.follow) {
+            return true;
+        }
+        pos -= item.length;
+        oldPos -= item.length;
+        oldNodes.push(item);
+        return false;
+    }
+
+    private void breakDown() {
+        final ParseNode node = oldNodes.pop();
+        final ParseNode[] children = node.children;
+        if (children.length == 0) {
+            oldPos += node.length;
+        }
+        for (int i = children.length - 1; i >= 0; i --) {
+            oldNodes.push(children[i]);
+        }
+    }
+
+    private int toOld(int pos) {
+        if (pos < editOffset) {
+            return pos;
+        }
+        final int inserted = editOffset + editInserted;
+        return pos < inserted ? -1 : pos - editInserted + editRemoved;
+    }
+
+    private boolean isDamaged(ParseNode node) {
+        // old coordinates; a node which ends at the edit, or whose scanning looked into it, may change
+        return oldPos <= editOffset + editRemoved && oldPos + node.length + node.lookahead >= editOffset;
+    }
+
+    /**
+     * Scan the token at an offset in the input.  Before returning, the length of the token must be set by
+     * {@link #setTokenLength(int)}, and its value, if any, by {@link #setTokenObject(Object)},
+     * {@link #setTokenLong(long)} or {@link #setTokenDouble(double)}.  Input which is ignored before the token, such
+     * as white space, is counted as part of its length.
+     *
+     * @param text the input
+     * @param offset the offset of the token
+     * @return the terminal, which is 0 at the end of the input
+     */
+    protected abstract int scan(CharSequence text, int offset);
+
+    /**
+     * Run the semantic action of a production, as for {@link LrParser#reduce(int, int)}.
+     *
+     * @param production the production
+     * @param base the stack slot of the first right-hand side symbol
+     */
+    protected abstract void reduce(int production, int base);
+
+    /**
+     * Report a syntax error.  The default implementation throws a {@link ParseException}; if this method returns
+     * normally, one is thrown anyway.
+     *
+     * @param state the state in which the error was detected
+     * @param terminal the look-ahead terminal
+     * @param offset the offset of the look-ahead
+     */
+    protected void syntaxError(int state, int terminal, int offset) {
+        throw new ParseException("Syntax error: unexpected terminal " + terminal + " in state " + state, getLocation(offset));
+    }
+
+    /**
+     * Set the length of the token returned by {@link #scan(CharSequence, int)}.
+     *
+     * @param length the length, which must be positive for any terminal other than the end of input
+     */
+    protected final void setTokenLength(int length) {
+        tokenLength = length;
+    }
+
+    /**
+     * Set the number of characters past the end of the token returned by {@link #scan(CharSequence, int)} which the
+     * scanner examined to find its end.  An edit there causes the token to be scanned again.  The default is 1, which
+     * suffices for a longest-match scanner whose tokens can be recognized by looking at one more character.
+     *
+     * @param lookahead the number of characters
+     */
+    protected final void setTokenLookahead(int lookahead) {
+        tokenLookahead = lookahead;
+    }
+
+    /**
+     * Set the value of the token returned by {@link #scan(CharSequence, int)}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenObject(Object value) {
+        tokenObject = value;
+    }
+
+    /**
+     * Set the primitive value of the token returned by {@link #scan(CharSequence, int)}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenLong(long value) {
+        tokenLong = value;
+    }
+
+    /**
+     * Set the floating-point value of the token returned by {@link #scan(CharSequence, int)}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenDouble(double value) {
+        tokenLong = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Set the value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultObject(Object value) {
+        resultObject = value;
+    }
+
+    /**
+     * Set the primitive value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultLong(long value) {
+        resultLong = value;
+    }
+
+    /**
+     * Set the floating-point value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultDouble(double value) {
+        resultLong = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Get the node in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the node
+     */
+    protected final ParseNode getNode(int slot) {
+        return nodes[slot];
+    }
+
+    /**
+     * Get the reference value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final Object getObject(int slot) {
+        return nodes[slot].value;
+    }
+
+    /**
+     * Get the primitive value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final long getLong(int slot) {
+        return nodes[slot].primitive;
+    }
+
+    /**
+     * Get the floating-point value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final double getDouble(int slot) {
+        return Double.longBitsToDouble(nodes[slot].primitive);
+    }
+}
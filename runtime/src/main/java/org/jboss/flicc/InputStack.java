@@ -0,0 +1,489 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A stack of input sources being scanned, for grammars whose input can include other input.  Each source on the stack
+ * is scanned by its own {@link Scanner}, so pushing a source leaves the buffer of the including source as it is, and
+ * when the pushed source ends its parent resumes exactly where it stopped, without copying or re-reading anything.
+ * Scanners which are no longer in use are kept in a small pool and reset for later sources, so their buffers are
+ * reused rather than allocated for each include.
+ * <p>
+ * Every source which is opened gets a source number, which tokens from it carry in their
+ * {@linkplain Positions positions}.  The name, line index and include position of each source are kept after it has
+ * been read, so that a {@link Location} can be built for any position; the parent of a location, which is the
+ * location of the include, is only built when a location in an included source is first asked for.
+ * <p>
+ * If an executor is given, each appended source is scanned into a {@link TokenArray} on the executor as soon as it
+ * is appended, so that when many sources are queued they are scanned in parallel, ahead of the parser, which then
+ * only replays their tokens.  Since tokens are scanned ahead of time, this is only valid for grammars which do not
+ * change the scanner state while reading an appended source.
+ */
+public final class InputStack {
+
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int MAX_SOURCES = 0x10000;
+
+    private final ScannerTables tables;
+    private final int poolSize;
+    private final Executor executor;
+    private final ArrayDeque<Scanner> pool = new ArrayDeque<Scanner>();
+    private Entry top;
+    private int depth;
+    // per source number
+    private String[] names = new String[16];
+    private LineIndex[] lineIndexes = new LineIndex[16];
+    private long[] includePositions = new long[16];
+    private Location[] includeLocations = new Location[16];
+    private int sourceCount;
+    private int state;
+    private ParseCounters counters;
+
+    /**
+     * Construct a new instance which pools up to four idle scanners.
+     *
+     * @param tables the scanner tables
+     */
+    public InputStack(final ScannerTables tables) {
+        this(tables, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param tables the scanner tables
+     * @param poolSize the maximum number of idle scanners to keep
+     */
+    public InputStack(final ScannerTables tables, final int poolSize) {
+        this(tables, poolSize, null);
+    }
+
+    /**
+     * Construct a new instance which scans appended sources ahead of time.
+     *
+     * @param tables the scanner tables
+     * @param poolSize the maximum number of idle scanners to keep
+     * @param executor the executor to scan appended sources on, or {@code null} to scan them when they are reached
+     */
+    public InputStack(final ScannerTables tables, final int poolSize, final Executor executor) {
+        this.tables = tables;
+        this.poolSize = poolSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Start reading a source, before the rest of the current source.  The source is opened immediately.  Its include
+     * position is the position of the last token of the current source.
+     *
+     * @param source the source
+     * @throws IOException if the source cannot be opened
+     * @throws IllegalStateException if too many sources have been opened
+     */
+    public void push(Source source) throws IOException {
+        final Entry parent = top;
+        final Entry entry = new Entry(parent, getTokenPosition());
+        open(entry, source, null);
+        top = entry;
+        depth ++;
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.sourceOpened(source.getName(), depth);
+        }
+    }
+
+    /**
+     * Read a source after the current source ends, at the same level of the stack.  If the stack is empty, the source
+     * is pushed instead.  The source is opened when it is reached or, if this stack has an executor, scanned on the
+     * executor right away.
+     *
+     * @param source the source
+     * @throws IOException if the stack is empty and the source cannot be opened
+     */
+    public void append(final Source source) throws IOException {
+        final Entry entry = top;
+        if (entry == null) {
+            push(source);
+            return;
+        }
+        FutureTask<TokenArray> scan = null;
+        if (executor != null) {
+            scan = new FutureTask<TokenArray>(new Callable<TokenArray>() {
+                public TokenArray call() throws IOException {
+                    return TokenArray.scan(tables, source);
+                }
+            });
+            executor.execute(scan);
+        }
+        if (entry.appended == null) {
+            entry.appended = new ArrayDeque<Appended>();
+        }
+        entry.appended.add(new Appended(source, scan));
+    }
+
+    /**
+     * Scan the next token.  When a source ends, it is closed, and scanning continues with the next source appended to
+     * it, or else with the source which included it.
+     *
+     * @return the matched token rule, {@link Scanner#EOF} when every source has ended, or {@link Scanner#NO_MATCH}
+     * @throws IOException if reading or opening a source fails
+     * @throws IllegalStateException if the current source was scanned ahead of time and the scanner state is not 0
+     */
+    public int next() throws IOException {
+        Entry entry;
+        while ((entry = top) != null) {
+            final TokenArray tokens = entry.tokens;
+            if (tokens != null) {
+                final int index = entry.tokenIndex + 1;
+                if (index < tokens.getTokenCount()) {
+                    if (state != 0) {
+                        throw new IllegalStateException("Source was scanned ahead of time in scanner state 0");
+                    }
+                    entry.tokenIndex = index;
+                    if (ParseMetrics.ENABLED && counters != null) {
+                        counters.tokens ++;
+                    }
+                    return tokens.getRule(index);
+                }
+            } else {
+                final Scanner scanner = entry.scanner;
+                if (scanner.getState() != state) {
+                    scanner.setState(state);
+                }
+                final int rule = scanner.next();
+                if (rule != Scanner.EOF) {
+                    return rule;
+                }
+            }
+            close(entry);
+            final Appended appended = entry.appended == null ? null : entry.appended.poll();
+            if (appended != null) {
+                open(entry, appended.source, appended.scan);
+                if (ParseMetrics.ENABLED && counters != null) {
+                    counters.sourceOpened(appended.source.getName(), depth);
+                }
+            } else {
+                top = entry.parent;
+                depth --;
+            }
+        }
+        return Scanner.EOF;
+    }
+
+    /**
+     * Get the scanner state.
+     *
+     * @return the scanner state value
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Change the scanner state.  The state applies from the next token on, to whichever source that token is read
+     * from, including a source which is pushed or resumed later.  A source which was scanned ahead of time was scanned
+     * in state 0, so no other state can apply to it; a pre-scanned source which is reached in another state is
+     * rejected when its next token is read.
+     *
+     * @param state the scanner state value
+     * @throws IllegalArgumentException if the grammar does not declare the state
+     * @throws IllegalStateException if the state is not 0 and the current source was scanned ahead of time
+     */
+    public void setState(int state) {
+        tables.getStartState(state);
+        final Entry entry = top;
+        if (state != 0 && entry != null && entry.tokens != null) {
+            throw new IllegalStateException("Source was scanned ahead of time in scanner state 0");
+        }
+        this.state = state;
+    }
+
+    /**
+     * Set the counters which the scanners of this stack add to.  Tokens of sources which were scanned ahead of time
+     * are counted as they are replayed.
+     *
+     * @param counters the counters, or {@code null} to count nothing
+     * @see ParseMetrics
+     */
+    public void setCounters(ParseCounters counters) {
+        this.counters = counters;
+        for (Entry entry = top; entry != null; entry = entry.parent) {
+            if (entry.scanner != null) {
+                entry.scanner.setCounters(counters);
+            }
+        }
+    }
+
+    /**
+     * Get the scanner of the current source, from which the text of the last token can be read without copying.
+     *
+     * @return the scanner, or {@code null} if every source has ended or the current source was scanned ahead of time
+     */
+    public Scanner getScanner() {
+        final Entry entry = top;
+        return entry == null ? null : entry.scanner;
+    }
+
+    /**
+     * Get the text of the last token.
+     *
+     * @return the token text, or {@code null} if every source has ended
+     */
+    public String getText() {
+        final Entry entry = top;
+        if (entry == null) {
+            return null;
+        }
+        return entry.tokens != null ? entry.tokens.getText(entry.tokenIndex) : entry.scanner.getText();
+    }
+
+    /**
+     * Get the position of the last token.
+     *
+     * @return the packed position
+     */
+    public long getTokenPosition() {
+        final Entry entry = top;
+        if (entry == null) {
+            return Positions.UNKNOWN;
+        }
+        final TokenArray tokens = entry.tokens;
+        if (tokens != null) {
+            return Positions.pack(entry.source, entry.tokenIndex < 0 ? 0 : tokens.getTokenStart(entry.tokenIndex));
+        }
+        return entry.scanner.getTokenPosition();
+    }
+
+    /**
+     * Get the number of sources on the stack.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the name of a source.
+     *
+     * @param source the source number
+     * @return the name
+     */
+    public String getSourceName(int source) {
+        return names[source];
+    }
+
+    /**
+     * Get the line index of a source.  The index of a source which is still being read is complete up to its last
+     * token.
+     *
+     * @param source the source number
+     * @return the line index
+     */
+    public LineIndex getLineIndex(int source) {
+        for (Entry entry = top; entry != null; entry = entry.parent) {
+            if (entry.source == source && entry.scanner != null) {
+                // bring it up to date
+                return entry.scanner.getLineIndex();
+            }
+        }
+        return lineIndexes[source];
+    }
+
+    /**
+     * Build the location of a position, with the location of its source's include as its parent.
+     *
+     * @param position the packed position
+     * @return the location, or {@code null} if the position is unknown
+     */
+    public Location getLocation(long position) {
+        if (position == Positions.UNKNOWN) {
+            return null;
+        }
+        final int source = Positions.getSource(position);
+        Location parent = includeLocations[source];
+        if (parent == null && includePositions[source] != Positions.UNKNOWN) {
+            includeLocations[source] = parent = getLocation(includePositions[source]);
+        }
+        return Positions.toLocation(position, getLineIndex(source), names[source], parent);
+    }
+
+    /**
+     * Close every source which is still open, and return their scanners to the pool.  Sources which were appended but
+     * not reached are dropped, and any scans of them which are still pending are cancelled.
+     *
+     * @throws IOException if closing a source fails
+     */
+    public void close() throws IOException {
+        Entry entry;
+        while ((entry = top) != null) {
+            top = entry.parent;
+            depth --;
+            final ArrayDeque<Appended> appended = entry.appended;
+            if (appended != null) {
+                Appended next;
+                while ((next = appended.poll()) != null) {
+                    if (next.scan != null) {
+                        next.scan.cancel(true);
+                    }
+                }
+            }
+            close(entry);
+        }
+    }
+
+    /**
+     * Close every source, as {@link #close()} does, and forget every source which was read, so that this stack can be
+     * used for new input.  Source numbers start again from 0, and the scanner state is reset to 0.  The pooled
+     * scanners are kept.
+     *
+     * @throws IOException if closing a source fails
+     */
+    public void reset() throws IOException {
+        state = 0;
+        try {
+            close();
+        } finally {
+            Arrays.fill(names, 0, sourceCount, null);
+            Arrays.fill(lineIndexes, 0, sourceCount, null);
+            Arrays.fill(includeLocations, 0, sourceCount, null);
+            sourceCount = 0;
+        }
+    }
+
+    private void open(Entry entry, Source source, FutureTask<TokenArray> scan) throws IOException {
+        final int number = sourceCount;
+        if (number == MAX_SOURCES) {
+            throw new IllegalStateException("Too many input sources");
+        }
+        if (number == names.length) {
+            final int capacity = number << 1;
+            names = Arrays.copyOf(names, capacity);
+            lineIndexes = Arrays.copyOf(lineIndexes, capacity);
+            includePositions = Arrays.copyOf(includePositions, capacity);
+            includeLocations = Arrays.copyOf(includeLocations, capacity);
+        }
+        if (scan != null) {
+            final TokenArray tokens = getResult(scan);
+            sourceCount = number + 1;
+            names[number] = source.getName();
+            lineIndexes[number] = tokens.getLineIndex();
+            includePositions[number] = entry.includePosition;
+            entry.tokens = tokens;
+            entry.tokenIndex = -1;
+            entry.source = number;
+            return;
+        }
+        final Reader reader = source.open();
+        sourceCount = number + 1;
+        names[number] = source.getName();
+        final LineIndex lines = lineIndexes[number] = new LineIndex();
+        includePositions[number] = entry.includePosition;
+        Scanner scanner = pool.poll();
+        if (scanner == null) {
+            scanner = new Scanner(tables, reader);
+        }
+        scanner.reset(reader, lines);
+        scanner.setSource(number);
+        scanner.setCounters(counters);
+        entry.scanner = scanner;
+        entry.reader = reader;
+        entry.source = number;
+    }
+
+    private static TokenArray getResult(FutureTask<TokenArray> scan) throws IOException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return scan.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void close(Entry entry) throws IOException {
+        entry.tokens = null;
+        final Scanner scanner = entry.scanner;
+        final Reader reader = entry.reader;
+        if (scanner == null) {
+            return;
+        }
+        // record the remaining lines before the scanner is reused
+        scanner.getLineIndex();
+        entry.scanner = null;
+        entry.reader = null;
+        if (pool.size() < poolSize) {
+            pool.add(scanner);
+        }
+        reader.close();
+    }
+
+    static final class Entry {
+        private final Entry parent;
+        private final long includePosition;
+        private Scanner scanner;
+        private Reader reader;
+        private TokenArray tokens;
+        private int tokenIndex;
+        private int source;
+        private ArrayDeque<Appended> appended;
+
+        Entry(final Entry parent, final long includePosition) {
+            this.parent = parent;
+            this.includePosition = includePosition;
+        }
+    }
+
+    static final class Appended {
+        private final Source source;
+        private final FutureTask<TokenArray> scan;
+
+        Appended(final Source source, final FutureTask<TokenArray> scan) {
+            this.source = source;
+            this.scan = scan;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A perfect hash table of keywords which a scanner recognizes by first matching them with a more general identifier
+ * rule.  Keeping the keywords out of the DFA keeps it small, and recognizing one costs a single hash of the token
+ * text and one comparison.
+ * <p>
+ * The table is built by the CHD ("compress, hash and displace") method: one 64-bit hash of the text yields a bucket and
+ * two slot hashes {@code f1} and {@code f2}, and the displacement stored for the bucket selects the slot
+ * {@code (f1 + d0 * f2 + d1) mod m}.  Displacements are chosen so that no two keywords share a slot.
+ */
+public final class KeywordTable {
+    private final int identifierRule;
+    private final int seed;
+    private final int[] displacements;
+    private final int[] slotRules;
+    private final int[] offsets;
+    private final char[] chars;
+
+    /**
+     * Construct a new instance.  The arrays are not copied.
+     *
+     * @param identifierRule the token rule which matches every keyword
+     * @param seed the hash seed
+     * @param displacements the displacement of each bucket
+     * @param slotRules the keyword token rule in each slot, or {@link ScannerTables#NONE} for an empty slot
+     * @param offsets the offset of the text of each slot into {@code chars}, plus the end offset of the last slot
+     * @param chars the text of every keyword, concatenated in slot order
+     */
+    public KeywordTable(final int identifierRule, final int seed, final int[] displacements, final int[] slotRules, final int[] offsets, final char[] chars) {
+        this.identifierRule = identifierRule;
+        this.seed = seed;
+        this.displacements = displacements;
+        this.slotRules = slotRules;
+        this.offsets = offsets;
+        this.chars = chars;
+    }
+
+    /**
+     * Get the token rule which matches every keyword.
+     *
+     * @return the identifier rule
+     */
+    public int getIdentifierRule() {
+        return identifierRule;
+    }
+
+    /**
+     * Look up the token rule for text matched by the identifier rule.
+     *
+     * @param buf the buffer holding the text
+     * @param offset the offset of the text
+     * @param length the length of the text
+     * @return the keyword token rule, or the identifier rule if the text is not a keyword
+     */
+    public int lookup(char[] buf, int offset, int length) {
+        final long hash = hash(buf, offset, length, seed);
+        final int slot = getSlot(hash, displacements[getBucket(hash, displacements.length)], slotRules.length);
+        final int start = offsets[slot];
+        if (offsets[slot + 1] - start != length) {
+            return identifierRule;
+        }
+        final char[] chars = this.chars;
+        for (int i = 0; i < length; i ++) {
+            if (chars[start + i] != buf[offset + i]) {
+                return identifierRule;
+            }
+        }
+        return slotRules[slot];
+    }
+
+    /**
+     * Look up the token rule for UTF-8 text matched by the identifier rule.  The text of the keywords of a byte input
+     * scanner is stored as one {@code char} per byte.
+     *
+     * @param buf the buffer holding the text
+     * @param offset the offset of the text
+     * @param length the length of the text, in bytes
+     * @return the keyword token rule, or the identifier rule if the text is not a keyword
+     */
+    public int lookup(byte[] buf, int offset, int length) {
+        final long hash = hash(buf, offset, length, seed);
+        final int slot = getSlot(hash, displacements[getBucket(hash, displacements.length)], slotRules.length);
+        final int start = offsets[slot];
+        if (offsets[slot + 1] - start != length) {
+            return identifierRule;
+        }
+        final char[] chars = this.chars;
+        for (int i = 0; i < length; i ++) {
+            if (chars[start + i] != (buf[offset + i] & 0xff)) {
+                return identifierRule;
+            }
+        }
+        return slotRules[slot];
+    }
+
+    /**
+     * Get the number of keywords.
+     *
+     * @return the number of keywords
+     */
+    public int getKeywordCount() {
+        int cnt = 0;
+        for (int rule : slotRules) {
+            if (rule != ScannerTables.NONE) {
+                cnt ++;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Get the total number of {@code int} and {@code char} entries in this table.
+     *
+     * @return the table size
+     */
+    public int getSize() {
+        return displacements.length + slotRules.length + offsets.length + chars.length;
+    }
+
+    /**
+     * Hash keyword text.
+     *
+     * @param chars the buffer holding the text
+     * @param offset the offset of the text
+     * @param length the length of the text
+     * @param seed the hash seed
+     * @return the hash
+     */
+    public static long hash(char[] chars, int offset, int length, int seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < length; i ++) {
+            h = (h ^ chars[offset + i]) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Hash keyword text held as bytes.  The hash is the same as that of the text with each byte widened to a
+     * {@code char}.
+     *
+     * @param bytes the buffer holding the text
+     * @param offset the offset of the text
+     * @param length the length of the text
+     * @param seed the hash seed
+     * @return the hash
+     */
+    public static long hash(byte[] bytes, int offset, int length, int seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < length; i ++) {
+            h = (h ^ bytes[offset + i] & 0xff) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        // the multiplicative hash mixes its low bits poorly, so finish with a full avalanche
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Get the bucket of a hash.
+     *
+     * @param hash the hash
+     * @param bucketCount the number of buckets
+     * @return the bucket
+     */
+    public static int getBucket(long hash, int bucketCount) {
+        return (int) ((hash >>> 40) % bucketCount);
+    }
+
+    /**
+     * Get the slot of a hash for a displacement.
+     *
+     * @param hash the hash
+     * @param displacement the displacement of the hash's bucket
+     * @param slotCount the number of slots
+     * @return the slot
+     */
+    public static int getSlot(long hash, int displacement, int slotCount) {
+        final long f1 = (hash & 0xfffffL) % slotCount;
+        final long f2 = (hash >>> 20 & 0xfffffL) % slotCount;
+        return (int) ((f1 + displacement / slotCount * f2 + displacement % slotCount) % slotCount);
+    }
+
+    static KeywordTable readFrom(TableCodec codec) throws IOException {
+        final int[] header = codec.readArray();
+        final int[] displacements = codec.readArray();
+        final int[] slotRules = codec.readArray();
+        final int[] offsets = codec.readArray();
+        final int[] chars = codec.readArray();
+        if (header.length == 0) {
+            return null;
+        }
+        final char[] text = new char[chars.length];
+        for (int i = 0; i < text.length; i ++) {
+            text[i] = (char) chars[i];
+        }
+        return new KeywordTable(header[0], header[1], displacements, slotRules, offsets, text);
+    }
+
+    static void writeTo(OutputStream os, KeywordTable table) throws IOException {
+        if (table == null) {
+            for (int i = 0; i < 5; i ++) {
+                TableCodec.writeArray(os, new int[0]);
+            }
+            return;
+        }
+        final int[] chars = new int[table.chars.length];
+        for (int i = 0; i < chars.length; i ++) {
+            chars[i] = table.chars[i];
+        }
+        for (int[] array : new int[][] { { table.identifierRule, table.seed }, table.displacements, table.slotRules, table.offsets, chars }) {
+            TableCodec.writeArray(os, array);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which the lines of an input source start.  A scanner records line starts in bulk as it discards
+ * consumed input, so that nothing is counted per character while tokens are matched; the line and column of an offset
+ * are then found by a binary search, only when they are asked for.  Lines and columns are numbered from 1.
+ */
+public final class LineIndex {
+    private final int firstLine;
+    private long[] starts = new long[64];
+    private int count = 1;
+
+    /**
+     * Construct a new, empty instance, in which the first line starts at offset 0.
+     */
+    public LineIndex() {
+        this(1, 0);
+    }
+
+    /**
+     * Construct a new, empty instance for the part of an input from a given line on.  Offsets are still those of the
+     * whole input, so that the lines and columns found are those of the whole input.
+     *
+     * @param firstLine the number of the first line of the part
+     * @param firstLineStart the offset at which that line starts
+     */
+    public LineIndex(int firstLine, long firstLineStart) {
+        this.firstLine = firstLine;
+        starts[0] = firstLineStart;
+    }
+
+    /**
+     * Record the start of a line.  Lines must be recorded in order.
+     *
+     * @param offset the offset of the first character of the line
+     */
+    public void addLineStart(long offset) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count << 1);
+        }
+        starts[count++] = offset;
+    }
+
+    /**
+     * Record the start of each line which follows a newline in part of a character array.
+     *
+     * @param chars the array
+     * @param from the index of the first character to examine
+     * @param to the index after the last character to examine
+     * @param offset the input offset of {@code chars[0]}
+     */
+    public void addLines(char[] chars, int from, int to, long offset) {
+        for (int i = from; i < to; i ++) {
+            if (chars[i] == '\n') {
+                addLineStart(offset + i + 1);
+            }
+        }
+    }
+
+    /**
+     * Record the start of each line which follows a newline in part of a character sequence.
+     *
+     * @param chars the sequence
+     * @param from the index of the first character to examine
+     * @param to the index after the last character to examine
+     * @param offset the input offset of the first character of the sequence
+     */
+    public void addLines(CharSequence chars, int from, int to, long offset) {
+        for (int i = from; i < to; i ++) {
+            if (chars.charAt(i) == '\n') {
+                addLineStart(offset + i + 1);
+            }
+        }
+    }
+
+    /**
+     * Forget all recorded lines.
+     */
+    public void clear() {
+        count = 1;
+    }
+
+    /**
+     * Get the number of lines recorded.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Get the line which contains an offset.
+     *
+     * @param offset the offset
+     * @return the line number
+     */
+    public int getLine(long offset) {
+        final int idx = Arrays.binarySearch(starts, 0, count, offset);
+        return (idx >= 0 ? idx + 1 : -idx - 1) + firstLine - 1;
+    }
+
+    /**
+     * Get the column of an offset within its line.  A column beyond {@link Integer#MAX_VALUE} is reported as that value.
+     *
+     * @param offset the offset
+     * @return the column number
+     */
+    public int getColumn(long offset) {
+        return (int) Math.min(offset - starts[getLine(offset) - firstLine] + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the offset at which a line starts.
+     *
+     * @param line the line number
+     * @return the offset
+     */
+    public long getLineStart(int line) {
+        if (line < firstLine || line - firstLine >= count) {
+            throw new IndexOutOfBoundsException("No line " + line);
+        }
+        return starts[line - firstLine];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+/**
+ * The LR automaton of a grammar, as seen by the parse loop of {@link LrParser}.  It is implemented both by
+ * {@link ParseTables}, which interprets packed tables, and by the classes which the annotation processor can generate
+ * instead, in which every decision is compiled into {@code switch} statements.  Actions are encoded as described for
+ * {@link ParseTables}.
+ */
+public interface LrAutomaton {
+
+    /**
+     * Get the action to take in a state for a look-ahead terminal.
+     *
+     * @param state the current state
+     * @param terminal the look-ahead terminal
+     * @return the encoded action
+     */
+    int getAction(int state, int terminal);
+
+    /**
+     * Get the default action of a state, which is taken for any terminal not explicitly listed in its row.
+     *
+     * @param state the state
+     * @return the encoded action
+     */
+    int getDefaultAction(int state);
+
+    /**
+     * Determine whether a state's action is the same for every look-ahead terminal, in which case it can be taken
+     * without reading a terminal.
+     *
+     * @param state the state
+     * @return {@code true} if the state has only its default action
+     */
+    boolean isConsistent(int state);
+
+    /**
+     * Get the state to go to after reducing to a nonterminal.
+     *
+     * @param state the state uncovered by the reduction
+     * @param nonterminal the nonterminal produced
+     * @return the new state
+     */
+    int getGoto(int state, int nonterminal);
+
+    /**
+     * Get the nonterminal produced by a production.
+     *
+     * @param production the production
+     * @return the nonterminal
+     */
+    int getProductionLhs(int production);
+
+    /**
+     * Get the number of symbols on the right-hand side of a production.
+     *
+     * @param production the production
+     * @return the number of symbols
+     */
+    int getProductionLength(int production);
+}
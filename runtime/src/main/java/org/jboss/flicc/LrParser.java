@@ -0,0 +1,503 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The LR parse loop of a generated parser, driven by an {@link LrAutomaton}.
+ * <p>
+ * The parser keeps its state stack in a growable {@code int} array, with two parallel value stacks: an {@code Object}
+ * array for reference values, and a {@code long} array for primitive values, so that neither a shift nor a reduction
+ * boxes a value or allocates anything once the stacks are large enough.  A stack slot holds the value of the symbol
+ * which was shifted or reduced into it; a symbol whose value is primitive uses only the {@code long} stack, with
+ * {@code char}, {@code int} and {@code boolean} values widened to {@code long} and {@code double} values stored as
+ * their raw bits.  A third parallel stack holds the position of each symbol, packed into a {@code long} as described by
+ * {@link Positions}; a {@link Location} is only built when one is asked for.
+ * <p>
+ * A subclass supplies the look-ahead terminals by {@link #nextToken()} and the semantic actions by
+ * {@link #reduce(int, int)}.  A state whose action does not depend on the look-ahead reduces without reading it, so a
+ * token is only requested when it is needed.
+ * <p>
+ * A parser can also be driven by input which is pushed to it, such as chunks read from a non-blocking channel: after
+ * {@link #start()}, each call to {@link #resume()} parses as far as the available input allows, and
+ * {@link #nextToken()} returns {@link #NEED_INPUT} when the scanner has run out of input in the middle of a token.
+ * Every reduction which can be determined from the input seen so far has been made by the time {@code resume()}
+ * returns, so semantic actions run as early as possible.
+ * <p>
+ * If a {@link ParseMetrics} listener is installed, the parser counts its shifts, reductions and errors, and the
+ * greatest depth of its stack, and passes the counts to the listener when each parse ends.
+ */
+public abstract class LrParser {
+
+    /**
+     * The value returned by {@link #nextToken()} when no terminal can be determined until more input is available.
+     */
+    protected static final int NEED_INPUT = -1;
+
+    private static final int INITIAL_DEPTH = 64;
+
+    private final LrAutomaton automaton;
+    private int[] states = new int[INITIAL_DEPTH];
+    private Object[] values = new Object[INITIAL_DEPTH];
+    private long[] primitives = new long[INITIAL_DEPTH];
+    private long[] positions = new long[INITIAL_DEPTH];
+    private int sp;
+    private Object tokenObject;
+    private long tokenLong;
+    private long tokenPosition = Positions.UNKNOWN;
+    private Object resultObject;
+    private long resultLong;
+    private ParseMetrics metrics;
+    private ParseCounters counters;
+    // true if a parse has started whose counts have not been reported
+    private boolean counting;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param automaton the automaton of the grammar
+     */
+    protected LrParser(final LrAutomaton automaton) {
+        this.automaton = automaton;
+    }
+
+    /**
+     * Get the automaton.
+     *
+     * @return the automaton
+     */
+    protected final LrAutomaton getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * Parse the input.  The value of the goal symbol is left in the returned stack slot, from which it can be read by
+     * {@link #getObject(int)} or one of the primitive getters.
+     *
+     * @return the stack slot holding the value of the goal symbol
+     * @throws IOException if reading the input fails
+     * @throws ParseException if the input does not match the grammar
+     * @throws IllegalStateException if {@link #nextToken()} returns {@link #NEED_INPUT}
+     */
+    protected final int parse() throws IOException {
+        start();
+        if (! resume()) {
+            throw new IllegalStateException("Input is not available");
+        }
+        return sp;
+    }
+
+    /**
+     * Prepare to parse new input, which is then parsed by {@link #resume()}.
+     */
+    protected final void start() {
+        sp = 0;
+        states[0] = 0;
+        if (ParseMetrics.ENABLED && metrics != null) {
+            endParse();
+            counting = true;
+            metrics.parseStarted();
+        }
+    }
+
+    /**
+     * Continue parsing the input, until either it is accepted or {@link #nextToken()} returns {@link #NEED_INPUT}.
+     * When the input is accepted, the value of the goal symbol is left in the top stack slot (see
+     * {@link #getDepth()}).
+     *
+     * @return {@code true} if the input was accepted, or {@code false} if more input is needed
+     * @throws IOException if reading the input fails
+     * @throws ParseException if the input does not match the grammar
+     */
+    protected final boolean resume() throws IOException {
+        final LrAutomaton automaton = this.automaton;
+        final ParseCounters counters = ParseMetrics.ENABLED ? this.counters : null;
+        int sp = this.sp;
+        int terminal = -1;
+        for (;;) {
+            final int state = states[sp];
+            final int action;
+            if (automaton.isConsistent(state)) {
+                action = automaton.getDefaultAction(state);
+            } else {
+                if (terminal == -1) {
+                    terminal = nextToken();
+                    if (terminal == NEED_INPUT) {
+                        return false;
+                    }
+                }
+                action = automaton.getAction(state, terminal);
+            }
+            if (ParseTables.isShift(action)) {
+                sp = this.sp = push(sp);
+                states[sp] = ParseTables.getShiftState(action);
+                values[sp] = tokenObject;
+                primitives[sp] = tokenLong;
+                positions[sp] = tokenPosition;
+                tokenObject = null;
+                terminal = -1;
+                if (counters != null) {
+                    counters.shifts ++;
+                }
+            } else if (ParseTables.isReduce(action)) {
+                final int production = ParseTables.getReduceProduction(action);
+                if (production == 0) {
+                    // the goal symbol is on top of the stack, and the look-ahead is the end of input
+                    if (counters != null) {
+                        endParse();
+                    }
+                    return true;
+                }
+                final int base = sp - automaton.getProductionLength(production) + 1;
+                if (base > sp) {
+                    // an empty production pushes a slot, which is positioned at the last token read
+                    push(sp);
+                    positions[base] = tokenPosition;
+                }
+                resultObject = null;
+                resultLong = 0;
+                if (counters != null) {
+                    counters.reductions ++;
+                }
+                reduce(production, base);
+                final Object[] values = this.values;
+                values[base] = resultObject;
+                primitives[base] = resultLong;
+                resultObject = null;
+                for (int i = base + 1; i <= sp; i ++) {
+                    values[i] = null;
+                }
+                sp = this.sp = base;
+                states[sp] = automaton.getGoto(states[sp - 1], automaton.getProductionLhs(production));
+            } else {
+                if (counters != null) {
+                    counters.errors ++;
+                }
+                try {
+                    syntaxError(state, terminal);
+                    throw new ParseException("Syntax error", getLocation());
+                } finally {
+                    if (counters != null) {
+                        endParse();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard the state of a previous parse, so that this parser can be used for new input.  The stacks keep their
+     * capacity, and any values left on them by a parse which failed are released.
+     */
+    protected void reset() {
+        if (ParseMetrics.ENABLED && metrics != null) {
+            endParse();
+        }
+        Arrays.fill(values, 0, Math.min(sp + 1, values.length), null);
+        sp = 0;
+        tokenObject = null;
+        tokenLong = 0;
+        tokenPosition = Positions.UNKNOWN;
+        resultObject = null;
+        resultLong = 0;
+    }
+
+    private void endParse() {
+        if (counting) {
+            counting = false;
+            try {
+                metrics.parseEnded(counters);
+            } finally {
+                counters.clear();
+            }
+        }
+    }
+
+    private int push(int sp) {
+        final int newSp = sp + 1;
+        if (ParseMetrics.ENABLED && counters != null && newSp > counters.maxDepth) {
+            counters.maxDepth = newSp;
+        }
+        if (newSp == states.length) {
+            final int capacity = newSp << 1;
+            states = Arrays.copyOf(states, capacity);
+            values = Arrays.copyOf(values, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        return newSp;
+    }
+
+    /**
+     * Read the next terminal.  Before returning, the value of the token, if any, must be set by
+     * {@link #setTokenObject(Object)}, {@link #setTokenLong(long)} or {@link #setTokenDouble(double)}.
+     *
+     * @return the terminal, which is 0 at the end of the input, or {@link #NEED_INPUT} if more input is needed
+     * @throws IOException if reading the input fails
+     */
+    protected abstract int nextToken() throws IOException;
+
+    /**
+     * Run the semantic action of a production.  The values of the right-hand side symbols are in the stack slots
+     * from {@code base} on, and the value of the produced nonterminal, if any, must be set by
+     * {@link #setResultObject(Object)}, {@link #setResultLong(long)} or {@link #setResultDouble(double)}.
+     *
+     * @param production the production
+     * @param base the stack slot of the first right-hand side symbol
+     */
+    protected abstract void reduce(int production, int base);
+
+    /**
+     * Report a syntax error.  The default implementation throws a {@link ParseException}; if this method returns
+     * normally, one is thrown anyway.
+     *
+     * @param state the state in which the error was detected
+     * @param terminal the look-ahead terminal
+     */
+    protected void syntaxError(int state, int terminal) {
+        throw new ParseException("Syntax error: unexpected terminal " + terminal + " in state " + state, getLocation());
+    }
+
+    /**
+     * Get the location of the last token read, for error reports.
+     *
+     * @return the location, or {@code null} if it is unknown
+     */
+    protected Location getLocation() {
+        return createLocation(tokenPosition);
+    }
+
+    /**
+     * Build the location of a position.  The default implementation finds the line and column in the line index of
+     * the position's source, and uses an unknown file name; a parser which tracks its sources should override it to
+     * name the position's source and its parent location.
+     *
+     * @param position the packed position
+     * @return the location, or {@code null} if the position is unknown
+     */
+    protected Location createLocation(long position) {
+        final LineIndex lines = position == Positions.UNKNOWN ? null : getLineIndex(Positions.getSource(position));
+        return lines == null ? null : Positions.toLocation(position, lines, Source.UNKNOWN, null);
+    }
+
+    /**
+     * Get the line index of a source, from which the lines and columns of positions in it are found.  The default
+     * implementation returns {@code null}.
+     *
+     * @param source the source number
+     * @return the line index, or {@code null} if lines are not known
+     */
+    protected LineIndex getLineIndex(int source) {
+        return null;
+    }
+
+    /**
+     * Install a listener which receives the counts of each parse, or remove the installed one.  The counts of a parse
+     * are reported when it is accepted or fails, or when the parser is reset or started again before it ended.  The
+     * scanners of the parser should add to the same counters (see {@link #getParseCounters()}), so a subclass which
+     * owns scanners overrides this method to hand them the counters.
+     *
+     * @param metrics the listener, or {@code null} to remove it
+     * @throws IllegalStateException if metrics are not enabled (see {@link ParseMetrics#ENABLED})
+     */
+    public void setParseMetrics(ParseMetrics metrics) {
+        if (metrics != null && ! ParseMetrics.ENABLED) {
+            throw new IllegalStateException("Parse metrics are not enabled");
+        }
+        counting = false;
+        this.metrics = metrics;
+        counters = metrics == null ? null : new ParseCounters(metrics);
+    }
+
+    /**
+     * Get the counters of the current parse, which the scanners of the parser add to.
+     *
+     * @return the counters, or {@code null} if no listener is installed
+     */
+    protected final ParseCounters getParseCounters() {
+        return counters;
+    }
+
+    /**
+     * Count an error which was reported to the error handler.
+     */
+    protected final void errorReported() {
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.errors ++;
+        }
+    }
+
+    /**
+     * Set the value of the token returned by {@link #nextToken()}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenObject(Object value) {
+        tokenObject = value;
+    }
+
+    /**
+     * Set the primitive value of the token returned by {@link #nextToken()}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenLong(long value) {
+        tokenLong = value;
+    }
+
+    /**
+     * Set the floating-point value of the token returned by {@link #nextToken()}.
+     *
+     * @param value the value
+     */
+    protected final void setTokenDouble(double value) {
+        tokenLong = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Set the position of the token returned by {@link #nextToken()}.
+     *
+     * @param position the packed position
+     */
+    protected final void setTokenPosition(long position) {
+        tokenPosition = position;
+    }
+
+    /**
+     * Set the value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultObject(Object value) {
+        resultObject = value;
+    }
+
+    /**
+     * Set the primitive value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultLong(long value) {
+        resultLong = value;
+    }
+
+    /**
+     * Set the floating-point value produced by the current reduction.
+     *
+     * @param value the value
+     */
+    protected final void setResultDouble(double value) {
+        resultLong = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Get the reference value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final Object getObject(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Get the primitive value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final long getLong(int slot) {
+        return primitives[slot];
+    }
+
+    /**
+     * Get the primitive value in a stack slot as an {@code int}.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final int getInt(int slot) {
+        return (int) primitives[slot];
+    }
+
+    /**
+     * Get the primitive value in a stack slot as a {@code char}.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final char getChar(int slot) {
+        return (char) primitives[slot];
+    }
+
+    /**
+     * Get the primitive value in a stack slot as a {@code boolean}.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final boolean getBoolean(int slot) {
+        return primitives[slot] != 0;
+    }
+
+    /**
+     * Get the floating-point value in a stack slot.
+     *
+     * @param slot the stack slot
+     * @return the value
+     */
+    protected final double getDouble(int slot) {
+        return Double.longBitsToDouble(primitives[slot]);
+    }
+
+    /**
+     * Get the position of the symbol in a stack slot, which for a nonterminal is the position of its first token.
+     *
+     * @param slot the stack slot
+     * @return the packed position
+     */
+    protected final long getPosition(int slot) {
+        return positions[slot];
+    }
+
+    /**
+     * Get the location of the symbol in a stack slot.  The location is built on each call.
+     *
+     * @param slot the stack slot
+     * @return the location, or {@code null} if it is unknown
+     */
+    protected final Location getLocation(int slot) {
+        return createLocation(positions[slot]);
+    }
+
+    /**
+     * Get the number of symbols on the stack.
+     *
+     * @return the stack depth
+     */
+    protected final int getDepth() {
+        return sp;
+    }
+}
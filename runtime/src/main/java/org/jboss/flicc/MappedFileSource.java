@@ -0,0 +1,290 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A source which reads a file by memory-mapping it.  The reader decodes the mapped bytes directly into the array
+ * passed to {@link Reader#read(char[], int, int)}, which for a {@link Scanner} is its own buffer, so no intermediate
+ * byte or character buffers are involved.
+ * <p>
+ * Only UTF-8, US-ASCII and ISO-8859-1 files are supported.  ISO-8859-1 bytes are converted directly, and for the other
+ * two, runs of ASCII bytes are too; the charset decoder is only used for the remaining bytes.  Malformed input is
+ * replaced with {@code U+FFFD}, as by {@link java.io.InputStreamReader}.
+ * <p>
+ * As a {@link ByteSource}, the mapped bytes are copied directly into the array passed to
+ * {@link InputStream#read(byte[], int, int)}, without regard to the character set.
+ */
+public final class MappedFileSource implements ByteSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    // the largest region of a file which is mapped at once
+    private static final int MAX_MAPPING = 1 << 30;
+    // the longest encoded character
+    private static final int MAX_SEQUENCE = 4;
+
+    private final File file;
+    private final Charset charset;
+    private final int maxMapping;
+
+    /**
+     * Construct a new instance for a UTF-8 file.
+     *
+     * @param file the file
+     */
+    public MappedFileSource(final File file) {
+        this(file, UTF_8);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param file the file
+     * @param charset the character set of the file
+     * @throws IllegalArgumentException if the character set is not supported
+     */
+    public MappedFileSource(final File file, final Charset charset) {
+        this(file, charset, MAX_MAPPING);
+    }
+
+    // for tests, which cannot easily use files of more than one mapping
+    MappedFileSource(final File file, final Charset charset, final int maxMapping) {
+        if (! (charset.equals(UTF_8) || charset.equals(US_ASCII) || charset.equals(ISO_8859_1))) {
+            throw new IllegalArgumentException("Unsupported character set " + charset);
+        }
+        if (maxMapping < MAX_SEQUENCE) {
+            throw new IllegalArgumentException("Mapping is smaller than a character");
+        }
+        this.file = file;
+        this.charset = charset;
+        this.maxMapping = maxMapping;
+    }
+
+    public String getName() {
+        return file.getPath();
+    }
+
+    public Reader open() throws IOException {
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        boolean ok = false;
+        try {
+            final Reader reader = new MappedReader(new Mapping(channel, maxMapping), charset.equals(ISO_8859_1) ? null : charset.newDecoder());
+            ok = true;
+            return reader;
+        } finally {
+            if (! ok) {
+                channel.close();
+            }
+        }
+    }
+
+    public InputStream openStream() throws IOException {
+        final FileChannel channel = new FileInputStream(file).getChannel();
+        boolean ok = false;
+        try {
+            final InputStream stream = new MappedInputStream(new Mapping(channel, maxMapping));
+            ok = true;
+            return stream;
+        } finally {
+            if (! ok) {
+                channel.close();
+            }
+        }
+    }
+
+    static final class Mapping {
+        private final long size;
+        private final int maxMapping;
+        private FileChannel channel;
+        private ByteBuffer bytes;
+        // the file position of the end of the mapping
+        private long mapEnd;
+
+        Mapping(final FileChannel channel, final int maxMapping) throws IOException {
+            this.channel = channel;
+            this.maxMapping = maxMapping;
+            size = channel.size();
+            map(0);
+        }
+
+        private void map(long position) throws IOException {
+            final long length = Math.min(size - position, maxMapping);
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            mapEnd = position + length;
+        }
+
+        /**
+         * Get the mapped bytes, mapping the rest of the file if fewer than the given number of bytes remain.
+         *
+         * @param minimum the number of bytes wanted
+         * @return the mapped bytes
+         * @throws IOException if the file cannot be mapped or the mapping is closed
+         */
+        ByteBuffer getBytes(int minimum) throws IOException {
+            if (channel == null) {
+                throw new IOException("Stream closed");
+            }
+            final ByteBuffer bytes = this.bytes;
+            if (bytes.remaining() < minimum && mapEnd < size) {
+                // keep the unread bytes, which may be part of a character
+                map(mapEnd - bytes.remaining());
+            }
+            return this.bytes;
+        }
+
+        boolean isLast() {
+            return mapEnd == size;
+        }
+
+        boolean isOpen() {
+            return channel != null;
+        }
+
+        void close() throws IOException {
+            final FileChannel channel = this.channel;
+            if (channel != null) {
+                this.channel = null;
+                // the mapping itself stays valid until it is collected
+                bytes = null;
+                channel.close();
+            }
+        }
+    }
+
+    static final class MappedInputStream extends InputStream {
+        private final Mapping mapping;
+
+        MappedInputStream(final Mapping mapping) {
+            this.mapping = mapping;
+        }
+
+        public int read() throws IOException {
+            final ByteBuffer bytes = mapping.getBytes(1);
+            return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+        }
+
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer bytes = mapping.getBytes(len);
+            if (len == 0) {
+                return 0;
+            }
+            final int n = Math.min(len, bytes.remaining());
+            if (n == 0) {
+                return -1;
+            }
+            bytes.get(b, off, n);
+            return n;
+        }
+
+        public int available() throws IOException {
+            return mapping.isOpen() ? mapping.getBytes(0).remaining() : 0;
+        }
+
+        public void close() throws IOException {
+            mapping.close();
+        }
+    }
+
+    static final class MappedReader extends Reader {
+        private final Mapping mapping;
+        // null for ISO-8859-1
+        private final CharsetDecoder decoder;
+        // the second half of a surrogate pair which did not fit into the last read, or -1
+        private int pending = -1;
+
+        MappedReader(final Mapping mapping, final CharsetDecoder decoder) {
+            this.mapping = mapping;
+            this.decoder = decoder == null ? null : decoder.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            final ByteBuffer bytes = mapping.getBytes(MAX_SEQUENCE);
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            if (pending != -1) {
+                cbuf[off] = (char) pending;
+                pending = -1;
+                n = 1;
+            }
+            int p = bytes.position();
+            final int limit = bytes.limit();
+            if (decoder == null) {
+                while (n < len && p < limit) {
+                    cbuf[off + n++] = (char) (bytes.get(p++) & 0xff);
+                }
+                bytes.position(p);
+            } else {
+                byte b;
+                while (n < len && p < limit && (b = bytes.get(p)) >= 0) {
+                    cbuf[off + n++] = (char) b;
+                    p ++;
+                }
+                bytes.position(p);
+                if (n < len && p < limit) {
+                    final boolean last = mapping.isLast();
+                    if (len - n == 1) {
+                        // a supplementary character would not fit
+                        final char[] pair = new char[2];
+                        final CharBuffer out = CharBuffer.wrap(pair);
+                        decoder.decode(bytes, out, last);
+                        if (out.position() > 0) {
+                            cbuf[off + n++] = pair[0];
+                            if (out.position() > 1) {
+                                pending = pair[1];
+                            }
+                        }
+                    } else {
+                        final CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+                        decoder.decode(bytes, out, last);
+                        n = out.position() - off;
+                    }
+                }
+            }
+            return n == 0 && ! bytes.hasRemaining() && mapping.isLast() ? -1 : n;
+        }
+
+        public boolean ready() {
+            return mapping.isOpen();
+        }
+
+        public void close() throws IOException {
+            mapping.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+/**
+ * The counts of events of a parse, which a parser and its scanners add to as they go when a {@link ParseMetrics}
+ * listener is installed.
+ */
+public final class ParseCounters {
+    final ParseMetrics metrics;
+    String sourceName;
+    long tokens;
+    long shifts;
+    long reductions;
+    int maxDepth;
+    long refills;
+    long chars;
+    long bytes;
+    long errors;
+
+    ParseCounters(final ParseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the name of the first source which was opened at the outermost level of the parse.
+     *
+     * @return the source name, or {@code null} if the parse has not read from a source
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Get the number of tokens scanned, including those whose text was discarded.
+     *
+     * @return the number of tokens
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Get the number of terminals shifted.
+     *
+     * @return the number of shifts
+     */
+    public long getShifts() {
+        return shifts;
+    }
+
+    /**
+     * Get the number of reductions made.
+     *
+     * @return the number of reductions
+     */
+    public long getReductions() {
+        return reductions;
+    }
+
+    /**
+     * Get the greatest depth reached by the parser stack.
+     *
+     * @return the maximum stack depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Get the number of times a scanner read more input into its buffer from a reader or stream.
+     *
+     * @return the number of buffer refills
+     */
+    public long getRefills() {
+        return refills;
+    }
+
+    /**
+     * Get the number of characters of input read by character scanners.
+     *
+     * @return the number of characters
+     */
+    public long getChars() {
+        return chars;
+    }
+
+    /**
+     * Get the number of bytes of input read by byte scanners.
+     *
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of errors reported.
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Set every count to zero, and forget the source name.
+     */
+    public void clear() {
+        sourceName = null;
+        tokens = shifts = reductions = refills = chars = bytes = errors = 0;
+        maxDepth = 0;
+    }
+
+    void sourceOpened(String name, int depth) {
+        if (depth == 1 && sourceName == null) {
+            sourceName = name;
+        }
+        metrics.sourceOpened(name, depth);
+    }
+
+    void refilled(int length) {
+        refills ++;
+        metrics.bufferRefilled(length);
+    }
+}
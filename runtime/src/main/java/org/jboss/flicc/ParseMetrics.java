@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+/**
+ * A listener which receives the counts of events of each parse, such as the number of tokens scanned and of
+ * reductions made, so that the cost of parsing can be attributed to whatever the input came from.  The counts are
+ * passed to the listener once at the end of each parse, rather than for each event; only the start of a parse, the
+ * opening of sources and buffer refills are reported as they happen.  A listener is called by the thread which runs
+ * the parse, so one which keeps state between calls should not be shared between parsers.
+ * <p>
+ * Events are only counted if the {@code org.jboss.flicc.metrics} system property is {@code true} when this class is
+ * initialized.  Otherwise {@link #ENABLED} is {@code false}, and since every counting site is guarded by it, the JIT
+ * removes them; a listener cannot be installed then.
+ */
+public interface ParseMetrics {
+
+    /**
+     * {@code true} if parse events are counted.
+     */
+    boolean ENABLED = Boolean.getBoolean("org.jboss.flicc.metrics");
+
+    /**
+     * Note that a parse has started.
+     */
+    void parseStarted();
+
+    /**
+     * Note that a source was opened, either at the start of the parse, by an include or after the source it was
+     * appended to ended.
+     *
+     * @param name the name of the source
+     * @param depth the number of sources on the input stack, including this one
+     */
+    void sourceOpened(String name, int depth);
+
+    /**
+     * Note that a scanner read more input into its buffer.  Refills are rare compared to tokens, so this is called for
+     * each one.
+     *
+     * @param length the number of characters or bytes read
+     */
+    void bufferRefilled(int length);
+
+    /**
+     * Receive the counts of a parse which has ended, whether it was accepted or failed.  The counters are reused for
+     * the next parse once this method returns, so they must be copied if they are to be kept.
+     *
+     * @param counters the counts of the parse
+     */
+    void parseEnded(ParseCounters counters);
+}
@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+/**
+ * A node of the parse tree retained by an {@link IncrementalLrParser}.  A terminal node is a token; a nonterminal node
+ * is the result of reducing a production, and its children are the nodes of the right-hand side.
+ * <p>
+ * A node does not store its absolute position, only the number of characters it spans, so that a subtree which is
+ * reused after an edit needs no adjustment; its offset is recomputed from its ancestors when it is asked for.  Besides
+ * its semantic value, each node records what an incremental reparse needs to decide whether it can be reused as a
+ * whole: the parser state in which its first symbol was shifted, the terminal which followed it, and how far past its
+ * end the scanner looked to produce its tokens.
+ */
+public final class ParseNode {
+
+    private static final ParseNode[] NO_CHILDREN = new ParseNode[0];
+
+    final boolean terminal;
+    final int symbol;
+    final int production;
+    final int length;
+    final int lookahead;
+    final int firstTerminal;
+    final ParseNode[] children;
+    final Object value;
+    final long primitive;
+    int state;
+    int follow;
+    ParseNode parent;
+
+    ParseNode(final int terminal, final int length, final int lookahead, final Object value, final long primitive) {
+        this.terminal = true;
+        symbol = terminal;
+        production = -1;
+        this.length = length;
+        this.lookahead = lookahead;
+        firstTerminal = terminal;
+        children = NO_CHILDREN;
+        this.value = value;
+        this.primitive = primitive;
+    }
+
+    ParseNode(final int nonterminal, final int production, final ParseNode[] children, final Object value, final long primitive) {
+        terminal = false;
+        symbol = nonterminal;
+        this.production = production;
+        this.children = children;
+        this.value = value;
+        this.primitive = primitive;
+        int length = 0;
+        int extent = 0;
+        int firstTerminal = -1;
+        for (ParseNode child : children) {
+            if (firstTerminal == -1 && child.length > 0) {
+                firstTerminal = child.firstTerminal;
+            }
+            extent = Math.max(extent, length + child.length + child.lookahead);
+            length += child.length;
+            child.parent = this;
+        }
+        this.length = length;
+        lookahead = extent - length;
+        this.firstTerminal = firstTerminal;
+    }
+
+    /**
+     * Determine whether this node is a token.
+     *
+     * @return {@code true} for a terminal node, {@code false} for a nonterminal node
+     */
+    public boolean isTerminal() {
+        return terminal;
+    }
+
+    /**
+     * Get the symbol of this node: a terminal, for a terminal node, and otherwise a nonterminal.
+     *
+     * @return the symbol
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Get the production which was reduced to produce this node.
+     *
+     * @return the production, or -1 for a terminal node
+     */
+    public int getProduction() {
+        return production;
+    }
+
+    /**
+     * Get the number of characters spanned by this node, including any ignored input before its tokens.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the parent of this node.
+     *
+     * @return the parent, or {@code null} for the root
+     */
+    public ParseNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the number of children of this node.
+     *
+     * @return the number of children, which is zero for a terminal node
+     */
+    public int getChildCount() {
+        return children.length;
+    }
+
+    /**
+     * Get a child of this node.
+     *
+     * @param index the child index
+     * @return the child
+     */
+    public ParseNode getChild(int index) {
+        return children[index];
+    }
+
+    /**
+     * Get the offset of this node from the start of the input.
+     *
+     * @return the offset
+     */
+    public int getOffset() {
+        int offset = 0;
+        ParseNode node = this;
+        ParseNode parent;
+        while ((parent = node.parent) != null) {
+            for (ParseNode sibling : parent.children) {
+                if (sibling == node) {
+                    break;
+                }
+                offset += sibling.length;
+            }
+            node = parent;
+        }
+        return offset;
+    }
+
+    /**
+     * Get the reference value of this node.
+     *
+     * @return the value
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Get the primitive value of this node.
+     *
+     * @return the value
+     */
+    public long getLong() {
+        return primitive;
+    }
+
+    /**
+     * Get the floating-point value of this node.
+     *
+     * @return the value
+     */
+    public double getDouble() {
+        return Double.longBitsToDouble(primitive);
+    }
+}
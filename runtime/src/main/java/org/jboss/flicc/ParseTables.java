@@ -0,0 +1,352 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The packed action and goto tables of a generated LR parser.
+ * <p>
+ * Both tables are stored as comb vectors.  Each row (a state, for the action table, or a nonterminal, for the goto
+ * table) has a base offset into a shared {@code next} array; the entry for column {@code c} is at {@code base + c} if
+ * the {@code check} array holds {@code c} at that position, and otherwise the row's default applies.  Rows with
+ * identical entries share a base.
+ * <p>
+ * Actions are encoded as integers: {@link #ERROR} for a syntax error, a positive value for a shift (see
+ * {@link #getShiftState(int)}) and a negative value for a reduction (see {@link #getReduceProduction(int)}).  Reducing
+ * production 0 means that the input is accepted.  The default action of a state is its most common reduction, if
+ * any, so that a state with a single reduction and no shifts never needs to consult its look-ahead.
+ * <p>
+ * Rather than being compiled into a static initializer, the tables of a generated parser are stored in a class path
+ * resource (see {@link #getResourceName(String)}) and loaded by {@link #load(Class)} when the parser is first used.
+ * The arrays are written as zig-zag encoded deltas of consecutive values, as variable-length integers, so most
+ * entries take a single byte.
+ * <p>
+ * A grammar may instead be compiled into a generated {@link LrAutomaton} class (see {@link #getAutomatonClassName(String)}),
+ * in which case {@link #loadAutomaton(Class)} prefers it to the tables.
+ */
+public final class ParseTables implements LrAutomaton {
+
+    /**
+     * The action value indicating a syntax error.
+     */
+    public static final int ERROR = 0;
+
+    /**
+     * The base of a row which has no entries other than its default.
+     */
+    public static final int NO_ENTRIES = Integer.MIN_VALUE >> 1;
+
+    private static final int MAGIC = 0x464c4354;
+    private static final int VERSION = 1;
+
+    private final int[] productionLhs;
+    private final int[] productionLength;
+    private final int[] actionBase;
+    private final int[] actionDefault;
+    private final int[] actionNext;
+    private final int[] actionCheck;
+    private final int[] gotoBase;
+    private final int[] gotoDefault;
+    private final int[] gotoNext;
+    private final int[] gotoCheck;
+
+    /**
+     * Construct a new instance.  The arrays are not copied.
+     *
+     * @param productionLhs the nonterminal produced by each production
+     * @param productionLength the number of symbols on the right-hand side of each production
+     * @param actionBase the action row base of each state
+     * @param actionDefault the default action of each state
+     * @param actionNext the packed actions
+     * @param actionCheck the terminal of each packed action
+     * @param gotoBase the goto row base of each nonterminal
+     * @param gotoDefault the default goto state of each nonterminal
+     * @param gotoNext the packed goto states
+     * @param gotoCheck the source state of each packed goto state
+     */
+    public ParseTables(final int[] productionLhs, final int[] productionLength, final int[] actionBase, final int[] actionDefault, final int[] actionNext, final int[] actionCheck, final int[] gotoBase, final int[] gotoDefault, final int[] gotoNext, final int[] gotoCheck) {
+        this.productionLhs = productionLhs;
+        this.productionLength = productionLength;
+        this.actionBase = actionBase;
+        this.actionDefault = actionDefault;
+        this.actionNext = actionNext;
+        this.actionCheck = actionCheck;
+        this.gotoBase = gotoBase;
+        this.gotoDefault = gotoDefault;
+        this.gotoNext = gotoNext;
+        this.gotoCheck = gotoCheck;
+    }
+
+    /**
+     * Get the action to take in a state for a look-ahead terminal.
+     *
+     * @param state the current state
+     * @param terminal the look-ahead terminal
+     * @return the encoded action
+     */
+    public int getAction(int state, int terminal) {
+        final int idx = actionBase[state] + terminal;
+        final int[] check = actionCheck;
+        return idx >= 0 && idx < check.length && check[idx] == terminal ? actionNext[idx] : actionDefault[state];
+    }
+
+    /**
+     * Get the default action of a state, which is taken for any terminal not explicitly listed in its row.
+     *
+     * @param state the state
+     * @return the encoded action
+     */
+    public int getDefaultAction(int state) {
+        return actionDefault[state];
+    }
+
+    /**
+     * Determine whether a state's action is the same for every look-ahead terminal, in which case it can be taken
+     * without reading a terminal.
+     *
+     * @param state the state
+     * @return {@code true} if the state has only its default action
+     */
+    public boolean isConsistent(int state) {
+        return actionBase[state] == NO_ENTRIES;
+    }
+
+    /**
+     * Get the state to go to after reducing to a nonterminal.
+     *
+     * @param state the state uncovered by the reduction
+     * @param nonterminal the nonterminal produced
+     * @return the new state
+     */
+    public int getGoto(int state, int nonterminal) {
+        final int idx = gotoBase[nonterminal] + state;
+        final int[] check = gotoCheck;
+        return idx >= 0 && idx < check.length && check[idx] == state ? gotoNext[idx] : gotoDefault[nonterminal];
+    }
+
+    /**
+     * Get the nonterminal produced by a production.
+     *
+     * @param production the production
+     * @return the nonterminal
+     */
+    public int getProductionLhs(int production) {
+        return productionLhs[production];
+    }
+
+    /**
+     * Get the number of symbols on the right-hand side of a production.
+     *
+     * @param production the production
+     * @return the number of symbols
+     */
+    public int getProductionLength(int production) {
+        return productionLength[production];
+    }
+
+    /**
+     * Get the number of states.
+     *
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return actionBase.length;
+    }
+
+    /**
+     * Get the number of productions.
+     *
+     * @return the number of productions
+     */
+    public int getProductionCount() {
+        return productionLhs.length;
+    }
+
+    /**
+     * Get the total number of {@code int} entries in these tables.
+     *
+     * @return the table size
+     */
+    public int getSize() {
+        return productionLhs.length + productionLength.length + actionBase.length + actionDefault.length + actionNext.length + actionCheck.length + gotoBase.length + gotoDefault.length + gotoNext.length + gotoCheck.length;
+    }
+
+    /**
+     * Get the name of the class path resource which holds the tables of a grammar.
+     *
+     * @param grammarClassName the binary name of the grammar class
+     * @return the resource name
+     */
+    public static String getResourceName(String grammarClassName) {
+        return "META-INF/flicc/" + grammarClassName + ".tables";
+    }
+
+    /**
+     * Load the tables of a grammar from its class path resource.  The resource is read in a single pass into memory
+     * and then decoded.
+     *
+     * @param grammarClass the grammar class
+     * @return the tables
+     * @throws IllegalStateException if the resource is missing or cannot be read
+     */
+    public static ParseTables load(Class<?> grammarClass) {
+        final String name = getResourceName(grammarClass.getName());
+        final InputStream is = TableCodec.openResource(grammarClass, name);
+        try {
+            try {
+                return readFrom(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read parse tables resource " + name, e);
+        }
+    }
+
+    /**
+     * Get the binary name of the generated automaton class of a grammar.
+     *
+     * @param grammarClassName the binary name of the grammar class
+     * @return the automaton class name
+     */
+    public static String getAutomatonClassName(String grammarClassName) {
+        return grammarClassName + "$Automaton";
+    }
+
+    /**
+     * Load the automaton of a grammar: an instance of its generated automaton class if there is one, and otherwise its
+     * tables.
+     *
+     * @param grammarClass the grammar class
+     * @return the automaton
+     * @throws IllegalStateException if neither the class nor the tables resource can be loaded
+     */
+    public static LrAutomaton loadAutomaton(Class<?> grammarClass) {
+        final Class<?> automatonClass;
+        try {
+            automatonClass = Class.forName(getAutomatonClassName(grammarClass.getName()), true, grammarClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return load(grammarClass);
+        }
+        try {
+            return automatonClass.asSubclass(LrAutomaton.class).getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Failed to instantiate " + automatonClass, e);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException("Failed to instantiate " + automatonClass, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Failed to instantiate " + automatonClass, e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Failed to instantiate " + automatonClass, e.getCause());
+        }
+    }
+
+    /**
+     * Read tables which were written by {@link #writeTo(OutputStream)}.
+     *
+     * @param is the stream to read from
+     * @return the tables
+     * @throws IOException if the stream cannot be read or is not valid
+     */
+    public static ParseTables readFrom(InputStream is) throws IOException {
+        final TableCodec codec = TableCodec.read(is, MAGIC, VERSION);
+        return new ParseTables(codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray(), codec.readArray());
+    }
+
+    /**
+     * Write these tables to a stream.
+     *
+     * @param os the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        TableCodec.writeHeader(os, MAGIC, VERSION);
+        for (int[] array : new int[][] { productionLhs, productionLength, actionBase, actionDefault, actionNext, actionCheck, gotoBase, gotoDefault, gotoNext, gotoCheck }) {
+            TableCodec.writeArray(os, array);
+        }
+    }
+
+    /**
+     * Encode a shift action.
+     *
+     * @param state the state to shift to
+     * @return the encoded action
+     */
+    public static int shift(int state) {
+        return state + 1;
+    }
+
+    /**
+     * Encode a reduce action.
+     *
+     * @param production the production to reduce
+     * @return the encoded action
+     */
+    public static int reduce(int production) {
+        return -production - 1;
+    }
+
+    /**
+     * Determine whether an action is a shift.
+     *
+     * @param action the encoded action
+     * @return {@code true} if it is a shift
+     */
+    public static boolean isShift(int action) {
+        return action > 0;
+    }
+
+    /**
+     * Determine whether an action is a reduction.
+     *
+     * @param action the encoded action
+     * @return {@code true} if it is a reduction
+     */
+    public static boolean isReduce(int action) {
+        return action < 0;
+    }
+
+    /**
+     * Get the target state of a shift action.
+     *
+     * @param action the encoded action
+     * @return the state to shift to
+     */
+    public static int getShiftState(int action) {
+        return action - 1;
+    }
+
+    /**
+     * Get the production of a reduce action.
+     *
+     * @param action the encoded action
+     * @return the production to reduce
+     */
+    public static int getReduceProduction(int action) {
+        return -action - 1;
+    }
+}
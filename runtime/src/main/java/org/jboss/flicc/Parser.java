@@ -22,6 +22,9 @@
 
 package org.jboss.flicc;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -48,12 +51,88 @@ public interface Parser {
      */
     int popState();
 
+    /**
+     * Discard all parser state, including any pushed or appended input sources, and start parsing a new source.  The
+     * stacks and scanner buffers which were grown by previous inputs are kept, so that a parser which is reused for
+     * many small inputs does not allocate them again.
+     *
+     * @param source the new source
+     */
+    void reset(Source source);
+
+    /**
+     * Install a listener which receives the counts of tokens, shifts, reductions and other events of each parse, or
+     * remove the installed one.
+     *
+     * @param metrics the listener, or {@code null} to remove it
+     * @throws IllegalStateException if metrics are not enabled (see {@link ParseMetrics#ENABLED})
+     */
+    void setParseMetrics(ParseMetrics metrics);
+
+    /**
+     * Get the error handler which this parser reports errors to.
+     *
+     * @return the error handler
+     */
+    ErrorHandler getErrorHandler();
+
+    /**
+     * Parse a chunk of input which is pushed to this parser, rather than read from a source.  The parser consumes the
+     * whole chunk and returns without waiting for more input, even in the middle of a token or a rule; semantic actions
+     * run as soon as the input which they depend on has been fed.
+     *
+     * @param chunk the input
+     * @throws ParseException if the input does not match the grammar
+     */
+    void feed(CharBuffer chunk);
+
+    /**
+     * Parse a chunk of UTF-8 encoded input which is pushed to this parser.  The chunk may end within a multi-byte
+     * sequence.  Otherwise this is the same as {@link #feed(CharBuffer)}.
+     *
+     * @param chunk the input
+     * @throws ParseException if the input does not match the grammar
+     */
+    void feed(ByteBuffer chunk);
+
+    /**
+     * Mark the end of the input which was pushed to this parser, and complete the parse.
+     *
+     * @throws ParseException if the input does not match the grammar
+     */
+    void endOfInput();
+
+    /**
+     * Read a source before the rest of the current source, as for an include directive.  When the source ends, the
+     * current source resumes where it stopped.  Locations in the source have the location of the directive as their
+     * parent.
+     *
+     * @param source the source
+     * @see InputStack#push(Source)
+     */
     void pushInputSource(Source source);
 
+    /**
+     * Read a source after the current source ends.
+     *
+     * @param source the source
+     * @see InputStack#append(Source)
+     */
     void appendInputSource(Source source);
 
+    /**
+     * Get the line of the current position.  Lines are not tracked while scanning; the line is found on demand from
+     * the {@link LineIndex} of the current source.
+     *
+     * @return the line number
+     */
     int getLine();
 
+    /**
+     * Get the column of the current position, which is found on demand in the same way as the line.
+     *
+     * @return the column number
+     */
     int getColumn();
 
     void setLine();
@@ -33,6 +33,14 @@ public interface ParserFactory {
 
     Parser createParser(Reader initialSource, ErrorHandler errorHandler);
 
+    /**
+     * Create a parser for a UTF-8 file.  The file is read through a {@link MappedFileSource}, which is equivalent to
+     * {@code createParser(new MappedFileSource(initialSource), errorHandler)}.
+     *
+     * @param initialSource the file to parse
+     * @param errorHandler the error handler
+     * @return the parser
+     */
     Parser createParser(File initialSource, ErrorHandler errorHandler);
 
 
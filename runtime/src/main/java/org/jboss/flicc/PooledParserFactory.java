@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parser factory which reuses parsers.  Parsers are returned to the factory by {@link #release(Parser)} once their
+ * input has been parsed, and kept in a small pool which all threads share; {@code createParser} takes a parser with the
+ * same error handler from the pool and {@linkplain Parser#reset(Source) resets} it to the new input, creating one with
+ * the underlying factory only if there is none.  An application which parses many small inputs thus reuses the grown
+ * stacks and buffers of a few parsers rather than allocating new ones for every input, whether it parses them on
+ * long-lived worker threads or on short-lived tasks.
+ * <p>
+ * A parser which is not released is simply not reused.  A released parser must not be used again by the caller.
+ */
+public final class PooledParserFactory extends AbstractParserFactory {
+
+    private static final int DEFAULT_POOL_SIZE = 4;
+
+    private final ParserFactory factory;
+    private final int poolSize;
+    private final ConcurrentLinkedQueue<Parser> pool = new ConcurrentLinkedQueue<Parser>();
+    // the number of parsers in the pool, or about to be added to it
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Construct a new instance which keeps up to four idle parsers.
+     *
+     * @param factory the factory which creates new parsers
+     */
+    public PooledParserFactory(final ParserFactory factory) {
+        this(factory, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param factory the factory which creates new parsers
+     * @param poolSize the maximum number of idle parsers kept
+     * @throws IllegalArgumentException if the pool size is negative
+     */
+    public PooledParserFactory(final ParserFactory factory, final int poolSize) {
+        if (poolSize < 0) {
+            throw new IllegalArgumentException("Negative pool size");
+        }
+        this.factory = factory;
+        this.poolSize = poolSize;
+    }
+
+    public Parser createParser(final Source initialSource, final ErrorHandler errorHandler) {
+        for (Parser parser : pool) {
+            // another thread may take the same parser first, in which case the search goes on
+            if (parser.getErrorHandler() == errorHandler && pool.remove(parser)) {
+                idleCount.decrementAndGet();
+                parser.reset(initialSource);
+                return parser;
+            }
+        }
+        return factory.createParser(initialSource, errorHandler);
+    }
+
+    /**
+     * Return a parser to the pool.  If the pool is full, the parser is discarded.
+     *
+     * @param parser the parser, which must have been created by this factory
+     */
+    public void release(final Parser parser) {
+        if (idleCount.incrementAndGet() <= poolSize) {
+            pool.add(parser);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
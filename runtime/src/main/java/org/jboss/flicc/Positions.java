@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+/**
+ * Positions in the input packed into a {@code long}, so that they can be tracked for every token and every symbol on
+ * the parser stack without allocating anything.  A position holds a source number in its top 16 bits and a character
+ * offset into that source in the low 48 bits.  The line and column of a position are only found, from the
+ * {@link LineIndex} of its source, when a {@link Location} is built from it.
+ */
+public final class Positions {
+
+    /**
+     * The position of unknown input.
+     */
+    public static final long UNKNOWN = -1L;
+
+    private static final int OFFSET_BITS = 48;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private Positions() {
+    }
+
+    /**
+     * Pack a position.
+     *
+     * @param source the source number, from 0 to 65535
+     * @param offset the character offset
+     * @return the packed position
+     */
+    public static long pack(int source, long offset) {
+        return (long) (source & 0xffff) << OFFSET_BITS | offset & OFFSET_MASK;
+    }
+
+    /**
+     * Get the source number of a position.
+     *
+     * @param position the packed position
+     * @return the source number
+     */
+    public static int getSource(long position) {
+        return (int) (position >>> OFFSET_BITS);
+    }
+
+    /**
+     * Get the character offset of a position.
+     *
+     * @param position the packed position
+     * @return the offset
+     */
+    public static long getOffset(long position) {
+        return position & OFFSET_MASK;
+    }
+
+    /**
+     * Build the location of a position.
+     *
+     * @param position the packed position
+     * @param lines the line index of the position's source
+     * @param fileName the name of the position's source
+     * @param parent the location which included the source, or {@code null} if none
+     * @return the location, or {@code null} if the position is unknown
+     */
+    public static Location toLocation(long position, LineIndex lines, String fileName, Location parent) {
+        if (position == UNKNOWN) {
+            return null;
+        }
+        final long offset = getOffset(position);
+        return new Location(parent, fileName, lines.getLine(offset), lines.getColumn(offset));
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A scanner which splits character input into tokens using the DFA of a grammar's {@link ScannerTables}.  Each call to
+ * {@link #next()} returns the token rule which matches the longest prefix of the remaining input in the current scanner
+ * state; when several rules match the same text, the rule declared first wins.  Characters are processed as code
+ * points, so a surrogate pair is a single character to the DFA.
+ * <p>
+ * Input is read into a single {@code char} buffer which is refilled in place, so scanning allocates nothing once the
+ * buffer is large enough for the longest token.  The text of the last token is available without copying, as a view
+ * ({@link #getTextView()}) or as a range of the buffer ({@link #getBuffer()}, {@link #getTokenOffset()} and
+ * {@link #getTokenLength()}); only {@link #getText()} creates a {@code String}.
+ * <p>
+ * A scanner constructed without a reader is in push mode: input is handed to it in chunks by {@link #feed(CharBuffer)}
+ * and its end is marked by {@link #endOfInput()}.  When the buffered input runs out before the end of a token can be
+ * determined, {@link #next()} returns {@link #NEED_INPUT} instead of blocking, and the scan resumes where it stopped
+ * once more input has been fed.
+ */
+public final class Scanner {
+
+    /**
+     * The value returned by {@link #next()} at the end of the input.
+     */
+    public static final int EOF = -1;
+
+    /**
+     * The value returned by {@link #next()} when no token rule matches the input.  A single code point has been
+     * consumed as the token text, so that scanning can continue.
+     */
+    public static final int NO_MATCH = -2;
+
+    /**
+     * The value returned by {@link #next()} in push mode when more input is needed to find the end of the next token.
+     */
+    public static final int NEED_INPUT = -3;
+
+    private static final int NONE = ScannerTables.NONE;
+
+    private final ScannerTables tables;
+    private final KeywordTable keywords;
+    private Reader reader;
+    private char[] buf = new char[8192];
+    private CharBuffer view;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private int tokenStart;
+    private int tokenEnd;
+    private int state;
+    private int startState;
+    // the progress of a scan which was suspended for more input
+    private boolean suspended;
+    private int suspendedDfa;
+    private int suspendedLength;
+    private int suspendedRule;
+    private int suspendedMatched;
+    // line starts are recorded lazily, up to buffer index counted; base is the input offset of the buffer
+    private int source;
+    private final LineIndex ownLines = new LineIndex();
+    private LineIndex lines = ownLines;
+    private long base;
+    private int counted;
+    private ParseCounters counters;
+
+    /**
+     * Construct a new instance, in scanner state 0.
+     *
+     * @param tables the scanner tables, which must be for character input
+     * @param reader the input to scan
+     * @throws IllegalArgumentException if the tables are for byte input
+     */
+    public Scanner(final ScannerTables tables, final Reader reader) {
+        if (tables.isByteInput()) {
+            throw new IllegalArgumentException("Scanner tables are for byte input");
+        }
+        this.tables = tables;
+        this.reader = reader;
+        keywords = tables.getKeywords();
+        startState = tables.getStartState(0);
+    }
+
+    /**
+     * Construct a new instance in push mode, in scanner state 0.
+     *
+     * @param tables the scanner tables, which must be for character input
+     * @throws IllegalArgumentException if the tables are for byte input
+     */
+    public Scanner(final ScannerTables tables) {
+        this(tables, null);
+    }
+
+    /**
+     * Start scanning new input, in scanner state 0.  The buffer is kept, so a scanner which is reset for each input
+     * does not allocate once its buffer is as large as the longest token.  The previous input is not closed.
+     *
+     * @param reader the input to scan, or {@code null} for push mode
+     */
+    public void reset(final Reader reader) {
+        ownLines.clear();
+        reset(reader, ownLines);
+    }
+
+    /**
+     * Start scanning new input, in scanner state 0, and record its lines in the given index rather than in this
+     * scanner's own, so that the index remains valid after this scanner has been reset again.
+     *
+     * @param reader the input to scan, or {@code null} for push mode
+     * @param lines the empty line index of the input
+     */
+    public void reset(final Reader reader, final LineIndex lines) {
+        reset(reader, lines, 0);
+    }
+
+    /**
+     * Start scanning input which is part of a larger input, in scanner state 0.  Token positions and line starts are
+     * recorded at their offsets in the larger input.
+     *
+     * @param reader the input to scan, or {@code null} for push mode
+     * @param lines the empty line index of the input, which starts at or before {@code offset}
+     * @param offset the offset of the input in the larger input
+     */
+    public void reset(final Reader reader, final LineIndex lines, final long offset) {
+        this.reader = reader;
+        this.lines = lines;
+        pos = limit = tokenStart = tokenEnd = counted = 0;
+        base = offset;
+        eof = suspended = false;
+        state = 0;
+        startState = tables.getStartState(0);
+    }
+
+    /**
+     * Get the current scanner state.
+     *
+     * @return the scanner state value
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Change the scanner state.  The new state applies from the next token on.
+     *
+     * @param state the scanner state value
+     * @throws IllegalArgumentException if the grammar does not declare the state
+     */
+    public void setState(int state) {
+        startState = tables.getStartState(state);
+        this.state = state;
+    }
+
+    /**
+     * Add a chunk of input in push mode.  The chunk is consumed completely.  The text of the last token remains
+     * available.
+     *
+     * @param chunk the input
+     * @throws IllegalStateException if the scanner is not in push mode, or the end of input was already marked
+     */
+    public void feed(CharBuffer chunk) {
+        if (reader != null || eof) {
+            throw new IllegalStateException(eof ? "Input has already ended" : "Scanner is not in push mode");
+        }
+        char[] buf = this.buf;
+        final int cnt = chunk.remaining();
+        if (tokenStart > 0 && limit + cnt > buf.length) {
+            // discard consumed input, but not the text of the last token
+            count(tokenStart);
+            base += tokenStart;
+            counted -= tokenStart;
+            System.arraycopy(buf, tokenStart, buf, 0, limit - tokenStart);
+            limit -= tokenStart;
+            pos -= tokenStart;
+            tokenEnd -= tokenStart;
+            tokenStart = 0;
+        }
+        if (limit + cnt > buf.length) {
+            this.buf = buf = Arrays.copyOf(buf, Math.max(buf.length << 1, limit + cnt));
+            view = null;
+        }
+        chunk.get(buf, limit, cnt);
+        limit += cnt;
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.chars += cnt;
+        }
+    }
+
+    /**
+     * Mark the end of the input in push mode.
+     *
+     * @throws IllegalStateException if the scanner is not in push mode
+     */
+    public void endOfInput() {
+        if (reader != null) {
+            throw new IllegalStateException("Scanner is not in push mode");
+        }
+        eof = true;
+    }
+
+    /**
+     * Scan the next token.
+     *
+     * @return the matched token rule, {@link #EOF}, {@link #NO_MATCH} or, in push mode, {@link #NEED_INPUT}
+     * @throws IOException if reading the input fails
+     */
+    public int next() throws IOException {
+        final ScannerTables tables = this.tables;
+        int dfa = startState;
+        int len = 0;
+        int rule = NONE;
+        int matched = 0;
+        if (suspended) {
+            suspended = false;
+            dfa = suspendedDfa;
+            len = suspendedLength;
+            rule = suspendedRule;
+            matched = suspendedMatched;
+        }
+        for (;;) {
+            // make sure that a whole surrogate pair is available; at the start of a token, even in a scanner state in
+            // which no rule applies, since only the end of the input may end the input
+            while (! eof && (dfa != NONE || len == 0) && (pos + len == limit || pos + len + 1 == limit && Character.isHighSurrogate(buf[pos + len]))) {
+                if (reader == null) {
+                    suspended = true;
+                    suspendedDfa = dfa;
+                    suspendedLength = len;
+                    suspendedRule = rule;
+                    suspendedMatched = matched;
+                    return NEED_INPUT;
+                }
+                fill();
+            }
+            if (dfa == NONE || pos + len == limit) {
+                break;
+            }
+            final char[] buf = this.buf;
+            final int idx = pos + len;
+            int codePoint = buf[idx];
+            int cnt = 1;
+            if (Character.isHighSurrogate(buf[idx]) && idx + 1 < limit && Character.isLowSurrogate(buf[idx + 1])) {
+                codePoint = Character.toCodePoint(buf[idx], buf[idx + 1]);
+                cnt = 2;
+            }
+            dfa = tables.getTransition(dfa, tables.getCharClass(codePoint));
+            if (dfa != NONE) {
+                len += cnt;
+                final int accepted = tables.getAccept(dfa);
+                if (accepted != NONE) {
+                    rule = accepted;
+                    matched = len;
+                }
+            }
+        }
+        tokenStart = pos;
+        if (rule != NONE) {
+            if (keywords != null && rule == keywords.getIdentifierRule()) {
+                rule = keywords.lookup(buf, pos, matched);
+            }
+            tokenEnd = pos += matched;
+            if (ParseMetrics.ENABLED && counters != null) {
+                counters.tokens ++;
+            }
+            return rule;
+        }
+        if (pos == limit) {
+            tokenEnd = pos;
+            return EOF;
+        }
+        pos += Character.isHighSurrogate(buf[pos]) && pos + 1 < limit && Character.isLowSurrogate(buf[pos + 1]) ? 2 : 1;
+        tokenEnd = pos;
+        if (ParseMetrics.ENABLED && counters != null) {
+            counters.tokens ++;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Set the source number which is recorded in token positions.
+     *
+     * @param source the source number
+     */
+    public void setSource(int source) {
+        this.source = source;
+    }
+
+    /**
+     * Set the counters which this scanner adds the tokens it scans and the input it reads to.
+     *
+     * @param counters the counters, or {@code null} to count nothing
+     * @see ParseMetrics
+     */
+    public void setCounters(ParseCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Get the position of the start of the last token, as packed by {@link Positions}.
+     *
+     * @return the packed position
+     */
+    public long getTokenPosition() {
+        return Positions.pack(source, base + tokenStart);
+    }
+
+    /**
+     * Get the line index of the input, which is complete up to the end of the last token.  Line starts are recorded
+     * in bulk as consumed input is discarded, or when this method is called, rather than while tokens are scanned.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        count(pos);
+        return lines;
+    }
+
+    /**
+     * Get the text of the last token.
+     *
+     * @return the token text
+     */
+    public String getText() {
+        return new String(buf, tokenStart, tokenEnd - tokenStart);
+    }
+
+    /**
+     * Get a view of the text of the last token.  The view reads the scanner buffer directly, so it is only valid until
+     * the next call to {@link #next()}; use {@link #getText()} to keep the text.
+     *
+     * @return the token text
+     */
+    public CharSequence getTextView() {
+        CharBuffer view = this.view;
+        if (view == null) {
+            this.view = view = CharBuffer.wrap(buf).asReadOnlyBuffer();
+        }
+        view.limit(tokenEnd);
+        view.position(tokenStart);
+        return view;
+    }
+
+    /**
+     * Get the first {@code char} of the text of the last token.
+     *
+     * @return the first character
+     * @throws IllegalStateException if the last token is empty
+     */
+    public char getTextChar() {
+        if (tokenStart == tokenEnd) {
+            throw new IllegalStateException("No token text");
+        }
+        return buf[tokenStart];
+    }
+
+    /**
+     * Get the scanner buffer, which holds the text of the last token from {@link #getTokenOffset()}.  The buffer is
+     * overwritten by the next call to {@link #next()}, and it must not be modified.
+     *
+     * @return the buffer
+     */
+    public char[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Get the offset of the last token in the scanner buffer.
+     *
+     * @return the token offset
+     */
+    public int getTokenOffset() {
+        return tokenStart;
+    }
+
+    /**
+     * Get the length of the last token, in {@code char}s.
+     *
+     * @return the token length
+     */
+    public int getTokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    private void count(int index) {
+        if (index > counted) {
+            lines.addLines(buf, counted, index, base);
+            counted = index;
+        }
+    }
+
+    private void fill() throws IOException {
+        char[] buf = this.buf;
+        if (pos > 0) {
+            // discard consumed input, including the text of the previous token
+            count(pos);
+            base += pos;
+            counted -= pos;
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            tokenStart = tokenEnd = pos = 0;
+        } else if (limit == buf.length) {
+            this.buf = buf = Arrays.copyOf(buf, buf.length << 1);
+            view = null;
+        }
+        final int res = reader.read(buf, limit, buf.length - limit);
+        if (res == -1) {
+            eof = true;
+        } else {
+            limit += res;
+            if (ParseMetrics.ENABLED && counters != null) {
+                counters.chars += res;
+                counters.refilled(res);
+            }
+        }
+    }
+}
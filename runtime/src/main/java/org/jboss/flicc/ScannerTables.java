@@ -0,0 +1,320 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The tables of a generated scanner: a single minimized DFA over Unicode code points which recognizes every token
+ * rule of a grammar, with one start state for each scanner state.
+ * <p>
+ * Code points are first mapped to a character class (see {@link #getCharClass(int)}); all code points in a class behave
+ * identically in every DFA state, so the transition table has one column per class rather than per character.  Code
+ * points in the BMP are mapped through a two-level table, in which the high byte of the character selects a block of
+ * 256 classes, and identical blocks are shared.  Supplementary code points are mapped by a binary search over
+ * ranges.  A DFA state which accepts records the token rule it accepts;
+ * when several rules match the same text, the rule declared first wins.  Each token rule is associated with the
+ * terminal it produces, or with no terminal if the matched text is to be discarded after running the rule's action.
+ * Keywords may be left out of the DFA and recognized instead by looking up the text of a more general identifier rule
+ * in a {@link KeywordTable}.  Token rules which the grammar declares as synchronizing tokens (see
+ * {@link Flicc.Sync}) are listed, so that an input can be split after them.
+ * <p>
+ * For a grammar which scans UTF-8 bytes directly, the DFA is built over bytes instead, and each byte is treated as a
+ * code point below 256 (see {@link #isByteInput()}).
+ * <p>
+ * Like {@link ParseTables}, scanner tables are stored in a class path resource (see {@link #getResourceName(String)})
+ * and loaded by {@link #load(Class)} when the scanner is first used.
+ */
+public final class ScannerTables {
+
+    /**
+     * The DFA state or terminal value indicating that there is none.
+     */
+    public static final int NONE = -1;
+
+    private static final int MAGIC = 0x464c5354;
+    private static final int VERSION = 5;
+
+    private final int[] stateValues;
+    private final int[] startStates;
+    private final int[] bmpIndex;
+    private final char[] bmpClasses;
+    private final int[] supplementaryStarts;
+    private final int[] supplementaryClasses;
+    private final int classCount;
+    private final int[] transitions;
+    private final int[] accept;
+    private final int[] ruleTerminals;
+    private final int[] syncRules;
+    private final KeywordTable keywords;
+    private final boolean byteInput;
+
+    /**
+     * Construct a new instance.  The arrays are not copied.
+     *
+     * @param stateValues the values of the scanner states, in ascending order
+     * @param startStates the DFA start state of each scanner state, or {@link #NONE} if no rule applies in it
+     * @param bmpIndex the offset into {@code bmpClasses} of the block for each high byte of a BMP character
+     * @param bmpClasses the blocks of classes of BMP characters, indexed by the low byte
+     * @param supplementaryStarts the first code point of each range of supplementary code points, in ascending order,
+     *      starting with {@code 0x10000}
+     * @param supplementaryClasses the class of each range of supplementary code points
+     * @param classCount the number of character classes
+     * @param transitions the target DFA state of each DFA state and character class, or {@link #NONE}, indexed by
+     *      {@code state * classCount + charClass}
+     * @param accept the token rule accepted by each DFA state, or {@link #NONE}
+     * @param ruleTerminals the terminal produced by each token rule, or {@link #NONE} if its text is discarded
+     * @param syncRules the synchronizing token rules, in ascending order
+     * @param keywords the keywords recognized through the identifier rule, or {@code null} if there are none
+     * @param byteInput {@code true} if the DFA runs over UTF-8 bytes rather than code points
+     */
+    public ScannerTables(final int[] stateValues, final int[] startStates, final int[] bmpIndex, final char[] bmpClasses, final int[] supplementaryStarts, final int[] supplementaryClasses, final int classCount, final int[] transitions, final int[] accept, final int[] ruleTerminals, final int[] syncRules, final KeywordTable keywords, final boolean byteInput) {
+        this.stateValues = stateValues;
+        this.startStates = startStates;
+        this.bmpIndex = bmpIndex;
+        this.bmpClasses = bmpClasses;
+        this.supplementaryStarts = supplementaryStarts;
+        this.supplementaryClasses = supplementaryClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accept = accept;
+        this.ruleTerminals = ruleTerminals;
+        this.syncRules = syncRules;
+        this.keywords = keywords;
+        this.byteInput = byteInput;
+    }
+
+    /**
+     * Get the DFA start state for a scanner state.
+     *
+     * @param state the scanner state value
+     * @return the DFA start state, or {@link #NONE} if no token rule applies in the scanner state
+     * @throws IllegalArgumentException if the scanner state is not declared by the grammar
+     */
+    public int getStartState(int state) {
+        final int idx = Arrays.binarySearch(stateValues, state);
+        if (idx < 0) {
+            throw new IllegalArgumentException("Unknown scanner state " + state);
+        }
+        return startStates[idx];
+    }
+
+    /**
+     * Get the class of a code point.
+     *
+     * @param codePoint the code point
+     * @return the character class
+     */
+    public int getCharClass(int codePoint) {
+        if (codePoint < 0x10000) {
+            return bmpClasses[bmpIndex[codePoint >> 8] + (codePoint & 0xff)];
+        }
+        final int idx = Arrays.binarySearch(supplementaryStarts, codePoint);
+        return supplementaryClasses[idx >= 0 ? idx : -idx - 2];
+    }
+
+    /**
+     * Get the DFA state to move to from a state on a code point of the given class.
+     *
+     * @param state the current DFA state
+     * @param charClass the class of the next code point
+     * @return the next DFA state, or {@link #NONE} if the code point cannot continue any token
+     */
+    public int getTransition(int state, int charClass) {
+        return transitions[state * classCount + charClass];
+    }
+
+    /**
+     * Get the token rule accepted in a DFA state.
+     *
+     * @param state the DFA state
+     * @return the token rule, or {@link #NONE} if the state does not accept
+     */
+    public int getAccept(int state) {
+        return accept[state];
+    }
+
+    /**
+     * Get the terminal produced by a token rule.
+     *
+     * @param rule the token rule
+     * @return the terminal, or {@link #NONE} if the matched text is discarded
+     */
+    public int getRuleTerminal(int rule) {
+        return ruleTerminals[rule];
+    }
+
+    /**
+     * Determine whether a token rule is a synchronizing token, after which the input may be split.
+     *
+     * @param rule the token rule
+     * @return {@code true} if the rule is a synchronizing token
+     */
+    public boolean isSyncRule(int rule) {
+        return Arrays.binarySearch(syncRules, rule) >= 0;
+    }
+
+    /**
+     * Determine whether the grammar has any synchronizing tokens.
+     *
+     * @return {@code true} if some token rule is a synchronizing token
+     */
+    public boolean hasSyncRules() {
+        return syncRules.length > 0;
+    }
+
+    /**
+     * Determine whether the DFA runs over the bytes of UTF-8 encoded input, rather than over code points.  If so, each
+     * byte is mapped to its class by {@link #getCharClass(int)} as if it were a code point from 0 to 255, and the
+     * tables must be used by a {@link ByteScanner}.
+     *
+     * @return {@code true} for byte input
+     */
+    public boolean isByteInput() {
+        return byteInput;
+    }
+
+    /**
+     * Get the keywords which are recognized through the identifier rule rather than by the DFA.
+     *
+     * @return the keyword table, or {@code null} if there is none
+     */
+    public KeywordTable getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * Get the number of DFA states.
+     *
+     * @return the number of DFA states
+     */
+    public int getStateCount() {
+        return accept.length;
+    }
+
+    /**
+     * Get the number of character classes.
+     *
+     * @return the number of character classes
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Get the number of token rules.
+     *
+     * @return the number of token rules
+     */
+    public int getRuleCount() {
+        return ruleTerminals.length;
+    }
+
+    /**
+     * Get the total number of {@code int} entries in these tables.
+     *
+     * @return the table size
+     */
+    public int getSize() {
+        return stateValues.length + startStates.length + bmpIndex.length + bmpClasses.length + supplementaryStarts.length + supplementaryClasses.length + transitions.length + accept.length + ruleTerminals.length + syncRules.length + (keywords == null ? 0 : keywords.getSize());
+    }
+
+    /**
+     * Get the name of the class path resource which holds the scanner tables of a grammar.
+     *
+     * @param grammarClassName the binary name of the grammar class
+     * @return the resource name
+     */
+    public static String getResourceName(String grammarClassName) {
+        return "META-INF/flicc/" + grammarClassName + ".scanner";
+    }
+
+    /**
+     * Load the scanner tables of a grammar from its class path resource.
+     *
+     * @param grammarClass the grammar class
+     * @return the tables
+     * @throws IllegalStateException if the resource is missing or cannot be read
+     */
+    public static ScannerTables load(Class<?> grammarClass) {
+        final String name = getResourceName(grammarClass.getName());
+        final InputStream is = TableCodec.openResource(grammarClass, name);
+        try {
+            try {
+                return readFrom(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read scanner tables resource " + name, e);
+        }
+    }
+
+    /**
+     * Read tables which were written by {@link #writeTo(OutputStream)}.
+     *
+     * @param is the stream to read from
+     * @return the tables
+     * @throws IOException if the stream cannot be read or is not valid
+     */
+    public static ScannerTables readFrom(InputStream is) throws IOException {
+        final TableCodec codec = TableCodec.read(is, MAGIC, VERSION);
+        final int[] stateValues = codec.readArray();
+        final int[] startStates = codec.readArray();
+        final int[] bmpIndex = codec.readArray();
+        final int[] bmpClasses = codec.readArray();
+        final char[] chars = new char[bmpClasses.length];
+        for (int i = 0; i < chars.length; i ++) {
+            chars[i] = (char) bmpClasses[i];
+        }
+        final int[] supplementaryStarts = codec.readArray();
+        final int[] supplementaryClasses = codec.readArray();
+        final int[] header = codec.readArray();
+        final int[] transitions = codec.readArray();
+        final int[] accept = codec.readArray();
+        final int[] ruleTerminals = codec.readArray();
+        final int[] syncRules = codec.readArray();
+        return new ScannerTables(stateValues, startStates, bmpIndex, chars, supplementaryStarts, supplementaryClasses, header[0], transitions, accept, ruleTerminals, syncRules, KeywordTable.readFrom(codec), header[1] != 0);
+    }
+
+    /**
+     * Write these tables to a stream.
+     *
+     * @param os the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        TableCodec.writeHeader(os, MAGIC, VERSION);
+        final int[] chars = new int[bmpClasses.length];
+        for (int i = 0; i < chars.length; i ++) {
+            chars[i] = bmpClasses[i];
+        }
+        for (int[] array : new int[][] { stateValues, startStates, bmpIndex, chars, supplementaryStarts, supplementaryClasses, { classCount, byteInput ? 1 : 0 }, transitions, accept, ruleTerminals, syncRules }) {
+            TableCodec.writeArray(os, array);
+        }
+        KeywordTable.writeTo(os, keywords);
+    }
+}
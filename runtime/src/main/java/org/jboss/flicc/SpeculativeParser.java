@@ -0,0 +1,377 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses a large input in pieces, in parallel, by splitting it after synchronizing tokens (see {@link Flicc.Sync}).
+ * <p>
+ * The input is cut into chunks of at least the chunk size.  Each chunk is assumed to start just after a synchronizing
+ * token, where the parse starts afresh, so it is scanned from scanner state 0 and parsed as a whole input,
+ * independently of the chunks before it.  The split points are guessed by running the scanner DFA from each cut
+ * until it matches a synchronizing token; a guess is only confirmed when the scan of the chunk before it, which itself
+ * started at a confirmed point, ends a synchronizing token exactly there.  Otherwise that scan carries on over the next
+ * chunk, whose speculative result is discarded, until it does end a synchronizing token at a later split point.  If a
+ * chunk fails to parse, the rest of the input is parsed again sequentially from the start of that chunk, so that a
+ * syntax error is reported as it would be by a sequential parse.  The results of the chunks are combined in input
+ * order by {@link #join(Object, Object)}.
+ * <p>
+ * The line index of each chunk's tokens records offsets in the whole input and numbers lines as they are numbered in
+ * the whole input, so the locations found in a chunk are those a sequential parse would find.  The lines before each
+ * chunk are counted once, while the input is split.
+ * <p>
+ * Chunks are scanned into {@link TokenArray}s, in scanner state 0 throughout, so this is only suitable for grammars
+ * whose token actions do not change the scanner state.
+ *
+ * @param <T> the type of the result of a parse
+ */
+public abstract class SpeculativeParser<T> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final ScannerTables tables;
+    private final KeywordTable keywords;
+    private final int chunkSize;
+
+    /**
+     * Construct a new instance which splits the input into chunks of at least {@code 1 << 20} characters.
+     *
+     * @param tables the scanner tables, which must be for character input
+     * @throws IllegalArgumentException if the tables are for byte input or have no synchronizing tokens
+     */
+    protected SpeculativeParser(final ScannerTables tables) {
+        this(tables, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param tables the scanner tables, which must be for character input
+     * @param chunkSize the minimum number of characters in a chunk
+     * @throws IllegalArgumentException if the tables are for byte input or have no synchronizing tokens, or the chunk
+     *      size is not positive
+     */
+    protected SpeculativeParser(final ScannerTables tables, final int chunkSize) {
+        if (tables.isByteInput()) {
+            throw new IllegalArgumentException("Scanner tables are for byte input");
+        }
+        if (! tables.hasSyncRules()) {
+            throw new IllegalArgumentException("Grammar has no synchronizing tokens");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.tables = tables;
+        keywords = tables.getKeywords();
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parse the tokens of a chunk as a whole input.  This method is called concurrently, from the threads of the pool,
+     * so it typically parses with a parser of its own.  Token offsets are relative to the chunk, but the line index of
+     * the tokens is that of the whole input: the line and column of token {@code i} are those of the input offset
+     * {@code offset + tokens.getTokenStart(i)}.
+     *
+     * @param tokens the tokens of the chunk
+     * @param offset the offset of the chunk in the input
+     * @return the result
+     * @throws ParseException if the tokens do not match the grammar
+     */
+    protected abstract T parseChunk(TokenArray tokens, int offset);
+
+    /**
+     * Combine the results of two consecutive parts of the input.
+     *
+     * @param first the result of the first part
+     * @param second the result of the part which follows it
+     * @return the combined result
+     */
+    protected abstract T join(T first, T second);
+
+    /**
+     * Parse an input sequentially, as a single chunk.
+     *
+     * @param text the input
+     * @return the result
+     * @throws ParseException if the input does not match the grammar
+     */
+    public final T parse(CharSequence text) {
+        return parseChunk(scan(text, 0, 1, 0), 0);
+    }
+
+    /**
+     * Parse an input in chunks, in parallel.
+     *
+     * @param text the input
+     * @param pool the pool to parse the chunks on
+     * @return the combined result of the chunks
+     * @throws ParseException if the input does not match the grammar
+     */
+    public final T parse(CharSequence text, ForkJoinPool pool) {
+        final int[] starts = split(text);
+        final int count = starts.length - 1;
+        if (count == 1) {
+            return parse(text);
+        }
+        final int[] lines = new int[count];
+        final int[] lineStarts = new int[count];
+        findLines(text, starts, lines, lineStarts);
+        final List<Chunk<T>> chunks = new ArrayList<Chunk<T>>(count);
+        for (int i = 0; i < count; i ++) {
+            final Chunk<T> chunk = new Chunk<T>(this, text, starts, i, lines[i], lineStarts[i]);
+            chunks.add(chunk);
+            pool.execute(chunk);
+        }
+        try {
+            T result = null;
+            int i = 0;
+            while (i < count) {
+                final Chunk<T> chunk = chunks.get(i);
+                chunk.join();
+                T chunkResult;
+                if (chunk.failure == null) {
+                    chunkResult = chunk.result;
+                } else if (chunk.next == count) {
+                    throw chunk.failure;
+                } else {
+                    // the chunk may end where the parse cannot start afresh after all
+                    chunkResult = parseChunk(scan(text, starts[i], lines[i], lineStarts[i]), starts[i]);
+                    chunk.next = count;
+                }
+                result = i == 0 ? chunkResult : join(result, chunkResult);
+                i = chunk.next;
+            }
+            return result;
+        } finally {
+            for (Chunk<T> chunk : chunks) {
+                chunk.cancel(false);
+            }
+        }
+    }
+
+    private TokenArray scan(CharSequence text, int offset, int line, int lineStart) {
+        final TokenArray.Builder builder = new TokenArray.Builder(createScanner(tables, text, offset, line, lineStart));
+        try {
+            while (builder.next() != Scanner.EOF) {
+                // scan to the end
+            }
+        } catch (IOException e) {
+            // reading text from memory cannot fail
+            throw new IllegalStateException(e);
+        }
+        return builder.build();
+    }
+
+    private static Scanner createScanner(ScannerTables tables, CharSequence text, int offset, int line, int lineStart) {
+        final Scanner scanner = new Scanner(tables);
+        scanner.reset(new TextReader(text, offset), new LineIndex(line, lineStart), offset);
+        return scanner;
+    }
+
+    private static void findLines(CharSequence text, int[] starts, int[] lines, int[] lineStarts) {
+        int line = 1;
+        int lineStart = 0;
+        int pos = 0;
+        for (int i = 0; i < lines.length; i ++) {
+            final int start = starts[i];
+            while (pos < start) {
+                if (text.charAt(pos ++) == '\n') {
+                    line ++;
+                    lineStart = pos;
+                }
+            }
+            lines[i] = line;
+            lineStarts[i] = lineStart;
+        }
+    }
+
+    private int[] split(CharSequence text) {
+        final int length = text.length();
+        final int[] starts = new int[length / chunkSize + 2];
+        int count = 1;
+        int cut = chunkSize;
+        while (cut < length) {
+            final int split = findSplit(text, cut);
+            if (split == -1 || split == length) {
+                break;
+            }
+            starts[count++] = split;
+            cut = split + chunkSize;
+            if (cut < 0) {
+                break;
+            }
+        }
+        starts[count++] = length;
+        final int[] result = new int[count];
+        System.arraycopy(starts, 0, result, 0, count);
+        return result;
+    }
+
+    private int findSplit(CharSequence text, int from) {
+        final int length = text.length();
+        int pos = from;
+        if (pos > 0 && pos < length && Character.isLowSurrogate(text.charAt(pos)) && Character.isHighSurrogate(text.charAt(pos - 1))) {
+            pos ++;
+        }
+        char[] keywordBuf = null;
+        while (pos < length) {
+            // the longest match in scanner state 0, as the scanner would find it if a token started here
+            int dfa = tables.getStartState(0);
+            int len = 0;
+            int rule = ScannerTables.NONE;
+            int matched = 0;
+            while (dfa != ScannerTables.NONE && pos + len < length) {
+                final int codePoint = Character.codePointAt(text, pos + len);
+                dfa = tables.getTransition(dfa, tables.getCharClass(codePoint));
+                if (dfa != ScannerTables.NONE) {
+                    len += Character.charCount(codePoint);
+                    final int accepted = tables.getAccept(dfa);
+                    if (accepted != ScannerTables.NONE) {
+                        rule = accepted;
+                        matched = len;
+                    }
+                }
+            }
+            if (rule == ScannerTables.NONE) {
+                pos += Character.charCount(Character.codePointAt(text, pos));
+                continue;
+            }
+            if (keywords != null && rule == keywords.getIdentifierRule()) {
+                if (keywordBuf == null || keywordBuf.length < matched) {
+                    keywordBuf = new char[Math.max(matched, 64)];
+                }
+                for (int i = 0; i < matched; i ++) {
+                    keywordBuf[i] = text.charAt(pos + i);
+                }
+                rule = keywords.lookup(keywordBuf, 0, matched);
+            }
+            pos += matched;
+            if (tables.isSyncRule(rule)) {
+                return pos;
+            }
+            // carry on from the end of the match, as the scanner would, so that the tokens soon line up with the
+            // tokens of a scan from the start
+        }
+        return -1;
+    }
+
+    static final class Chunk<T> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SpeculativeParser<T> parser;
+        private final CharSequence text;
+        private final int[] starts;
+        private final int index;
+        private final int line;
+        private final int lineStart;
+        private T result;
+        private ParseException failure;
+        // the index of the chunk which the input after this one starts with
+        private int next;
+
+        Chunk(final SpeculativeParser<T> parser, final CharSequence text, final int[] starts, final int index, final int line, final int lineStart) {
+            this.parser = parser;
+            this.text = text;
+            this.starts = starts;
+            this.index = index;
+            this.line = line;
+            this.lineStart = lineStart;
+        }
+
+        protected void compute() {
+            final int[] starts = this.starts;
+            final int count = starts.length - 1;
+            final int start = starts[index];
+            final ScannerTables tables = parser.tables;
+            final TokenArray.Builder builder = new TokenArray.Builder(createScanner(tables, text, start, line, lineStart));
+            int next = index + 1;
+            try {
+                for (;;) {
+                    final int rule = builder.next();
+                    if (rule == Scanner.EOF) {
+                        next = count;
+                        break;
+                    }
+                    if (rule >= 0 && tables.isSyncRule(rule)) {
+                        final int end = start + builder.getLength();
+                        while (starts[next] < end) {
+                            next ++;
+                        }
+                        if (starts[next] == end) {
+                            break;
+                        }
+                        if (isCancelled()) {
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // reading text from memory cannot fail
+                throw new IllegalStateException(e);
+            }
+            this.next = next;
+            try {
+                result = parser.parseChunk(builder.build(), start);
+            } catch (ParseException e) {
+                failure = e;
+            }
+        }
+    }
+
+    static final class TextReader extends Reader {
+        private final CharSequence text;
+        private int pos;
+
+        TextReader(final CharSequence text, final int pos) {
+            this.text = text;
+            this.pos = pos;
+        }
+
+        public int read(final char[] cbuf, final int off, final int len) {
+            final CharSequence text = this.text;
+            final int cnt = Math.min(len, text.length() - pos);
+            if (cnt <= 0) {
+                return len == 0 ? 0 : -1;
+            }
+            if (text instanceof String) {
+                ((String) text).getChars(pos, pos + cnt, cbuf, off);
+            } else {
+                for (int i = 0; i < cnt; i ++) {
+                    cbuf[off + i] = text.charAt(pos + i);
+                }
+            }
+            pos += cnt;
+            return cnt;
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The binary format shared by the table resources of generated parsers.  A resource starts with a four-byte magic
+ * number and a format version, followed by {@code int} arrays.  Every array is written as its length followed by the
+ * zig-zag encoded differences between consecutive values, as variable-length integers; table entries change slowly
+ * from one position to the next, so most of them fit in a single byte.
+ */
+final class TableCodec {
+    private final byte[] bytes;
+    private final int length;
+    private int pos;
+
+    private TableCodec(final byte[] bytes, final int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * Read a whole stream into memory and check its header.
+     *
+     * @param is the stream to read
+     * @param magic the expected magic number
+     * @param version the expected format version
+     * @return the decoder for the remainder of the stream
+     * @throws IOException if the stream cannot be read or has the wrong header
+     */
+    static TableCodec read(InputStream is, int magic, int version) throws IOException {
+        byte[] bytes = new byte[Math.max(is.available(), 4096)];
+        int length = 0;
+        int res;
+        while ((res = is.read(bytes, length, bytes.length - length)) != -1) {
+            length += res;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length << 1);
+            }
+        }
+        final TableCodec codec = new TableCodec(bytes, length);
+        if (codec.readInt() != magic || codec.readVarInt() != version) {
+            throw new IOException("Invalid table resource format");
+        }
+        return codec;
+    }
+
+    static InputStream openResource(Class<?> grammarClass, String name) {
+        final InputStream is = grammarClass.getResourceAsStream("/" + name);
+        if (is == null) {
+            throw new IllegalStateException("Missing table resource " + name);
+        }
+        return is;
+    }
+
+    static void writeHeader(OutputStream os, int magic, int version) throws IOException {
+        os.write(magic >>> 24);
+        os.write(magic >>> 16);
+        os.write(magic >>> 8);
+        os.write(magic);
+        writeVarInt(os, version);
+    }
+
+    static void writeArray(OutputStream os, int[] array) throws IOException {
+        writeVarInt(os, array.length);
+        int prev = 0;
+        for (int value : array) {
+            final int delta = value - prev;
+            writeVarInt(os, delta << 1 ^ delta >> 31);
+            prev = value;
+        }
+    }
+
+    private static void writeVarInt(OutputStream os, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            os.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        os.write(value);
+    }
+
+    private int readInt() throws IOException {
+        if (length - pos < 4) {
+            throw new IOException("Unexpected end of table resource");
+        }
+        final byte[] bytes = this.bytes;
+        final int pos = this.pos;
+        this.pos = pos + 4;
+        return (bytes[pos] & 0xff) << 24 | (bytes[pos + 1] & 0xff) << 16 | (bytes[pos + 2] & 0xff) << 8 | bytes[pos + 3] & 0xff;
+    }
+
+    private int readVarInt() throws IOException {
+        final byte[] bytes = this.bytes;
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos == length) {
+                throw new IOException("Unexpected end of table resource");
+            }
+            final int b = bytes[pos++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid variable-length integer in table resource");
+    }
+
+    int[] readArray() throws IOException {
+        final int size = readVarInt();
+        if (size < 0 || size > length - pos) {
+            throw new IOException("Invalid array length in table resource");
+        }
+        final int[] array = new int[size];
+        int prev = 0;
+        for (int i = 0; i < size; i ++) {
+            final int zigzag = readVarInt();
+            array[i] = prev += zigzag >>> 1 ^ -(zigzag & 1);
+        }
+        return array;
+    }
+}
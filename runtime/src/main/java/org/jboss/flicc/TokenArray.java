@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.flicc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * The tokens of a whole input source, or of a piece of one, scanned ahead of time.  The text of the source is kept in a single array, and
+ * each token is represented only by its rule and its end offset, so that scanning a source can be done on another
+ * thread and its tokens handed over in a compact form.  Every token is scanned in scanner state 0.
+ */
+public final class TokenArray {
+    private final char[] text;
+    private final int[] rules;
+    private final int[] ends;
+    private final int count;
+    private final LineIndex lines;
+
+    private TokenArray(final char[] text, final int[] rules, final int[] ends, final int count, final LineIndex lines) {
+        this.text = text;
+        this.rules = rules;
+        this.ends = ends;
+        this.count = count;
+        this.lines = lines;
+    }
+
+    /**
+     * Scan a whole source.  The source is opened, read to its end and closed.
+     *
+     * @param tables the scanner tables, which must be for character input
+     * @param source the source
+     * @return the tokens
+     * @throws IOException if reading the source fails
+     */
+    public static TokenArray scan(ScannerTables tables, Source source) throws IOException {
+        final Reader reader = source.open();
+        try {
+            final Builder builder = new Builder(new Scanner(tables, reader));
+            while (builder.next() != Scanner.EOF) {
+                // scan to the end
+            }
+            return builder.build();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get the number of tokens.
+     *
+     * @return the number of tokens
+     */
+    public int getTokenCount() {
+        return count;
+    }
+
+    /**
+     * Get the rule which matched a token.
+     *
+     * @param index the token index
+     * @return the token rule, or {@link Scanner#NO_MATCH}
+     */
+    public int getRule(int index) {
+        return rules[index];
+    }
+
+    /**
+     * Get the offset of the start of a token.
+     *
+     * @param index the token index
+     * @return the offset
+     */
+    public int getTokenStart(int index) {
+        return index == 0 ? 0 : ends[index - 1];
+    }
+
+    /**
+     * Get the offset of the end of a token.
+     *
+     * @param index the token index
+     * @return the offset
+     */
+    public int getTokenEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Get the text of a token.
+     *
+     * @param index the token index
+     * @return the token text
+     */
+    public String getText(int index) {
+        final int start = getTokenStart(index);
+        return new String(text, start, ends[index] - start);
+    }
+
+    /**
+     * Get the text of the whole source, which holds the text of each token from its start offset.  The array must not
+     * be modified.
+     *
+     * @return the text
+     */
+    public char[] getBuffer() {
+        return text;
+    }
+
+    /**
+     * Get the line index of the source.
+     *
+     * @return the line index
+     */
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    /**
+     * Collects the tokens of a scanner one at a time, so that the caller can decide where to stop.
+     */
+    static final class Builder {
+        private final Scanner scanner;
+        private char[] text = new char[8192];
+        private int[] rules = new int[1024];
+        private int[] ends = new int[1024];
+        private int count;
+        private int length;
+
+        Builder(final Scanner scanner) {
+            this.scanner = scanner;
+        }
+
+        int next() throws IOException {
+            final Scanner scanner = this.scanner;
+            final int rule = scanner.next();
+            if (rule == Scanner.EOF) {
+                return rule;
+            }
+            final int tokenLength = scanner.getTokenLength();
+            if (length + tokenLength > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length << 1, length + tokenLength));
+            }
+            System.arraycopy(scanner.getBuffer(), scanner.getTokenOffset(), text, length, tokenLength);
+            length += tokenLength;
+            if (count == rules.length) {
+                rules = Arrays.copyOf(rules, count << 1);
+                ends = Arrays.copyOf(ends, count << 1);
+            }
+            rules[count] = rule;
+            ends[count++] = length;
+            return rule;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        TokenArray build() {
+            return new TokenArray(text, rules, ends, count, scanner.getLineIndex());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link LineIndex} and {@link Positions}.
+ */
+public final class LineIndexTest {
+
+    @Test
+    public void testLinesAndColumns() {
+        final LineIndex lines = new LineIndex();
+        final String text = "ab\n\ncd\nefg";
+        lines.addLines(text, 0, text.length(), 0);
+        assertEquals(4, lines.getLineCount());
+        assertEquals(1, lines.getLine(0));
+        assertEquals(1, lines.getLine(2));
+        assertEquals(3, lines.getColumn(2));
+        assertEquals(2, lines.getLine(3));
+        assertEquals(3, lines.getLine(4));
+        assertEquals(2, lines.getColumn(5));
+        assertEquals(4, lines.getLine(9));
+        assertEquals(7, lines.getLineStart(4));
+        lines.clear();
+        assertEquals(1, lines.getLineCount());
+        assertEquals(1, lines.getLine(9));
+    }
+
+    @Test
+    public void testLongOffsets() {
+        final LineIndex lines = new LineIndex();
+        final long big = 3L << 32;
+        lines.addLineStart(10);
+        lines.addLineStart(big);
+        assertEquals(3, lines.getLine(big + 5));
+        assertEquals(6, lines.getColumn(big + 5));
+        assertEquals(big, lines.getLineStart(3));
+        // a column which does not fit in an int is clamped
+        assertEquals(Integer.MAX_VALUE, lines.getColumn(big - 1));
+    }
+
+    @Test
+    public void testPartialInput() {
+        // an index of the input from line 5, which starts at offset 100
+        final LineIndex lines = new LineIndex(5, 100);
+        final char[] chars = "x\nyz\n".toCharArray();
+        lines.addLines(chars, 0, chars.length, 100);
+        assertEquals(5, lines.getLine(100));
+        assertEquals(6, lines.getLine(103));
+        assertEquals(2, lines.getColumn(103));
+        assertEquals(7, lines.getLine(105));
+        assertEquals(102, lines.getLineStart(6));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testLineBeforePart() {
+        new LineIndex(5, 100).getLineStart(4);
+    }
+
+    @Test
+    public void testPositions() {
+        final long offset = (1L << 40) + 17;
+        final long position = Positions.pack(3, offset);
+        assertEquals(3, Positions.getSource(position));
+        assertEquals(offset, Positions.getOffset(position));
+        assertEquals(65535, Positions.getSource(Positions.pack(65535, 0)));
+        final LineIndex lines = new LineIndex();
+        lines.addLineStart(offset - 1);
+        final Location location = Positions.toLocation(position, lines, "f", null);
+        assertEquals("f", location.getFileName());
+        assertEquals(2, location.getLineNumber());
+        assertEquals(2, location.getColumnNumber());
+        assertNull(Positions.toLocation(Positions.UNKNOWN, lines, "f", null));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.flicc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of reading mapped files.  A file larger than one mapping is simulated with a small mapping size, since the
+ * mappings move over a file in the same way whatever their size.
+ */
+public final class MappedFileSourceTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("flicc", ".txt");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static String read(Source source, int bufferSize) throws IOException {
+        final Reader reader = source.open();
+        try {
+            final StringBuilder b = new StringBuilder();
+            final char[] buffer = new char[bufferSize];
+            int n;
+            while ((n = reader.read(buffer, 0, bufferSize)) != -1) {
+                b.append(buffer, 0, n);
+            }
+            return b.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] readBytes(ByteSource source, int bufferSize) throws IOException {
+        final InputStream is = source.openStream();
+        try {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[bufferSize];
+            int n;
+            while ((n = is.read(buffer, 0, bufferSize)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testRemapping() throws IOException {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 200; i ++) {
+            b.append("ab").append(i).append("é€𝐀\n");
+        }
+        final String text = b.toString();
+        final byte[] bytes = text.getBytes(UTF_8);
+        write(bytes);
+        // every multi-byte character is split between two mappings at one of these sizes
+        for (int maxMapping = 4; maxMapping <= 13; maxMapping ++) {
+            final MappedFileSource source = new MappedFileSource(file, UTF_8, maxMapping);
+            for (int bufferSize : new int[] { 1, 2, 3, 7, 4096 }) {
+                assertEquals(text, read(source, bufferSize));
+                assertArrayEquals(bytes, readBytes(source, bufferSize));
+            }
+        }
+        assertEquals(text, read(new MappedFileSource(file), 4096));
+    }
+
+    @Test
+    public void testMalformedInput() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i ++) {
+            os.write(("line " + i + " ").getBytes(UTF_8));
+            // a stray continuation byte, a truncated sequence, an overlong encoding and a surrogate
+            os.write(new byte[] { (byte) 0x80, 'x', (byte) 0xe2, (byte) 0x82, 'y', (byte) 0xc0, (byte) 0xaf, (byte) 0xed, (byte) 0xa0, (byte) 0x80, '\n' });
+        }
+        // and a truncated sequence at the very end
+        os.write(new byte[] { 'z', (byte) 0xf0, (byte) 0x9d });
+        final byte[] bytes = os.toByteArray();
+        write(bytes);
+        // malformed input is replaced as the JDK decoder replaces it, wherever the ASCII runs and the mappings end
+        final String expected = new String(bytes, UTF_8);
+        for (int maxMapping : new int[] { 5, 8, 11, Integer.MAX_VALUE }) {
+            final MappedFileSource source = new MappedFileSource(file, UTF_8, maxMapping);
+            for (int bufferSize : new int[] { 1, 3, 4096 }) {
+                assertEquals(expected, read(source, bufferSize));
+            }
+        }
+    }
+
+    @Test
+    public void testIso88591() throws IOException {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i ++) {
+            bytes[i] = (byte) i;
+        }
+        write(bytes);
+        assertEquals(new String(bytes, ISO_8859_1), read(new MappedFileSource(file, ISO_8859_1, 7), 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedCharset() {
+        new MappedFileSource(file, Charset.forName("UTF-16"));
+    }
+}